@@ -0,0 +1,37 @@
+#!/usr/bin/env bash
+# Avvia TreniCal in modalità shard su questa macchina: SHARDS processi dati (porte 50061, 50062, ...)
+# e un router sulla porta 50051, a cui si collegano client e generatore di carico come a un server normale.
+#
+#   mvn -pl treni-cal-shading -am package -DskipTests
+#   SHARDS=3 JOURNAL_ROOT=/tmp/trenical ./run-shards.sh
+#
+# Ctrl-C ferma tutti i processi. Ogni proprietá -D passata allo script vale per tutti i processi.
+set -euo pipefail
+
+SHARDS=${SHARDS:-2}
+BASE_PORT=${BASE_PORT:-50061}
+ROUTER_PORT=${ROUTER_PORT:-50051}
+JAR=${JAR:-"$(dirname "$0")/treni-cal-shading/target/treni-cal-shading-1.0-SNAPSHOT.jar"}
+MAIN=com.trenical.services.TreniCalServer
+
+pids=()
+trap 'kill "${pids[@]}" 2>/dev/null; wait' EXIT INT TERM
+
+peers=""
+for ((i = 0; i < SHARDS; i++)); do
+    port=$((BASE_PORT + i))
+    journal=()
+    if [[ -n "${JOURNAL_ROOT:-}" ]]; then
+        # ogni shard ha il suo journal: i biglietti di uno shard non si mescolano con quelli degli altri
+        journal=("-Dtrenical.journal.dir=$JOURNAL_ROOT/shard-$i")
+    fi
+    java "$@" "${journal[@]}" -Dtrenical.server.port="$port" \
+        -Dtrenical.shard.index="$i" -Dtrenical.shard.count="$SHARDS" \
+        -cp "$JAR" "$MAIN" &
+    pids+=($!)
+    peers+="${peers:+,}localhost:$port"
+done
+
+java "$@" -Dtrenical.server.port="$ROUTER_PORT" -Dtrenical.shard.peers="$peers" -cp "$JAR" "$MAIN" &
+pids+=($!)
+wait
@@ -0,0 +1,93 @@
+package com.trenical.bench;
+
+import com.google.protobuf.Timestamp;
+import com.trenical.database.SeatMap;
+import com.trenical.database.TicketDatabase;
+import com.trenical.database.TrainDatabase;
+import proto.Station;
+import proto.Ticket;
+import proto.Train;
+import proto.TravelDate;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Dati sintetici condivisi dai benchmark: orario generato e biglietti precaricati.
+// I database sono singleton, quindi ogni trial riparte da uno stato noto.
+public final class BenchmarkFixtures {
+
+    public static final int STATION_COUNT = 50;
+    public static final String HOT_TRAIN_ID = "BENCH-HOT";
+    // il piú grande accettato dalla mappa dei posti: gli acquisti di PurchaseTicketsBenchmark (milioni per trial)
+    // non devono esaurirlo, altrimenti si misurerebbe il rifiuto per treno pieno
+    public static final int HOT_TRAIN_SEATS = SeatMap.MAX_CAPACITY;
+    public static final String SERVICE_CLASS = "Standard";
+    public static final int TICKETS_PER_USER = 10;
+
+    private BenchmarkFixtures() {}
+
+    public static Station station(int index) {
+        return Station.newBuilder().setId("ST" + index).setName("Stazione " + index).build();
+    }
+
+    public static TravelDate today() {
+        LocalDate today = LocalDate.now();
+        return TravelDate.newBuilder().setYear(today.getYear()).setMonth(today.getMonthValue()).setDay(today.getDayOfMonth()).build();
+    }
+
+    // genera "size" corse distribuite su tutte le coppie di stazioni e su una settimana,
+    // in modo che la tratta ST0 -> ST1 di oggi abbia circa size / (STATION_COUNT^2 * 7) treni
+    public static void loadTimetable(int size) {
+        Random random = new Random(42);
+        long startOfToday = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        List<Train> trains = new ArrayList<>(size + 1);
+        for (int i = 0; i < size; i++) {
+            int from = random.nextInt(STATION_COUNT);
+            int to = (from + 1 + random.nextInt(STATION_COUNT - 1)) % STATION_COUNT;
+            long departure = startOfToday + random.nextInt(7 * 86400);
+            trains.add(train("BENCH-" + i, from, to, departure, 500));
+        }
+        trains.add(train(HOT_TRAIN_ID, 0, 1, startOfToday + 12 * 3600, HOT_TRAIN_SEATS));
+        TrainDatabase.getInstance().addTrains(trains);
+    }
+
+    public static Train train(String id, int from, int to, long departureSeconds, int seats) {
+        return Train.newBuilder()
+                .setId(id)
+                .setTrainNumber("FR " + id)
+                .setDepartureStation(station(from))
+                .setArrivalStation(station(to))
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(departureSeconds).build())
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(departureSeconds + 3 * 3600).build())
+                .setServiceClass(SERVICE_CLASS)
+                .setPrice(40.0)
+                .setAvailableSeats(seats)
+                .setTrainType("High-Speed")
+                .build();
+    }
+
+    // svuota il database dei biglietti e ne carica "count" sul treno HOT, TICKETS_PER_USER per utente
+    public static void prefillTickets(int count) {
+        TicketDatabase ticketDatabase = TicketDatabase.getInstance();
+        ticketDatabase.clear();
+        Train hotTrain = TrainDatabase.getInstance().getTrainById(HOT_TRAIN_ID);
+        Timestamp purchaseDate = Timestamp.newBuilder().setSeconds(System.currentTimeMillis() / 1000).build();
+        for (int i = 0; i < count; i++) {
+            ticketDatabase.saveTicket(Ticket.newBuilder()
+                    .setId("BENCH-TICKET-" + i)
+                    .setUserId(userId(i / TICKETS_PER_USER))
+                    .setTrainDetails(hotTrain)
+                    .setSeatNumber("S" + (i + 1))
+                    .setPurchaseDate(purchaseDate)
+                    .setStatus("CONFIRMED")
+                    .build());
+        }
+    }
+
+    public static String userId(int index) {
+        return "benchUser" + index;
+    }
+}
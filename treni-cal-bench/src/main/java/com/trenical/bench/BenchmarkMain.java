@@ -0,0 +1,28 @@
+package com.trenical.bench;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Entry point del jar dei benchmark: accetta le normali opzioni di JMH (-p, -f, -wi, ...)
+// e ripete la suite per ogni numero di thread in -Dbench.threads (es. -Dbench.threads=1,4,16).
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        String threadCounts = System.getProperty("bench.threads");
+        if (threadCounts == null || threadCounts.isBlank()) {
+            new Runner(cli).run();
+            return;
+        }
+        for (String threads : threadCounts.split(",")) {
+            System.out.println("[Bench] Running with " + threads.trim() + " thread(s)");
+            new Runner(new OptionsBuilder()
+                    .parent(cli)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.trenical.bench;
+
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.infra.Blackhole;
+
+// StreamObserver per le chiamate dirette ai servizi: consuma le risposte senza allocare nulla.
+final class BlackholeObserver<T> implements StreamObserver<T> {
+    private final Blackhole blackhole;
+
+    BlackholeObserver(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void onNext(T value) {
+        blackhole.consume(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        throw new IllegalStateException("Unexpected error in benchmark call", t);
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+}
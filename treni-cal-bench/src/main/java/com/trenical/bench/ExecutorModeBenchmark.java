@@ -0,0 +1,136 @@
+package com.trenical.bench;
+
+import com.trenical.services.ServerExecutors;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import proto.SearchTrainRequest;
+import proto.SearchTrainResponse;
+import proto.TreniCalGrpc;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Confronto tra gli executor del server (trenical.server.executor) sotto raffiche di chiamate concorrenti.
+// Ogni operazione lancia "concurrentCalls" searchTrains asincrone e aspetta l'ultima risposta: il punteggio
+// è quindi il tempo di completamento della raffica (la latenza della chiamata piú lenta), mentre il
+// contatore "calls" riporta le chiamate completate in ogni iterazione (throughput = calls / durata iterazione).
+// upstreamLatencyMillis simula, prima del servizio, un'attesa bloccante come una chiamata con stub
+// bloccante al microservizio Ruby: è il caso in cui i thread di piattaforma si esauriscono.
+// Attenzione: con executor=DEFAULT e latenza > 0 gRPC crea fino a concurrentCalls thread di piattaforma.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xss512k")
+@State(Scope.Benchmark)
+public class ExecutorModeBenchmark {
+
+    @Param({"DEFAULT", "FIXED", "VIRTUAL"})
+    public ServerExecutors.Mode executor;
+
+    @Param({"1000", "10000", "50000"})
+    public int concurrentCalls;
+
+    @Param({"0", "5"})
+    public long upstreamLatencyMillis;
+
+    @Param({"256"})
+    public int fixedThreads;
+
+    private ExecutorService callExecutor;
+    private InProcessHarness harness;
+    private TreniCalGrpc.TreniCalStub stub;
+    private SearchTrainRequest request;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Calls {
+        public long calls;
+        public long failedCalls;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadTimetable(1000);
+        callExecutor = ServerExecutors.create(executor, fixedThreads);
+        harness = new InProcessHarness(callExecutor, new UpstreamLatencyInterceptor(upstreamLatencyMillis));
+        stub = TreniCalGrpc.newStub(harness.channel());
+        request = SearchTrainRequest.newBuilder()
+                .setDepartureStation(BenchmarkFixtures.station(0))
+                .setArrivalStation(BenchmarkFixtures.station(1))
+                .setTravelDate(BenchmarkFixtures.today())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        harness.shutdown();
+        if (callExecutor != null) {
+            callExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void burst(Calls counters) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(concurrentCalls);
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < concurrentCalls; i++) {
+            stub.searchTrains(request, new StreamObserver<SearchTrainResponse>() {
+                @Override
+                public void onNext(SearchTrainResponse value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failed.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        counters.calls += concurrentCalls - failed.get();
+        counters.failedCalls += failed.get();
+    }
+
+    // attesa bloccante sul thread dell'executor prima di eseguire il metodo (per le unary è onHalfClose)
+    private static final class UpstreamLatencyInterceptor implements ServerInterceptor {
+        private final long latencyMillis;
+
+        UpstreamLatencyInterceptor(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            ServerCall.Listener<ReqT> listener = next.startCall(call, headers);
+            if (latencyMillis <= 0) {
+                return listener;
+            }
+            return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+                @Override
+                public void onHalfClose() {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.onHalfClose();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.trenical.bench;
+
+import com.trenical.services.TicketServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import proto.TicketListResponse;
+import proto.TicketServiceGrpc;
+import proto.UserRequest;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Ogni utente ha BenchmarkFixtures.TICKETS_PER_USER biglietti: il costo dovrebbe dipendere
+// da quelli, non dal numero totale di biglietti venduti.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetMyTicketsBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int ticketCount;
+
+    private TicketServiceImpl service;
+    private InProcessHarness harness;
+    private TicketServiceGrpc.TicketServiceBlockingStub stub;
+    private UserRequest[] requests;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadTimetable(1000);
+        BenchmarkFixtures.prefillTickets(ticketCount);
+        service = new TicketServiceImpl();
+        harness = new InProcessHarness();
+        stub = TicketServiceGrpc.newBlockingStub(harness.channel());
+        int users = Math.max(1, ticketCount / BenchmarkFixtures.TICKETS_PER_USER);
+        requests = new UserRequest[Math.min(users, 1024)];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = UserRequest.newBuilder().setUserId(BenchmarkFixtures.userId(i * (users / requests.length))).build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        harness.shutdown();
+    }
+
+    private UserRequest nextRequest() {
+        return requests[ThreadLocalRandom.current().nextInt(requests.length)];
+    }
+
+    @Benchmark
+    public void direct(Blackhole blackhole) {
+        service.getMyTickets(nextRequest(), new BlackholeObserver<>(blackhole));
+    }
+
+    @Benchmark
+    public TicketListResponse inProcess() {
+        return stub.getMyTickets(nextRequest());
+    }
+}
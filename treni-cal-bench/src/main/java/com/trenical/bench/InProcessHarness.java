@@ -0,0 +1,52 @@
+package com.trenical.bench;
+
+import com.trenical.services.NotificationServiceImpl;
+import com.trenical.services.TicketServiceImpl;
+import com.trenical.services.TrainServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Server e canale in-process con gli stessi servizi registrati da TreniCalServer:
+// misura anche serializzazione e dispatch di gRPC, senza il rumore della rete.
+final class InProcessHarness {
+    private final Server server;
+    private final ManagedChannel channel;
+
+    InProcessHarness() throws IOException {
+        this(null);
+    }
+
+    // callExecutor null = executor predefinito di gRPC; gli interceptor avvolgono tutti i servizi.
+    // Lato client si usa directExecutor, cosí il pool del client non falsa il confronto tra executor del server.
+    InProcessHarness(Executor callExecutor, ServerInterceptor... interceptors) throws IOException {
+        String serverName = InProcessServerBuilder.generateName();
+        InProcessServerBuilder builder = InProcessServerBuilder.forName(serverName);
+        if (callExecutor != null) {
+            builder.executor(callExecutor);
+        }
+        server = builder
+                .addService(ServerInterceptors.intercept(new TrainServiceImpl(), interceptors))
+                .addService(ServerInterceptors.intercept(new TicketServiceImpl(), interceptors))
+                .addService(ServerInterceptors.intercept(new NotificationServiceImpl(), interceptors))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    }
+
+    ManagedChannel channel() {
+        return channel;
+    }
+
+    void shutdown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,103 @@
+package com.trenical.bench;
+
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TicketDatabase;
+import com.trenical.observer.NotificationEngine;
+import com.trenical.observer.TripObserver;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import proto.NotificationServiceGrpc;
+import proto.Ticket;
+import proto.TripChangeNotification;
+import proto.TripSubscriptionRequest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// notifyTripChange verso un biglietto del treno HOT con "observerCount" osservatori registrati.
+// "direct" usa osservatori in memoria, "inProcess" stream reali aperti tramite NotificationService.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotifyTripChangeBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int observerCount;
+
+    @Param({"direct", "inProcess"})
+    public String transport;
+
+    private final NotificationEngine engine = NotificationEngine.getInstance();
+    private final Timestamp newTime = Timestamp.newBuilder().setSeconds(System.currentTimeMillis() / 1000 + 1800).build();
+    private final CountingObserver delivered = new CountingObserver();
+    private InProcessHarness harness;
+    private String[] ticketIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadTimetable(1000);
+        BenchmarkFixtures.prefillTickets(observerCount);
+        List<Ticket> tickets = TicketDatabase.getInstance().getTicketsForTrain(BenchmarkFixtures.HOT_TRAIN_ID);
+        ticketIds = new String[tickets.size()];
+
+        if (transport.equals("inProcess")) {
+            harness = new InProcessHarness();
+            NotificationServiceGrpc.NotificationServiceStub stub = NotificationServiceGrpc.newStub(harness.channel());
+            for (int i = 0; i < tickets.size(); i++) {
+                Ticket ticket = tickets.get(i);
+                ticketIds[i] = ticket.getId();
+                stub.subscribeToTripChanges(TripSubscriptionRequest.newBuilder()
+                        .setUserId(ticket.getUserId())
+                        .setTicketId(ticket.getId())
+                        .build(), delivered);
+            }
+        } else {
+            for (int i = 0; i < tickets.size(); i++) {
+                ticketIds[i] = tickets.get(i).getId();
+                engine.addObserver(new TripObserver(delivered, BenchmarkFixtures.HOT_TRAIN_ID, ticketIds[i]));
+            }
+        }
+    }
+
+    // conta le notifiche consegnate, sia in memoria che sul lato client degli stream in-process
+    private static final class CountingObserver implements StreamObserver<TripChangeNotification> {
+        private final LongAdder received = new LongAdder();
+
+        @Override
+        public void onNext(TripChangeNotification value) {
+            received.increment();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (harness != null) {
+            harness.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void notifyWholeTrain() {
+        engine.notifyTripChange(BenchmarkFixtures.HOT_TRAIN_ID, NotificationEngine.ALL_TICKETS, "Cambio binario", newTime, "7");
+    }
+
+    @Benchmark
+    public void notifySingleTicket() {
+        String ticketId = ticketIds[ThreadLocalRandom.current().nextInt(ticketIds.length)];
+        engine.notifyTripChange(BenchmarkFixtures.HOT_TRAIN_ID, ticketId, "Ritardo di 10 minuti", newTime, "5");
+    }
+}
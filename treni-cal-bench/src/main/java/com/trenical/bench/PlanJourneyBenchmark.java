@@ -0,0 +1,41 @@
+package com.trenical.bench;
+
+import com.trenical.planner.JourneyPlanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Journey planner su orari generati di dimensione crescente (una settimana di corse tra STATION_COUNT stazioni).
+// La prima invocazione di ogni trial costruisce l'orario compatto, che poi resta valido per tutte le misure.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlanJourneyBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int timetableSize;
+
+    @Param({"1", "3"})
+    public int maxTransfers;
+
+    private long departAfter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkFixtures.loadTimetable(timetableSize);
+        departAfter = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toEpochSecond() + 8 * 3600;
+        JourneyPlanner.getInstance().timetable();
+    }
+
+    @Benchmark
+    public List<JourneyPlanner.Journey> plan() {
+        return JourneyPlanner.getInstance().plan(BenchmarkFixtures.station(0).getId(), BenchmarkFixtures.station(1).getId(),
+                departAfter, maxTransfers, 0);
+    }
+}
@@ -0,0 +1,63 @@
+package com.trenical.bench;
+
+import com.trenical.services.TicketServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import proto.PurchaseTicketRequest;
+import proto.PurchaseTicketResponse;
+import proto.TicketServiceGrpc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Acquisti sul treno HOT, che ha giá "ticketCount" biglietti venduti.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PurchaseTicketsBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int ticketCount;
+
+    @Param({"1", "4"})
+    public int ticketsPerPurchase;
+
+    private TicketServiceImpl service;
+    private InProcessHarness harness;
+    private TicketServiceGrpc.TicketServiceBlockingStub stub;
+    private PurchaseTicketRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadTimetable(1000);
+        BenchmarkFixtures.prefillTickets(ticketCount);
+        service = new TicketServiceImpl();
+        harness = new InProcessHarness();
+        stub = TicketServiceGrpc.newBlockingStub(harness.channel());
+        request = PurchaseTicketRequest.newBuilder()
+                .setUserId(BenchmarkFixtures.userId(0))
+                .setTrainId(BenchmarkFixtures.HOT_TRAIN_ID)
+                .setServiceClass(BenchmarkFixtures.SERVICE_CLASS)
+                .setNumberOfTickets(ticketsPerPurchase)
+                .setPaymentMethodToken("bench_payment_token")
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        harness.shutdown();
+    }
+
+    @Benchmark
+    public void direct(Blackhole blackhole) {
+        service.purchaseTickets(request, new BlackholeObserver<>(blackhole));
+    }
+
+    @Benchmark
+    public PurchaseTicketResponse inProcess() {
+        return stub.purchaseTickets(request);
+    }
+}
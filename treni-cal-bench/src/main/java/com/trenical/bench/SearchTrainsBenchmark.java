@@ -0,0 +1,56 @@
+package com.trenical.bench;
+
+import com.trenical.services.TrainServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import proto.SearchTrainRequest;
+import proto.SearchTrainResponse;
+import proto.TreniCalGrpc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchTrainsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int timetableSize;
+
+    private TrainServiceImpl service;
+    private InProcessHarness harness;
+    private TreniCalGrpc.TreniCalBlockingStub stub;
+    private SearchTrainRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadTimetable(timetableSize);
+        service = new TrainServiceImpl();
+        harness = new InProcessHarness();
+        stub = TreniCalGrpc.newBlockingStub(harness.channel());
+        request = SearchTrainRequest.newBuilder()
+                .setDepartureStation(BenchmarkFixtures.station(0))
+                .setArrivalStation(BenchmarkFixtures.station(1))
+                .setTravelDate(BenchmarkFixtures.today())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        harness.shutdown();
+    }
+
+    @Benchmark
+    public void direct(Blackhole blackhole) {
+        service.searchTrains(request, new BlackholeObserver<>(blackhole));
+    }
+
+    @Benchmark
+    public SearchTrainResponse inProcess() {
+        return stub.searchTrains(request);
+    }
+}
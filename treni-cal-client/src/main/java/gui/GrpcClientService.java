@@ -1,126 +1,307 @@
 package gui;
 
-import gui.TrainDisplay;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 import proto.*;
 
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+// Tutte le chiamate sono asincrone: nessun metodo blocca il thread che lo chiama (il thread della GUI).
+// Risultati ed errori vengono consegnati su uiExecutor, che per la GUI è Platform.runLater. Unica eccezione
+// subscribeToTrainUpdates, che li consegna sui thread di gRPC perché chi li riceve li applica a blocchi (UiBatcher).
 public class GrpcClientService {
+    private static final long SEARCH_DEADLINE_SECONDS = 10;
+    private static final long TICKET_DEADLINE_SECONDS = 10;
+    private static final long STATIONS_DEADLINE_SECONDS = 3;
+    // una ricerca ripetuta entro questo intervallo (es. l'utente torna indietro) non riparte dal server
+    private static final long SEARCH_CACHE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int SEARCH_CACHE_MAX_ENTRIES = 64;
+
     private final ManagedChannel channel;
-    private final TreniCalGrpc.TreniCalBlockingStub trainServiceBlockingStub;
-    private final TicketServiceGrpc.TicketServiceBlockingStub ticketServiceBlockingStub;
+    private final TreniCalGrpc.TreniCalStub trainServiceAsyncStub;
+    private final TreniCalGrpc.TreniCalFutureStub trainServiceFutureStub;
+    private final TicketServiceGrpc.TicketServiceFutureStub ticketServiceFutureStub;
     private final NotificationServiceGrpc.NotificationServiceStub notificationServiceAsyncStub;
-    private String currentUserId = "fxUser1";
+    private final String currentUserId;
+    private final Executor uiExecutor;
+
+    // la ricerca in corso, cancellata quando ne parte un'altra; le consegne di ricerche superate vengono scartate
+    private final AtomicReference<ClientCallStreamObserver<SearchTrainRequest>> currentSearch = new AtomicReference<>();
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private final Map<String, CachedSearch> searchCache = new ConcurrentHashMap<>();
+
+    private static final class CachedSearch {
+        private final List<TrainDisplay> trains;
+        private final long expiresAtNanos;
 
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss")
-            .withZone(ZoneId.systemDefault());
+        private CachedSearch(List<TrainDisplay> trains, long expiresAtNanos) {
+            this.trains = trains;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
 
 
     public GrpcClientService(String host, int port) {
+        this(host, port, "fxUser1");
+    }
+
+    public GrpcClientService(String host, int port, String userId) {
+        this(host, port, userId, Runnable::run);
+    }
+
+    public GrpcClientService(String host, int port, String userId, Executor uiExecutor) {
+        this.currentUserId = userId;
+        this.uiExecutor = uiExecutor;
         this.channel = ManagedChannelBuilder.forAddress(host, port)
                 .usePlaintext()
                 .build();
-        this.trainServiceBlockingStub = TreniCalGrpc.newBlockingStub(channel);
-        this.ticketServiceBlockingStub = TicketServiceGrpc.newBlockingStub(channel);
+        this.trainServiceAsyncStub = TreniCalGrpc.newStub(channel);
+        this.trainServiceFutureStub = TreniCalGrpc.newFutureStub(channel);
+        this.ticketServiceFutureStub = TicketServiceGrpc.newFutureStub(channel);
         this.notificationServiceAsyncStub = NotificationServiceGrpc.newStub(channel);
     }
 
-    public List<TrainDisplay> searchTrains(Station from, Station to, TravelDate date) {
-        SearchTrainRequest request = SearchTrainRequest.newBuilder()
-                .setDepartureStation(from)
-                .setArrivalStation(to)
-                .setTravelDate(date)
-                .build();
-        List<TrainDisplay> displayList = new ArrayList<>();
-        try {
-            SearchTrainResponse response = trainServiceBlockingStub.searchTrains(request);
-            for (Train train : response.getAvailableTrainsList()) {
-                displayList.add(new TrainDisplay(
-                        train.getId(),
-                        train.getTrainNumber(),
-                        train.getDepartureStation().getName(),
-                        train.getArrivalStation().getName(),
-                        TIME_FORMATTER.format(Instant.ofEpochSecond(train.getDepartureTime().getSeconds())),
-                        TIME_FORMATTER.format(Instant.ofEpochSecond(train.getArrivalTime().getSeconds())),
-                        train.getServiceClass(),
-                        train.getPrice(),
-                        train.getAvailableSeats()
-                ));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Ricerca in streaming: i treni arrivano a blocchi (onBatch) in ordine di partenza, cosí i primi risultati
+    // si possono mostrare senza aspettare l'intera lista. Una nuova ricerca cancella quella ancora in corso,
+    // e da quel momento la vecchia non consegna piú nulla. Le callback arrivano su uiExecutor.
+    public void searchTrainsAsync(Station from, Station to, TravelDate date, Consumer<List<TrainDisplay>> onBatch,
+                                  Runnable onCompleted, Consumer<Throwable> onError) {
+        long generation = searchGeneration.incrementAndGet();
+        ClientCallStreamObserver<SearchTrainRequest> previous = currentSearch.getAndSet(null);
+        if (previous != null) {
+            previous.cancel("Superseded by a newer search", null);
+        }
+
+        String cacheKey = searchCacheKey(from, to, date);
+        CachedSearch cached = searchCache.get(cacheKey);
+        if (cached != null && !cached.isExpired(System.nanoTime())) {
+            uiExecutor.execute(() -> {
+                if (generation == searchGeneration.get()) {
+                    onBatch.accept(cached.trains);
+                    onCompleted.run();
+                }
+            });
+            return;
         }
-        return displayList;
+
+        UiBatcher<TrainDisplay> batcher = new UiBatcher<>(uiExecutor, batch -> {
+            if (generation == searchGeneration.get()) {
+                onBatch.accept(batch);
+            }
+        });
+        SearchTrainRequest request = TrenicalRequests.searchTrains(from, to, date);
+        trainServiceAsyncStub.withDeadlineAfter(SEARCH_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .searchTrainsStream(request, new ClientResponseObserver<SearchTrainRequest, Train>() {
+                    private ClientCallStreamObserver<SearchTrainRequest> call;
+                    // gRPC non chiama onNext in parallelo per la stessa chiamata
+                    private final List<TrainDisplay> received = new ArrayList<>();
+
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<SearchTrainRequest> requestStream) {
+                        call = requestStream;
+                        currentSearch.set(requestStream);
+                    }
+
+                    @Override
+                    public void onNext(Train train) {
+                        TrainDisplay display = toDisplay(train);
+                        received.add(display);
+                        batcher.add(display);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        currentSearch.compareAndSet(call, null);
+                        batcher.then(() -> {
+                            // una ricerca cancellata perché superata non è un errore da mostrare
+                            if (generation == searchGeneration.get()) {
+                                onError.accept(t);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        currentSearch.compareAndSet(call, null);
+                        cacheSearch(cacheKey, received);
+                        batcher.then(() -> {
+                            if (generation == searchGeneration.get()) {
+                                onCompleted.run();
+                            }
+                        });
+                    }
+                });
     }
 
-    public PurchaseTicketResponse purchaseTicket(String trainId, String serviceClass, int numTickets) {
-        PurchaseTicketRequest request = PurchaseTicketRequest.newBuilder()
-                .setUserId(currentUserId)
-                .setTrainId(trainId)
-                .setNumberOfTickets(numTickets)
-                .setServiceClass(serviceClass)
-                .setPaymentMethodToken("sim_fx_payment_token")
-                .build();
-        try {
-            return ticketServiceBlockingStub.purchaseTickets(request);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return PurchaseTicketResponse.newBuilder().setSuccess(false).setMessage("Error: " + e.getMessage()).build();
+    private void cacheSearch(String cacheKey, List<TrainDisplay> trains) {
+        long now = System.nanoTime();
+        if (searchCache.size() >= SEARCH_CACHE_MAX_ENTRIES) {
+            searchCache.values().removeIf(entry -> entry.isExpired(now));
+            if (searchCache.size() >= SEARCH_CACHE_MAX_ENTRIES) {
+                searchCache.clear();
+            }
         }
+        searchCache.put(cacheKey, new CachedSearch(List.copyOf(trains), now + SEARCH_CACHE_TTL_NANOS));
+    }
+
+    private static String searchCacheKey(Station from, Station to, TravelDate date) {
+        return from.getId() + '|' + to.getId() + '|' + date.getYear() + '-' + date.getMonth() + '-' + date.getDay();
+    }
+
+    private static TrainDisplay toDisplay(Train train) {
+        return new TrainDisplay(
+                train.getId(),
+                train.getTrainNumber(),
+                train.getDepartureStation().getName(),
+                train.getArrivalStation().getName(),
+                TrainDisplay.formatTime(train.getDepartureTime().getSeconds()),
+                TrainDisplay.formatTime(train.getArrivalTime().getSeconds()),
+                train.getServiceClass(),
+                train.getPrice(),
+                train.getAvailableSeats()
+        );
+    }
+
+    // la risposta arriva su uiExecutor; un errore di rete o la deadline scaduta diventano una risposta con success=false
+    public CompletableFuture<PurchaseTicketResponse> purchaseTicketAsync(String trainId, String serviceClass, int numTickets) {
+        PurchaseTicketRequest request = TrenicalRequests.purchaseTickets(currentUserId, trainId, serviceClass, numTickets);
+        ListenableFuture<PurchaseTicketResponse> call = ticketServiceFutureStub
+                .withDeadlineAfter(TICKET_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .purchaseTickets(request);
+        return toCompletableFuture(Futures.catching(Futures.transform(call, response -> {
+                    if (response.getSuccess()) {
+                        // i posti disponibili mostrati dalle ricerche in cache non sono piú validi
+                        searchCache.clear();
+                    }
+                    return response;
+                }, MoreExecutors.directExecutor()),
+                Exception.class,
+                e -> PurchaseTicketResponse.newBuilder()
+                        .setSuccess(false)
+                        .setMessage("Error: " + e.getMessage())
+                        .build(),
+                MoreExecutors.directExecutor()));
+    }
+
+    // suggerimenti per l'autocompletamento: le stazioni il cui nome (o una sua parola) inizia con prefix.
+    // Cancellare il future cancella anche la chiamata; in caso di errore la lista è vuota.
+    public CompletableFuture<List<Station>> searchStationsAsync(String prefix, int limit) {
+        ListenableFuture<StationListResponse> call = trainServiceFutureStub
+                .withDeadlineAfter(STATIONS_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .searchStations(TrenicalRequests.searchStations(prefix, limit));
+        // le trasformazioni di Guava (a differenza di thenApply) propagano la cancellazione fino alla chiamata
+        return toCompletableFuture(Futures.catching(
+                Futures.transform(call, StationListResponse::getStationsList, MoreExecutors.directExecutor()),
+                Exception.class,
+                e -> {
+                    if (!call.isCancelled()) {
+                        System.err.println("[Client GUI] Error searching stations: " + e.getMessage());
+                    }
+                    return List.of();
+                },
+                MoreExecutors.directExecutor()));
     }
 
 
     public void subscribeToTripChanges(String ticketId, Consumer<TripChangeNotification> onNotification, Consumer<Throwable> onError, Runnable onCompleted) {
-        TripSubscriptionRequest request = TripSubscriptionRequest.newBuilder()
-                .setUserId(currentUserId)
-                .setTicketId(ticketId)
-                .build();
+        TripSubscriptionRequest request = TrenicalRequests.subscribeToTripChanges(currentUserId, ticketId);
 
         notificationServiceAsyncStub.subscribeToTripChanges(request, new StreamObserver<TripChangeNotification>() {
             @Override
             public void onNext(TripChangeNotification notification) {
-                onNotification.accept(notification);
+                uiExecutor.execute(() -> onNotification.accept(notification));
             }
 
             @Override
             public void onError(Throwable t) {
-                onError.accept(t);
+                uiExecutor.execute(() -> onError.accept(t));
             }
 
             @Override
             public void onCompleted() {
-                onCompleted.run();
+                uiExecutor.execute(onCompleted);
             }
         });
     }
 
+    // Stream degli aggiornamenti in tempo reale di un treno. Le callback arrivano sui thread di gRPC (non su uiExecutor):
+    // chi le riceve le accumula e le applica alla GUI a blocchi. onEnd riceve null se lo stream è finito normalmente.
+    // Il Runnable restituito cancella lo stream.
+    public Runnable subscribeToTrainUpdates(String trainId, Consumer<TrainRealTimeUpdate> onUpdate, Consumer<Throwable> onEnd) {
+        AtomicReference<ClientCallStreamObserver<TrainInfoRequest>> call = new AtomicReference<>();
+        trainServiceAsyncStub.getTrainRealTimeInfo(TrenicalRequests.trainRealTimeInfo(trainId),
+                new ClientResponseObserver<TrainInfoRequest, TrainRealTimeUpdate>() {
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<TrainInfoRequest> requestStream) {
+                        call.set(requestStream);
+                    }
 
+                    @Override
+                    public void onNext(TrainRealTimeUpdate update) {
+                        onUpdate.accept(update);
+                    }
 
-    public List<Station> getAvailableStations(){
-        System.out.println("[Client GUI] Requesting available stations from server...");
-        EmptyRequest request = EmptyRequest.newBuilder().build();
-        try {
-            StationListResponse response = trainServiceBlockingStub.getAvailableStations(request);
-            System.out.println("[Client GUI] Received " + response.getStationsCount() + " stations.");
-            return response.getStationsList();
-        } catch (Exception e) {
-            System.err.println("[Client GUI] Error fetching stations: " + e.getMessage());
-            e.printStackTrace();
-            return new ArrayList<>(); // in caso di errore ritono una lista vuota
-        }
+                    @Override
+                    public void onError(Throwable t) {
+                        onEnd.accept(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        onEnd.accept(null);
+                    }
+                });
+        return () -> call.get().cancel("No longer displayed", null);
+    }
+
+    // il CompletableFuture si completa su uiExecutor, e cancellarlo cancella la chiamata gRPC
+    private <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                call.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(call, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, uiExecutor);
+        return result;
     }
 
     public void shutdown() throws InterruptedException {
+        ClientCallStreamObserver<SearchTrainRequest> search = currentSearch.getAndSet(null);
+        if (search != null) {
+            search.cancel("Client shutting down", null);
+        }
         channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
     }
 }
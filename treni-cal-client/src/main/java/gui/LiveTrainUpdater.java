@@ -0,0 +1,157 @@
+package gui;
+
+import javafx.animation.AnimationTimer;
+import proto.TrainRealTimeUpdate;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Aggiornamenti in tempo reale delle righe della tabella dei treni.
+// - Si segue solo quello che è a schermo: la row factory della tabella segnala quali TrainDisplay sono mostrati
+//   (rowShown/rowHidden), e solo per quei treni resta aperto uno stream GetTrainRealTimeInfo. Con migliaia di righe
+//   caricate gli stream aperti sono quanti le righe visibili.
+// - Gli aggiornamenti arrivano sui thread di gRPC e per ogni treno si tiene solo l'ultimo; una volta per frame
+//   (AnimationTimer) si applicano tutti insieme alle proprietà delle righe esistenti, senza toccare la lista della tabella.
+// Tutti i metodi, tranne le callback degli stream, vanno chiamati sul thread della GUI.
+final class LiveTrainUpdater {
+    private static final long RETRY_AFTER_ERROR_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final GrpcClientService grpcService;
+
+    // righe a schermo: la stessa riga può essere mostrata da piú TableRow per un istante, quindi si contano
+    private final Map<TrainDisplay, Integer> shownCount = new IdentityHashMap<>();
+    private final Map<String, TrainDisplay> visibleById = new HashMap<>();
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    private boolean visibilityChanged;
+
+    // scritti dai thread di gRPC
+    private final Map<String, TrainRealTimeUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private volatile boolean streamEnded;
+
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            onPulse(now);
+        }
+    };
+
+    private final class Subscription {
+        private final Runnable cancel;
+        // 0 finché lo stream è aperto, poi l'istante (System.nanoTime) da cui si può riaprire
+        private volatile long reopenAtNanos;
+        private volatile boolean ended;
+
+        private Subscription(String trainId) {
+            this.cancel = grpcService.subscribeToTrainUpdates(trainId,
+                    update -> pendingUpdates.put(update.getTrainId(), update),
+                    error -> {
+                        // il server chiude lo stream dopo qualche aggiornamento: se la riga è ancora a schermo si riapre subito,
+                        // dopo un errore si aspetta un po' per non martellare il server
+                        reopenAtNanos = System.nanoTime() + (error == null ? 0 : RETRY_AFTER_ERROR_NANOS);
+                        ended = true;
+                        streamEnded = true;
+                    });
+        }
+    }
+
+    LiveTrainUpdater(GrpcClientService grpcService) {
+        this.grpcService = grpcService;
+    }
+
+    void start() {
+        pulse.start();
+    }
+
+    void stop() {
+        pulse.stop();
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.cancel.run();
+        }
+        subscriptions.clear();
+        pendingUpdates.clear();
+    }
+
+    void rowShown(TrainDisplay row) {
+        if (shownCount.merge(row, 1, Integer::sum) == 1) {
+            visibleById.put(row.getId(), row);
+            visibilityChanged = true;
+        }
+    }
+
+    void rowHidden(TrainDisplay row) {
+        Integer count = shownCount.get(row);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            shownCount.put(row, count - 1);
+        } else {
+            shownCount.remove(row);
+            visibleById.remove(row.getId(), row);
+            visibilityChanged = true;
+        }
+    }
+
+    private void onPulse(long now) {
+        if (!pendingUpdates.isEmpty()) {
+            for (Iterator<TrainRealTimeUpdate> it = pendingUpdates.values().iterator(); it.hasNext(); ) {
+                TrainRealTimeUpdate update = it.next();
+                it.remove();
+                TrainDisplay row = visibleById.get(update.getTrainId());
+                if (row != null) {
+                    apply(row, update);
+                }
+            }
+        }
+        if (visibilityChanged || streamEnded) {
+            visibilityChanged = false;
+            streamEnded = false;
+            reconcile(now);
+        }
+    }
+
+    // uno stream aperto per ogni treno a schermo, nessuno per gli altri
+    private void reconcile(long now) {
+        boolean waitingForRetry = false;
+        for (Iterator<Map.Entry<String, Subscription>> it = subscriptions.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Subscription> entry = it.next();
+            Subscription subscription = entry.getValue();
+            if (!visibleById.containsKey(entry.getKey())) {
+                subscription.cancel.run();
+                it.remove();
+            } else if (subscription.ended) {
+                if (now - subscription.reopenAtNanos >= 0) {
+                    it.remove();
+                } else {
+                    waitingForRetry = true;
+                }
+            }
+        }
+        for (String trainId : visibleById.keySet()) {
+            if (!subscriptions.containsKey(trainId)) {
+                subscriptions.put(trainId, new Subscription(trainId));
+            }
+        }
+        if (waitingForRetry) {
+            // riprovo al prossimo frame finché non scade l'attesa
+            streamEnded = true;
+        }
+    }
+
+    // setter che non cambiano valore non notificano, quindi si ridisegnano solo le celle davvero cambiate
+    private static void apply(TrainDisplay row, TrainRealTimeUpdate update) {
+        if (update.hasUpdatedArrivalTime()) {
+            row.setArrivalTime(TrainDisplay.formatTime(update.getUpdatedArrivalTime().getSeconds()));
+        }
+        if (!update.getPlatform().isEmpty()) {
+            row.setPlatform(update.getPlatform());
+        }
+        if (update.hasAvailableSeats()) {
+            row.setAvailableSeats(update.getAvailableSeats());
+        }
+    }
+}
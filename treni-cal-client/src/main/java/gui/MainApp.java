@@ -19,10 +19,13 @@ import javafx.stage.Stage;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MainApp extends Application{
 
     private GrpcClientService grpcService;
+    private LiveTrainUpdater liveTrainUpdater;
     private TableView<TrainDisplay> trainTableView;
     private ObservableList<TrainDisplay> trainData = FXCollections.observableArrayList();
     private TextArea notificationArea;
@@ -30,7 +33,8 @@ public class MainApp extends Application{
 
     private ComboBox<Station> fromStationComboBox;
     private ComboBox<Station> toStationComboBox;
-    private ObservableList<Station> availableStations = FXCollections.observableArrayList();
+    // suggerimenti mostrati mentre si scrive il nome di una stazione
+    private static final int STATION_SUGGESTIONS = 15;
 
 
     public static void main(String[] args) {
@@ -38,15 +42,10 @@ public class MainApp extends Application{
     }
     @Override
     public void start(Stage primaryStage) {
-        grpcService = new GrpcClientService("localhost", 50051);
+        // tutte le risposte del server arrivano giá sul thread della GUI
+        grpcService = new GrpcClientService("localhost", 50051, "fxUser1", Platform::runLater);
         BorderPane rootLayout = new BorderPane();
 
-
-
-
-
-        initializeStations();
-
         // --- Pannello di ricerca ---
         GridPane searchGrid = new GridPane();
         searchGrid.setPadding(new Insets(10));
@@ -54,35 +53,13 @@ public class MainApp extends Application{
         searchGrid.setVgap(5);
 
         Label fromLabel = new Label("Da:");
-        fromStationComboBox = new ComboBox<>(availableStations);
+        fromStationComboBox = new ComboBox<>();
         Label toLabel = new Label("A:");
-        toStationComboBox = new ComboBox<>(availableStations);
-
-        StringConverter<Station> stationConverter = new StringConverter<Station>() {
-            @Override
-            public String toString(Station station) {
-                return station == null ? null : station.getName();
-            }
-
-            @Override
-            public Station fromString(String string) {
-                return null;
-            }
-        };
-
-
-
-
-
-        fromStationComboBox.setConverter(stationConverter);
-        toStationComboBox.setConverter(stationConverter);
+        toStationComboBox = new ComboBox<>();
 
-        if (!availableStations.isEmpty()) {
-            availableStations.stream().filter(s -> "Roma Termini".equals(s.getName())).findFirst().ifPresent(fromStationComboBox::setValue);
-            availableStations.stream().filter(s -> "Milano Centrale".equals(s.getName())).findFirst().ifPresent(toStationComboBox::setValue);
-            if(fromStationComboBox.getValue() == null) fromStationComboBox.getSelectionModel().selectFirst();
-            if(toStationComboBox.getValue() == null) toStationComboBox.getSelectionModel().selectLast();
-        }
+        setupStationAutocomplete(fromStationComboBox);
+        setupStationAutocomplete(toStationComboBox);
+        initializeStations();
 
         Label dateLabel = new Label("Data:");
         DatePicker datePicker = new DatePicker(LocalDate.now());
@@ -97,6 +74,9 @@ public class MainApp extends Application{
         trainTableView = new TableView<>();
         setupTrainTableColumns();
         trainTableView.setItems(trainData);
+        liveTrainUpdater = new LiveTrainUpdater(grpcService);
+        setupLiveRows();
+        liveTrainUpdater.start();
 
         // --- Pannello acquisti ---
         HBox purchaseBox = new HBox(10);
@@ -141,21 +121,30 @@ public class MainApp extends Application{
             LocalDate ld = datePicker.getValue();
             TravelDate travelDate = TravelDate.newBuilder().setYear(ld.getYear()).setMonth(ld.getMonthValue()).setDay(ld.getDayOfMonth()).build();
 
-            List<TrainDisplay> results = grpcService.searchTrains(selectedFromStation, selectedToStation, travelDate);
-            trainData.setAll(results);
+            // i risultati compaiono nella tabella a blocchi, man mano che arrivano dal server;
+            // una nuova ricerca cancella quella precedente se non è ancora finita
+            trainData.clear();
+            grpcService.searchTrainsAsync(selectedFromStation, selectedToStation, travelDate,
+                    trainData::addAll,
+                    () -> {},
+                    error -> showAlert("Errore", "Ricerca fallita: " + error.getMessage()));
         });
 
         purchaseButton.setOnAction(e -> {
             TrainDisplay selectedTrain = trainTableView.getSelectionModel().getSelectedItem();
             if (selectedTrain != null) {
                 // For simplicity, hardcoding service class and num tickets
-                PurchaseTicketResponse response = grpcService.purchaseTicket(selectedTrain.getId(), selectedTrain.getServiceClass(), 1);
-                showAlert("Purchase Status", response.getMessage());
-                if (response.getSuccess() && response.getPurchasedTicketsCount() > 0) {
-                    String purchasedTicketId = response.getPurchasedTickets(0).getId();
-                    appendNotification("Purchased Ticket ID: " + purchasedTicketId + ". Consider subscribing to updates.");
-                    ticketIdForSubscriptionField.setText(purchasedTicketId); // Pre-fill for easy subscription
-                }
+                purchaseButton.setDisable(true);
+                grpcService.purchaseTicketAsync(selectedTrain.getId(), selectedTrain.getServiceClass(), 1)
+                        .thenAccept(response -> {
+                            purchaseButton.setDisable(false);
+                            showAlert("Purchase Status", response.getMessage());
+                            if (response.getSuccess() && response.getPurchasedTicketsCount() > 0) {
+                                String purchasedTicketId = response.getPurchasedTickets(0).getId();
+                                appendNotification("Purchased Ticket ID: " + purchasedTicketId + ". Consider subscribing to updates.");
+                                ticketIdForSubscriptionField.setText(purchasedTicketId); // Pre-fill for easy subscription
+                            }
+                        });
             } else {
                 showAlert("Error", "Please select a train to purchase.");
             }
@@ -165,9 +154,9 @@ public class MainApp extends Application{
             String ticketId = ticketIdForSubscriptionField.getText();
             if (ticketId != null && !ticketId.isEmpty()) {
                 grpcService.subscribeToTripChanges(ticketId,
-                        notification -> Platform.runLater(() -> appendNotification("Update for " + ticketId + ": " + notification.getUpdateMessage())),
-                        error -> Platform.runLater(() -> appendNotification("Subscription Error for " + ticketId + ": " + error.getMessage())),
-                        () -> Platform.runLater(() -> appendNotification("Subscription ended for " + ticketId))
+                        notification -> appendNotification("Update for " + ticketId + ": " + notification.getUpdateMessage()),
+                        error -> appendNotification("Subscription Error for " + ticketId + ": " + error.getMessage()),
+                        () -> appendNotification("Subscription ended for " + ticketId)
                 );
                 appendNotification("Subscribed to updates for ticket: " + ticketId);
             } else {
@@ -187,6 +176,7 @@ public class MainApp extends Application{
         primaryStage.show();
 
         primaryStage.setOnCloseRequest(event -> {
+            liveTrainUpdater.stop();
             try {
                 grpcService.shutdown();
             } catch (InterruptedException e) {
@@ -195,25 +185,86 @@ public class MainApp extends Application{
         });
     }
 
+    // Le stazioni non vengono piú caricate tutte all'avvio: ogni ComboBox è modificabile e mentre si scrive
+    // chiede al server (SearchStations) i primi suggerimenti per il testo inserito.
+    private void setupStationAutocomplete(ComboBox<Station> comboBox) {
+        comboBox.setEditable(true);
+        comboBox.setConverter(new StringConverter<Station>() {
+            @Override
+            public String toString(Station station) {
+                return station == null ? null : station.getName();
+            }
+
+            @Override
+            public Station fromString(String string) {
+                // il testo scritto vale come selezione solo se corrisponde a uno dei suggerimenti
+                return comboBox.getItems().stream()
+                        .filter(s -> s.getName().equalsIgnoreCase(string == null ? "" : string.trim()))
+                        .findFirst()
+                        .orElse(null);
+            }
+        });
+        // la richiesta di suggerimenti ancora in corso: a ogni tasto viene cancellata e sostituita
+        AtomicReference<CompletableFuture<List<Station>>> pendingSuggestions = new AtomicReference<>();
+        comboBox.getEditor().textProperty().addListener((observable, oldText, newText) -> {
+            Station selected = comboBox.getValue();
+            if (newText == null || (selected != null && selected.getName().equals(newText))) {
+                return; // testo impostato dalla selezione, non digitato
+            }
+            CompletableFuture<List<Station>> suggestions = grpcService.searchStationsAsync(newText, STATION_SUGGESTIONS);
+            CompletableFuture<List<Station>> previous = pendingSuggestions.getAndSet(suggestions);
+            if (previous != null) {
+                previous.cancel(true);
+            }
+            suggestions.thenAccept(stations -> {
+                // nel frattempo l'utente ha continuato a scrivere: questi suggerimenti sono giá vecchi
+                if (!newText.equals(comboBox.getEditor().getText())) {
+                    return;
+                }
+                comboBox.getItems().setAll(stations);
+                if (!stations.isEmpty() && comboBox.getEditor().isFocused()) {
+                    comboBox.show();
+                }
+            });
+        });
+    }
+
+    // valori iniziali delle due stazioni, chiesti in modo asincrono per non bloccare l'avvio della GUI
     private void initializeStations() {
-        try {
-            List<Station> stationsFromServer = grpcService.getAvailableStations();
-            Platform.runLater(() -> {
-                availableStations.setAll(stationsFromServer);
+        selectFirstMatch(fromStationComboBox, "Roma Termini");
+        selectFirstMatch(toStationComboBox, "Milano Centrale");
+    }
 
-                if (!availableStations.isEmpty()) {
-                    availableStations.stream().filter(s -> "Roma Termini".equals(s.getName())).findFirst().ifPresent(fromStationComboBox::setValue);
-                    availableStations.stream().filter(s -> "Milano Centrale".equals(s.getName())).findFirst().ifPresent(toStationComboBox::setValue);
-                    if(fromStationComboBox.getValue() == null && !availableStations.isEmpty()) fromStationComboBox.getSelectionModel().selectFirst();
-                    if(toStationComboBox.getValue() == null && availableStations.size() > 1) toStationComboBox.getSelectionModel().select(1); else if (toStationComboBox.getValue() == null && !availableStations.isEmpty()) toStationComboBox.getSelectionModel().selectFirst();
+    private void selectFirstMatch(ComboBox<Station> comboBox, String name) {
+        grpcService.searchStationsAsync(name, 1).thenAccept(matches -> {
+            if (!matches.isEmpty() && comboBox.getValue() == null) {
+                comboBox.getItems().setAll(matches);
+                comboBox.setValue(matches.get(0));
+            }
+        });
+    }
+
+    // Le TableRow sono riciclate durante lo scroll: ogni volta che una riga cambia treno lo si segnala al
+    // LiveTrainUpdater, che cosí segue in tempo reale solo i treni effettivamente a schermo.
+    private void setupLiveRows() {
+        trainTableView.setRowFactory(table -> new TableRow<TrainDisplay>() {
+            private TrainDisplay shown;
 
+            @Override
+            protected void updateItem(TrainDisplay item, boolean empty) {
+                super.updateItem(item, empty);
+                TrainDisplay current = empty ? null : item;
+                if (current != shown) {
+                    if (shown != null) {
+                        liveTrainUpdater.rowHidden(shown);
+                    }
+                    if (current != null) {
+                        liveTrainUpdater.rowShown(current);
+                    }
+                    shown = current;
                 }
-            });
-        } catch (Exception e) {
-            Platform.runLater(() -> {
-                showAlert("Errore Caricamento Stazioni", "Impossibile caricare l'elenco delle stazioni dal server: " + e.getMessage());
-            });
-        }
+            }
+        });
     }
 
     private void setupTrainTableColumns() {
@@ -235,6 +286,9 @@ public class MainApp extends Application{
         TableColumn<TrainDisplay, String> arrTimeCol = new TableColumn<>("Arrival");
         arrTimeCol.setCellValueFactory(new PropertyValueFactory<>("arrivalTime"));
 
+        TableColumn<TrainDisplay, String> platformCol = new TableColumn<>("Platform");
+        platformCol.setCellValueFactory(new PropertyValueFactory<>("platform"));
+
         TableColumn<TrainDisplay, String> classCol = new TableColumn<>("Class");
         classCol.setCellValueFactory(new PropertyValueFactory<>("serviceClass"));
 
@@ -244,7 +298,7 @@ public class MainApp extends Application{
         TableColumn<TrainDisplay, Integer> seatsCol = new TableColumn<>("Seats");
         seatsCol.setCellValueFactory(new PropertyValueFactory<>("availableSeats"));
 
-        trainTableView.getColumns().addAll(idCol, numberCol, fromCol, toCol, depTimeCol, arrTimeCol, classCol, priceCol, seatsCol);
+        trainTableView.getColumns().addAll(idCol, numberCol, fromCol, toCol, depTimeCol, arrTimeCol, platformCol, classCol, priceCol, seatsCol);
     }
 
     private void appendNotification(String message) {
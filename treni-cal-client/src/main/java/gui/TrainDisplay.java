@@ -3,13 +3,23 @@ package gui;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Riga della tabella dei treni. Orario di arrivo, binario e posti liberi cambiano in tempo reale
+// (LiveTrainUpdater): si aggiornano le proprietà della riga esistente, cosí la tabella ridisegna solo le celle cambiate.
 public class TrainDisplay {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
     private final SimpleStringProperty id;
     private final SimpleStringProperty trainNumber;
     private final SimpleStringProperty departureStation;
     private final SimpleStringProperty arrivalStation;
     private final SimpleStringProperty departureTime;
     private final SimpleStringProperty arrivalTime;
+    private final SimpleStringProperty platform;
     private final SimpleStringProperty serviceClass;
     private final SimpleStringProperty price;
     private final SimpleIntegerProperty availableSeats;
@@ -22,11 +32,16 @@ public class TrainDisplay {
         this.arrivalStation = new SimpleStringProperty(arrivalStation);
         this.departureTime = new SimpleStringProperty(departureTime);
         this.arrivalTime = new SimpleStringProperty(arrivalTime);
+        this.platform = new SimpleStringProperty("");
         this.serviceClass = new SimpleStringProperty(serviceClass);
         this.price = new SimpleStringProperty(String.format("%.2f", price));
         this.availableSeats = new SimpleIntegerProperty(availableSeats);
     }
 
+    public static String formatTime(long epochSeconds) {
+        return TIME_FORMATTER.format(Instant.ofEpochSecond(epochSeconds));
+    }
+
 
     // Getter methods for JavaFX properties (e.g., idProperty(), getTrainNumber(), etc.)
     public String getId() { return id.get(); }
@@ -41,6 +56,8 @@ public class TrainDisplay {
     public SimpleStringProperty departureTimeProperty() { return departureTime; }
     public String getArrivalTime() { return arrivalTime.get(); }
     public SimpleStringProperty arrivalTimeProperty() { return arrivalTime; }
+    public String getPlatform() { return platform.get(); }
+    public SimpleStringProperty platformProperty() { return platform; }
     public String getServiceClass() { return serviceClass.get(); }
     public SimpleStringProperty serviceClassProperty() { return serviceClass; }
     public String getPrice() { return price.get(); }
@@ -48,5 +65,14 @@ public class TrainDisplay {
     public int getAvailableSeats() { return availableSeats.get(); }
     public SimpleIntegerProperty availableSeatsProperty() { return availableSeats; }
 
+    // da chiamare sul thread della GUI; le proprietà notificano solo se il valore cambia davvero
+    public void setArrivalTime(String value) { arrivalTime.set(value); }
+    public void setPlatform(String value) { platform.set(value); }
+    public void setAvailableSeats(int value) {
+        if (availableSeats.get() != value) {
+            availableSeats.set(value);
+        }
+    }
+
 
 }
@@ -0,0 +1,61 @@
+package gui;
+
+import proto.*;
+
+// Costruzione delle richieste gRPC, condivisa tra la GUI (GrpcClientService) e il generatore di carico
+// (treni-cal-loadgen): il carico simulato manda esattamente gli stessi messaggi del client vero.
+public final class TrenicalRequests {
+    public static final String SIMULATED_PAYMENT_TOKEN = "sim_fx_payment_token";
+
+    private TrenicalRequests() {}
+
+    public static SearchTrainRequest searchTrains(Station from, Station to, TravelDate date) {
+        return SearchTrainRequest.newBuilder()
+                .setDepartureStation(from)
+                .setArrivalStation(to)
+                .setTravelDate(date)
+                .build();
+    }
+
+    public static SearchStationsRequest searchStations(String prefix, int limit) {
+        return SearchStationsRequest.newBuilder()
+                .setPrefix(prefix)
+                .setLimit(limit)
+                .build();
+    }
+
+    public static TrainInfoRequest trainRealTimeInfo(String trainId) {
+        return TrainInfoRequest.newBuilder().setTrainId(trainId).build();
+    }
+
+    public static PurchaseTicketRequest purchaseTickets(String userId, String trainId, String serviceClass, int numTickets) {
+        return PurchaseTicketRequest.newBuilder()
+                .setUserId(userId)
+                .setTrainId(trainId)
+                .setNumberOfTickets(numTickets)
+                .setServiceClass(serviceClass)
+                .setPaymentMethodToken(SIMULATED_PAYMENT_TOKEN)
+                .build();
+    }
+
+    public static UserRequest myTickets(String userId) {
+        return UserRequest.newBuilder().setUserId(userId).build();
+    }
+
+    // cambio di classe, con il pagamento simulato dell'eventuale differenza
+    public static ModifyTicketRequest changeServiceClass(String userId, String ticketId, String newServiceClass) {
+        return ModifyTicketRequest.newBuilder()
+                .setUserId(userId)
+                .setTicketId(ticketId)
+                .setNewServiceClass(newServiceClass)
+                .setPaymentMethodTokenForDiff(SIMULATED_PAYMENT_TOKEN)
+                .build();
+    }
+
+    public static TripSubscriptionRequest subscribeToTripChanges(String userId, String ticketId) {
+        return TripSubscriptionRequest.newBuilder()
+                .setUserId(userId)
+                .setTicketId(ticketId)
+                .build();
+    }
+}
@@ -0,0 +1,49 @@
+package gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Raccoglie gli elementi che arrivano sui thread di gRPC e li consegna al thread della GUI a blocchi:
+// finché una consegna è in coda su uiExecutor (Platform.runLater) i nuovi elementi si aggiungono a quella,
+// quindi con migliaia di risultati la GUI riceve poche addAll invece di un runLater per elemento.
+final class UiBatcher<T> {
+    private final Executor uiExecutor;
+    private final Consumer<List<T>> sink;
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    UiBatcher(Executor uiExecutor, Consumer<List<T>> sink) {
+        this.uiExecutor = uiExecutor;
+        this.sink = sink;
+    }
+
+    void add(T item) {
+        pending.add(item);
+        if (scheduled.compareAndSet(false, true)) {
+            uiExecutor.execute(this::drain);
+        }
+    }
+
+    // esegue action sul thread della GUI dopo aver consegnato tutto quello che è stato aggiunto prima
+    void then(Runnable action) {
+        uiExecutor.execute(() -> {
+            drain();
+            action.run();
+        });
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        List<T> batch = new ArrayList<>();
+        for (T item = pending.poll(); item != null; item = pending.poll()) {
+            batch.add(item);
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.trenical.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Latenze di un'operazione in microsecondi, in due versioni:
+// - corrected: dall'istante in cui la chiamata *doveva* partire secondo il ritmo open-loop. Se il generatore
+//   o il server restano indietro, l'attesa accumulata entra nella latenza (correzione della coordinated omission).
+//   Ci sono anche gli errori, con la latenza fino all'errore, e le chiamate scartate per sovraccarico, come timeout.
+// - service: dall'istante in cui la chiamata è partita davvero, cioè quello che misurerebbe un generatore closed-loop.
+//   Solo le chiamate che hanno avuto una risposta.
+// La differenza tra le due dice quanto i percentili "ingenui" sottostimano la coda.
+final class LatencyStats {
+    private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final Recorder corrected = new Recorder(MAX_MICROS, 3);
+    private final Recorder service = new Recorder(MAX_MICROS, 3);
+    private final Histogram totalCorrected = new Histogram(MAX_MICROS, 3);
+    private final Histogram totalService = new Histogram(MAX_MICROS, 3);
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private Histogram intervalCorrected;
+    private Histogram intervalService;
+
+    void record(long intendedStartNanos, long sentNanos, long completedNanos) {
+        corrected.recordValue(toMicros(completedNanos - intendedStartNanos));
+        service.recordValue(toMicros(completedNanos - sentNanos));
+    }
+
+    // risposta arrivata ma con success=false (es. posti esauriti): la latenza conta, ma si riporta a parte
+    void recordRejected(long intendedStartNanos, long sentNanos, long completedNanos) {
+        record(intendedStartNanos, sentNanos, completedNanos);
+        rejected.increment();
+    }
+
+    // chiamata fallita: entra nella latenza corrected fino a quando l'errore è arrivato, altrimenti i percentili
+    // migliorerebbero proprio quando il server smette di rispondere. Non entra in service, che descrive le sole risposte.
+    void recordError(long intendedStartNanos, long failedNanos) {
+        corrected.recordValue(toMicros(failedNanos - intendedStartNanos));
+        errors.increment();
+    }
+
+    // chiamata mai partita perché il generatore è saturo: conta come un timeout, almeno timeoutNanos dall'istante
+    // previsto. Lo scarto avviene quasi sempre all'istante previsto, e una latenza di ~0 abbasserebbe i percentili.
+    void recordDropped(long intendedStartNanos, long droppedNanos, long timeoutNanos) {
+        recordError(intendedStartNanos, Math.max(droppedNanos, intendedStartNanos + timeoutNanos));
+    }
+
+    // errore di uno stream di lunga durata, che non ha una latenza
+    void recordError() {
+        errors.increment();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    // chiude l'intervallo corrente, lo somma ai totali e lo restituisce (corrected) per il report periodico
+    Histogram rollInterval() {
+        lock.lock();
+        try {
+            intervalCorrected = corrected.getIntervalHistogram(intervalCorrected);
+            intervalService = service.getIntervalHistogram(intervalService);
+            totalCorrected.add(intervalCorrected);
+            totalService.add(intervalService);
+            return intervalCorrected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // scarta quanto registrato finora (fine del warmup)
+    void reset() {
+        lock.lock();
+        try {
+            rollInterval();
+            totalCorrected.reset();
+            totalService.reset();
+            rejected.reset();
+            errors.reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // da leggere dopo l'ultimo rollInterval(), a generatore fermo
+    Histogram totalCorrected() {
+        return totalCorrected;
+    }
+
+    Histogram totalService() {
+        return totalService;
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_MICROS));
+    }
+}
@@ -0,0 +1,399 @@
+package com.trenical.loadgen;
+
+import gui.TrenicalRequests;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.HdrHistogram.Histogram;
+import proto.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Generatore di carico headless per il server TreniCal.
+//
+// Open-loop: le chiamate partono a ritmo fisso (loadgen.rate al secondo) indipendentemente da quando arrivano
+// le risposte, come fanno utenti veri che non aspettano gli altri. Ogni chiamata ha un istante di partenza
+// "previsto"; la latenza riportata parte da lí, cosí un server (o un generatore) che resta indietro non
+// nasconde l'attesa accumulata (correzione della coordinated omission, vedi LatencyStats).
+//
+// Le richieste si costruiscono con gui.TrenicalRequests, le stesse del client JavaFX.
+// Esempio:
+//   java -Dloadgen.rate=500 -Dloadgen.users=2000 -jar treni-cal-loadgen/target/loadgen.jar
+public class LoadGenerator {
+
+    record Config(String host, int port, double rate, int durationSeconds, int warmupSeconds, int users,
+                  OperationMix mix, int channels, int maxInFlight, int maxSubscriptions, int reportSeconds,
+                  int deadlineSeconds, int routes, long seed) {
+
+        static Config fromSystemProperties() {
+            return new Config(
+                    System.getProperty("loadgen.host", "localhost"),
+                    Integer.getInteger("loadgen.port", 50051),
+                    Double.parseDouble(System.getProperty("loadgen.rate", "100")),
+                    Integer.getInteger("loadgen.durationSeconds", 60),
+                    Integer.getInteger("loadgen.warmupSeconds", 10),
+                    Integer.getInteger("loadgen.users", 1000),
+                    OperationMix.parse(System.getProperty("loadgen.mix", "search=60,purchase=10,myTickets=20,modify=5,subscribe=5")),
+                    Integer.getInteger("loadgen.channels", 4),
+                    Integer.getInteger("loadgen.maxInFlight", 10_000),
+                    Integer.getInteger("loadgen.maxSubscriptions", 1000),
+                    Integer.getInteger("loadgen.reportSeconds", 5),
+                    Integer.getInteger("loadgen.deadlineSeconds", 30),
+                    Integer.getInteger("loadgen.routes", 50),
+                    Long.getLong("loadgen.seed", 42));
+        }
+    }
+
+    private record Route(Station from, Station to, TravelDate date) {}
+
+    private record BookableTrain(String trainId, String serviceClass) {}
+
+    private final Config config;
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final List<TreniCalGrpc.TreniCalStub> trainStubs = new ArrayList<>();
+    private final List<TicketServiceGrpc.TicketServiceStub> ticketStubs = new ArrayList<>();
+    private final List<NotificationServiceGrpc.NotificationServiceStub> notificationStubs = new ArrayList<>();
+    private final SimulatedUser[] users;
+    private final Map<Operation, LatencyStats> stats = new EnumMap<>(Operation.class);
+    // usato solo dal thread che schedula le chiamate
+    private final SplittableRandom random;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder overloaded = new LongAdder();
+    private final AtomicInteger openSubscriptions = new AtomicInteger();
+    private final LongAdder notificationsReceived = new LongAdder();
+    private final Queue<ClientCallStreamObserver<?>> subscriptions = new ConcurrentLinkedQueue<>();
+
+    private List<Route> routes = List.of();
+    private List<BookableTrain> trains = List.of();
+    private List<String> serviceClasses = List.of();
+
+    LoadGenerator(Config config) {
+        this.config = config;
+        this.random = new SplittableRandom(config.seed());
+        for (int i = 0; i < Math.max(1, config.channels()); i++) {
+            ManagedChannel channel = ManagedChannelBuilder.forAddress(config.host(), config.port()).usePlaintext().build();
+            channels.add(channel);
+            trainStubs.add(TreniCalGrpc.newStub(channel));
+            ticketStubs.add(TicketServiceGrpc.newStub(channel));
+            notificationStubs.add(NotificationServiceGrpc.newStub(channel));
+        }
+        users = new SimulatedUser[Math.max(1, config.users())];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new SimulatedUser("loadUser" + i, i % channels.size());
+        }
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new LatencyStats());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Config config = Config.fromSystemProperties();
+        LoadGenerator generator = new LoadGenerator(config);
+        try {
+            generator.discover();
+            generator.run();
+            generator.printReport();
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    // prima del test: stazioni e treni disponibili, letti con chiamate bloccanti che non entrano nelle statistiche
+    void discover() {
+        TreniCalGrpc.TreniCalBlockingStub blocking = TreniCalGrpc.newBlockingStub(channels.get(0))
+                .withDeadlineAfter(config.deadlineSeconds(), TimeUnit.SECONDS);
+        List<Station> stations = blocking.getAvailableStations(EmptyRequest.getDefaultInstance()).getStationsList();
+        if (stations.size() < 2) {
+            throw new IllegalStateException("Server at " + config.host() + ":" + config.port() + " has fewer than two stations");
+        }
+
+        List<Route> candidates = new ArrayList<>();
+        for (Station from : stations) {
+            for (Station to : stations) {
+                if (!from.getId().equals(to.getId())) {
+                    for (int day = 0; day < 3; day++) {
+                        LocalDate date = LocalDate.now().plusDays(day);
+                        candidates.add(new Route(from, to, TravelDate.newBuilder()
+                                .setYear(date.getYear()).setMonth(date.getMonthValue()).setDay(date.getDayOfMonth()).build()));
+                    }
+                }
+            }
+        }
+        Collections.shuffle(candidates, new Random(config.seed()));
+
+        List<Route> withTrains = new ArrayList<>();
+        Map<String, BookableTrain> bookable = new LinkedHashMap<>();
+        Set<String> classes = new LinkedHashSet<>();
+        for (Route route : candidates.subList(0, Math.min(candidates.size(), config.routes() * 3))) {
+            SearchTrainResponse response = TreniCalGrpc.newBlockingStub(channels.get(0))
+                    .withDeadlineAfter(config.deadlineSeconds(), TimeUnit.SECONDS)
+                    .searchTrains(TrenicalRequests.searchTrains(route.from(), route.to(), route.date()));
+            if (response.getAvailableTrainsCount() > 0 && withTrains.size() < config.routes()) {
+                withTrains.add(route);
+            }
+            for (Train train : response.getAvailableTrainsList()) {
+                bookable.putIfAbsent(train.getId(), new BookableTrain(train.getId(), train.getServiceClass()));
+                classes.add(train.getServiceClass());
+            }
+        }
+        routes = withTrains.isEmpty() ? candidates.subList(0, Math.min(candidates.size(), config.routes())) : withTrains;
+        trains = new ArrayList<>(bookable.values());
+        serviceClasses = new ArrayList<>(classes);
+        System.out.println("[LoadGen] " + stations.size() + " stations, " + routes.size() + " search routes, "
+                + trains.size() + " bookable trains");
+        if (trains.isEmpty()) {
+            System.out.println("[LoadGen] No bookable trains: purchase, modify and subscribe fall back to search");
+        }
+    }
+
+    void run() throws InterruptedException {
+        long intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / config.rate()));
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+        System.out.println("[LoadGen] Open loop at " + config.rate() + " calls/s against " + config.host() + ":" + config.port()
+                + " (" + users.length + " users, warmup " + config.warmupSeconds() + " s, measuring " + config.durationSeconds() + " s)");
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> printInterval(start), config.reportSeconds(), config.reportSeconds(), TimeUnit.SECONDS);
+        boolean warm = config.warmupSeconds() == 0;
+        try {
+            for (long i = 0; ; i++) {
+                long intended = start + i * intervalNanos;
+                if (intended >= end) {
+                    break;
+                }
+                if (!warm && intended >= warmupEnd) {
+                    stats.values().forEach(LatencyStats::reset);
+                    overloaded.reset();
+                    warm = true;
+                }
+                // se siamo in ritardo non si aspetta e non si saltano chiamate: la latenza parte comunque da intended
+                long remaining;
+                while ((remaining = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                dispatch(intended);
+            }
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.deadlineSeconds());
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        for (ClientCallStreamObserver<?> subscription : subscriptions) {
+            subscription.cancel("load test finished", null);
+        }
+    }
+
+    private void dispatch(long intended) {
+        SimulatedUser user = users[random.nextInt(users.length)];
+        Operation operation = config.mix().pick(random.nextDouble());
+        if (trains.isEmpty() && operation != Operation.GET_MY_TICKETS) {
+            operation = Operation.SEARCH_TRAINS;
+        }
+        SimulatedUser.OwnedTicket ticket = user.latestTicket();
+        if ((operation == Operation.MODIFY_TICKET || operation == Operation.SUBSCRIBE_TO_TRIP_CHANGES) && ticket == null) {
+            // prima di modificare o seguire un viaggio l'utente deve averlo comprato
+            operation = Operation.PURCHASE_TICKETS;
+        }
+        if (operation == Operation.SUBSCRIBE_TO_TRIP_CHANGES && openSubscriptions.get() >= config.maxSubscriptions()) {
+            operation = Operation.GET_MY_TICKETS;
+        }
+        if (operation != Operation.SUBSCRIBE_TO_TRIP_CHANGES && inFlight.get() >= config.maxInFlight()) {
+            // il server non sta al passo: la chiamata conta come errore invece di far crescere la memoria del generatore
+            overloaded.increment();
+            stats.get(operation).recordDropped(intended, System.nanoTime(), TimeUnit.SECONDS.toNanos(config.deadlineSeconds()));
+            return;
+        }
+
+        switch (operation) {
+            case SEARCH_TRAINS -> {
+                Route route = routes.get(random.nextInt(routes.size()));
+                trainStub(user).searchTrains(TrenicalRequests.searchTrains(route.from(), route.to(), route.date()),
+                        unary(Operation.SEARCH_TRAINS, intended, response -> true, response -> { }));
+            }
+            case PURCHASE_TICKETS -> {
+                BookableTrain train = trains.get(random.nextInt(trains.size()));
+                ticketStub(user).purchaseTickets(
+                        TrenicalRequests.purchaseTickets(user.userId, train.trainId(), train.serviceClass(), 1),
+                        unary(Operation.PURCHASE_TICKETS, intended, PurchaseTicketResponse::getSuccess, response -> {
+                            for (Ticket purchased : response.getPurchasedTicketsList()) {
+                                user.addTicket(purchased.getId(), train.serviceClass());
+                            }
+                        }));
+            }
+            case GET_MY_TICKETS -> ticketStub(user).getMyTickets(TrenicalRequests.myTickets(user.userId),
+                    unary(Operation.GET_MY_TICKETS, intended, response -> true, response -> { }));
+            case MODIFY_TICKET -> {
+                String newClass = otherServiceClass(ticket.serviceClass());
+                ticketStub(user).modifyTicket(TrenicalRequests.changeServiceClass(user.userId, ticket.ticketId(), newClass),
+                        unary(Operation.MODIFY_TICKET, intended, ModifyTicketResponse::getSuccess,
+                                response -> user.replaceTicket(ticket, new SimulatedUser.OwnedTicket(ticket.ticketId(), newClass))));
+            }
+            case SUBSCRIBE_TO_TRIP_CHANGES -> subscribe(user, ticket);
+        }
+    }
+
+    private String otherServiceClass(String current) {
+        for (String serviceClass : serviceClasses) {
+            if (!serviceClass.equals(current)) {
+                return serviceClass;
+            }
+        }
+        return current;
+    }
+
+    // Stream di lunga durata: resta aperto fino alla fine del test. Non ha una latenza di risposta
+    // (il server scrive solo quando c'è una notifica), quindi si contano stream aperti, errori e notifiche.
+    private void subscribe(SimulatedUser user, SimulatedUser.OwnedTicket ticket) {
+        openSubscriptions.incrementAndGet();
+        notificationStub(user).subscribeToTripChanges(TrenicalRequests.subscribeToTripChanges(user.userId, ticket.ticketId()),
+                new ClientResponseObserver<TripSubscriptionRequest, TripChangeNotification>() {
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<TripSubscriptionRequest> requestStream) {
+                        subscriptions.add(requestStream);
+                    }
+
+                    @Override
+                    public void onNext(TripChangeNotification notification) {
+                        notificationsReceived.increment();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        openSubscriptions.decrementAndGet();
+                        if (!(t instanceof StatusRuntimeException sre && sre.getStatus().getCode() == Status.Code.CANCELLED)) {
+                            stats.get(Operation.SUBSCRIBE_TO_TRIP_CHANGES).recordError();
+                        }
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        openSubscriptions.decrementAndGet();
+                    }
+                });
+    }
+
+    private <T> StreamObserver<T> unary(Operation operation, long intended, Predicate<T> accepted, Consumer<T> onAccepted) {
+        LatencyStats operationStats = stats.get(operation);
+        long sent = System.nanoTime();
+        inFlight.incrementAndGet();
+        return new StreamObserver<>() {
+            private T response;
+
+            @Override
+            public void onNext(T value) {
+                response = value;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                long failed = System.nanoTime();
+                inFlight.decrementAndGet();
+                if (Status.fromThrowable(t).getCode() == Status.Code.DEADLINE_EXCEEDED) {
+                    // la chiamata ha occupato il client almeno per tutta la deadline
+                    failed = Math.max(failed, sent + TimeUnit.SECONDS.toNanos(config.deadlineSeconds()));
+                }
+                operationStats.recordError(intended, failed);
+            }
+
+            @Override
+            public void onCompleted() {
+                long completed = System.nanoTime();
+                inFlight.decrementAndGet();
+                if (response != null && accepted.test(response)) {
+                    operationStats.record(intended, sent, completed);
+                    onAccepted.accept(response);
+                } else {
+                    operationStats.recordRejected(intended, sent, completed);
+                }
+            }
+        };
+    }
+
+    private TreniCalGrpc.TreniCalStub trainStub(SimulatedUser user) {
+        return trainStubs.get(user.channel).withDeadlineAfter(config.deadlineSeconds(), TimeUnit.SECONDS);
+    }
+
+    private TicketServiceGrpc.TicketServiceStub ticketStub(SimulatedUser user) {
+        return ticketStubs.get(user.channel).withDeadlineAfter(config.deadlineSeconds(), TimeUnit.SECONDS);
+    }
+
+    private NotificationServiceGrpc.NotificationServiceStub notificationStub(SimulatedUser user) {
+        return notificationStubs.get(user.channel);
+    }
+
+    private void printInterval(long start) {
+        StringBuilder line = new StringBuilder(String.format("[LoadGen] t=%ds in-flight=%d subscriptions=%d",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), inFlight.get(), openSubscriptions.get()));
+        for (Map.Entry<Operation, LatencyStats> entry : stats.entrySet()) {
+            Histogram interval = entry.getValue().rollInterval();
+            if (interval.getTotalCount() > 0) {
+                line.append(String.format(" | %s %d p50=%.1fms p99=%.1fms", entry.getKey().key(), interval.getTotalCount(),
+                        interval.getValueAtPercentile(50) / 1000.0, interval.getValueAtPercentile(99) / 1000.0));
+            }
+        }
+        System.out.println(line);
+    }
+
+    void printReport() {
+        long completed = 0;
+        System.out.println();
+        System.out.println("[LoadGen] Latency from intended start (coordinated-omission corrected, errors included), milliseconds:");
+        System.out.printf("%-10s %9s %9s %7s %9s %9s %9s %9s %9s %14s%n",
+                "operation", "count", "rejected", "errors", "p50", "p90", "p99", "p99.9", "max", "service p99");
+        for (Map.Entry<Operation, LatencyStats> entry : stats.entrySet()) {
+            LatencyStats operationStats = entry.getValue();
+            operationStats.rollInterval();
+            Histogram corrected = operationStats.totalCorrected();
+            Histogram service = operationStats.totalService();
+            completed += service.getTotalCount();
+            if (entry.getKey() == Operation.SUBSCRIBE_TO_TRIP_CHANGES) {
+                continue;
+            }
+            System.out.printf("%-10s %9d %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %14.2f%n",
+                    entry.getKey().key(), corrected.getTotalCount(), operationStats.rejected(), operationStats.errors(),
+                    corrected.getValueAtPercentile(50) / 1000.0, corrected.getValueAtPercentile(90) / 1000.0,
+                    corrected.getValueAtPercentile(99) / 1000.0, corrected.getValueAtPercentile(99.9) / 1000.0,
+                    corrected.getMaxValue() / 1000.0, service.getValueAtPercentile(99) / 1000.0);
+        }
+        System.out.printf("[LoadGen] target %.1f calls/s, achieved %.1f calls/s, overloaded %d%n",
+                config.rate(), completed / (double) Math.max(1, config.durationSeconds()), overloaded.sum());
+        System.out.println("[LoadGen] subscriptions opened " + subscriptions.size() + ", errors "
+                + stats.get(Operation.SUBSCRIBE_TO_TRIP_CHANGES).errors() + ", notifications received " + notificationsReceived.sum());
+    }
+
+    void shutdown() throws InterruptedException {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.trenical.loadgen;
+
+// Le chiamate che un utente simulato può fare; key è il nome usato in -Dloadgen.mix
+public enum Operation {
+    SEARCH_TRAINS("search"),
+    PURCHASE_TICKETS("purchase"),
+    GET_MY_TICKETS("myTickets"),
+    MODIFY_TICKET("modify"),
+    SUBSCRIBE_TO_TRIP_CHANGES("subscribe");
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    static Operation fromKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equalsIgnoreCase(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation '" + key + "' in load mix");
+    }
+}
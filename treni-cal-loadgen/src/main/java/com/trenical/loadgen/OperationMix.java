@@ -0,0 +1,66 @@
+package com.trenical.loadgen;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Percentuali delle operazioni, formato "search=60,purchase=10,myTickets=20,modify=5,subscribe=5".
+// I pesi non devono sommare a 100: vengono normalizzati.
+public final class OperationMix {
+    private final Operation[] operations;
+    private final double[] cumulative;
+
+    private OperationMix(Operation[] operations, double[] cumulative) {
+        this.operations = operations;
+        this.cumulative = cumulative;
+    }
+
+    public static OperationMix parse(String spec) {
+        Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Malformed load mix entry '" + entry + "', expected name=weight");
+            }
+            double weight = Double.parseDouble(entry.substring(separator + 1).trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in load mix: " + entry);
+            }
+            weights.merge(Operation.fromKey(entry.substring(0, separator).trim()), weight, Double::sum);
+        }
+        double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (total <= 0) {
+            throw new IllegalArgumentException("Load mix has no operations: " + spec);
+        }
+        Operation[] operations = weights.keySet().toArray(new Operation[0]);
+        double[] cumulative = new double[operations.length];
+        double running = 0;
+        for (int i = 0; i < operations.length; i++) {
+            running += weights.get(operations[i]) / total;
+            cumulative[i] = running;
+        }
+        cumulative[cumulative.length - 1] = 1.0;
+        return new OperationMix(operations, cumulative);
+    }
+
+    // uniform in [0, 1)
+    public Operation pick(double uniform) {
+        for (int i = 0; i < cumulative.length; i++) {
+            if (uniform < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    public double share(Operation operation) {
+        for (int i = 0; i < operations.length; i++) {
+            if (operations[i] == operation) {
+                return cumulative[i] - (i == 0 ? 0 : cumulative[i - 1]);
+            }
+        }
+        return 0;
+    }
+}
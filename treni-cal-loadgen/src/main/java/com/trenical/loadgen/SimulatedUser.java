@@ -0,0 +1,33 @@
+package com.trenical.loadgen;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+// Un utente simulato: id proprio (come userId del client), canale assegnato e biglietti comprati durante il test,
+// che servono per ModifyTicket e SubscribeToTripChanges.
+final class SimulatedUser {
+    record OwnedTicket(String ticketId, String serviceClass) {}
+
+    final String userId;
+    final int channel;
+    private final ConcurrentLinkedDeque<OwnedTicket> tickets = new ConcurrentLinkedDeque<>();
+
+    SimulatedUser(String userId, int channel) {
+        this.userId = userId;
+        this.channel = channel;
+    }
+
+    void addTicket(String ticketId, String serviceClass) {
+        tickets.addLast(new OwnedTicket(ticketId, serviceClass));
+    }
+
+    // il biglietto comprato piú di recente, null se l'utente non ne ha
+    OwnedTicket latestTicket() {
+        return tickets.peekLast();
+    }
+
+    void replaceTicket(OwnedTicket previous, OwnedTicket updated) {
+        if (tickets.removeLastOccurrence(previous)) {
+            tickets.addLast(updated);
+        }
+    }
+}
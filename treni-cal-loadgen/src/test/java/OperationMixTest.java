@@ -0,0 +1,41 @@
+import com.trenical.loadgen.Operation;
+import com.trenical.loadgen.OperationMix;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OperationMixTest {
+
+    @Test
+    public void testWeightsAreNormalized() {
+        OperationMix mix = OperationMix.parse("search=6, purchase=2,myTickets=2");
+        assertEquals(0.6, mix.share(Operation.SEARCH_TRAINS), 1e-9);
+        assertEquals(0.2, mix.share(Operation.PURCHASE_TICKETS), 1e-9);
+        assertEquals(0.0, mix.share(Operation.MODIFY_TICKET), 1e-9);
+    }
+
+    @Test
+    public void testPickFollowsTheMix() {
+        OperationMix mix = OperationMix.parse("search=60,purchase=10,myTickets=20,modify=5,subscribe=5");
+        SplittableRandom random = new SplittableRandom(1);
+        Map<Operation, Integer> counts = new EnumMap<>(Operation.class);
+        int samples = 100_000;
+        for (int i = 0; i < samples; i++) {
+            counts.merge(mix.pick(random.nextDouble()), 1, Integer::sum);
+        }
+        for (Operation operation : Operation.values()) {
+            assertEquals(mix.share(operation), counts.getOrDefault(operation, 0) / (double) samples, 0.01);
+        }
+    }
+
+    @Test
+    public void testRejectsUnknownOperations() {
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("search=1,teleport=2"));
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("search"));
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("search=0"));
+    }
+}
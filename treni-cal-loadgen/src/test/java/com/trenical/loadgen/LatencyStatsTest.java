@@ -0,0 +1,48 @@
+package com.trenical.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// nel package del generatore perché LatencyStats non è pubblica
+public class LatencyStatsTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    @Test
+    public void testDroppedCallCountsAsTimeout() {
+        LatencyStats stats = new LatencyStats();
+        long intended = System.nanoTime();
+        // scartata all'istante previsto: senza il minimo della deadline varrebbe ~0
+        stats.recordDropped(intended, intended, TIMEOUT);
+        // scartata dopo che il generatore era giá in ritardo oltre la deadline: conta il ritardo vero
+        stats.recordDropped(intended, intended + 2 * TIMEOUT, TIMEOUT);
+        stats.record(intended, intended, intended + 5 * MILLIS);
+
+        stats.rollInterval();
+        Histogram corrected = stats.totalCorrected();
+        assertEquals(3, corrected.getTotalCount());
+        assertEquals(2, stats.errors());
+        assertEquals(TimeUnit.NANOSECONDS.toMicros(TIMEOUT), corrected.getValueAtPercentile(50), corrected.getValueAtPercentile(50) / 1000.0);
+        assertEquals(TimeUnit.NANOSECONDS.toMicros(2 * TIMEOUT), corrected.getMaxValue(), corrected.getMaxValue() / 1000.0);
+        assertEquals(TimeUnit.NANOSECONDS.toMicros(5 * MILLIS), corrected.getMinValue(), 5);
+        // le chiamate scartate non hanno avuto risposta: non entrano nella latenza di servizio
+        assertEquals(1, stats.totalService().getTotalCount());
+    }
+
+    @Test
+    public void testErrorCountsUntilFailure() {
+        LatencyStats stats = new LatencyStats();
+        long intended = System.nanoTime();
+        stats.recordError(intended, intended + 40 * MILLIS);
+
+        stats.rollInterval();
+        assertEquals(TimeUnit.NANOSECONDS.toMicros(40 * MILLIS), stats.totalCorrected().getMaxValue(), 40);
+        assertEquals(0, stats.totalService().getTotalCount());
+        assertEquals(1, stats.errors());
+    }
+}
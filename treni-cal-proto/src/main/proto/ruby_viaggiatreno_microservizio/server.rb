@@ -82,10 +82,63 @@ rescue LoadError => e
 end
 
 class ViaggiatrenoServer < Trenical::RubyViaggiatreno::ViaggiatrenoService::Service
+  # numero massimo di richieste a viaggiatreno.it in parallelo per una singola chiamata batch/stream
+  BATCH_CONCURRENCY = (ENV['VIAGGIATRENO_BATCH_CONCURRENCY'] || 8).to_i
+
   def get_train_realtime_status(request, _call)
     train_number_str = request.train_number.to_s
     puts "Received GetTrainRealtimeStatus request for train: #{train_number_str}"
+    fetch_train_status(train_number_str)
+  end
+
+  def get_train_realtime_status_batch(request, _call)
+    train_numbers = request.train_numbers.map(&:to_s)
+    puts "Received GetTrainRealtimeStatusBatch request for #{train_numbers.size} trains"
+
+    statuses = Array.new(train_numbers.size)
+    each_status_in_parallel(train_numbers) { |index, status| statuses[index] = status }
+    Trenical::RubyViaggiatreno::TrainStatusBatchResponse.new(statuses: statuses)
+  end
+
+  def stream_train_realtime_status(request, _call)
+    train_numbers = request.train_numbers.map(&:to_s)
+    puts "Received StreamTrainRealtimeStatus request for #{train_numbers.size} trains"
+
+    # i worker mettono in coda le risposte appena pronte, l'enumeratore le passa a gRPC una alla volta
+    completed = Queue.new
+    Thread.new do
+      each_status_in_parallel(train_numbers) { |_index, status| completed << status }
+    end
+    Enumerator.new do |yielder|
+      train_numbers.size.times { yielder << completed.pop }
+    end
+  end
 
+  private
+
+  # esegue fetch_train_status per ogni treno con al massimo BATCH_CONCURRENCY thread
+  def each_status_in_parallel(train_numbers)
+    work = Queue.new
+    train_numbers.each_with_index { |number, index| work << [number, index] }
+    lock = Mutex.new
+
+    workers = Array.new([BATCH_CONCURRENCY, train_numbers.size].min) do
+      Thread.new do
+        loop do
+          number, index = begin
+            work.pop(true)
+          rescue ThreadError
+            break
+          end
+          status = fetch_train_status(number)
+          lock.synchronize { yield index, status }
+        end
+      end
+    end
+    workers.each(&:join)
+  end
+
+  def fetch_train_status(train_number_str)
     response = Trenical::RubyViaggiatreno::TrainStatusResponse.new(
       found: false,
       train_number: train_number_str
@@ -118,6 +171,7 @@ class ViaggiatrenoServer < Trenical::RubyViaggiatreno::ViaggiatrenoService::Serv
         response.actual_arrival_time = first_available_method_to_s(vt_train, [:actual_arrival_time])
         response.delay_minutes = vt_train.delay.to_i if vt_train.respond_to?(:delay)
         response.train_status_description = vt_train.status.to_s
+        response.platform = first_available_method_to_s(vt_train, [:platform, :departure_platform, :track])
 
         if vt_train.respond_to?(:last_update) && vt_train.last_update
           response.last_detected_station = vt_train.last_update.to_s
@@ -151,8 +205,6 @@ class ViaggiatrenoServer < Trenical::RubyViaggiatreno::ViaggiatrenoService::Serv
     response
   end
 
-  private
-
   def first_available_method_to_s(object, methods_to_try)
     methods_to_try.each do |method_sym|
       if object.respond_to?(method_sym)
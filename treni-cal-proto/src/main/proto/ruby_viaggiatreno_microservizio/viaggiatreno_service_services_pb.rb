@@ -17,6 +17,10 @@ module Trenical
         self.service_name = 'proto.ruby_viaggiatreno_microservizio.ViaggiatrenoService'
 
         rpc :GetTrainRealtimeStatus, ::Trenical::RubyViaggiatreno::TrainStatusRequest, ::Trenical::RubyViaggiatreno::TrainStatusResponse
+        # stato di piú treni con una sola chiamata, le risposte sono nello stesso ordine della richiesta
+        rpc :GetTrainRealtimeStatusBatch, ::Trenical::RubyViaggiatreno::TrainStatusBatchRequest, ::Trenical::RubyViaggiatreno::TrainStatusBatchResponse
+        # come il batch, ma ogni risposta viene inviata appena è pronta (l'ordine non è garantito)
+        rpc :StreamTrainRealtimeStatus, ::Trenical::RubyViaggiatreno::TrainStatusBatchRequest, stream(::Trenical::RubyViaggiatreno::TrainStatusResponse)
       end
 
       Stub = Service.rpc_stub_class
@@ -0,0 +1,108 @@
+package com.trenical.database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Mappa chiave -> indice (0..size-1) con indirizzamento aperto, interrogabile direttamente su un intervallo
+// di byte di un buffer: il parser di stop_times cerca trip_id e stop_id senza creare una String per campo.
+// Si riempie in un solo thread, poi è in sola lettura e quindi condivisibile tra i thread del parser.
+final class ByteKeyIndex {
+    private byte[][] keys;
+    private int[] values;
+    private int size;
+
+    ByteKeyIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new byte[capacity][];
+        values = new int[capacity];
+    }
+
+    // restituisce l'indice giá assegnato alla chiave, oppure ne assegna uno nuovo
+    int putIfAbsent(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = slot(bytes);
+        if (keys[slot] != null) {
+            return values[slot];
+        }
+        keys[slot] = bytes;
+        values[slot] = size;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return size - 1;
+    }
+
+    // -1 se la chiave buffer[from, to) non c'è
+    int find(ByteBuffer buffer, int from, int to) {
+        int mask = keys.length - 1;
+        for (int slot = hash(buffer, from, to) & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                return -1;
+            }
+            if (equals(key, buffer, from, to)) {
+                return values[slot];
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(byte[] key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null && !Arrays.equals(keys[slot], key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(byte[] key) {
+        int h = 1;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        return mix(h);
+    }
+
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buffer.get(i);
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] key, ByteBuffer buffer, int from, int to) {
+        if (key.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,503 @@
+package com.trenical.database;
+
+import com.google.protobuf.Timestamp;
+import proto.Station;
+import proto.Train;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Caricamento di un orario GTFS (stops, routes, trips, stop_times, calendar, calendar_dates) da una cartella.
+//
+// Ogni corsa (trip) diventa un Train per ogni giorno di servizio nella finestra richiesta, dalla prima
+// all'ultima fermata, con id "trip_id@yyyyMMdd". Le fermate con parent_station vengono ricondotte alla stazione.
+// Limite voluto: un Train va da una stazione a un'altra e ha i suoi posti, quindi le fermate intermedie non
+// entrano né nella ricerca né nel journey planner (vedi README); il loro numero finisce nel log del caricamento.
+// I file piccoli si leggono riga per riga; stop_times.txt, che in un orario nazionale ha milioni di righe,
+// viene mappato in memoria e diviso in blocchi letti in parallelo direttamente sui byte: trip_id e stop_id
+// si cercano in un ByteKeyIndex e gli orari si convertono senza creare stringhe.
+public final class GtfsTimetableLoader {
+    // una riga di stop_times non supera mai questa lunghezza: serve per finire l'ultima riga di ogni blocco
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final DateTimeFormatter GTFS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final ZoneId zone;
+    private final int parallelism;
+    private final int seatsPerTrain;
+
+    // fermate
+    private final ByteKeyIndex stopIndex = new ByteKeyIndex(1 << 12);
+    private final List<Station> stationOfStop = new ArrayList<>();
+
+    // corse
+    private final ByteKeyIndex tripIndex = new ByteKeyIndex(1 << 16);
+    private final List<String> tripIds = new ArrayList<>();
+    private final List<String> tripNumbers = new ArrayList<>();
+    private final List<String> tripTypes = new ArrayList<>();
+    private int[] tripService = new int[0];
+    private final Map<String, Integer> serviceIndex = new HashMap<>();
+
+    public GtfsTimetableLoader(ZoneId zone, int parallelism, int seatsPerTrain) {
+        this.zone = zone;
+        this.parallelism = Math.max(1, parallelism);
+        this.seatsPerTrain = seatsPerTrain;
+    }
+
+    public List<Train> load(Path dir, LocalDate firstDay, int days) throws IOException {
+        long start = System.nanoTime();
+        loadStops(dir.resolve("stops.txt"));
+        Map<String, String[]> routes = loadRoutes(dir.resolve("routes.txt"));
+        loadTrips(dir.resolve("trips.txt"), routes);
+        boolean[][] activeServices = loadCalendars(dir, firstDay, days);
+
+        TripEndpoints endpoints = loadStopTimes(dir.resolve("stop_times.txt"));
+
+        List<Train> trains = IntStream.range(0, tripIds.size()).parallel()
+                .mapToObj(trip -> trainsForTrip(trip, endpoints, activeServices, firstDay))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        System.out.println("[GtfsTimetableLoader] Loaded " + trains.size() + " trains from " + tripIds.size() + " trips and "
+                + endpoints.rows + " stop_times in " + (System.nanoTime() - start) / 1_000_000 + " ms; "
+                + endpoints.intermediateStops() + " intermediate stops ignored (trains run first to last stop only)");
+        return trains;
+    }
+
+    // ------------------------------------------------------------------ file piccoli
+
+    private void loadStops(Path file) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        Map<String, String> parents = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        readCsv(file, true, (header, row) -> {
+            String id = field(row, header, "stop_id");
+            // con uno stop_id duplicato vale la prima riga, come per i trip
+            names.putIfAbsent(id, field(row, header, "stop_name"));
+            parents.putIfAbsent(id, field(row, header, "parent_station"));
+            order.add(id);
+        });
+        for (String id : order) {
+            if (stopIndex.putIfAbsent(id) != stationOfStop.size()) {
+                continue; // stop_id duplicato: la sua stazione è giá all'indice della prima riga
+            }
+            String parent = parents.get(id);
+            String stationId = parent.isEmpty() || !names.containsKey(parent) ? id : parent;
+            stationOfStop.add(Station.newBuilder().setId(stationId).setName(names.get(stationId)).build());
+        }
+    }
+
+    // route_id -> {route_short_name, route_long_name}
+    private static Map<String, String[]> loadRoutes(Path file) throws IOException {
+        Map<String, String[]> routes = new HashMap<>();
+        readCsv(file, false, (header, row) -> routes.put(field(row, header, "route_id"),
+                new String[]{field(row, header, "route_short_name"), field(row, header, "route_long_name")}));
+        return routes;
+    }
+
+    private void loadTrips(Path file, Map<String, String[]> routes) throws IOException {
+        List<Integer> services = new ArrayList<>();
+        readCsv(file, true, (header, row) -> {
+            String tripId = field(row, header, "trip_id");
+            if (tripIndex.putIfAbsent(tripId) != tripIds.size()) {
+                return; // trip_id duplicato
+            }
+            String[] route = routes.getOrDefault(field(row, header, "route_id"), new String[]{"", ""});
+            String shortName = field(row, header, "trip_short_name");
+            String type = !route[0].isEmpty() ? route[0] : (!route[1].isEmpty() ? route[1] : "Regionale");
+            tripIds.add(tripId);
+            tripNumbers.add(shortName.isEmpty() ? tripId : (route[0] + " " + shortName).trim());
+            tripTypes.add(type);
+            services.add(serviceIndex.computeIfAbsent(field(row, header, "service_id"), s -> serviceIndex.size()));
+        });
+        tripService = services.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // activeServices[giorno][servizio], giorni a partire da firstDay
+    private boolean[][] loadCalendars(Path dir, LocalDate firstDay, int days) throws IOException {
+        boolean[][] active = new boolean[days][serviceIndex.size()];
+        readCsv(dir.resolve("calendar.txt"), false, (header, row) -> {
+            Integer service = serviceIndex.get(field(row, header, "service_id"));
+            if (service == null) {
+                return;
+            }
+            LocalDate from = LocalDate.parse(field(row, header, "start_date"), GTFS_DATE);
+            LocalDate to = LocalDate.parse(field(row, header, "end_date"), GTFS_DATE);
+            for (int d = 0; d < days; d++) {
+                LocalDate day = firstDay.plusDays(d);
+                String weekday = day.getDayOfWeek().name().toLowerCase(Locale.ROOT);
+                if (!day.isBefore(from) && !day.isAfter(to) && "1".equals(field(row, header, weekday))) {
+                    active[d][service] = true;
+                }
+            }
+        });
+        // eccezioni: 1 = servizio aggiunto in quella data, 2 = servizio soppresso
+        readCsv(dir.resolve("calendar_dates.txt"), false, (header, row) -> {
+            Integer service = serviceIndex.get(field(row, header, "service_id"));
+            if (service == null) {
+                return;
+            }
+            long d = firstDay.until(LocalDate.parse(field(row, header, "date"), GTFS_DATE), ChronoUnit.DAYS);
+            if (d >= 0 && d < days) {
+                active[(int) d][service] = "1".equals(field(row, header, "exception_type"));
+            }
+        });
+        return active;
+    }
+
+    private List<Train> trainsForTrip(int trip, TripEndpoints endpoints, boolean[][] activeServices, LocalDate firstDay) {
+        if (endpoints.firstSequence[trip] == Integer.MAX_VALUE || endpoints.firstSequence[trip] == endpoints.lastSequence[trip]) {
+            return List.of(); // corsa senza fermate o con una sola fermata
+        }
+        int departure = endpoints.firstDeparture[trip];
+        int arrival = endpoints.lastArrival[trip];
+        if (departure < 0 || arrival < departure) {
+            return List.of();
+        }
+        Station from = stationOfStop.get(endpoints.firstStop[trip]);
+        Station to = stationOfStop.get(endpoints.lastStop[trip]);
+        if (from.getId().equals(to.getId())) {
+            return List.of();
+        }
+        double price = Math.round((5 + (arrival - departure) / 60.0 * 0.15) * 100) / 100.0;
+        Train template = Train.newBuilder()
+                .setTrainNumber(tripNumbers.get(trip))
+                .setDepartureStation(from)
+                .setArrivalStation(to)
+                .setServiceClass("Standard")
+                .setPrice(price)
+                .setAvailableSeats(seatsPerTrain)
+                .setTrainType(tripTypes.get(trip))
+                .build();
+
+        List<Train> trains = new ArrayList<>();
+        int service = tripService[trip];
+        for (int d = 0; d < activeServices.length; d++) {
+            if (!activeServices[d][service]) {
+                continue;
+            }
+            LocalDate day = firstDay.plusDays(d);
+            // gli orari GTFS contano da "mezzogiorno meno 12 ore" del giorno di servizio e possono superare 24:00:00
+            long base = day.atTime(LocalTime.NOON).atZone(zone).toEpochSecond() - 12 * 3600;
+            trains.add(template.toBuilder()
+                    .setId(tripIds.get(trip) + "@" + GTFS_DATE.format(day))
+                    .setDepartureTime(Timestamp.newBuilder().setSeconds(base + departure))
+                    .setArrivalTime(Timestamp.newBuilder().setSeconds(base + arrival))
+                    .build());
+        }
+        return trains;
+    }
+
+    // ------------------------------------------------------------------ stop_times
+
+    // prima e ultima fermata di ogni corsa (per stop_sequence); le altre righe vengono solo contate
+    private static final class TripEndpoints {
+        final int[] firstSequence;
+        final int[] firstStop;
+        final int[] firstDeparture;
+        final int[] lastSequence;
+        final int[] lastStop;
+        final int[] lastArrival;
+        long rows;
+
+        TripEndpoints(int trips) {
+            firstSequence = new int[trips];
+            firstStop = new int[trips];
+            firstDeparture = new int[trips];
+            lastSequence = new int[trips];
+            lastStop = new int[trips];
+            lastArrival = new int[trips];
+            Arrays.fill(firstSequence, Integer.MAX_VALUE);
+            Arrays.fill(lastSequence, Integer.MIN_VALUE);
+        }
+
+        void accept(int trip, int sequence, int stop, int arrival, int departure) {
+            if (sequence < firstSequence[trip]) {
+                firstSequence[trip] = sequence;
+                firstStop[trip] = stop;
+                firstDeparture[trip] = departure >= 0 ? departure : arrival;
+            }
+            if (sequence > lastSequence[trip]) {
+                lastSequence[trip] = sequence;
+                lastStop[trip] = stop;
+                lastArrival[trip] = arrival >= 0 ? arrival : departure;
+            }
+        }
+
+        // righe che non sono né la prima né l'ultima fermata della loro corsa
+        long intermediateStops() {
+            long endpointRows = 0;
+            for (int trip = 0; trip < firstSequence.length; trip++) {
+                if (firstSequence[trip] != Integer.MAX_VALUE) {
+                    endpointRows += firstSequence[trip] == lastSequence[trip] ? 1 : 2;
+                }
+            }
+            return rows - endpointRows;
+        }
+
+        void merge(TripEndpoints other) {
+            for (int trip = 0; trip < firstSequence.length; trip++) {
+                if (other.firstSequence[trip] < firstSequence[trip]) {
+                    firstSequence[trip] = other.firstSequence[trip];
+                    firstStop[trip] = other.firstStop[trip];
+                    firstDeparture[trip] = other.firstDeparture[trip];
+                }
+                if (other.lastSequence[trip] > lastSequence[trip]) {
+                    lastSequence[trip] = other.lastSequence[trip];
+                    lastStop[trip] = other.lastStop[trip];
+                    lastArrival[trip] = other.lastArrival[trip];
+                }
+            }
+            rows += other.rows;
+        }
+    }
+
+    private static final int TRIP_ID = 0;
+    private static final int ARRIVAL_TIME = 1;
+    private static final int DEPARTURE_TIME = 2;
+    private static final int STOP_ID = 3;
+    private static final int STOP_SEQUENCE = 4;
+
+    private TripEndpoints loadStopTimes(Path file) throws IOException {
+        // colonna del CSV -> campo che ci interessa (-1 = ignorata)
+        String[] header = readHeader(file);
+        int[] slotOfColumn = new int[header.length];
+        Arrays.fill(slotOfColumn, -1);
+        List<String> wanted = List.of("trip_id", "arrival_time", "departure_time", "stop_id", "stop_sequence");
+        for (int column = 0; column < header.length; column++) {
+            slotOfColumn[column] = wanted.indexOf(header[column]);
+        }
+        for (int slot = 0; slot < wanted.size(); slot++) {
+            if (!Arrays.asList(header).contains(wanted.get(slot))) {
+                throw new IOException("stop_times.txt is missing column " + wanted.get(slot));
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // almeno un blocco per thread, e nessun blocco oltre 1 GB (limite dei buffer mappati)
+            int chunks = (int) Math.max(parallelism, (size >> 30) + 1);
+            long chunkSize = Math.max(1, (size + chunks - 1) / chunks);
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunks));
+            try {
+                List<Future<TripEndpoints>> parts = new ArrayList<>();
+                for (long from = 0; from < size; from += chunkSize) {
+                    long chunkStart = from;
+                    long chunkEnd = Math.min(size, from + chunkSize);
+                    parts.add(pool.submit(() -> parseChunk(channel, size, chunkStart, chunkEnd, slotOfColumn)));
+                }
+                TripEndpoints merged = new TripEndpoints(tripIds.size());
+                for (Future<TripEndpoints> part : parts) {
+                    merged.merge(part.get());
+                }
+                return merged;
+            } catch (Exception e) {
+                throw new IOException("Failed to parse " + file, e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Un blocco elabora le righe che iniziano in [chunkStart, chunkEnd). I blocchi successivi al primo partono
+    // un byte prima e saltano fino al primo '\n', cosí una riga che inizia esattamente a chunkStart non va persa;
+    // il primo blocco salta l'intestazione.
+    private TripEndpoints parseChunk(FileChannel channel, long fileSize, long chunkStart, long chunkEnd, int[] slotOfColumn) throws IOException {
+        long mapStart = chunkStart == 0 ? 0 : chunkStart - 1;
+        long mapEnd = Math.min(fileSize, chunkEnd + MAX_LINE_BYTES);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = (int) (chunkEnd - mapStart);
+        int end = buffer.limit();
+
+        TripEndpoints endpoints = new TripEndpoints(tripIds.size());
+        int[] fieldFrom = new int[5];
+        int[] fieldTo = new int[5];
+
+        int pos = skipLine(buffer, 0, end);
+        while (pos < limit) {
+            Arrays.fill(fieldFrom, -1);
+            int column = 0;
+            int fieldStart = pos;
+            boolean quoted = false;
+            int i = pos;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (b == ',' || b == '\n')) {
+                    storeField(buffer, column, fieldStart, i, slotOfColumn, fieldFrom, fieldTo);
+                    column++;
+                    fieldStart = i + 1;
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+            }
+            if (i == end && fieldStart < end) {
+                storeField(buffer, column, fieldStart, end, slotOfColumn, fieldFrom, fieldTo);
+            }
+            pos = i + 1;
+
+            if (fieldFrom[TRIP_ID] < 0 || fieldFrom[STOP_ID] < 0 || fieldFrom[STOP_SEQUENCE] < 0) {
+                continue; // riga vuota o incompleta
+            }
+            int trip = tripIndex.find(buffer, fieldFrom[TRIP_ID], fieldTo[TRIP_ID]);
+            int stop = stopIndex.find(buffer, fieldFrom[STOP_ID], fieldTo[STOP_ID]);
+            if (trip < 0 || stop < 0) {
+                continue;
+            }
+            endpoints.accept(trip,
+                    parseInt(buffer, fieldFrom[STOP_SEQUENCE], fieldTo[STOP_SEQUENCE]),
+                    stop,
+                    parseTime(buffer, fieldFrom[ARRIVAL_TIME], fieldTo[ARRIVAL_TIME]),
+                    parseTime(buffer, fieldFrom[DEPARTURE_TIME], fieldTo[DEPARTURE_TIME]));
+            endpoints.rows++;
+        }
+        return endpoints;
+    }
+
+    private static void storeField(ByteBuffer buffer, int column, int from, int to, int[] slotOfColumn, int[] fieldFrom, int[] fieldTo) {
+        if (column >= slotOfColumn.length || slotOfColumn[column] < 0) {
+            return;
+        }
+        // tolgo \r, spazi e virgolette attorno al valore
+        while (to > from && (buffer.get(to - 1) == '\r' || buffer.get(to - 1) == ' ' || buffer.get(to - 1) == '"')) {
+            to--;
+        }
+        while (from < to && (buffer.get(from) == ' ' || buffer.get(from) == '"')) {
+            from++;
+        }
+        fieldFrom[slotOfColumn[column]] = from;
+        fieldTo[slotOfColumn[column]] = to;
+    }
+
+    private static int skipLine(ByteBuffer buffer, int pos, int end) {
+        while (pos < end && buffer.get(pos) != '\n') {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private static int parseInt(ByteBuffer buffer, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (buffer.get(i) - '0');
+        }
+        return value;
+    }
+
+    // "H:MM:SS" o "HH:MM:SS" in secondi, -1 se il campo è vuoto
+    private static int parseTime(ByteBuffer buffer, int from, int to) {
+        if (from < 0 || from == to) {
+            return -1;
+        }
+        int seconds = 0;
+        int part = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == ':') {
+                seconds = seconds * 60 + part;
+                part = 0;
+            } else {
+                part = part * 10 + (b - '0');
+            }
+        }
+        return seconds * 60 + part;
+    }
+
+    // ------------------------------------------------------------------ CSV semplice per i file piccoli
+
+    private interface RowHandler {
+        void row(Map<String, Integer> header, List<String> row);
+    }
+
+    private static String[] readHeader(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException(file + " is empty");
+            }
+            List<String> columns = splitCsv(stripBom(line));
+            return columns.toArray(new String[0]);
+        }
+    }
+
+    private static void readCsv(Path file, boolean required, RowHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            if (required) {
+                throw new IOException("Missing GTFS file " + file);
+            }
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                return;
+            }
+            Map<String, Integer> header = new HashMap<>();
+            List<String> columns = splitCsv(stripBom(headerLine));
+            for (int i = 0; i < columns.size(); i++) {
+                header.put(columns.get(i), i);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    handler.row(header, splitCsv(line));
+                }
+            }
+        }
+    }
+
+    private static String field(List<String> row, Map<String, Integer> header, String column) {
+        Integer index = header.get(column);
+        return index == null || index >= row.size() ? "" : row.get(index);
+    }
+
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString().trim());
+        return fields;
+    }
+}
@@ -0,0 +1,146 @@
+package com.trenical.database;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Inventario dei posti per (treno, classe di servizio).
+// Ogni chiave ha una SeatMap: la prenotazione di N posti passa prima da un contatore atomico dei posti liberi
+// (una sola CAS, niente check-then-act tra disponibilità e salvataggio dei biglietti) e poi occupa posti precisi,
+// adiacenti quando possibile, cosí due acquisti concorrenti non ricevono mai lo stesso posto.
+// I posti sono indici da 0; sul biglietto diventano iniziale della classe + (indice + 1), es. "S12".
+public class SeatInventory {
+
+    private final Map<String, SeatMap> seatMaps = new ConcurrentHashMap<>();
+    private final int seatsPerCoach;
+    private volatile ChangeListener changeListener;
+
+    // chiamato dopo ogni prenotazione o rilascio riuscito, sul thread che ha cambiato i posti: deve solo segnarsi la chiave
+    public interface ChangeListener {
+        void seatsChanged(String trainId, String serviceClass);
+    }
+
+    public SeatInventory() {
+        this(SeatMap.MAX_SEATS_PER_COACH);
+    }
+
+    public SeatInventory(int seatsPerCoach) {
+        this.seatsPerCoach = seatsPerCoach;
+    }
+
+    // soldSeats sono i numeri di posto dei biglietti giá venduti: vengono rioccupati gli stessi posti.
+    // Quelli illeggibili o duplicati (biglietti emessi prima della mappa dei posti) occupano comunque un posto libero.
+    // Se la chiave ha giá una mappa (treno aggiunto di nuovo con addTrains) si tiene quella: contiene anche i posti
+    // prenotati da acquisti in corso che non sono ancora biglietti, e sostituirla li libererebbe.
+    // Una capacitá oltre SeatMap.MAX_CAPACITY (dato dell'orario sbagliato) viene ridotta al massimo.
+    public void register(String trainId, String serviceClass, int requestedCapacity, Collection<String> soldSeats) {
+        int capacity = Math.min(requestedCapacity, SeatMap.MAX_CAPACITY);
+        if (capacity != requestedCapacity) {
+            System.err.println("[SeatInventory] Capacity " + requestedCapacity + " of " + trainId + " " + serviceClass
+                    + " exceeds the maximum, using " + capacity);
+        }
+        seatMaps.compute(key(trainId, serviceClass), (key, existing) -> {
+            if (existing != null) {
+                if (existing.getCapacity() != capacity) {
+                    System.err.println("[SeatInventory] Capacity of " + trainId + " " + serviceClass + " stays "
+                            + existing.getCapacity() + ", ignoring new capacity " + capacity);
+                }
+                // ogni posto venduto è passato da questa mappa; rioccupare la lista dei biglietti, letta prima,
+                // potrebbe invece riprendere un posto appena liberato da una modifica
+                return existing;
+            }
+            SeatMap seatMap = new SeatMap(capacity, seatsPerCoach);
+            int unplaced = 0;
+            for (String seatNumber : soldSeats) {
+                if (!seatMap.occupy(seatIndex(serviceClass, seatNumber))) {
+                    unplaced++;
+                }
+            }
+            if (unplaced > 0) {
+                seatMap.allocate(Math.min(unplaced, seatMap.getAvailableSeats()));
+            }
+            return seatMap;
+        });
+        notifyChanged(trainId, serviceClass);
+    }
+
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    private void notifyChanged(String trainId, String serviceClass) {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.seatsChanged(trainId, serviceClass);
+        }
+    }
+
+    public int getAvailableSeats(String trainId, String serviceClass) {
+        SeatMap seatMap = seatMaps.get(key(trainId, serviceClass));
+        return seatMap == null ? 0 : seatMap.getAvailableSeats();
+    }
+
+    public int getCapacity(String trainId, String serviceClass) {
+        SeatMap seatMap = seatMaps.get(key(trainId, serviceClass));
+        return seatMap == null ? 0 : seatMap.getCapacity();
+    }
+
+    public SeatMap getSeatMap(String trainId, String serviceClass) {
+        return seatMaps.get(key(trainId, serviceClass));
+    }
+
+    // indici dei posti occupati, null se il treno non offre la classe o non ci sono abbastanza posti
+    public int[] reserve(String trainId, String serviceClass, int seats) {
+        SeatMap seatMap = seatMaps.get(key(trainId, serviceClass));
+        int[] reserved = seatMap == null ? null : seatMap.allocate(seats);
+        if (reserved != null) {
+            notifyChanged(trainId, serviceClass);
+        }
+        return reserved;
+    }
+
+    // libera solo i posti effettivamente occupati, quindi un rilascio duplicato non supera mai la capienza
+    public void release(String trainId, String serviceClass, int[] seats) {
+        SeatMap seatMap = seatMaps.get(key(trainId, serviceClass));
+        if (seatMap == null || seats == null) {
+            return;
+        }
+        boolean released = false;
+        for (int seat : seats) {
+            released |= seatMap.release(seat);
+        }
+        if (released) {
+            notifyChanged(trainId, serviceClass);
+        }
+    }
+
+    public boolean release(String trainId, String serviceClass, String seatNumber) {
+        SeatMap seatMap = seatMaps.get(key(trainId, serviceClass));
+        boolean released = seatMap != null && seatMap.release(seatIndex(serviceClass, seatNumber));
+        if (released) {
+            notifyChanged(trainId, serviceClass);
+        }
+        return released;
+    }
+
+    public static String seatNumber(String serviceClass, int seat) {
+        return serviceClass.substring(0, 1) + (seat + 1);
+    }
+
+    // -1 se il numero non è nel formato della classe
+    public static int seatIndex(String serviceClass, String seatNumber) {
+        if (seatNumber == null || serviceClass.isEmpty() || seatNumber.length() < 2
+                || seatNumber.charAt(0) != serviceClass.charAt(0)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(seatNumber.substring(1)) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String key(String trainId, String serviceClass) {
+        return trainId + '|' + serviceClass;
+    }
+}
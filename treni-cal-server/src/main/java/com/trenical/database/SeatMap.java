@@ -0,0 +1,215 @@
+package com.trenical.database;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Mappa dei posti di un (treno, classe di servizio): una parola a 64 bit per carrozza, bit a 1 = posto occupato.
+// Il posto i (da 0) sta nella carrozza i / seatsPerCoach, bit i % seatsPerCoach.
+// Tutte le operazioni sono CAS sulla parola della carrozza, senza lock: chi compra su carrozze diverse
+// non si contende nulla, e su una stessa carrozza una CAS fallita vuol dire che un altro acquisto è andato avanti.
+// "remaining" fa da contatore di ammissione: si decrementa prima di occupare i bit e si incrementa solo dopo
+// averli liberati, cosí i bit liberi sono sempre almeno quanti i posti che chi ha giá passato l'ammissione deve ancora prendere.
+public final class SeatMap {
+    public static final int MAX_SEATS_PER_COACH = Long.SIZE;
+    // limite di sicurezza sulla mappa di un treno: con carrozze da 64 posti sono 2 MB di bitmap
+    public static final int MAX_CAPACITY = 1 << 24;
+
+    private final int capacity;
+    private final int seatsPerCoach;
+    private final AtomicLongArray coaches;
+    private final AtomicInteger remaining;
+    // prima carrozza che potrebbe avere posti liberi: evita di riscandire le carrozze piene quando il treno si riempie.
+    // È solo un suggerimento, con rilasci concorrenti può restare avanti: allocateScattered in quel caso riparte da 0.
+    private final AtomicInteger firstFreeCoach = new AtomicInteger();
+
+    public SeatMap(int capacity, int seatsPerCoach) {
+        if (seatsPerCoach < 1 || seatsPerCoach > MAX_SEATS_PER_COACH) {
+            throw new IllegalArgumentException("Seats per coach must be between 1 and " + MAX_SEATS_PER_COACH + ": " + seatsPerCoach);
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be at most " + MAX_CAPACITY + ": " + capacity);
+        }
+        this.capacity = Math.max(0, capacity);
+        this.seatsPerCoach = seatsPerCoach;
+        this.coaches = new AtomicLongArray((int) (((long) this.capacity + seatsPerCoach - 1) / seatsPerCoach));
+        this.remaining = new AtomicInteger(this.capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSeatsPerCoach() {
+        return seatsPerCoach;
+    }
+
+    public int getAvailableSeats() {
+        return remaining.get();
+    }
+
+    // Occupa count posti e ne restituisce gli indici, null se non ce ne sono abbastanza.
+    // Se una carrozza ha count posti adiacenti liberi vengono presi tutti con una sola CAS,
+    // altrimenti (o se il gruppo non sta in una carrozza) si prendono i primi posti liberi.
+    public int[] allocate(int count) {
+        if (count <= 0 || !tryAdmit(count)) {
+            return null;
+        }
+        int[] seats = count <= seatsPerCoach ? allocateAdjacent(count) : null;
+        return seats != null ? seats : allocateScattered(count);
+    }
+
+    // libera un posto occupato; false se era giá libero (rilascio duplicato) o fuori dalla mappa
+    public boolean release(int seat) {
+        if (seat < 0 || seat >= capacity) {
+            return false;
+        }
+        int coach = seat / seatsPerCoach;
+        long bit = 1L << (seat % seatsPerCoach);
+        while (true) {
+            long word = coaches.get(coach);
+            if ((word & bit) == 0) {
+                return false;
+            }
+            if (coaches.compareAndSet(coach, word, word & ~bit)) {
+                firstFreeCoach.accumulateAndGet(coach, Math::min);
+                remaining.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // segna come occupato un posto preciso (ripristino dei biglietti giá venduti); false se era giá occupato
+    public boolean occupy(int seat) {
+        if (seat < 0 || seat >= capacity) {
+            return false;
+        }
+        int coach = seat / seatsPerCoach;
+        long bit = 1L << (seat % seatsPerCoach);
+        if (!tryAdmit(1)) {
+            return false;
+        }
+        while (true) {
+            long word = coaches.get(coach);
+            if ((word & bit) != 0) {
+                remaining.incrementAndGet();
+                return false;
+            }
+            if (coaches.compareAndSet(coach, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isOccupied(int seat) {
+        if (seat < 0 || seat >= capacity) {
+            return false;
+        }
+        return (coaches.get(seat / seatsPerCoach) & (1L << (seat % seatsPerCoach))) != 0;
+    }
+
+    // occupazione compatta: il posto i è il bit (i % 8) del byte i / 8, dal bit meno significativo.
+    // Ogni carrozza è letta con una sola lettura atomica, la mappa nel suo insieme non è una fotografia istantanea.
+    public byte[] toBitPacked() {
+        byte[] packed = new byte[(capacity + 7) / 8];
+        for (int coach = 0; coach < coaches.length(); coach++) {
+            long word = coaches.get(coach);
+            int base = coach * seatsPerCoach;
+            while (word != 0) {
+                int seat = base + Long.numberOfTrailingZeros(word);
+                packed[seat >>> 3] |= (byte) (1 << (seat & 7));
+                word &= word - 1;
+            }
+        }
+        return packed;
+    }
+
+    private boolean tryAdmit(int count) {
+        while (true) {
+            int current = remaining.get();
+            if (current < count) {
+                return false;
+            }
+            if (remaining.compareAndSet(current, current - count)) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int[] allocateAdjacent(int count) {
+        long block = count == Long.SIZE ? -1L : (1L << count) - 1;
+        for (int coach = firstFreeCoach.get(); coach < coaches.length(); coach++) {
+            long mask = coachMask(coach);
+            while (true) {
+                long word = coaches.get(coach);
+                long free = ~word & mask;
+                if (free == 0) {
+                    advanceFirstFree(coach);
+                    break;
+                }
+                // bit i di runs a 1 = posti da i a i + count - 1 tutti liberi
+                long runs = free;
+                for (int shift = 1; shift < count && runs != 0; shift++) {
+                    runs &= free >>> shift;
+                }
+                if (runs == 0) {
+                    break;
+                }
+                int first = Long.numberOfTrailingZeros(runs);
+                if (coaches.compareAndSet(coach, word, word | (block << first))) {
+                    int[] seats = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        seats[i] = coach * seatsPerCoach + first + i;
+                    }
+                    return seats;
+                }
+            }
+        }
+        return null;
+    }
+
+    // termina sempre: l'ammissione garantisce che ci siano almeno count bit liberi tra tutte le carrozze
+    private int[] allocateScattered(int count) {
+        int[] seats = new int[count];
+        int taken = 0;
+        while (taken < count) {
+            for (int coach = firstFreeCoach.get(); coach < coaches.length() && taken < count; coach++) {
+                long mask = coachMask(coach);
+                while (taken < count) {
+                    long word = coaches.get(coach);
+                    long free = ~word & mask;
+                    if (free == 0) {
+                        advanceFirstFree(coach);
+                        break;
+                    }
+                    long claim = 0;
+                    for (int n = taken; n < count && free != 0; n++) {
+                        long lowest = free & -free;
+                        claim |= lowest;
+                        free ^= lowest;
+                    }
+                    if (coaches.compareAndSet(coach, word, word | claim)) {
+                        while (claim != 0) {
+                            seats[taken++] = coach * seatsPerCoach + Long.numberOfTrailingZeros(claim);
+                            claim &= claim - 1;
+                        }
+                    }
+                }
+            }
+            if (taken < count) {
+                // un rilascio concorrente può aver liberato posti prima del punto da cui si è partiti
+                firstFreeCoach.set(0);
+            }
+        }
+        return seats;
+    }
+
+    private void advanceFirstFree(int fullCoach) {
+        firstFreeCoach.compareAndSet(fullCoach, fullCoach + 1);
+    }
+
+    private long coachMask(int coach) {
+        int seatsInCoach = Math.min(seatsPerCoach, capacity - coach * seatsPerCoach);
+        return seatsInCoach == Long.SIZE ? -1L : (1L << seatsInCoach) - 1;
+    }
+}
@@ -0,0 +1,127 @@
+package com.trenical.database;
+
+import proto.Station;
+import proto.StationListResponse;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+// Catalogo delle stazioni, ricostruito ad ogni versione dell'orario e poi solo letto.
+// - la risposta completa di GetAvailableStations è costruita una volta sola;
+// - la ricerca per prefisso usa due array ordinati di nomi normalizzati (minuscole, senza accenti né punteggiatura):
+//   i nomi interi e le parole successive alla prima ("centrale" trova "Milano Centrale").
+//   Una ricerca è una binary search piú al massimo limit confronti per array.
+public final class StationCatalog {
+
+    private final StationListResponse allStations;
+    private final String[] nameKeys;
+    private final Station[] nameStations;
+    private final String[] wordKeys;
+    private final Station[] wordStations;
+
+    private record Key(String key, Station station) {}
+
+    private StationCatalog(StationListResponse allStations, List<Key> names, List<Key> words) {
+        this.allStations = allStations;
+        this.nameKeys = names.stream().map(Key::key).toArray(String[]::new);
+        this.nameStations = names.stream().map(Key::station).toArray(Station[]::new);
+        this.wordKeys = words.stream().map(Key::key).toArray(String[]::new);
+        this.wordStations = words.stream().map(Key::station).toArray(Station[]::new);
+    }
+
+    public static StationCatalog build(TrainStore store) {
+        List<Station> stations = new ArrayList<>(store.stations());
+        List<Key> names = new ArrayList<>(stations.size());
+        List<Key> words = new ArrayList<>();
+        for (Station station : stations) {
+            String normalized = normalize(station.getName());
+            names.add(new Key(normalized, station));
+            for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+                words.add(new Key(normalized.substring(i + 1), station));
+            }
+        }
+        Comparator<Key> byKey = Comparator.comparing(Key::key).thenComparing(key -> key.station().getId());
+        names.sort(byKey);
+        words.sort(byKey);
+        // anche l'elenco completo in ordine alfabetico, cosí il client non deve riordinarlo
+        StationListResponse allStations = StationListResponse.newBuilder()
+                .addAllStations(names.stream().map(Key::station).toList())
+                .build();
+        return new StationCatalog(allStations, names, words);
+    }
+
+    public StationListResponse getAllStations() {
+        return allStations;
+    }
+
+    public List<Station> getStations() {
+        return allStations.getStationsList();
+    }
+
+    public int size() {
+        return nameKeys.length;
+    }
+
+    // al massimo limit stazioni: prima quelle il cui nome inizia col prefisso, poi quelle con una parola che inizia col prefisso,
+    // entrambe in ordine alfabetico. Un prefisso vuoto restituisce le prime stazioni in ordine alfabetico.
+    public List<Station> search(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        List<Station> result = new ArrayList<>(Math.min(limit, nameKeys.length));
+        collect(nameKeys, nameStations, normalized, limit, result);
+        if (result.size() < limit && !normalized.isEmpty()) {
+            collect(wordKeys, wordStations, normalized, limit, result);
+        }
+        return result;
+    }
+
+    private static void collect(String[] keys, Station[] stations, String prefix, int limit, List<Station> result) {
+        int i = lowerBound(keys, prefix);
+        for (; i < keys.length && result.size() < limit && keys[i].startsWith(prefix); i++) {
+            // la stessa stazione può comparire sia per nome che per parola, o per due parole uguali
+            if (!result.contains(stations[i])) {
+                result.add(stations[i]);
+            }
+        }
+    }
+
+    private static int lowerBound(String[] keys, String prefix) {
+        int index = Arrays.binarySearch(keys, prefix);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && keys[index - 1].equals(prefix)) {
+            index--;
+        }
+        return index;
+    }
+
+    // "Forlì  Sant'Antonio" -> "forli sant antonio"
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+}
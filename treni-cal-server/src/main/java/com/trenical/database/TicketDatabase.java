@@ -1,28 +1,199 @@
 package com.trenical.database;
 
 import proto.Ticket;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 public class TicketDatabase {
-    private static TicketDatabase instance;
     private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
 
-    private TicketDatabase() {}
+    // Indici secondari: contengono solo gli id dei biglietti, cosí ogni ricerca costa O(risultato)
+    // invece di una scansione completa di "tickets".
+    private final Map<String, Set<String>> ticketIdsByUser = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> ticketIdsByTrain = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> ticketIdsByTrainAndClass = new ConcurrentHashMap<>();
 
-    public static synchronized TicketDatabase getInstance() {
-        if (instance == null) {
-            instance = new TicketDatabase();
+    private volatile TicketJournal journal;
+    // i salvataggi tengono il read lock tra la scrittura sul journal e la pubblicazione nella mappa, lo snapshot prende
+    // il write lock solo per chiudere il segmento: cosí ogni record dei segmenti che lo snapshot cancellerá è giá nella mappa
+    private final ReentrantReadWriteLock snapshotBarrier = new ReentrantReadWriteLock();
+    private ScheduledExecutorService snapshotScheduler;
+
+    // lock per id (a strisce) delle scritture: ReentrantLock e non il monitor di CHM.compute, perché l'append sul
+    // journal può bloccare e un virtual thread fermo dentro compute terrebbe occupato il carrier thread
+    private static final int WRITE_LOCK_STRIPES = 256;
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+
+    private TicketDatabase() {
+        for (int i = 0; i < WRITE_LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // holder idiom: inizializzazione lazy e thread-safe senza synchronized, che sui virtual thread
+    // bloccherebbe il carrier thread sotto contesa.
+    private static final class Holder {
+        private static final TicketDatabase INSTANCE = new TicketDatabase();
+    }
+
+    public static TicketDatabase getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // Abilita la persistenza: recupera i biglietti dal journal nella cartella indicata e da qui in poi
+    // ogni saveTicket viene anche scritto sul journal. Va chiamato prima di usare il database.
+    public void enableJournal(Path directory, int segmentSize, long groupCommitMicros, long snapshotIntervalSeconds) throws IOException {
+        journal = TicketJournal.open(directory, segmentSize, groupCommitMicros, this::restoreTicket);
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfNeeded,
+                snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        System.out.println("[TicketDatabase] Journal enabled in " + directory + ", " + tickets.size() + " tickets recovered");
+    }
+
+    public void closeJournal() throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    // Restituisce il numero di sequenza del journal da passare ad awaitDurable (0 se il journal è disabilitato).
+    public long saveTicket(Ticket ticket) {
+        snapshotBarrier.readLock().lock();
+        ReentrantLock writeLock = writeLock(ticket.getId());
+        writeLock.lock();
+        try {
+            // il lock dell'id serializza le scritture sullo stesso biglietto: l'ordine nel journal è lo stesso
+            // dell'ordine nella mappa. L'append (che può chiudere il segmento e mapparne uno nuovo) sta fuori da
+            // compute, dentro compute resta solo l'aggiornamento della mappa e degli indici.
+            TicketJournal currentJournal = journal;
+            long journalSeq = currentJournal == null ? 0 : currentJournal.append(ticket);
+            publish(ticket);
+            return journalSeq;
+        } finally {
+            writeLock.unlock();
+            snapshotBarrier.readLock().unlock();
+        }
+    }
+
+    // Salva ticket solo se il biglietto con lo stesso id è ancora expected (confronto per identitá, come una CAS: una
+    // modifica concorrente, anche identica, ha messo nella mappa un altro oggetto). -1 se un'altra scrittura è arrivata
+    // prima, altrimenti il numero di sequenza come saveTicket.
+    public long saveTicketIfCurrent(Ticket ticket, Ticket expected) {
+        snapshotBarrier.readLock().lock();
+        ReentrantLock writeLock = writeLock(ticket.getId());
+        writeLock.lock();
+        try {
+            if (tickets.get(ticket.getId()) != expected) {
+                return -1;
+            }
+            TicketJournal currentJournal = journal;
+            long journalSeq = currentJournal == null ? 0 : currentJournal.append(ticket);
+            publish(ticket);
+            return journalSeq;
+        } finally {
+            writeLock.unlock();
+            snapshotBarrier.readLock().unlock();
+        }
+    }
+
+    // annulla un salvataggio che non è diventato durevole: il biglietto torna alla versione precedente, o sparisce se era
+    // nuovo. Solo in memoria: dopo un commit fallito il journal tronca i record non durevoli e non ne scrive altri, e uno
+    // snapshot che avesse copiato il biglietto non viene pubblicato (vedi TicketJournal.writeSnapshot).
+    public void revertTicket(Ticket saved, Ticket previous) {
+        snapshotBarrier.readLock().lock();
+        ReentrantLock writeLock = writeLock(saved.getId());
+        writeLock.lock();
+        try {
+            tickets.computeIfPresent(saved.getId(), (ticketId, current) -> {
+                if (!current.equals(saved)) {
+                    return current;
+                }
+                unindex(current);
+                if (previous != null) {
+                    index(previous);
+                }
+                return previous;
+            });
+        } finally {
+            writeLock.unlock();
+            snapshotBarrier.readLock().unlock();
+        }
+    }
+
+    private ReentrantLock writeLock(String ticketId) {
+        return writeLocks[Math.floorMod(ticketId.hashCode(), WRITE_LOCK_STRIPES)];
+    }
+
+    // aggiorna mappa e indici; una sovrascrittura (es. biglietto modificato che cambia classe) sposta l'id negli indici
+    private void publish(Ticket ticket) {
+        tickets.compute(ticket.getId(), (ticketId, previous) -> {
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(ticket);
+            return ticket;
+        });
+    }
+
+    // aspetta che tutti i salvataggi fino a journalSeq siano su disco; con il group commit
+    // basta una sola attesa dopo aver salvato tutti i biglietti di un acquisto.
+    public void awaitDurable(long journalSeq) throws IOException {
+        TicketJournal currentJournal = journal;
+        if (journalSeq > 0 && currentJournal != null) {
+            currentJournal.awaitDurable(journalSeq);
+        }
+    }
+
+    private void restoreTicket(Ticket ticket) {
+        publish(ticket);
+    }
+
+    private void snapshotIfNeeded() {
+        TicketJournal currentJournal = journal;
+        if (currentJournal == null || currentJournal.segmentsSinceSnapshot() == 0) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (IOException e) {
+            System.err.println("[TicketDatabase] Snapshot failed: " + e.getMessage());
         }
-        return instance;
     }
 
-    public void saveTicket(Ticket ticket) {
-        tickets.put(ticket.getId(), ticket);
+    // compatta il journal; le scritture restano ferme solo durante il roll del segmento, non durante la copia
+    public void snapshot() throws IOException {
+        TicketJournal currentJournal = journal;
+        if (currentJournal == null) {
+            return;
+        }
+        long coveredFrom;
+        snapshotBarrier.writeLock().lock();
+        try {
+            coveredFrom = currentJournal.beginSnapshot();
+        } finally {
+            snapshotBarrier.writeLock().unlock();
+        }
+        currentJournal.writeSnapshot(coveredFrom, tickets.values(), Runtime.getRuntime().availableProcessors());
     }
 
     public Ticket getTicketById(String ticketId) {
@@ -30,21 +201,69 @@ public class TicketDatabase {
     }
 
     public List<Ticket> getTicketsByUserId(String userId) {
-        return tickets.values().stream()
-                .filter(ticket -> ticket.getUserId().equals(userId))
-                .collect(Collectors.toList());
+        return resolve(ticketIdsByUser.get(userId));
     }
 
     public List<Ticket> getTicketsForTrain(String trainId) {
-        return tickets.values().stream()
-                .filter(ticket -> ticket.getTrainDetails().getId().equals(trainId))
-                .collect(Collectors.toList());
+        return resolve(ticketIdsByTrain.get(trainId));
     }
 
     public List<Ticket> getTicketsForTrainAndClass(String trainId, String serviceClass) {
-        return tickets.values().stream()
-                .filter(ticket -> ticket.getTrainDetails().getId().equals(trainId) &&
-                        ticket.getTrainDetails().getServiceClass().equals(serviceClass))
-                .collect(Collectors.toList());
+        return resolve(ticketIdsByTrainAndClass.get(trainAndClassKey(trainId, serviceClass)));
+    }
+
+    public int size() {
+        return tickets.size();
+    }
+
+    // svuota il database, usato da test e benchmark per ripartire da uno stato noto
+    public void clear() {
+        tickets.clear();
+        ticketIdsByUser.clear();
+        ticketIdsByTrain.clear();
+        ticketIdsByTrainAndClass.clear();
+    }
+
+
+    private void index(Ticket ticket) {
+        String ticketId = ticket.getId();
+        String trainId = ticket.getTrainDetails().getId();
+        ticketIdsByUser.computeIfAbsent(ticket.getUserId(), k -> ConcurrentHashMap.newKeySet()).add(ticketId);
+        ticketIdsByTrain.computeIfAbsent(trainId, k -> ConcurrentHashMap.newKeySet()).add(ticketId);
+        ticketIdsByTrainAndClass.computeIfAbsent(trainAndClassKey(trainId, ticket.getTrainDetails().getServiceClass()),
+                k -> ConcurrentHashMap.newKeySet()).add(ticketId);
+    }
+
+    private void unindex(Ticket ticket) {
+        String ticketId = ticket.getId();
+        String trainId = ticket.getTrainDetails().getId();
+        removeFromIndex(ticketIdsByUser, ticket.getUserId(), ticketId);
+        removeFromIndex(ticketIdsByTrain, trainId, ticketId);
+        removeFromIndex(ticketIdsByTrainAndClass, trainAndClassKey(trainId, ticket.getTrainDetails().getServiceClass()), ticketId);
+    }
+
+    private static void removeFromIndex(Map<String, Set<String>> index, String key, String ticketId) {
+        Set<String> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(ticketId);
+        }
+    }
+
+    private List<Ticket> resolve(Set<String> ticketIds) {
+        if (ticketIds == null || ticketIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Ticket> result = new ArrayList<>(ticketIds.size());
+        for (String ticketId : ticketIds) {
+            Ticket ticket = tickets.get(ticketId);
+            if (ticket != null) {
+                result.add(ticket);
+            }
+        }
+        return result;
+    }
+
+    private static String trainAndClassKey(String trainId, String serviceClass) {
+        return trainId + '|' + serviceClass;
     }
 }
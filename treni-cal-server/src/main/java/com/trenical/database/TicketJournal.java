@@ -0,0 +1,483 @@
+package com.trenical.database;
+
+import proto.Ticket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Journal append-only dei biglietti salvati, su segmenti di file mappati in memoria.
+//
+// Ogni record è [lunghezza int][crc32c int][Ticket serializzato]; un record con lunghezza 0 (il file
+// nuovo è riempito di zeri) o con crc sbagliato segna la fine del segmento. La scrittura è solo una
+// copia nel segmento mappato, mentre un thread di commit fa il force() su disco per gruppi di
+// scritture (group commit): chi vuole la durabilità aspetta con awaitDurable il proprio numero di sequenza.
+//
+// Periodicamente viene scritto uno snapshot compatto (un record per biglietto, diviso in shard) che
+// copre tutti i segmenti precedenti, che a quel punto si possono cancellare. Al riavvio si caricano in
+// parallelo gli shard dello snapshot e poi si riapplica in ordine la coda del journal.
+//
+// Se un force() fallisce il journal non conferma piú nessuna scrittura: i record non ancora durevoli vengono
+// troncati (header azzerato) perché il chiamante li annulla, e non devono ricomparire al riavvio.
+public class TicketJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "tickets-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long groupCommitNanos;
+
+    // stato di scrittura, protetto da appendLock
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private volatile long segmentIndex;
+    private final List<MappedByteBuffer> rolledSegments = new ArrayList<>();
+    private long writtenSeq;
+    // fine dell'ultimo commit riuscito: da qui in avanti i record si troncano se un commit fallisce
+    private long durableSegment;
+    private int durablePosition;
+
+    private volatile long publishedSeq;
+    private volatile long durableSeq;
+    private volatile long lastSnapshotSegment = -1;
+    private volatile boolean closed;
+    private volatile IOException commitFailure;
+
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableAdvanced = durableLock.newCondition();
+    private final Thread committer;
+
+    private TicketJournal(Path directory, int segmentSize, long groupCommitMicros) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMicros);
+        this.committer = new Thread(this::commitLoop, "ticket-journal-committer");
+        this.committer.setDaemon(true);
+    }
+
+    // apre il journal nella cartella indicata, passando a "restore" lo stato recuperato da snapshot e coda
+    // del journal. "restore" deve essere thread-safe: gli shard dello snapshot vengono caricati in parallelo.
+    public static TicketJournal open(Path directory, int segmentSize, long groupCommitMicros, Consumer<Ticket> restore) throws IOException {
+        Files.createDirectories(directory);
+        TicketJournal journal = new TicketJournal(directory, segmentSize, groupCommitMicros);
+        journal.recover(restore);
+        journal.committer.start();
+        return journal;
+    }
+
+    // ------ scrittura ------
+
+    // aggiunge il biglietto al journal e restituisce il suo numero di sequenza, da passare ad awaitDurable
+    public long append(Ticket ticket) {
+        byte[] payload = ticket.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int recordSize = HEADER_BYTES + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Ticket " + ticket.getId() + " does not fit in a journal segment");
+        }
+
+        long seq;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Ticket journal is closed");
+            }
+            // dopo un commit fallito il record non si scrive nemmeno: awaitDurable di questo seq fallirá comunque
+            if (commitFailure == null) {
+                if (segment.remaining() < recordSize) {
+                    roll();
+                }
+                segment.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            }
+            seq = ++writtenSeq;
+            publishedSeq = seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to roll ticket journal segment", e);
+        } finally {
+            appendLock.unlock();
+        }
+        LockSupport.unpark(committer);
+        return seq;
+    }
+
+    // blocca finché il record con questo numero di sequenza non è stato scritto su disco
+    public void awaitDurable(long seq) throws IOException {
+        if (durableSeq >= seq) {
+            return;
+        }
+        durableLock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (commitFailure != null) {
+                    throw commitFailure;
+                }
+                if (closed && !committer.isAlive()) {
+                    throw new IOException("Ticket journal closed before sequence " + seq + " was committed");
+                }
+                durableAdvanced.await(10, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for ticket journal commit", e);
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    // numero di segmenti scritti dopo l'ultimo snapshot, per decidere quando compattare
+    public long segmentsSinceSnapshot() {
+        return segmentIndex - Math.max(lastSnapshotSegment, 0);
+    }
+
+    private void roll() throws IOException {
+        rolledSegments.add(segment);
+        segmentChannel.close();
+        openSegment(segmentIndex + 1, 0);
+    }
+
+    private void openSegment(long index, int position) throws IOException {
+        segmentIndex = index;
+        segmentChannel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.position(position);
+    }
+
+    // thread di group commit: raccoglie le scritture arrivate in groupCommitNanos e fa un solo force()
+    private void commitLoop() {
+        while (!closed || durableSeq < publishedSeq) {
+            if (durableSeq == publishedSeq) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+            if (groupCommitNanos > 0 && !closed) {
+                LockSupport.parkNanos(this, groupCommitNanos);
+            }
+
+            long target;
+            long targetSegment;
+            int targetPosition;
+            List<MappedByteBuffer> toForce;
+            appendLock.lock();
+            try {
+                target = writtenSeq;
+                targetSegment = segmentIndex;
+                targetPosition = segment.position();
+                toForce = new ArrayList<>(rolledSegments);
+                rolledSegments.clear();
+                toForce.add(segment);
+            } finally {
+                appendLock.unlock();
+            }
+
+            try {
+                for (MappedByteBuffer buffer : toForce) {
+                    buffer.force();
+                }
+                appendLock.lock();
+                try {
+                    durableSegment = targetSegment;
+                    durablePosition = targetPosition;
+                } finally {
+                    appendLock.unlock();
+                }
+            } catch (UncheckedIOException e) {
+                System.err.println("[TicketJournal] Commit failed: " + e.getMessage());
+                discardUncommitted(e.getCause());
+            }
+
+            durableLock.lock();
+            try {
+                if (commitFailure == null) {
+                    durableSeq = target;
+                }
+                durableAdvanced.signalAll();
+            } finally {
+                durableLock.unlock();
+            }
+            if (commitFailure != null) {
+                return;
+            }
+        }
+    }
+
+    // tronca i record successivi all'ultimo commit riuscito azzerandone l'header, cosí il recovery si ferma lí anche se
+    // il sistema operativo scrive poi su disco le pagine mappate. Chi li aspettava riceve l'errore e li annulla in memoria.
+    private void discardUncommitted(IOException failure) {
+        appendLock.lock();
+        try {
+            commitFailure = failure;
+            for (long index = durableSegment; index <= segmentIndex; index++) {
+                int position = index == durableSegment ? durablePosition : 0;
+                Path path = segmentPath(index);
+                if (position + HEADER_BYTES > segmentSize || !Files.exists(path)) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(HEADER_BYTES), position);
+                    channel.force(false);
+                } catch (IOException e) {
+                    System.err.println("[TicketJournal] Unable to truncate uncommitted records in segment " + index + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // ------ snapshot ------
+
+    // scrive uno snapshot compatto dei biglietti passati; i segmenti precedenti al momento dello
+    // snapshot diventano inutili e vengono cancellati. Va usato solo se nessuno scrive nel frattempo:
+    // con scritture concorrenti servono beginSnapshot e writeSnapshot (vedi TicketDatabase.snapshot).
+    public void snapshot(Iterable<Ticket> tickets, int shards) throws IOException {
+        writeSnapshot(beginSnapshot(), tickets, shards);
+    }
+
+    // chiude il segmento corrente e restituisce il primo segmento non coperto dallo snapshot.
+    // Dopo il roll ogni nuova scrittura finisce in un segmento >= coveredFrom, che al recovery viene riapplicato
+    // sopra lo snapshot: una versione piú nuova nello snapshot non è un problema, una mancante sí.
+    // Per questo chi chiama deve garantire che ogni record scritto prima del roll sia giá visibile nei biglietti
+    // passati a writeSnapshot, perché i segmenti che lo contengono verranno cancellati.
+    public long beginSnapshot() throws IOException {
+        appendLock.lock();
+        try {
+            roll();
+            return segmentIndex;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void writeSnapshot(long coveredFrom, Iterable<Ticket> tickets, int shards) throws IOException {
+        Path tmpDirectory = directory.resolve(SNAPSHOT_PREFIX + format(coveredFrom) + TMP_SUFFIX);
+        Files.createDirectories(tmpDirectory);
+        FileOutputStream[] files = new FileOutputStream[shards];
+        BufferedOutputStream[] outputs = new BufferedOutputStream[shards];
+        long count = 0;
+        try {
+            for (int i = 0; i < shards; i++) {
+                files[i] = new FileOutputStream(tmpDirectory.resolve("shard-" + i).toFile());
+                outputs[i] = new BufferedOutputStream(files[i], 1 << 16);
+            }
+            for (Ticket ticket : tickets) {
+                ticket.writeDelimitedTo(outputs[(int) (count++ % shards)]);
+            }
+            for (int i = 0; i < shards; i++) {
+                outputs[i].flush();
+                files[i].getFD().sync();
+            }
+        } finally {
+            for (BufferedOutputStream output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+
+        // i biglietti copiati possono venire da scritture non ancora durevoli: se il loro commit fallisce verranno
+        // annullati, e lo snapshot non deve farli ricomparire. Si pubblica solo se tutto ciò che ha visto è su disco.
+        try {
+            awaitDurable(publishedSeq);
+        } catch (IOException e) {
+            deleteDirectory(tmpDirectory);
+            throw e;
+        }
+
+        Path snapshotDirectory = directory.resolve(SNAPSHOT_PREFIX + format(coveredFrom));
+        Files.move(tmpDirectory, snapshotDirectory, StandardCopyOption.ATOMIC_MOVE);
+        lastSnapshotSegment = coveredFrom;
+        System.out.println("[TicketJournal] Snapshot of " + count + " tickets written, covering segments before " + coveredFrom);
+        deleteObsoleteFiles(coveredFrom);
+    }
+
+    private void deleteObsoleteFiles(long coveredFrom) {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                long index = parseIndex(name);
+                if (index < 0 || index >= coveredFrom) {
+                    continue;
+                }
+                if (name.startsWith(SEGMENT_PREFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    deleteDirectory(file);
+                }
+            }
+        } catch (IOException e) {
+            // ci si riproverá al prossimo snapshot (es. su Windows un segmento ancora mappato non si cancella)
+            System.err.println("[TicketJournal] Unable to delete obsolete journal files: " + e.getMessage());
+        }
+    }
+
+    // ------ recovery ------
+
+    private void recover(Consumer<Ticket> restore) throws IOException {
+        long snapshotIndex = -1;
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    deleteDirectory(file); // snapshot interrotto a metá
+                } else if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    snapshotIndex = Math.max(snapshotIndex, parseIndex(name));
+                } else if (name.startsWith(SEGMENT_PREFIX)) {
+                    segments.add(parseIndex(name));
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        long restored = 0;
+        if (snapshotIndex >= 0) {
+            restored += loadSnapshot(directory.resolve(SNAPSHOT_PREFIX + format(snapshotIndex)), restore);
+            lastSnapshotSegment = snapshotIndex;
+        }
+
+        // i segmenti della coda si leggono in parallelo ma si applicano nell'ordine in cui sono stati scritti
+        long firstTailSegment = Math.max(snapshotIndex, 0);
+        List<Long> tail = segments.stream().filter(index -> index >= firstTailSegment).sorted().toList();
+        List<ParsedSegment> parsed = tail.parallelStream().map(this::readSegment).toList();
+        for (ParsedSegment parsedSegment : parsed) {
+            parsedSegment.tickets.forEach(restore);
+            restored += parsedSegment.tickets.size();
+        }
+
+        if (tail.isEmpty()) {
+            openSegment(firstTailSegment, 0);
+        } else {
+            openSegment(tail.get(tail.size() - 1), parsed.get(parsed.size() - 1).endPosition);
+        }
+        durableSegment = segmentIndex;
+        durablePosition = segment.position();
+        System.out.println("[TicketJournal] Recovered " + restored + " ticket records from " + directory
+                + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private long loadSnapshot(Path snapshotDirectory, Consumer<Ticket> restore) throws IOException {
+        List<Path> shards;
+        try (Stream<Path> files = Files.list(snapshotDirectory)) {
+            shards = files.toList();
+        }
+        return shards.parallelStream().mapToLong(shard -> {
+            long count = 0;
+            try (InputStream input = new BufferedInputStream(Files.newInputStream(shard), 1 << 16)) {
+                Ticket ticket;
+                while ((ticket = Ticket.parseDelimitedFrom(input)) != null) {
+                    restore.accept(ticket);
+                    count++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read snapshot shard " + shard, e);
+            }
+            return count;
+        }).sum();
+    }
+
+    private record ParsedSegment(List<Ticket> tickets, int endPosition) {}
+
+    private ParsedSegment readSegment(long index) {
+        List<Ticket> tickets = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32C crc = new CRC32C();
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int recordStart = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    buffer.position(recordStart);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    // scrittura interrotta da un crash: qui finisce la parte valida del segmento
+                    buffer.position(recordStart);
+                    break;
+                }
+                tickets.add(Ticket.parseFrom(payload));
+            }
+            return new ParsedSegment(tickets, buffer.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read journal segment " + index, e);
+        }
+    }
+
+    // ------ utilitá ------
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            closed = true;
+        } finally {
+            appendLock.unlock();
+        }
+        LockSupport.unpark(committer);
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segmentChannel.close();
+        if (commitFailure != null) {
+            throw commitFailure;
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(SEGMENT_PREFIX + format(index) + SEGMENT_SUFFIX);
+    }
+
+    private static String format(long index) {
+        return String.format("%020d", index);
+    }
+
+    private static long parseIndex(String fileName) {
+        String digits = fileName.replaceAll("\\D", "");
+        if (digits.isEmpty()) {
+            return -1;
+        }
+        return Long.parseLong(digits);
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.trenical.database;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Indice dell'orario per (stazione di partenza, stazione di arrivo, giorno di servizio).
+// Il giorno di servizio viene calcolato una sola volta al caricamento, e ogni bucket è giá ordinato
+// per orario di partenza: una ricerca costa quanto il numero di treni della tratta in quel giorno.
+// I bucket contengono numeri di riga del TrainStore, non messaggi Train.
+// L'indice è immutabile, quando l'orario cambia se ne costruisce uno nuovo.
+public class TimetableIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private record RouteDayKey(int departureStation, int arrivalStation, long serviceEpochDay) {}
+
+    private final TrainStore store;
+    private final Map<RouteDayKey, int[]> buckets;
+
+    private TimetableIndex(TrainStore store, Map<RouteDayKey, int[]> buckets) {
+        this.store = store;
+        this.buckets = buckets;
+    }
+
+    // raggruppamento e ordinamento dei bucket in parallelo: con un orario nazionale sono milioni di treni.
+    // Le righe sostituite da una versione piú recente dello stesso treno restano fuori dall'indice.
+    public static TimetableIndex build(TrainStore store, ZoneId zone) {
+        Comparator<Integer> byDeparture = Comparator.comparingLong((Integer row) -> store.departureSeconds(row))
+                .thenComparing(store::trainId);
+        Map<RouteDayKey, List<Integer>> grouped = IntStream.range(0, store.size()).parallel()
+                .filter(store::isCurrent)
+                .boxed()
+                .collect(Collectors.groupingByConcurrent(row -> new RouteDayKey(
+                        store.departureStation(row),
+                        store.arrivalStation(row),
+                        LocalDate.ofInstant(Instant.ofEpochSecond(store.departureSeconds(row)), zone).toEpochDay())));
+        Map<RouteDayKey, int[]> buckets = grouped.entrySet().parallelStream()
+                .collect(Collectors.toMap(Map.Entry::getKey, bucket -> bucket.getValue().stream()
+                        .sorted(byDeparture)
+                        .mapToInt(Integer::intValue)
+                        .toArray()));
+        return new TimetableIndex(store, buckets);
+    }
+
+    // righe dei treni della tratta nel giorno indicato, ordinate per orario di partenza.
+    // L'array è quello interno dell'indice: va solo letto.
+    public int[] find(String departureStationId, String arrivalStationId, LocalDate serviceDay) {
+        int departure = store.stationIndex(departureStationId);
+        int arrival = store.stationIndex(arrivalStationId);
+        if (departure < 0 || arrival < 0) {
+            return NO_ROWS;
+        }
+        return buckets.getOrDefault(new RouteDayKey(departure, arrival, serviceDay.toEpochDay()), NO_ROWS);
+    }
+
+    // righe della tratta che partono dopo (orario, id) indicati: è il punto di ripresa della paginazione.
+    // La ricerca binaria funziona anche se il treno del cursore nel frattempo è stato tolto dall'orario.
+    public int[] findAfter(String departureStationId, String arrivalStationId, LocalDate serviceDay,
+                           long afterSeconds, String afterTrainId) {
+        int[] bucket = find(departureStationId, arrivalStationId, serviceDay);
+        int low = 0;
+        int high = bucket.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long seconds = store.departureSeconds(bucket[mid]);
+            boolean beforeOrAtCursor = seconds < afterSeconds
+                    || (seconds == afterSeconds && store.trainId(bucket[mid]).compareTo(afterTrainId) <= 0);
+            if (beforeOrAtCursor) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Arrays.copyOfRange(bucket, low, bucket.length);
+    }
+}
@@ -1,101 +1,220 @@
 package com.trenical.database;
 
 import proto.Station;
+import proto.Ticket;
 import proto.Train;
 import com.google.protobuf.Timestamp;
+import com.trenical.sharding.ShardKey;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 public class TrainDatabase {
-    private static TrainDatabase instance;
-    private final Map<String, Train> trains = new ConcurrentHashMap<>();
+    // l'orario è tenuto in colonne (TrainStore): i messaggi Train si costruiscono solo per le risposte
+    private final TrainStore trains = new TrainStore();
     private final TicketDatabase ticketDatabase = TicketDatabase.getInstance();
+    private final SeatInventory seatInventory = new SeatInventory(Integer.getInteger("trenical.seats.perCoach", 64));
+    private volatile TimetableIndex timetableIndex;
+    private volatile StationCatalog stationCatalog;
+    // cresce ad ogni modifica dell'orario: chi tiene strutture derivate (es. il journey planner) sa quando ricostruirle
+    private final AtomicLong timetableVersion = new AtomicLong();
+    // fuso dell'orario: lo stesso per leggere gli orari GTFS e per dividere i treni per giorno nell'indice di ricerca
+    private final ZoneId zone = ZoneId.of(System.getProperty("trenical.gtfs.zone", ZoneId.systemDefault().getId()));
+    // con piú shard il nodo tiene solo i suoi treni: posti, biglietti e ricerche riguardano solo quelli
+    private final ShardKey shard = ShardKey.local();
+
+
+    // con -Dtrenical.gtfs.dir l'orario viene caricato da un feed GTFS, altrimenti restano i treni dimostrativi
+    private TrainDatabase() {
+        String gtfsDir = System.getProperty("trenical.gtfs.dir");
+        if (gtfsDir != null && !gtfsDir.isEmpty()) {
+            loadGtfs(Paths.get(gtfsDir));
+        } else {
+            loadDemoTrains();
+        }
 
+        loadSeatInventory();
+        timetableIndex = TimetableIndex.build(trains, zone);
+        stationCatalog = StationCatalog.build(trains);
+    }
 
-    private TrainDatabase() {
+    private void loadGtfs(Path dir) {
+        GtfsTimetableLoader loader = new GtfsTimetableLoader(
+                zone,
+                Runtime.getRuntime().availableProcessors(),
+                Integer.getInteger("trenical.gtfs.seatsPerTrain", 400));
+        try {
+            trains.addAll(owned(loader.load(dir, LocalDate.now(), Integer.getInteger("trenical.gtfs.days", 7))));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load GTFS timetable from " + dir, e);
+        }
+    }
 
+    private void loadDemoTrains() {
         Station rome = Station.newBuilder().setId("RM001").setName("Roma Termini").build();
         Station milan = Station.newBuilder().setId("MI001").setName("Milano Centrale").build();
         Station naples = Station.newBuilder().setId("NA001").setName("Napoli Centrale").build();
 
-        trains.put("TR001", Train.newBuilder()
-                .setId("TR001").setTrainNumber("FR 9600")
-                .setDepartureStation(rome).setArrivalStation(milan)
-                .setDepartureTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 2).build())
-                .setArrivalTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 5).build())
-                .setServiceClass("Standard").setPrice(50.00).setAvailableSeats(100).setTrainType("High-Speed")
-                .build());
-        trains.put("TR002", Train.newBuilder()
-                .setId("TR002").setTrainNumber("IC 650")
-                .setDepartureStation(rome).setArrivalStation(naples)
-                .setDepartureTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 3).build())
-                .setArrivalTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 5).build())
-                .setServiceClass("Business").setPrice(35.00).setAvailableSeats(50).setTrainType("Intercity")
-                .build());
-        trains.put("TR003", Train.newBuilder()
-                .setId("TR003").setTrainNumber("FR 9602")
-                .setDepartureStation(rome).setArrivalStation(milan)
-                .setDepartureTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 86400 + 3600 * 4).build())
-                .setArrivalTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 86400 + 3600 * 7).build())
-                .setServiceClass("Standard").setPrice(55.00).setAvailableSeats(120).setTrainType("High-Speed")
-                .build());
-    }
-
-    public static synchronized TrainDatabase getInstance() {
-        if (instance == null) {
-            instance = new TrainDatabase();
+        trains.addAll(owned(List.of(
+                Train.newBuilder()
+                        .setId("TR001").setTrainNumber("FR 9600")
+                        .setDepartureStation(rome).setArrivalStation(milan)
+                        .setDepartureTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 2).build())
+                        .setArrivalTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 5).build())
+                        .setServiceClass("Standard").setPrice(50.00).setAvailableSeats(100).setTrainType("High-Speed")
+                        .build(),
+                Train.newBuilder()
+                        .setId("TR002").setTrainNumber("IC 650")
+                        .setDepartureStation(rome).setArrivalStation(naples)
+                        .setDepartureTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 3).build())
+                        .setArrivalTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 3600 * 5).build())
+                        .setServiceClass("Business").setPrice(35.00).setAvailableSeats(50).setTrainType("Intercity")
+                        .build(),
+                Train.newBuilder()
+                        .setId("TR003").setTrainNumber("FR 9602")
+                        .setDepartureStation(rome).setArrivalStation(milan)
+                        .setDepartureTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 86400 + 3600 * 4).build())
+                        .setArrivalTime(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond() + 86400 + 3600 * 7).build())
+                        .setServiceClass("Standard").setPrice(55.00).setAvailableSeats(120).setTrainType("High-Speed")
+                        .build())));
+    }
+
+    private Collection<Train> owned(Collection<Train> loaded) {
+        if (!shard.isSharded()) {
+            return loaded;
         }
-        return instance;
+        List<Train> owned = loaded.stream().filter(train -> shard.owns(train.getId())).toList();
+        System.out.println("[TrainDatabase] Shard " + shard.getIndex() + "/" + shard.getCount() + ": "
+                + owned.size() + " of " + loaded.size() + " trains");
+        return owned;
+    }
+
+    // la capienza di ogni (treno, classe) arriva dall'orario: available_seats del treno caricato
+    // è il numero totale di posti, in cui rioccupo i posti dei biglietti giá venduti.
+    private void loadSeatInventory() {
+        IntStream.range(0, trains.size()).parallel()
+                .filter(trains::isCurrent)
+                .forEach(row -> registerSeats(trains.trainId(row), trains.serviceClass(row), trains.capacity(row)));
     }
 
+    private void registerSeats(String trainId, String serviceClass, int capacity) {
+        List<String> soldSeats = ticketDatabase.getTicketsForTrainAndClass(trainId, serviceClass).stream()
+                .map(Ticket::getSeatNumber)
+                .toList();
+        seatInventory.register(trainId, serviceClass, capacity, soldSeats);
+    }
+
+    private static final class Holder {
+        private static final TrainDatabase INSTANCE = new TrainDatabase();
+    }
+
+    public static TrainDatabase getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // materializza tutto l'orario: da usare solo fuori dal percorso delle richieste
     public List<Train> getAllTrains() {
-        return new ArrayList<>(trains.values());
+        List<Train> all = new ArrayList<>();
+        for (int row = 0; row < trains.size(); row++) {
+            if (trains.isCurrent(row)) {
+                all.add(trains.materialize(row));
+            }
+        }
+        return all;
+    }
+
+    // vista a colonne dell'orario, per chi costruisce strutture derivate senza materializzare i treni
+    public TrainStore getTrainStore() {
+        return trains;
+    }
+
+    // aggiunge (o sostituisce) treni nell'orario, aggiornando inventario dei posti e indice di ricerca
+    public void addTrains(Collection<Train> newTrains) {
+        Collection<Train> ownTrains = owned(newTrains);
+        trains.addAll(ownTrains);
+        for (Train train : ownTrains) {
+            registerSeats(train.getId(), train.getServiceClass(), train.getAvailableSeats());
+        }
+        timetableIndex = TimetableIndex.build(trains, zone);
+        stationCatalog = StationCatalog.build(trains);
+        timetableVersion.incrementAndGet();
+    }
+
+    public long getTimetableVersion() {
+        return timetableVersion.get();
     }
 
+    // available_seats del treno restituito è la capienza, non i posti liberi
     public Train getTrainById(String trainId) {
-        return trains.get(trainId);
+        int row = trains.rowOf(trainId);
+        return row < 0 ? null : trains.materialize(row);
+    }
+
+    // righe (del TrainStore) dei treni diretti tra due stazioni nel giorno indicato, giá ordinate per partenza.
+    // L'array non va modificato.
+    public int[] findTrainRows(String departureStationId, String arrivalStationId, LocalDate serviceDay) {
+        return timetableIndex.find(departureStationId, arrivalStationId, serviceDay);
+    }
+
+    public int[] findTrainRowsAfter(String departureStationId, String arrivalStationId, LocalDate serviceDay,
+                                    long afterSeconds, String afterTrainId) {
+        return timetableIndex.findAfter(departureStationId, arrivalStationId, serviceDay, afterSeconds, afterTrainId);
     }
 
     public int getAvailableSeats(String trainId, String serviceClass) {
-        Train train = trains.get(trainId);
-        if (train == null || !train.getServiceClass().equals(serviceClass)) {
-            return 0;
-        }
+        return seatInventory.getAvailableSeats(trainId, serviceClass);
+    }
 
-        long soldTickets = ticketDatabase.getTicketsForTrainAndClass(trainId, serviceClass).size();
-        int totalSeatsForClass = 100; // Example: assume 100 seats for any class this train offers
-        if(train != null && train.getId().equals("TR001") && serviceClass.equals("Standard")) totalSeatsForClass = 100;
-        if(train != null && train.getId().equals("TR002") && serviceClass.equals("Business")) totalSeatsForClass = 50;
-        if(train != null && train.getId().equals("TR003") && serviceClass.equals("Standard")) totalSeatsForClass = 120;
+    public int getAvailableSeats(int row) {
+        return seatInventory.getAvailableSeats(trains.trainId(row), trains.serviceClass(row));
+    }
 
+    // indici dei posti prenotati (adiacenti se possibile), null se non ce ne sono abbastanza
+    public int[] reserveSeats(String trainId, String serviceClass, int seats) {
+        return seatInventory.reserve(trainId, serviceClass, seats);
+    }
 
-        return Math.max(0, totalSeatsForClass - (int)soldTickets);
+    public void releaseSeats(String trainId, String serviceClass, int[] seats) {
+        seatInventory.release(trainId, serviceClass, seats);
     }
 
-    public List<Station> getAllUniqueStations(){
-        // per semplicitá definisco le stazioni staticamente qui per il momento ,
-        // in un sistema reale le stazioni dovrebbero essere messe in una fonte dati piú strutturata come un DB "ho intenzione di usare postgres"
+    // libera il posto di un biglietto, dato il numero stampato sul biglietto (es. "S12")
+    public boolean releaseSeat(String trainId, String serviceClass, String seatNumber) {
+        return seatInventory.release(trainId, serviceClass, seatNumber);
+    }
 
-        Map<String, Station> stationMap = new HashMap<>();
-        for ( Train train : trains.values()){
-            stationMap.putIfAbsent(train.getDepartureStation().getId(), train.getDepartureStation() );
-            stationMap.putIfAbsent(train.getArrivalStation().getId(), train.getArrivalStation());
-        }
+    public SeatMap getSeatMap(String trainId, String serviceClass) {
+        return seatInventory.getSeatMap(trainId, serviceClass);
+    }
+
+    // un solo listener (il feed della disponibilità), avvisato a ogni cambiamento dei posti
+    public void setSeatChangeListener(SeatInventory.ChangeListener listener) {
+        seatInventory.setChangeListener(listener);
+    }
+
+    public List<Station> getAllUniqueStations(){
+        // in un sistema reale le stazioni dovrebbero essere messe in una fonte dati piú strutturata come un DB "ho intenzione di usare postgres";
+        // intanto sono quelle internate dal TrainStore, una per id, in ordine alfabetico
+        return stationCatalog.getStations();
+    }
 
-        return new ArrayList<>(stationMap.values());
+    // catalogo delle stazioni della versione corrente dell'orario
+    public StationCatalog getStationCatalog() {
+        return stationCatalog;
     }
 
     public void updateTrainStatus(String trainId, String status, String platform, Timestamp newArrivalTime) {
-        Train train = trains.get(trainId);
-        if (train != null) {
-            Train updatedTrain = train.toBuilder()
-                    .setArrivalTime(newArrivalTime)
-                    .build();
+        if (trains.rowOf(trainId) >= 0) {
             System.out.println("[TrainDatabase] Status update for " + trainId + ": " + status + ", Platform: " + platform);
         }
     }
@@ -0,0 +1,287 @@
+package com.trenical.database;
+
+import com.google.protobuf.Timestamp;
+import proto.Station;
+import proto.Train;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Orario in colonne di tipi primitivi, una riga per treno, al posto di una mappa di messaggi Train.
+//
+// Stazioni, tipi, classi e numeri di treno si ripetono su migliaia di righe: vengono internati una volta
+// sola e nelle colonne resta un int. Gli orari sono secondi epoch in un long[] (i nanosecondi non vengono
+// conservati), gli id stanno tutti in un unico byte[] con un indice a indirizzamento aperto.
+// Il messaggio Train si costruisce solo quando serve una risposta (materialize).
+//
+// Le righe sono solo aggiunte: riscrivere un treno aggiunge una riga nuova e segna la vecchia come sostituita,
+// cosí chi ha in mano un numero di riga vede sempre dati coerenti. Le scritture sono serializzate da un lock,
+// le letture sono senza lock e usano l'ultima istantanea pubblicata nel campo volatile.
+public final class TrainStore {
+
+    private static final class Columns {
+        final int size;
+        final int[] departureStation;
+        final int[] arrivalStation;
+        final int[] trainNumber;
+        final int[] trainType;
+        final int[] serviceClass;
+        final int[] capacity;
+        final long[] departureSeconds;
+        final long[] arrivalSeconds;
+        final double[] price;
+        final long[] replaced;      // bitset delle righe sostituite da una riga piú recente
+        final byte[] idBytes;       // id concatenati in UTF-8
+        final int[] idOffset;       // l'id della riga r è idBytes[idOffset[r], idOffset[r + 1])
+        final int[] idTable;        // riga + 1, 0 = vuoto
+        final Station[] stations;
+        final Map<String, Integer> stationIds;
+        final String[] trainNumbers;
+        final String[] trainTypes;
+        final String[] serviceClasses;
+
+        Columns(int size, int[] departureStation, int[] arrivalStation, int[] trainNumber, int[] trainType,
+                int[] serviceClass, int[] capacity, long[] departureSeconds, long[] arrivalSeconds, double[] price,
+                long[] replaced, byte[] idBytes, int[] idOffset, int[] idTable,
+                Station[] stations, Map<String, Integer> stationIds, String[] trainNumbers, String[] trainTypes,
+                String[] serviceClasses) {
+            this.size = size;
+            this.departureStation = departureStation;
+            this.arrivalStation = arrivalStation;
+            this.trainNumber = trainNumber;
+            this.trainType = trainType;
+            this.serviceClass = serviceClass;
+            this.capacity = capacity;
+            this.departureSeconds = departureSeconds;
+            this.arrivalSeconds = arrivalSeconds;
+            this.price = price;
+            this.replaced = replaced;
+            this.idBytes = idBytes;
+            this.idOffset = idOffset;
+            this.idTable = idTable;
+            this.stations = stations;
+            this.stationIds = stationIds;
+            this.trainNumbers = trainNumbers;
+            this.trainTypes = trainTypes;
+            this.serviceClasses = serviceClasses;
+        }
+    }
+
+    private volatile Columns columns = new Columns(0, new int[0], new int[0], new int[0], new int[0], new int[0],
+            new int[0], new long[0], new long[0], new double[0], new long[0], new byte[0], new int[1], new int[16],
+            new Station[0], Map.of(), new String[0], new String[0], new String[0]);
+
+    // usati solo da chi scrive, sotto writeLock
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+    private final List<Station> stations = new ArrayList<>();
+    private final Pool trainNumbers = new Pool();
+    private final Pool trainTypes = new Pool();
+    private final Pool serviceClasses = new Pool();
+
+    private static final class Pool {
+        final Map<String, Integer> index = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            return index.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+    }
+
+    // aggiunge (o sostituisce, a paritá di id) i treni e pubblica la nuova istantanea una volta sola
+    public void addAll(Collection<Train> trains) {
+        writeLock.lock();
+        try {
+            Columns c = columns;
+            int size = c.size;
+            int newSize = size + trains.size();
+            int capacity = Math.max(16, c.departureStation.length);
+            while (capacity < newSize) {
+                capacity += capacity >> 1;
+            }
+            int[] departureStation = Arrays.copyOf(c.departureStation, capacity);
+            int[] arrivalStation = Arrays.copyOf(c.arrivalStation, capacity);
+            int[] trainNumber = Arrays.copyOf(c.trainNumber, capacity);
+            int[] trainType = Arrays.copyOf(c.trainType, capacity);
+            int[] serviceClass = Arrays.copyOf(c.serviceClass, capacity);
+            int[] seats = Arrays.copyOf(c.capacity, capacity);
+            long[] departureSeconds = Arrays.copyOf(c.departureSeconds, capacity);
+            long[] arrivalSeconds = Arrays.copyOf(c.arrivalSeconds, capacity);
+            double[] price = Arrays.copyOf(c.price, capacity);
+            long[] replaced = Arrays.copyOf(c.replaced, (capacity + 63) >>> 6);
+            int[] idOffset = Arrays.copyOf(c.idOffset, capacity + 1);
+            // idBytes si scrive solo oltre l'ultimo id pubblicato, che nessun lettore guarda; l'indice degli id
+            // invece lo leggono tutti, quindi si inserisce sempre in una copia
+            byte[] idBytes = c.idBytes;
+            int[] idTable;
+            if (c.idTable.length < newSize * 2) {
+                idTable = new int[Integer.highestOneBit(newSize * 2 - 1) << 1];
+                for (int row = 0; row < size; row++) {
+                    if (!isSet(replaced, row)) {
+                        insertId(idTable, idBytes, idOffset, row);
+                    }
+                }
+            } else {
+                idTable = c.idTable.clone();
+            }
+
+            int row = size;
+            for (Train train : trains) {
+                byte[] id = train.getId().getBytes(StandardCharsets.UTF_8);
+                int bytesEnd = idOffset[row] + id.length;
+                if (bytesEnd > idBytes.length) {
+                    idBytes = Arrays.copyOf(idBytes, Math.max(bytesEnd, idBytes.length + (idBytes.length >> 1) + 1024));
+                }
+                System.arraycopy(id, 0, idBytes, idOffset[row], id.length);
+                idOffset[row + 1] = bytesEnd;
+
+                departureStation[row] = internStation(train.getDepartureStation());
+                arrivalStation[row] = internStation(train.getArrivalStation());
+                trainNumber[row] = trainNumbers.intern(train.getTrainNumber());
+                trainType[row] = trainTypes.intern(train.getTrainType());
+                serviceClass[row] = serviceClasses.intern(train.getServiceClass());
+                seats[row] = train.getAvailableSeats();
+                departureSeconds[row] = train.getDepartureTime().getSeconds();
+                arrivalSeconds[row] = train.getArrivalTime().getSeconds();
+                price[row] = train.getPrice();
+
+                int previous = insertId(idTable, idBytes, idOffset, row);
+                if (previous >= 0) {
+                    replaced[previous >>> 6] |= 1L << previous;
+                }
+                row++;
+            }
+
+            columns = new Columns(newSize, departureStation, arrivalStation, trainNumber, trainType, serviceClass,
+                    seats, departureSeconds, arrivalSeconds, price, replaced, idBytes, idOffset, idTable,
+                    stations.toArray(new Station[0]), Map.copyOf(stationIndex), trainNumbers.values.toArray(new String[0]),
+                    trainTypes.values.toArray(new String[0]), serviceClasses.values.toArray(new String[0]));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int internStation(Station station) {
+        return stationIndex.computeIfAbsent(station.getId(), id -> {
+            stations.add(station);
+            return stations.size() - 1;
+        });
+    }
+
+    // inserisce la riga nell'indice degli id; restituisce la riga che aveva lo stesso id, oppure -1
+    private static int insertId(int[] idTable, byte[] idBytes, int[] idOffset, int row) {
+        int mask = idTable.length - 1;
+        int from = idOffset[row];
+        int to = idOffset[row + 1];
+        for (int slot = hash(idBytes, from, to) & mask; ; slot = (slot + 1) & mask) {
+            int existing = idTable[slot] - 1;
+            if (existing < 0) {
+                idTable[slot] = row + 1;
+                return -1;
+            }
+            if (Arrays.equals(idBytes, idOffset[existing], idOffset[existing + 1], idBytes, from, to)) {
+                idTable[slot] = row + 1;
+                return existing;
+            }
+        }
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // ------------------------------------------------------------------ letture
+
+    // riga corrente del treno, -1 se non esiste
+    public int rowOf(String trainId) {
+        Columns c = columns;
+        byte[] id = trainId.getBytes(StandardCharsets.UTF_8);
+        int mask = c.idTable.length - 1;
+        for (int slot = hash(id, 0, id.length) & mask; ; slot = (slot + 1) & mask) {
+            int row = c.idTable[slot] - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (row < c.size && Arrays.equals(c.idBytes, c.idOffset[row], c.idOffset[row + 1], id, 0, id.length)) {
+                return row;
+            }
+        }
+    }
+
+    public int size() {
+        return columns.size;
+    }
+
+    public boolean isCurrent(int row) {
+        return !isSet(columns.replaced, row);
+    }
+
+    public String trainId(int row) {
+        Columns c = columns;
+        return new String(c.idBytes, c.idOffset[row], c.idOffset[row + 1] - c.idOffset[row], StandardCharsets.UTF_8);
+    }
+
+    public int departureStation(int row) { return columns.departureStation[row]; }
+    public int arrivalStation(int row) { return columns.arrivalStation[row]; }
+    public long departureSeconds(int row) { return columns.departureSeconds[row]; }
+    public long arrivalSeconds(int row) { return columns.arrivalSeconds[row]; }
+    public int capacity(int row) { return columns.capacity[row]; }
+    public String serviceClass(int row) { return columns.serviceClasses[columns.serviceClass[row]]; }
+    public String trainType(int row) { return columns.trainTypes[columns.trainType[row]]; }
+
+    // indice interno della stazione, -1 se nessun treno la usa
+    public int stationIndex(String stationId) {
+        Integer index = columns.stationIds.get(stationId);
+        return index == null ? -1 : index;
+    }
+
+    public Station station(int stationIndex) {
+        return columns.stations[stationIndex];
+    }
+
+    public int stationCount() {
+        return columns.stations.length;
+    }
+
+    public List<Station> stations() {
+        return List.of(columns.stations);
+    }
+
+    public Train materialize(int row) {
+        return materialize(row, columns.capacity[row]);
+    }
+
+    // costruisce il messaggio Train della riga, con i posti indicati al posto della capienza
+    public Train materialize(int row, int availableSeats) {
+        Columns c = columns;
+        return Train.newBuilder()
+                .setId(trainId(row))
+                .setTrainNumber(c.trainNumbers[c.trainNumber[row]])
+                .setDepartureStation(c.stations[c.departureStation[row]])
+                .setArrivalStation(c.stations[c.arrivalStation[row]])
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(c.departureSeconds[row]))
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(c.arrivalSeconds[row]))
+                .setServiceClass(c.serviceClasses[c.serviceClass[row]])
+                .setPrice(c.price[row])
+                .setAvailableSeats(availableSeats)
+                .setTrainType(c.trainTypes[c.trainType[row]])
+                .build();
+    }
+}
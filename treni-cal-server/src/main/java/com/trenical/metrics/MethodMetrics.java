@@ -0,0 +1,65 @@
+package com.trenical.metrics;
+
+import io.grpc.Status;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Metriche di un singolo metodo gRPC: latenza per codice di stato, chiamate in corso, dimensione dei messaggi.
+// Tutti i metodi record* sono senza allocazioni una volta creato l'istogramma del codice di stato.
+public final class MethodMetrics {
+    // le chiamate in streaming possono restare aperte a lungo: oltre un'ora si registra un'ora
+    static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+    static final long MAX_MESSAGE_BYTES = 64L * 1024 * 1024;
+    private static final int STATUS_CODES = Status.Code.values().length;
+
+    private final String fullMethodName;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final AtomicReferenceArray<MetricsHistogram> latencyByCode = new AtomicReferenceArray<>(STATUS_CODES);
+    private final MetricsHistogram requestBytes = new MetricsHistogram(MAX_MESSAGE_BYTES);
+    private final MetricsHistogram responseBytes = new MetricsHistogram(MAX_MESSAGE_BYTES);
+
+    MethodMetrics(String fullMethodName) {
+        this.fullMethodName = fullMethodName;
+    }
+
+    void callStarted() {
+        started.increment();
+        inFlight.increment();
+    }
+
+    void callFinished(Status.Code code, long elapsedNanos) {
+        inFlight.decrement();
+        latency(code).record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    void recordRequestSize(int bytes) {
+        requestBytes.record(bytes);
+    }
+
+    void recordResponseSize(int bytes) {
+        responseBytes.record(bytes);
+    }
+
+    private MetricsHistogram latency(Status.Code code) {
+        MetricsHistogram histogram = latencyByCode.get(code.ordinal());
+        if (histogram == null) {
+            latencyByCode.compareAndSet(code.ordinal(), null, new MetricsHistogram(MAX_LATENCY_MICROS));
+            histogram = latencyByCode.get(code.ordinal());
+        }
+        return histogram;
+    }
+
+    public String getFullMethodName() { return fullMethodName; }
+    public long getStarted() { return started.sum(); }
+    public long getInFlight() { return inFlight.sum(); }
+    public MetricsHistogram getRequestBytes() { return requestBytes; }
+    public MetricsHistogram getResponseBytes() { return responseBytes; }
+
+    // null se nessuna chiamata si è chiusa con questo codice
+    public MetricsHistogram getLatencyMicros(Status.Code code) {
+        return latencyByCode.get(code.ordinal());
+    }
+}
@@ -0,0 +1,42 @@
+package com.trenical.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Istogramma HdrHistogram per le metriche: chi registra scrive su un Recorder (wait-free, nessuna allocazione),
+// chi legge scambia l'intervallo corrente e lo somma a un istogramma cumulativo.
+// 2 cifre significative (errore ~1%) tengono piccolo ogni istogramma anche con range ampi.
+public final class MetricsHistogram {
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final long highestTrackableValue;
+    private final Recorder recorder;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final Histogram cumulative;
+    private Histogram interval;
+
+    public MetricsHistogram(long highestTrackableValue) {
+        this.highestTrackableValue = highestTrackableValue;
+        this.recorder = new Recorder(highestTrackableValue, SIGNIFICANT_DIGITS);
+        this.cumulative = new Histogram(highestTrackableValue, SIGNIFICANT_DIGITS);
+    }
+
+    // i valori oltre il massimo vengono registrati come massimo invece di far fallire la chiamata
+    public void record(long value) {
+        recorder.recordValue(Math.max(0, Math.min(value, highestTrackableValue)));
+    }
+
+    // copia di tutto ciò che è stato registrato finora
+    public Histogram snapshot() {
+        snapshotLock.lock();
+        try {
+            interval = recorder.getIntervalHistogram(interval);
+            cumulative.add(interval);
+            return cumulative.copy();
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+}
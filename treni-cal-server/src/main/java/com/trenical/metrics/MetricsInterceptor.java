@@ -0,0 +1,94 @@
+package com.trenical.metrics;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Interceptor registrato su tutto il server: latenza per metodo e codice di stato, chiamate in corso
+// e dimensione dei messaggi in entrata e in uscita.
+// Per ogni chiamata si creano solo i due wrapper (chiamata e listener); la registrazione è senza allocazioni.
+// La dimensione viene da getSerializedSize, che il messaggio memorizza: gRPC non la ricalcola per serializzarlo.
+public class MetricsInterceptor implements ServerInterceptor {
+    private final RpcMetrics rpcMetrics;
+
+    public MetricsInterceptor() {
+        this(RpcMetrics.getInstance());
+    }
+
+    MetricsInterceptor(RpcMetrics rpcMetrics) {
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodMetrics metrics = rpcMetrics.method(call.getMethodDescriptor().getFullMethodName());
+        RecordingCall<ReqT, RespT> recordingCall = new RecordingCall<>(call, metrics);
+        metrics.callStarted();
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(recordingCall, headers);
+        } catch (RuntimeException e) {
+            recordingCall.finish(Status.Code.UNKNOWN);
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                if (message instanceof MessageLite) {
+                    metrics.recordRequestSize(((MessageLite) message).getSerializedSize());
+                }
+                super.onMessage(message);
+            }
+
+            // il client ha chiuso o la connessione è caduta: close() potrebbe non arrivare mai
+            @Override
+            public void onCancel() {
+                recordingCall.finish(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static final class RecordingCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private static final AtomicIntegerFieldUpdater<RecordingCall> FINISHED =
+                AtomicIntegerFieldUpdater.newUpdater(RecordingCall.class, "finished");
+
+        private final MethodMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        private volatile int finished;
+
+        RecordingCall(ServerCall<ReqT, RespT> delegate, MethodMetrics metrics) {
+            super(delegate);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            if (message instanceof MessageLite) {
+                metrics.recordResponseSize(((MessageLite) message).getSerializedSize());
+            }
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode());
+            super.close(status, trailers);
+        }
+
+        // la prima tra close e onCancel registra la chiamata, la seconda viene ignorata
+        void finish(Status.Code code) {
+            if (FINISHED.compareAndSet(this, 0, 1)) {
+                metrics.callFinished(code, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
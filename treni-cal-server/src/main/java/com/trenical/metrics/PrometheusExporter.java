@@ -0,0 +1,145 @@
+package com.trenical.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import com.trenical.observer.DeliveryMetrics;
+import com.trenical.observer.NotificationEngine;
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Metriche del server nel formato testuale di Prometheus, su http://127.0.0.1:<porta>/metrics.
+// Gli istogrammi sono esposti come summary (quantili giá calcolati da HdrHistogram), in secondi e byte.
+// Il testo si costruisce solo quando qualcuno lo legge: sul percorso delle chiamate non costa nulla.
+public class PrometheusExporter {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final RpcMetrics rpcMetrics;
+    private final DeliveryMetrics deliveryMetrics;
+    private final NotificationEngine notificationEngine;
+    private HttpServer httpServer;
+
+    public PrometheusExporter() {
+        this(RpcMetrics.getInstance(), DeliveryMetrics.getInstance(), NotificationEngine.getInstance());
+    }
+
+    PrometheusExporter(RpcMetrics rpcMetrics, DeliveryMetrics deliveryMetrics, NotificationEngine notificationEngine) {
+        this.rpcMetrics = rpcMetrics;
+        this.deliveryMetrics = deliveryMetrics;
+        this.notificationEngine = notificationEngine;
+    }
+
+    // solo su loopback: l'endpoint è pensato per uno scraper sulla stessa macchina
+    public void start(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpServer.start();
+        System.out.println("[PrometheusExporter] Metrics available on http://127.0.0.1:" + port + "/metrics");
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "trenical_rpc_latency_seconds", "summary", "Server-side RPC latency by method and status code.");
+        for (MethodMetrics method : rpcMetrics.getMethods()) {
+            for (Status.Code code : Status.Code.values()) {
+                MetricsHistogram latency = method.getLatencyMicros(code);
+                if (latency != null) {
+                    summary(out, "trenical_rpc_latency_seconds",
+                            "method=\"" + escape(method.getFullMethodName()) + "\",code=\"" + code + "\"",
+                            latency.snapshot(), 1e-6);
+                }
+            }
+        }
+
+        header(out, "trenical_rpc_started_total", "counter", "RPCs started by method.");
+        for (MethodMetrics method : rpcMetrics.getMethods()) {
+            sample(out, "trenical_rpc_started_total", "method=\"" + escape(method.getFullMethodName()) + "\"", method.getStarted());
+        }
+        header(out, "trenical_rpc_in_flight", "gauge", "RPCs currently in progress by method.");
+        for (MethodMetrics method : rpcMetrics.getMethods()) {
+            sample(out, "trenical_rpc_in_flight", "method=\"" + escape(method.getFullMethodName()) + "\"", method.getInFlight());
+        }
+
+        header(out, "trenical_rpc_request_bytes", "summary", "Serialized size of request messages by method.");
+        for (MethodMetrics method : rpcMetrics.getMethods()) {
+            summary(out, "trenical_rpc_request_bytes", "method=\"" + escape(method.getFullMethodName()) + "\"",
+                    method.getRequestBytes().snapshot(), 1);
+        }
+        header(out, "trenical_rpc_response_bytes", "summary", "Serialized size of response messages by method.");
+        for (MethodMetrics method : rpcMetrics.getMethods()) {
+            summary(out, "trenical_rpc_response_bytes", "method=\"" + escape(method.getFullMethodName()) + "\"",
+                    method.getResponseBytes().snapshot(), 1);
+        }
+
+        header(out, "trenical_notification_subscriptions", "gauge", "Active trip-change subscriptions by train.");
+        for (String trainId : notificationEngine.getSubscribedTrainIds()) {
+            sample(out, "trenical_notification_subscriptions", "train=\"" + escape(trainId) + "\"",
+                    notificationEngine.getObserverCount(trainId));
+        }
+
+        header(out, "trenical_notification_fanout_lag_seconds", "summary", "Time from notifyTripChange to onNext on the subscriber stream.");
+        summary(out, "trenical_notification_fanout_lag_seconds", "", deliveryMetrics.getFanOutLagMicros(), 1e-6);
+
+        counter(out, "trenical_notification_enqueued_total", "Notifications queued for delivery.", deliveryMetrics.getEnqueued());
+        counter(out, "trenical_notification_delivered_total", "Notifications written to subscriber streams.", deliveryMetrics.getDelivered());
+        counter(out, "trenical_notification_dropped_total", "Notifications dropped by a full queue.", deliveryMetrics.getDropped());
+        counter(out, "trenical_notification_coalesced_total", "Notifications replaced by a newer one for the same ticket.", deliveryMetrics.getCoalesced());
+        counter(out, "trenical_notification_disconnected_total", "Subscribers disconnected for being too slow or failing.", deliveryMetrics.getDisconnected());
+        header(out, "trenical_notification_queued", "gauge", "Notifications currently queued across all subscribers.");
+        sample(out, "trenical_notification_queued", "", deliveryMetrics.getQueuedNow());
+        header(out, "trenical_notification_max_queue_depth", "gauge", "Deepest subscriber queue observed.");
+        sample(out, "trenical_notification_max_queue_depth", "", deliveryMetrics.getMaxQueueDepth());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        sample(out, name, "", value);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    // scale converte l'unitá registrata (es. microsecondi) in quella esposta (secondi)
+    private static void summary(StringBuilder out, String name, String labels, Histogram histogram, double scale) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            sample(out, name, prefix + "quantile=\"" + quantile + "\"",
+                    histogram.getValueAtPercentile(quantile * 100) * scale);
+        }
+        sample(out, name + "_sum", labels, histogram.getMean() * histogram.getTotalCount() * scale);
+        sample(out, name + "_count", labels, histogram.getTotalCount());
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
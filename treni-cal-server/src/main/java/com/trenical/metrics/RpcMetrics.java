@@ -0,0 +1,42 @@
+package com.trenical.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registro delle metriche per metodo gRPC, alimentato da MetricsInterceptor.
+public class RpcMetrics {
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    private RpcMetrics() {}
+
+    private static final class Holder {
+        private static final RpcMetrics INSTANCE = new RpcMetrics();
+    }
+
+    public static RpcMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // get prima di computeIfAbsent: dopo la prima chiamata del metodo la ricerca non allocca né blocca
+    MethodMetrics method(String fullMethodName) {
+        MethodMetrics metrics = methods.get(fullMethodName);
+        return metrics != null ? metrics : methods.computeIfAbsent(fullMethodName, MethodMetrics::new);
+    }
+
+    public List<MethodMetrics> getMethods() {
+        List<MethodMetrics> sorted = new ArrayList<>(methods.values());
+        sorted.sort(Comparator.comparing(MethodMetrics::getFullMethodName));
+        return sorted;
+    }
+
+    public long getInFlight() {
+        long total = 0;
+        for (MethodMetrics metrics : methods.values()) {
+            total += metrics.getInFlight();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,209 @@
+package com.trenical.observer;
+
+import com.trenical.database.SeatMap;
+import com.trenical.database.TrainDatabase;
+import io.grpc.stub.ServerCallStreamObserver;
+import proto.AvailabilityChange;
+import proto.AvailabilityDelta;
+import proto.AvailabilityKey;
+import proto.WatchAvailabilityRequest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.StreamSupport;
+
+// Stream WatchAvailability: i posti liberi di alcuni (treno, classe) arrivano al client solo quando cambiano davvero.
+// - L'inventario avvisa il feed a ogni prenotazione/rilascio; il feed segna la chiave come "sporca" negli stream che la
+//   seguono e programma un invio dopo la finestra di coalescenza. Il thread dell'acquisto non costruisce né invia niente.
+// - All'invio si rilegge il valore attuale: dieci acquisti nella finestra diventano un solo cambiamento, e si manda
+//   solo se rispetto all'ultimo valore inviato è stata attraversata una soglia del client.
+// - Con un client lento le chiavi restano sporche e si inviano quando lo stream torna pronto, sempre con l'ultimo valore.
+public class AvailabilityFeed {
+    public static final int MAX_KEYS = 1000;
+    private static final long DEFAULT_COALESCE_MILLIS = Long.getLong("trenical.availability.coalesceMillis", 250);
+    private static final long MIN_COALESCE_MILLIS = 50;
+    private static final long MAX_COALESCE_MILLIS = 60_000;
+
+    private final TrainDatabase trainDatabase = TrainDatabase.getInstance();
+    private final Map<String, Set<Watch>> watchesByKey = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "availability-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AvailabilityFeed() {
+        trainDatabase.setSeatChangeListener(this::seatsChanged);
+    }
+
+    private static final class Holder {
+        private static final AvailabilityFeed INSTANCE = new AvailabilityFeed();
+    }
+
+    public static AvailabilityFeed getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // la richiesta è giá validata dal servizio: almeno una chiave, al massimo MAX_KEYS, soglie positive
+    public void watch(WatchAvailabilityRequest request, ServerCallStreamObserver<AvailabilityDelta> observer) {
+        Watch watch = new Watch(request, observer);
+        observer.setOnCancelHandler(() -> unwatch(watch));
+        observer.setOnReadyHandler(watch::onReady);
+        for (String key : watch.keys.keySet()) {
+            watchesByKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(watch);
+        }
+        // il primo messaggio è lo stato attuale di tutte le chiavi esistenti
+        watch.dirty.addAll(watch.keys.keySet());
+        watch.flush();
+    }
+
+    public int getWatchCount(String trainId, String serviceClass) {
+        Set<Watch> watches = watchesByKey.get(key(trainId, serviceClass));
+        return watches == null ? 0 : watches.size();
+    }
+
+    private void unwatch(Watch watch) {
+        watch.closed = true;
+        for (String key : watch.keys.keySet()) {
+            watchesByKey.computeIfPresent(key, (k, watches) -> {
+                watches.remove(watch);
+                return watches.isEmpty() ? null : watches;
+            });
+        }
+    }
+
+    private void seatsChanged(String trainId, String serviceClass) {
+        Set<Watch> watches = watchesByKey.get(key(trainId, serviceClass));
+        if (watches != null) {
+            String key = key(trainId, serviceClass);
+            for (Watch watch : watches) {
+                watch.markDirty(key);
+            }
+        }
+    }
+
+    private static String key(String trainId, String serviceClass) {
+        return trainId + '|' + serviceClass;
+    }
+
+    // soglie crescenti e distinte; con almeno una soglia si aggiunge 1, cosí anche l'esaurimento è un attraversamento
+    static int[] normalizeThresholds(Iterable<Integer> requested) {
+        int[] thresholds = StreamSupport.stream(requested.spliterator(), false)
+                .mapToInt(Integer::intValue).sorted().distinct().toArray();
+        if (thresholds.length == 0 || thresholds[0] == 1) {
+            return thresholds;
+        }
+        int[] withSoldOut = new int[thresholds.length + 1];
+        withSoldOut[0] = 1;
+        System.arraycopy(thresholds, 0, withSoldOut, 1, thresholds.length);
+        return withSoldOut;
+    }
+
+    // in quale fascia cade un numero di posti: quante soglie sono sopra (0 = sopra tutte)
+    static int band(int[] thresholds, int availableSeats) {
+        int index = Arrays.binarySearch(thresholds, availableSeats);
+        int atOrAbove = index >= 0 ? index + 1 : -index - 1;
+        return thresholds.length - atOrAbove;
+    }
+
+    private final class Watch {
+        private final ServerCallStreamObserver<AvailabilityDelta> observer;
+        private final Map<String, AvailabilityKey> keys = new LinkedHashMap<>();
+        // vuoto = si notifica ogni cambiamento
+        private final int[] thresholds;
+        private final long coalesceMillis;
+        private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        // serializza gli invii dello scheduler con quelli dell'onReadyHandler; lastSent è protetta dallo stesso lock
+        private final ReentrantLock sendLock = new ReentrantLock();
+        private final Map<String, Integer> lastSent = new HashMap<>();
+        private volatile boolean closed;
+        // un invio è stato rimandato perché lo stream non era pronto
+        private volatile boolean waitingForReady;
+
+        private Watch(WatchAvailabilityRequest request, ServerCallStreamObserver<AvailabilityDelta> observer) {
+            this.observer = observer;
+            for (AvailabilityKey key : request.getKeysList()) {
+                keys.put(key(key.getTrainId(), key.getServiceClass()), key);
+            }
+            this.thresholds = normalizeThresholds(request.getThresholdsList());
+            this.coalesceMillis = request.getCoalesceMillis() <= 0 ? DEFAULT_COALESCE_MILLIS
+                    : Math.max(MIN_COALESCE_MILLIS, Math.min(request.getCoalesceMillis(), MAX_COALESCE_MILLIS));
+        }
+
+        // sul thread che ha cambiato i posti: un add e al massimo una CAS
+        private void markDirty(String key) {
+            dirty.add(key);
+            if (flushScheduled.compareAndSet(false, true)) {
+                scheduler.schedule(this::flush, coalesceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // solo se c'è un invio rimandato: gli altri cambiamenti aspettano la loro finestra
+        private void onReady() {
+            if (waitingForReady) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            // azzerato prima di svuotare dirty: un cambiamento durante l'invio programma il successivo
+            flushScheduled.set(false);
+            sendLock.lock();
+            try {
+                if (closed || observer.isCancelled()) {
+                    return;
+                }
+                waitingForReady = !observer.isReady();
+                if (waitingForReady) {
+                    // le chiavi restano sporche: le invia l'onReadyHandler con il valore di quel momento
+                    return;
+                }
+                AvailabilityDelta.Builder delta = AvailabilityDelta.newBuilder();
+                for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+                    String key = it.next();
+                    it.remove();
+                    AvailabilityKey watched = keys.get(key);
+                    SeatMap seatMap = trainDatabase.getSeatMap(watched.getTrainId(), watched.getServiceClass());
+                    if (seatMap == null) {
+                        continue;
+                    }
+                    int seats = seatMap.getAvailableSeats();
+                    Integer previous = lastSent.get(key);
+                    if (previous == null || crossed(previous, seats)) {
+                        lastSent.put(key, seats);
+                        delta.addChanges(AvailabilityChange.newBuilder()
+                                .setTrainId(watched.getTrainId())
+                                .setServiceClass(watched.getServiceClass())
+                                .setAvailableSeats(seats));
+                    }
+                }
+                if (delta.getChangesCount() > 0) {
+                    observer.onNext(delta.build());
+                }
+            } catch (RuntimeException e) {
+                System.err.println("[AvailabilityFeed] Error sending availability delta: " + e.getMessage());
+                unwatch(this);
+            } finally {
+                sendLock.unlock();
+            }
+        }
+
+        private boolean crossed(int previous, int seats) {
+            if (thresholds.length == 0) {
+                return previous != seats;
+            }
+            return band(thresholds, previous) != band(thresholds, seats);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.trenical.observer;
+
+import com.trenical.metrics.MetricsHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Contatori sulla consegna delle notifiche: profonditá delle code per iscritto, scarti e disconnessioni,
+// e ritardo di fan-out (da notifyTripChange all'onNext sullo stream) in microsecondi.
+public class DeliveryMetrics {
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final AtomicLong queuedNow = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final MetricsHistogram fanOutLagMicros = new MetricsHistogram(TimeUnit.HOURS.toMicros(1));
+
+    private DeliveryMetrics() {}
+
+    private static final class Holder {
+        private static final DeliveryMetrics INSTANCE = new DeliveryMetrics();
+    }
+
+    public static DeliveryMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    void recordEnqueued(int queueDepth) {
+        enqueued.increment();
+        queuedNow.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(queueDepth, Math::max);
+    }
+
+    void recordDelivered(long fanOutLagNanos) {
+        delivered.increment();
+        queuedNow.decrementAndGet();
+        fanOutLagMicros.record(TimeUnit.NANOSECONDS.toMicros(fanOutLagNanos));
+    }
+
+    void recordDropped() {
+        dropped.increment();
+        queuedNow.decrementAndGet();
+    }
+
+    void recordCoalesced() {
+        coalesced.increment();
+        queuedNow.decrementAndGet();
+    }
+
+    void recordDisconnected(int discardedQueue) {
+        disconnected.increment();
+        queuedNow.addAndGet(-discardedQueue);
+    }
+
+    public long getEnqueued() { return enqueued.sum(); }
+    public long getDelivered() { return delivered.sum(); }
+    public long getDropped() { return dropped.sum(); }
+    public long getCoalesced() { return coalesced.sum(); }
+    public long getDisconnected() { return disconnected.sum(); }
+    // notifiche attualmente in coda, sommate su tutti gli iscritti
+    public long getQueuedNow() { return queuedNow.get(); }
+    public long getMaxQueueDepth() { return maxQueueDepth.get(); }
+    public Histogram getFanOutLagMicros() { return fanOutLagMicros.snapshot(); }
+
+    @Override
+    public String toString() {
+        return "enqueued=" + getEnqueued() + " delivered=" + getDelivered() + " dropped=" + getDropped()
+                + " coalesced=" + getCoalesced() + " disconnected=" + getDisconnected()
+                + " queuedNow=" + getQueuedNow() + " maxQueueDepth=" + getMaxQueueDepth();
+    }
+}
@@ -0,0 +1,207 @@
+package com.trenical.observer;
+
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainDatabase;
+import com.trenical.rubyViaggiatreno.CachingViaggiatrenoClient;
+import proto.Train;
+import ruby_viaggiatreno_microservizio.TrainStatusResponse;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Interroga il servizio Viaggiatreno solo per i treni che hanno iscritti nel NotificationEngine e
+// notifica gli iscritti solo quando ritardo, binario o stato cambiano davvero rispetto all'ultima lettura.
+//
+// L'intervallo di polling è per treno e si adatta alla distanza dalla partenza (o dall'arrivo):
+// un treno che parte tra sei ore viene letto ogni mezz'ora, uno in viaggio ogni minIntervalSeconds.
+// Ad ogni tick i treni "scaduti" vengono richiesti insieme con le chiamate batch del servizio Ruby, passando dalla
+// cache: una lettura ancora nel TTL (o giá in corso per un'altra richiesta) non rifà la chiamata.
+public class LiveStatusPoller {
+    // un treno a N secondi dalla partenza viene riletto dopo N/12 secondi (6h -> 30 min, 1h -> 5 min)
+    private static final long DISTANCE_DIVISOR = 12;
+
+    private final CachingViaggiatrenoClient client;
+    private final TrainDatabase trainDatabase;
+    private final NotificationEngine notificationEngine;
+    private final long minIntervalSeconds;
+    private final long maxIntervalSeconds;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    // ultimo stato letto per ogni treno seguito, per trainId
+    private final Map<String, TrainState> states = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private static final class TrainState {
+        TrainStatusResponse lastStatus;
+        long nextPollAtSeconds;
+    }
+
+    public LiveStatusPoller(CachingViaggiatrenoClient client) {
+        this(client, TrainDatabase.getInstance(), NotificationEngine.getInstance(),
+                Long.getLong("trenical.poller.minIntervalSeconds", 30),
+                Long.getLong("trenical.poller.maxIntervalSeconds", 1800),
+                Integer.getInteger("trenical.poller.batchSize", 50),
+                Integer.getInteger("trenical.poller.maxInFlight", 4));
+    }
+
+    public LiveStatusPoller(CachingViaggiatrenoClient client, TrainDatabase trainDatabase, NotificationEngine notificationEngine,
+                            long minIntervalSeconds, long maxIntervalSeconds, int batchSize, int maxInFlight) {
+        this.client = client;
+        this.trainDatabase = trainDatabase;
+        this.notificationEngine = notificationEngine;
+        this.minIntervalSeconds = minIntervalSeconds;
+        this.maxIntervalSeconds = Math.max(minIntervalSeconds, maxIntervalSeconds);
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public synchronized void start(long tickSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "live-status-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // fixed delay: un tick lento (servizio Ruby sotto carico) non accumula tick arretrati
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                pollOnce(Instant.now());
+            } catch (Exception e) {
+                System.err.println("[LiveStatusPoller] Poll failed: " + e.getMessage());
+            }
+        }, tickSeconds, tickSeconds, TimeUnit.SECONDS);
+        System.out.println("[LiveStatusPoller] Started, tick every " + tickSeconds + "s");
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // esegue un giro di polling e restituisce quanti treni sono stati interrogati
+    public int pollOnce(Instant now) {
+        Set<String> subscribed = notificationEngine.getSubscribedTrainIds();
+        // i treni senza piú iscritti escono dal polling, e il loro stato si dimentica
+        states.keySet().retainAll(subscribed);
+
+        long nowSeconds = now.getEpochSecond();
+        Map<String, List<String>> dueTrainIdsByNumber = new LinkedHashMap<>();
+        int due = 0;
+        for (String trainId : subscribed) {
+            Train train = trainDatabase.getTrainById(trainId);
+            if (train == null) {
+                continue;
+            }
+            TrainState state = states.computeIfAbsent(trainId, id -> new TrainState());
+            if (state.nextPollAtSeconds <= nowSeconds) {
+                dueTrainIdsByNumber.computeIfAbsent(viaggiatrenoNumber(train), n -> new ArrayList<>()).add(trainId);
+                due++;
+            }
+        }
+        if (dueTrainIdsByNumber.isEmpty()) {
+            return 0;
+        }
+
+        List<String> numbers = new ArrayList<>(dueTrainIdsByNumber.keySet());
+        List<TrainStatusResponse> responses = client.getTrainStatusesPipelined(numbers, batchSize, maxInFlight).join();
+        for (int i = 0; i < numbers.size(); i++) {
+            for (String trainId : dueTrainIdsByNumber.get(numbers.get(i))) {
+                apply(trainId, responses.get(i), now);
+            }
+        }
+        return due;
+    }
+
+    private void apply(String trainId, TrainStatusResponse status, Instant now) {
+        Train train = trainDatabase.getTrainById(trainId);
+        TrainState state = states.get(trainId);
+        if (train == null || state == null) {
+            return;
+        }
+        TrainStatusResponse previous = state.lastStatus;
+        int delay = status.getFound() ? status.getDelayMinutes() : (previous == null ? 0 : previous.getDelayMinutes());
+        state.nextPollAtSeconds = now.getEpochSecond() + pollIntervalSeconds(train, delay, now);
+        if (!status.getFound()) {
+            // errore o treno sconosciuto a viaggiatreno: teniamo l'ultimo stato valido e riproviamo al prossimo giro
+            return;
+        }
+        state.lastStatus = status;
+
+        String message = describeChange(train, previous, status);
+        if (message == null) {
+            return;
+        }
+        Timestamp newDeparture = Timestamp.newBuilder()
+                .setSeconds(train.getDepartureTime().getSeconds() + status.getDelayMinutes() * 60L)
+                .build();
+        Timestamp newArrival = Timestamp.newBuilder()
+                .setSeconds(train.getArrivalTime().getSeconds() + status.getDelayMinutes() * 60L)
+                .build();
+        trainDatabase.updateTrainStatus(trainId, status.getTrainStatusDescription(), status.getPlatform(), newArrival);
+        notificationEngine.notifyTripChange(trainId, NotificationEngine.ALL_TICKETS, message, newDeparture, status.getPlatform());
+    }
+
+    // null se non c'è nulla da notificare. Alla prima lettura si notifica solo un ritardo o un binario
+    // giá assegnato: lo stato "regolare" di un treno in orario non interessa a nessuno.
+    private static String describeChange(Train train, TrainStatusResponse previous, TrainStatusResponse current) {
+        int previousDelay = previous == null ? 0 : previous.getDelayMinutes();
+        String previousPlatform = previous == null ? "" : previous.getPlatform();
+        List<String> changes = new ArrayList<>();
+        if (current.getDelayMinutes() != previousDelay) {
+            changes.add(current.getDelayMinutes() > 0
+                    ? "delay now " + current.getDelayMinutes() + " minutes (was " + previousDelay + ")"
+                    : "back on time (was " + previousDelay + " minutes late)");
+        }
+        if (!current.getPlatform().equals(previousPlatform)) {
+            changes.add("platform " + current.getPlatform());
+        }
+        if (previous != null && !current.getTrainStatusDescription().equals(previous.getTrainStatusDescription())) {
+            changes.add("status: " + current.getTrainStatusDescription());
+        }
+        if (changes.isEmpty()) {
+            return null;
+        }
+        return "Train " + train.getTrainNumber() + ": " + String.join(", ", changes) + ".";
+    }
+
+    // distanza (in secondi) dal viaggio: tempo alla partenza prevista, zero mentre il treno è in viaggio,
+    // tempo trascorso dopo l'arrivo. Il ritardo sposta sia la partenza sia l'arrivo.
+    public long pollIntervalSeconds(Train train, int delayMinutes, Instant now) {
+        long nowSeconds = now.getEpochSecond();
+        long departure = train.getDepartureTime().getSeconds() + delayMinutes * 60L;
+        long arrival = train.getArrivalTime().getSeconds() + delayMinutes * 60L;
+        long distance;
+        if (nowSeconds < departure) {
+            distance = departure - nowSeconds;
+        } else if (nowSeconds <= arrival) {
+            distance = 0;
+        } else {
+            distance = nowSeconds - arrival;
+        }
+        return Math.max(minIntervalSeconds, Math.min(maxIntervalSeconds, distance / DISTANCE_DIVISOR));
+    }
+
+    // "FR 9600" -> "9600": viaggiatreno conosce i treni solo per numero, senza categoria
+    private static String viaggiatrenoNumber(Train train) {
+        String number = train.getTrainNumber().trim();
+        int space = number.lastIndexOf(' ');
+        return space < 0 ? number : number.substring(space + 1);
+    }
+
+    public int getTrackedTrainCount() {
+        return states.size();
+    }
+}
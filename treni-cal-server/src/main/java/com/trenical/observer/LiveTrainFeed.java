@@ -0,0 +1,171 @@
+package com.trenical.observer;
+
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainDatabase;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import proto.Train;
+import proto.TrainRealTimeUpdate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Feed in tempo reale condiviso per treno: a ogni tick di uno scheduler il treno e i posti si leggono una
+// sola volta e l'aggiornamento va a tutti gli stream GetTrainRealTimeInfo aperti su quel treno.
+// Ogni stream ha la propria sequenza di aggiornamenti 1..5, come se fosse l'unico iscritto.
+// Nessun thread del server gRPC resta occupato mentre lo stream è aperto.
+public class LiveTrainFeed {
+    static final int UPDATES_PER_SUBSCRIPTION = 5;
+    private static final long UPDATE_INTERVAL_MILLIS = Long.getLong("trenical.live.updateIntervalMillis", 2000);
+
+    private final TrainDatabase trainDatabase = TrainDatabase.getInstance();
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                Thread thread = new Thread(runnable, "live-train-feed");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private LiveTrainFeed() {}
+
+    private static final class Holder {
+        private static final LiveTrainFeed INSTANCE = new LiveTrainFeed();
+    }
+
+    public static LiveTrainFeed getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Subscriber {
+        private final StreamObserver<TrainRealTimeUpdate> observer;
+        private final ServerCallStreamObserver<TrainRealTimeUpdate> serverObserver;
+        // aggiornamenti giá inviati: lo usa solo il tick del feed, e i tick dello stesso feed non si sovrappongono
+        private int sentUpdates;
+
+        private Subscriber(StreamObserver<TrainRealTimeUpdate> observer) {
+            this.observer = observer;
+            this.serverObserver = observer instanceof ServerCallStreamObserver
+                    ? (ServerCallStreamObserver<TrainRealTimeUpdate>) observer
+                    : null;
+        }
+    }
+
+    private static final class Feed {
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private ScheduledFuture<?> task;
+    }
+
+    public void subscribe(String trainId, StreamObserver<TrainRealTimeUpdate> observer) {
+        Subscriber subscriber = new Subscriber(observer);
+        if (subscriber.serverObserver != null) {
+            // al cancel del client rilascio subito l'iscrizione, il feed si ferma al tick successivo se resta vuoto
+            subscriber.serverObserver.setOnCancelHandler(() -> unsubscribe(trainId, subscriber));
+        }
+        feeds.compute(trainId, (id, feed) -> {
+            if (feed == null) {
+                feed = new Feed();
+                Feed newFeed = feed;
+                feed.task = scheduler.scheduleAtFixedRate(() -> publish(id, newFeed),
+                        UPDATE_INTERVAL_MILLIS, UPDATE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            feed.subscribers.add(subscriber);
+            return feed;
+        });
+    }
+
+    private void unsubscribe(String trainId, Subscriber subscriber) {
+        Feed feed = feeds.get(trainId);
+        if (feed != null) {
+            feed.subscribers.remove(subscriber);
+        }
+    }
+
+    public int getSubscriberCount(String trainId) {
+        Feed feed = feeds.get(trainId);
+        return feed == null ? 0 : feed.subscribers.size();
+    }
+
+    // eseguito dallo scheduler: i tick dello stesso feed non si sovrappongono mai
+    private void publish(String trainId, Feed feed) {
+        if (stopIfIdle(trainId, feed)) {
+            return;
+        }
+
+        Train train = trainDatabase.getTrainById(trainId);
+        if (train == null) {
+            for (Subscriber subscriber : feed.subscribers) {
+                subscriber.observer.onError(Status.NOT_FOUND.withDescription("Train not found").asRuntimeException());
+                feed.subscribers.remove(subscriber);
+            }
+            stopIfIdle(trainId, feed);
+            return;
+        }
+
+        int availableSeats = trainDatabase.getAvailableSeats(trainId, train.getServiceClass());
+        for (Subscriber subscriber : feed.subscribers) {
+            deliver(feed, subscriber, train, availableSeats);
+        }
+        stopIfIdle(trainId, feed);
+    }
+
+    // Simulo dei Cambiamenti: l'i-esimo aggiornamento di uno stream ha un ritardo di i minuti
+    private static TrainRealTimeUpdate update(Train train, int availableSeats, int i) {
+        Timestamp updatedArrivalTime = Timestamp.newBuilder()
+                .setSeconds(train.getArrivalTime().getSeconds() + (i * 60L)) // ritardo di i minuti
+                .build();
+        String platform = (i % 2 == 0) ? "5" : "5B";
+        return TrainRealTimeUpdate.newBuilder()
+                .setTrainId(train.getId())
+                .setUpdatedArrivalTime(updatedArrivalTime)
+                .setPlatform(platform)
+                .setStatusUpdate("Train status update " + (i + 1) + ": Delayed, new platform " + platform)
+                .setAvailableSeats(availableSeats)
+                .build();
+    }
+
+    private void deliver(Feed feed, Subscriber subscriber, Train train, int availableSeats) {
+        ServerCallStreamObserver<TrainRealTimeUpdate> serverObserver = subscriber.serverObserver;
+        if (serverObserver != null) {
+            if (serverObserver.isCancelled()) {
+                feed.subscribers.remove(subscriber);
+                return;
+            }
+            if (!serverObserver.isReady()) {
+                // client lento: salto questo tick invece di accumulare messaggi, riceverá il prossimo
+                return;
+            }
+        }
+        try {
+            // un tick saltato non consuma la sequenza: il client lento riceve comunque gli aggiornamenti 1..5
+            subscriber.observer.onNext(update(train, availableSeats, subscriber.sentUpdates));
+            if (++subscriber.sentUpdates == UPDATES_PER_SUBSCRIPTION) {
+                feed.subscribers.remove(subscriber);
+                subscriber.observer.onCompleted();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[LiveTrainFeed] Error sending update for train " + train.getId() + ": " + e.getMessage());
+            feed.subscribers.remove(subscriber);
+        }
+    }
+
+    // ferma il task dello scheduler quando il feed non ha piú iscritti; compute evita la corsa con subscribe
+    private boolean stopIfIdle(String trainId, Feed feed) {
+        boolean[] stopped = new boolean[1];
+        feeds.computeIfPresent(trainId, (id, current) -> {
+            if (current == feed && feed.subscribers.isEmpty()) {
+                feed.task.cancel(false);
+                stopped[0] = true;
+                return null;
+            }
+            return current;
+        });
+        return stopped[0];
+    }
+}
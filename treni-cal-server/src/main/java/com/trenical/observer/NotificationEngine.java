@@ -4,66 +4,87 @@ import proto.TripChangeNotification;
 import com.google.protobuf.Timestamp;
 
 import java.time.Instant;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public class NotificationEngine {
-    private static NotificationEngine instance;
-    private final Map<String, List<TripObserver>> trainObservers = new ConcurrentHashMap<>();
+    public static final String ALL_TICKETS = "*";
+
+    // Registro indicizzato sia per treno (broadcast a tutto il treno) sia per biglietto (consegna diretta).
+    // I set concorrenti non copiano nulla ad ogni iscrizione/disiscrizione, a differenza di CopyOnWriteArrayList.
+    private final Map<String, Set<TripObserver>> observersByTrain = new ConcurrentHashMap<>();
+    private final Map<String, Set<TripObserver>> observersByTicket = new ConcurrentHashMap<>();
 
     private NotificationEngine() {}
 
 
-    public static synchronized NotificationEngine getInstance() {
-        if (instance == null) {
-            instance = new NotificationEngine();
-        }
-        return instance;
+    private static final class Holder {
+        private static final NotificationEngine INSTANCE = new NotificationEngine();
     }
 
+    public static NotificationEngine getInstance() {
+        return Holder.INSTANCE;
+    }
 
-    public void addObserver(String trainId, TripObserver observer) {
-        trainObservers.computeIfAbsent(trainId, k -> new CopyOnWriteArrayList<>()).add(observer);
-        System.out.println("[NotificationEngine] Added observer for ticket " + observer.getTicketId() + " on train " + trainId);
+
+    public void addObserver(TripObserver observer) {
+        register(observersByTrain, observer.getTrainId(), observer);
+        register(observersByTicket, observer.getTicketId(), observer);
+        System.out.println("[NotificationEngine] Added observer for ticket " + observer.getTicketId() + " on train " + observer.getTrainId());
     }
 
-    public void removeObserver(String trainId, TripObserver observer) {
-        List<TripObserver> observers = trainObservers.get(trainId);
-        if (observers != null) {
-            observers.remove(observer);
-            System.out.println("[NotificationEngine] Removed observer for ticket " + observer.getTicketId() + " on train " + trainId);
+    public void removeObserver(TripObserver observer) {
+        boolean removed = unregister(observersByTrain, observer.getTrainId(), observer);
+        unregister(observersByTicket, observer.getTicketId(), observer);
+        if (removed) {
+            System.out.println("[NotificationEngine] Removed observer for ticket " + observer.getTicketId() + " on train " + observer.getTrainId());
         }
     }
 
     public void removeObserverForTicket(String ticketId, TripObserver observerToRemove) {
-        trainObservers.forEach((trainId, observers) -> {
-            observers.removeIf(obs -> obs.getTicketId().equals(ticketId) && obs.equals(observerToRemove));
-        });
-        System.out.println("[NotificationEngine] Attempted removal of observer for ticket " + ticketId);
+        if (observerToRemove.getTicketId().equals(ticketId)) {
+            removeObserver(observerToRemove);
+        }
+    }
+
+    public Set<String> getSubscribedTrainIds() {
+        return Collections.unmodifiableSet(observersByTrain.keySet());
+    }
+
+    public int getObserverCount(String trainId) {
+        Set<TripObserver> observers = observersByTrain.get(trainId);
+        return observers == null ? 0 : observers.size();
     }
 
 
 
+    // ticketIdForUpdate può essere ALL_TICKETS ("*") per notificare tutti gli iscritti del treno
     public void notifyTripChange(String trainId, String ticketIdForUpdate, String message, Timestamp newTime, String newPlatform) {
-        List<TripObserver> observers = trainObservers.get(trainId);
-        if (observers != null && !observers.isEmpty()) {
-            TripChangeNotification notification = TripChangeNotification.newBuilder()
-                    .setTicketId(ticketIdForUpdate)
-                    .setUpdateMessage(message)
-                    .setNewDepartureTime(newTime == null ? Timestamp.newBuilder().setSeconds(0).build() : newTime)
-                    .setNewPlatform(newPlatform == null ? "" : newPlatform)
-                    .build();
-
-            System.out.println("[NotificationEngine] Notifying " + observers.size() + " observers for train " + trainId + " about: " + message);
-            for (TripObserver observer : observers) {
-                if(observer.getTicketId().equals(ticketIdForUpdate)) {
-                    observer.sendUpdate(notification);
-                }
-            }
-        } else {
+        long notifiedAtNanos = System.nanoTime();
+        boolean broadcast = ALL_TICKETS.equals(ticketIdForUpdate);
+        Set<TripObserver> observers = broadcast ? observersByTrain.get(trainId) : observersByTicket.get(ticketIdForUpdate);
+        if (observers == null || observers.isEmpty()) {
             System.out.println("[NotificationEngine] No observers for train " + trainId + " to notify about: " + message);
+            return;
+        }
+
+        // la notifica viene costruita una sola volta per tutti gli iscritti; getSerializedSize
+        // la memorizza nel messaggio, cosí non viene ricalcolata per ogni stream.
+        TripChangeNotification notification = TripChangeNotification.newBuilder()
+                .setTicketId(ticketIdForUpdate)
+                .setUpdateMessage(message)
+                .setNewDepartureTime(newTime == null ? Timestamp.newBuilder().setSeconds(0).build() : newTime)
+                .setNewPlatform(newPlatform == null ? "" : newPlatform)
+                .build();
+        notification.getSerializedSize();
+
+        System.out.println("[NotificationEngine] Notifying " + observers.size() + " observers for train " + trainId + " about: " + message);
+        for (TripObserver observer : observers) {
+            if (broadcast || observer.getTrainId().equals(trainId)) {
+                observer.sendUpdate(notification, notifiedAtNanos);
+            }
         }
     }
 
@@ -76,4 +97,23 @@ public class NotificationEngine {
     }
 
 
+    private static void register(Map<String, Set<TripObserver>> index, String key, TripObserver observer) {
+        index.compute(key, (k, observers) -> {
+            if (observers == null) {
+                observers = ConcurrentHashMap.newKeySet();
+            }
+            observers.add(observer);
+            return observers;
+        });
+    }
+
+    // rimuove l'osservatore e anche la chiave quando il set resta vuoto, cosí l'indice non cresce con il churn
+    private static boolean unregister(Map<String, Set<TripObserver>> index, String key, TripObserver observer) {
+        boolean[] removed = new boolean[1];
+        index.computeIfPresent(key, (k, observers) -> {
+            removed[0] = observers.remove(observer);
+            return observers.isEmpty() ? null : observers;
+        });
+        return removed[0];
+    }
 }
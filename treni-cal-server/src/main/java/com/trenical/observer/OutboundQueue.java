@@ -0,0 +1,84 @@
+package com.trenical.observer;
+
+import proto.TripChangeNotification;
+
+import java.util.Arrays;
+
+// Coda di uscita di un TripObserver: accanto a ogni notifica tiene l'istante (System.nanoTime) in cui il
+// NotificationEngine l'ha emessa, in due array circolari paralleli. Cosí il ritardo di fan-out si misura
+// senza allocare un oggetto per notifica. Non è thread-safe: la protegge il lock del TripObserver.
+final class OutboundQueue {
+    private TripChangeNotification[] notifications = new TripChangeNotification[4];
+    private long[] notifiedAtNanos = new long[4];
+    private int head;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void addLast(TripChangeNotification notification, long notifiedAt) {
+        if (size == notifications.length) {
+            grow();
+        }
+        int tail = (head + size) & (notifications.length - 1);
+        notifications[tail] = notification;
+        notifiedAtNanos[tail] = notifiedAt;
+        size++;
+    }
+
+    TripChangeNotification peekFirst() {
+        return notifications[head];
+    }
+
+    long firstNotifiedAt() {
+        return notifiedAtNanos[head];
+    }
+
+    void removeFirst() {
+        notifications[head] = null;
+        head = (head + 1) & (notifications.length - 1);
+        size--;
+    }
+
+    // toglie la prima notifica per lo stesso biglietto e mette quella nuova in fondo; false se non c'era
+    boolean replaceSameTicket(TripChangeNotification notification, long notifiedAt) {
+        int mask = notifications.length - 1;
+        for (int i = 0; i < size; i++) {
+            if (notifications[(head + i) & mask].getTicketId().equals(notification.getTicketId())) {
+                for (int j = i; j < size - 1; j++) {
+                    notifications[(head + j) & mask] = notifications[(head + j + 1) & mask];
+                    notifiedAtNanos[(head + j) & mask] = notifiedAtNanos[(head + j + 1) & mask];
+                }
+                size--;
+                notifications[(head + size) & mask] = null;
+                addLast(notification, notifiedAt);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void clear() {
+        Arrays.fill(notifications, null);
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        TripChangeNotification[] grownNotifications = new TripChangeNotification[notifications.length * 2];
+        long[] grownNotifiedAt = new long[notifications.length * 2];
+        for (int i = 0; i < size; i++) {
+            int from = (head + i) & (notifications.length - 1);
+            grownNotifications[i] = notifications[from];
+            grownNotifiedAt[i] = notifiedAtNanos[from];
+        }
+        notifications = grownNotifications;
+        notifiedAtNanos = grownNotifiedAt;
+        head = 0;
+    }
+}
@@ -0,0 +1,11 @@
+package com.trenical.observer;
+
+// Cosa fa un TripObserver quando la sua coda di notifiche in uscita è piena (client lento o bloccato).
+public enum OverflowPolicy {
+    // sostituisce la notifica giá in coda per lo stesso biglietto con quella piú recente
+    COALESCE_LATEST,
+    // scarta la notifica piú vecchia in coda
+    DROP_OLDEST,
+    // chiude lo stream del client con RESOURCE_EXHAUSTED
+    DISCONNECT
+}
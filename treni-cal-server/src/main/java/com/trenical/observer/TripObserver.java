@@ -1,26 +1,154 @@
 package com.trenical.observer;
 
 
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import proto.TripChangeNotification;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 // Questo è l' 'Observer'
+//
+// Le notifiche non vengono scritte direttamente sullo stream dal thread del notificatore: finiscono in
+// una coda limitata, svuotata solo quando lo stream è pronto (isReady / setOnReadyHandler). Un client
+// lento riempie solo la propria coda, e quando è piena si applica l'OverflowPolicy configurata.
 public class TripObserver {
+    private static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("trenical.notify.queueCapacity", 32);
+    private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.valueOf(
+            System.getProperty("trenical.notify.overflowPolicy", OverflowPolicy.COALESCE_LATEST.name()));
+
     private final StreamObserver<TripChangeNotification> clientStreamObserver;
+    private final ServerCallStreamObserver<TripChangeNotification> serverCallObserver;
+    private final String trainId;
     private final String ticketId;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final DeliveryMetrics metrics = DeliveryMetrics.getInstance();
+
+    // coda e stream sono protetti dallo stesso lock: gRPC non ammette chiamate concorrenti a onNext
+    private final ReentrantLock lock = new ReentrantLock();
+    private final OutboundQueue outboundQueue = new OutboundQueue();
+    private boolean closed;
+
+    public TripObserver(StreamObserver<TripChangeNotification> clientStreamObserver, String trainId, String ticketId) {
+        this(clientStreamObserver, trainId, ticketId, DEFAULT_QUEUE_CAPACITY, DEFAULT_OVERFLOW_POLICY);
+    }
 
-    public TripObserver(StreamObserver<TripChangeNotification> clientStreamObserver, String ticketId) {
+    public TripObserver(StreamObserver<TripChangeNotification> clientStreamObserver, String trainId, String ticketId,
+                        int queueCapacity, OverflowPolicy overflowPolicy) {
         this.clientStreamObserver = clientStreamObserver;
+        this.trainId = trainId;
         this.ticketId = ticketId;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        if (clientStreamObserver instanceof ServerCallStreamObserver) {
+            // va registrato prima che il metodo del servizio ritorni
+            this.serverCallObserver = (ServerCallStreamObserver<TripChangeNotification>) clientStreamObserver;
+            this.serverCallObserver.setOnReadyHandler(this::drain);
+        } else {
+            this.serverCallObserver = null;
+        }
     }
 
     public void sendUpdate(TripChangeNotification notification) {
-        if (notification.getTicketId().equals(this.ticketId) || notification.getTicketId().equals("*")) { // "*" può essere una wildcard usata per esempio se si vogliono fare aggiornamenti generici
+        sendUpdate(notification, System.nanoTime());
+    }
+
+    // notifiedAtNanos: quando il NotificationEngine ha emesso la notifica, per misurare il ritardo di fan-out
+    public void sendUpdate(TripChangeNotification notification, long notifiedAtNanos) {
+        if (notification.getTicketId().equals(this.ticketId) || notification.getTicketId().equals(NotificationEngine.ALL_TICKETS)) { // "*" può essere una wildcard usata per esempio se si vogliono fare aggiornamenti generici
+            boolean disconnect = false;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (outboundQueue.size() >= queueCapacity) {
+                    disconnect = !handleOverflow(notification, notifiedAtNanos);
+                    if (disconnect) {
+                        metrics.recordDisconnected(outboundQueue.size());
+                        outboundQueue.clear();
+                        closed = true;
+                    }
+                } else {
+                    outboundQueue.addLast(notification, notifiedAtNanos);
+                    metrics.recordEnqueued(outboundQueue.size());
+                }
+                if (!disconnect) {
+                    drainLocked();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (disconnect) {
+                System.err.println("[TripObserver] Queue full for ticket " + ticketId + ", disconnecting slow client");
+                handleError(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Client too slow, notification queue overflow")
+                        .asRuntimeException());
+                NotificationEngine.getInstance().removeObserver(this);
+            }
+        }
+    }
+
+    // restituisce false se il client va disconnesso
+    private boolean handleOverflow(TripChangeNotification notification, long notifiedAtNanos) {
+        switch (overflowPolicy) {
+            case COALESCE_LATEST:
+                // sostituisco la notifica in coda per lo stesso biglietto (o per la stessa wildcard)
+                if (outboundQueue.replaceSameTicket(notification, notifiedAtNanos)) {
+                    metrics.recordEnqueued(outboundQueue.size());
+                    metrics.recordCoalesced();
+                    return true;
+                }
+                // nessuna notifica con la stessa chiave: come DROP_OLDEST
+                return dropOldest(notification, notifiedAtNanos);
+            case DROP_OLDEST:
+                return dropOldest(notification, notifiedAtNanos);
+            case DISCONNECT:
+            default:
+                return false;
+        }
+    }
+
+    private boolean dropOldest(TripChangeNotification notification, long notifiedAtNanos) {
+        outboundQueue.removeFirst();
+        metrics.recordDropped();
+        outboundQueue.addLast(notification, notifiedAtNanos);
+        metrics.recordEnqueued(outboundQueue.size());
+        return true;
+    }
+
+    // chiamato da gRPC quando lo stream torna pronto a ricevere
+    private void drain() {
+        lock.lock();
+        try {
+            drainLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drainLocked() {
+        if (!closed && serverCallObserver != null && serverCallObserver.isCancelled()) {
+            closed = true;
+            metrics.recordDisconnected(outboundQueue.size());
+            outboundQueue.clear();
+            return;
+        }
+        while (!closed && !outboundQueue.isEmpty() && (serverCallObserver == null || serverCallObserver.isReady())) {
+            TripChangeNotification next = outboundQueue.peekFirst();
+            long notifiedAtNanos = outboundQueue.firstNotifiedAt();
+            outboundQueue.removeFirst();
             try {
-                clientStreamObserver.onNext(notification);
+                clientStreamObserver.onNext(next);
+                metrics.recordDelivered(System.nanoTime() - notifiedAtNanos);
             } catch (Exception e) {
                 System.err.println("Error sending update to client for ticket " + ticketId + ": " + e.getMessage());
-                NotificationEngine.getInstance().removeObserverForTicket(this.ticketId, this);
+                closed = true;
+                metrics.recordDisconnected(outboundQueue.size() + 1);
+                outboundQueue.clear();
+                NotificationEngine.getInstance().removeObserver(this);
             }
         }
     }
@@ -29,19 +157,40 @@ public class TripObserver {
         return ticketId;
     }
 
+    public String getTrainId() {
+        return trainId;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return outboundQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
 
     public void completeSubscription() {
+        lock.lock();
         try {
             clientStreamObserver.onCompleted();
         } catch (Exception e) {
             System.err.println("Error completing client stream for ticket " + ticketId + ": " + e.getMessage());
+        } finally {
+            closed = true;
+            lock.unlock();
         }
     }
     public void handleError(Throwable t) {
+        lock.lock();
         try {
             clientStreamObserver.onError(t);
         } catch (Exception e) {
             System.err.println("Error sending error to client for ticket " + ticketId + ": " + e.getMessage());
+        } finally {
+            closed = true;
+            lock.unlock();
         }
     }
 
@@ -0,0 +1,124 @@
+package com.trenical.planner;
+
+import com.trenical.database.TrainStore;
+import proto.Train;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Orario "a colonne" per il journey planner: ogni treno è una connessione (stazione di partenza,
+// stazione di arrivo, orari), le stazioni sono gli interi del TrainStore e le connessioni sono ordinate
+// per partenza. La scansione legge solo array primitivi contigui; il Train si materializza dal TrainStore
+// solo per le tratte degli itinerari trovati.
+// Immutabile: quando l'orario cambia se ne costruisce uno nuovo.
+public final class CompactTimetable {
+
+    // ordinamento su un long: (partenza - prima partenza) nei bit alti, riga del TrainStore nei bit bassi
+    private static final int ROW_BITS = 27;
+
+    private final TrainStore store;
+    private final String[] stopIds;
+    private final int[] minTransferSeconds;
+
+    // colonne delle connessioni, tutte lunghe connectionCount e ordinate per departureSeconds
+    private final int[] departureStop;
+    private final int[] arrivalStop;
+    private final long[] departureSeconds;
+    private final long[] arrivalSeconds;
+    private final int[] rows;
+
+    private CompactTimetable(TrainStore store, String[] stopIds, int[] minTransferSeconds,
+                             int[] departureStop, int[] arrivalStop, long[] departureSeconds, long[] arrivalSeconds,
+                             int[] rows) {
+        this.store = store;
+        this.stopIds = stopIds;
+        this.minTransferSeconds = minTransferSeconds;
+        this.departureStop = departureStop;
+        this.arrivalStop = arrivalStop;
+        this.departureSeconds = departureSeconds;
+        this.arrivalSeconds = arrivalSeconds;
+        this.rows = rows;
+    }
+
+    // transferOverrides: tempo minimo di cambio per le stazioni che non usano defaultTransferSeconds
+    public static CompactTimetable build(TrainStore store, int defaultTransferSeconds, Map<String, Integer> transferOverrides) {
+        int size = store.size();
+        if (size >= 1 << ROW_BITS) {
+            throw new IllegalStateException("Timetable too large for the journey planner: " + size + " trains");
+        }
+        long firstDeparture = Long.MAX_VALUE;
+        for (int row = 0; row < size; row++) {
+            firstDeparture = Math.min(firstDeparture, store.departureSeconds(row));
+        }
+        long origin = firstDeparture;
+        long[] keys = IntStream.range(0, size)
+                .filter(row -> store.isCurrent(row) && store.arrivalSeconds(row) >= store.departureSeconds(row))
+                .mapToLong(row -> (store.departureSeconds(row) - origin) << ROW_BITS | row)
+                .toArray();
+        Arrays.parallelSort(keys);
+
+        int[] rows = new int[keys.length];
+        int[] departureStop = new int[keys.length];
+        int[] arrivalStop = new int[keys.length];
+        long[] departureSeconds = new long[keys.length];
+        long[] arrivalSeconds = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            int row = (int) (keys[i] & ((1L << ROW_BITS) - 1));
+            rows[i] = row;
+            departureStop[i] = store.departureStation(row);
+            arrivalStop[i] = store.arrivalStation(row);
+            departureSeconds[i] = store.departureSeconds(row);
+            arrivalSeconds[i] = store.arrivalSeconds(row);
+        }
+
+        String[] stopIds = new String[store.stationCount()];
+        int[] minTransferSeconds = new int[stopIds.length];
+        for (int stop = 0; stop < stopIds.length; stop++) {
+            stopIds[stop] = store.station(stop).getId();
+            minTransferSeconds[stop] = transferOverrides.getOrDefault(stopIds[stop], defaultTransferSeconds);
+        }
+        return new CompactTimetable(store, stopIds, minTransferSeconds,
+                departureStop, arrivalStop, departureSeconds, arrivalSeconds, rows);
+    }
+
+    // -1 se la stazione non compare nell'orario
+    public int stopIndex(String stationId) {
+        int stop = store.stationIndex(stationId);
+        return stop < stopIds.length ? stop : -1;
+    }
+
+    public String stopId(int stop) {
+        return stopIds[stop];
+    }
+
+    public int stopCount() {
+        return stopIds.length;
+    }
+
+    public int connectionCount() {
+        return rows.length;
+    }
+
+    // prima connessione che parte non prima di seconds (ricerca binaria sulla colonna delle partenze)
+    int firstConnectionAtOrAfter(long seconds) {
+        int low = 0;
+        int high = departureSeconds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departureSeconds[mid] < seconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int departureStop(int connection) { return departureStop[connection]; }
+    int arrivalStop(int connection) { return arrivalStop[connection]; }
+    long departureSeconds(int connection) { return departureSeconds[connection]; }
+    long arrivalSeconds(int connection) { return arrivalSeconds[connection]; }
+    int minTransferSeconds(int stop) { return minTransferSeconds[stop]; }
+    Train train(int connection) { return store.materialize(rows[connection]); }
+}
@@ -0,0 +1,221 @@
+package com.trenical.planner;
+
+import com.trenical.database.TrainDatabase;
+import proto.Train;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Journey planner a round sul CompactTimetable (connection scan "a round", come RAPTOR):
+// il round k trova gli arrivi piú presto con al massimo k cambi, partendo solo dagli arrivi del round k-1,
+// quindi ogni miglioramento all'arrivo dopo un round è un itinerario Pareto-ottimale
+// (arrivo piú presto rispetto a tutti quelli con meno cambi).
+// Ogni round è una sola scansione delle connessioni in ordine di partenza, che si ferma appena le partenze
+// superano il miglior arrivo giá trovato a destinazione.
+public class JourneyPlanner {
+    public static final int DEFAULT_MAX_TRANSFERS = 3;
+    public static final int MAX_TRANSFERS_LIMIT = 5;
+    private static final long UNREACHED = Long.MAX_VALUE;
+
+    public record Journey(List<Train> legs, int transfers) {
+        public long departureSeconds() {
+            return legs.get(0).getDepartureTime().getSeconds();
+        }
+
+        public long arrivalSeconds() {
+            return legs.get(legs.size() - 1).getArrivalTime().getSeconds();
+        }
+    }
+
+    private record Snapshot(long version, CompactTimetable timetable) {}
+
+    private final TrainDatabase trainDatabase;
+    private final int defaultTransferSeconds;
+    private final Map<String, Integer> transferOverrides;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    // aree di lavoro riusate tra le ricerche: un pool e non un ThreadLocal, perché con l'executor
+    // a virtual thread ogni chiamata ha un thread nuovo e un ThreadLocal non verrebbe mai riusato
+    private final ConcurrentLinkedDeque<Workspace> workspaces = new ConcurrentLinkedDeque<>();
+
+    private static final class Holder {
+        private static final JourneyPlanner INSTANCE = new JourneyPlanner(TrainDatabase.getInstance(),
+                Integer.getInteger("trenical.planner.minTransferSeconds", 300),
+                parseOverrides(System.getProperty("trenical.planner.transferOverrides", "")));
+    }
+
+    public static JourneyPlanner getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public JourneyPlanner(TrainDatabase trainDatabase, int defaultTransferSeconds, Map<String, Integer> transferOverrides) {
+        this.trainDatabase = trainDatabase;
+        this.defaultTransferSeconds = defaultTransferSeconds;
+        this.transferOverrides = transferOverrides;
+    }
+
+    // itinerari da fromStationId a toStationId partendo non prima di departAfterSeconds, ordinati per numero
+    // di cambi crescente. minTransferSeconds > 0 alza il tempo minimo di cambio in tutte le stazioni.
+    public List<Journey> plan(String fromStationId, String toStationId, long departAfterSeconds,
+                              int maxTransfers, int minTransferSeconds) {
+        CompactTimetable timetable = timetable();
+        int origin = timetable.stopIndex(fromStationId);
+        int target = timetable.stopIndex(toStationId);
+        if (origin < 0 || target < 0 || origin == target) {
+            return Collections.emptyList();
+        }
+        int rounds = Math.min(Math.max(maxTransfers, 0), MAX_TRANSFERS_LIMIT) + 1;
+
+        Workspace workspace = workspaces.pollFirst();
+        if (workspace == null) {
+            workspace = new Workspace();
+        }
+        try {
+            return scan(timetable, workspace, origin, target, departAfterSeconds, rounds, minTransferSeconds);
+        } finally {
+            workspaces.offerFirst(workspace);
+        }
+    }
+
+    private static List<Journey> scan(CompactTimetable timetable, Workspace ws, int origin, int target,
+                                      long departAfterSeconds, int rounds, int minTransferSeconds) {
+        ws.reset(timetable.stopCount(), rounds);
+        ws.bestBefore[origin] = departAfterSeconds;
+        ws.bestNow[origin] = departAfterSeconds;
+
+        List<Journey> journeys = new ArrayList<>();
+        long bestAtTarget = UNREACHED;
+        int first = timetable.firstConnectionAtOrAfter(departAfterSeconds);
+        int count = timetable.connectionCount();
+
+        for (int round = 0; round < rounds; round++) {
+            boolean improved = false;
+            int[] parentConnection = ws.parentConnection[round];
+            int[] parentRound = ws.parentRound[round];
+            for (int c = first; c < count; c++) {
+                long departure = timetable.departureSeconds(c);
+                if (departure >= ws.bestNow[target]) {
+                    break; // nessuna connessione successiva può arrivare prima
+                }
+                int from = timetable.departureStop(c);
+                long ready = ws.bestBefore[from];
+                if (ready == UNREACHED) {
+                    continue;
+                }
+                if (ws.roundBefore[from] >= 0) {
+                    // si è arrivati in treno: serve il tempo di cambio (all'origine no)
+                    ready += Math.max(timetable.minTransferSeconds(from), minTransferSeconds);
+                }
+                if (departure < ready) {
+                    continue;
+                }
+                int to = timetable.arrivalStop(c);
+                long arrival = timetable.arrivalSeconds(c);
+                if (arrival >= ws.bestNow[to]) {
+                    continue;
+                }
+                ws.bestNow[to] = arrival;
+                ws.roundNow[to] = round;
+                parentConnection[to] = c;
+                parentRound[to] = ws.roundBefore[from];
+                improved = true;
+            }
+            if (!improved) {
+                break;
+            }
+            if (ws.bestNow[target] < bestAtTarget) {
+                bestAtTarget = ws.bestNow[target];
+                journeys.add(reconstruct(timetable, ws, round, target));
+            }
+            // il round successivo parte dagli arrivi di questo
+            System.arraycopy(ws.bestNow, 0, ws.bestBefore, 0, timetable.stopCount());
+            System.arraycopy(ws.roundNow, 0, ws.roundBefore, 0, timetable.stopCount());
+        }
+        return journeys;
+    }
+
+    private static Journey reconstruct(CompactTimetable timetable, Workspace ws, int round, int stop) {
+        List<Train> legs = new ArrayList<>();
+        while (round >= 0) {
+            int connection = ws.parentConnection[round][stop];
+            legs.add(timetable.train(connection));
+            int previousRound = ws.parentRound[round][stop];
+            stop = timetable.departureStop(connection);
+            round = previousRound;
+        }
+        Collections.reverse(legs);
+        return new Journey(legs, legs.size() - 1);
+    }
+
+    // ricostruisce l'orario compatto solo quando TrainDatabase segnala una nuova versione dell'orario
+    public CompactTimetable timetable() {
+        long version = trainDatabase.getTimetableVersion();
+        Snapshot current = snapshot;
+        if (current != null && current.version == version) {
+            return current.timetable;
+        }
+        rebuildLock.lock();
+        try {
+            current = snapshot;
+            if (current == null || current.version != version) {
+                current = new Snapshot(version, CompactTimetable.build(trainDatabase.getTrainStore(),
+                        defaultTransferSeconds, transferOverrides));
+                snapshot = current;
+                System.out.println("[JourneyPlanner] Built compact timetable: " + current.timetable.connectionCount()
+                        + " connections, " + current.timetable.stopCount() + " stations");
+            }
+            return current.timetable;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    // formato "RM001=600,MI001=480" (secondi)
+    static Map<String, Integer> parseOverrides(String spec) {
+        Map<String, Integer> overrides = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator > 0) {
+                overrides.put(entry.substring(0, separator).trim(), Integer.parseInt(entry.substring(separator + 1).trim()));
+            }
+        }
+        return overrides;
+    }
+
+    // array per stazione riusati tra una ricerca e l'altra; crescono solo se l'orario ha piú stazioni o piú round
+    private static final class Workspace {
+        long[] bestBefore = new long[0];
+        long[] bestNow = new long[0];
+        int[] roundBefore = new int[0];
+        int[] roundNow = new int[0];
+        int[][] parentConnection = new int[0][];
+        int[][] parentRound = new int[0][];
+
+        void reset(int stops, int rounds) {
+            if (bestBefore.length < stops) {
+                bestBefore = new long[stops];
+                bestNow = new long[stops];
+                roundBefore = new int[stops];
+                roundNow = new int[stops];
+                parentConnection = new int[0][];
+                parentRound = new int[0][];
+            }
+            if (parentConnection.length < rounds) {
+                parentConnection = new int[rounds][bestBefore.length];
+                parentRound = new int[rounds][bestBefore.length];
+            }
+            // i parent non vanno azzerati: si leggono solo lungo percorsi scritti in questa ricerca
+            Arrays.fill(bestBefore, 0, stops, UNREACHED);
+            Arrays.fill(bestNow, 0, stops, UNREACHED);
+            Arrays.fill(roundBefore, 0, stops, -1);
+            Arrays.fill(roundNow, 0, stops, -1);
+        }
+    }
+}
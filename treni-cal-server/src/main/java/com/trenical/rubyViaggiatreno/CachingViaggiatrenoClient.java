@@ -0,0 +1,205 @@
+package com.trenical.rubyViaggiatreno;
+
+import ruby_viaggiatreno_microservizio.TrainStatusResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Cache davanti a RubyViaggiatrenoClient, per numero di treno.
+//
+// - TTL separati per risposte trovate e per found=false (cache negativa);
+// - richieste concorrenti per lo stesso treno condividono una sola chiamata in corso (single-flight);
+// - scaduto il TTL, per una finestra "stale" si risponde subito con il valore vecchio mentre
+//   il refresh parte in background;
+// - numero massimo di voci, oltre il quale si eliminano le voci caricate da piú tempo.
+// Gli errori di connessione non vengono messi in cache, la richiesta successiva riprova.
+public class CachingViaggiatrenoClient {
+    private static final Logger logger = Logger.getLogger(CachingViaggiatrenoClient.class.getName());
+
+    private final RubyViaggiatrenoClient delegate;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final long staleNanos;
+    private final int maxEntries;
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<TrainStatusResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder upstreamCalls = new LongAdder();
+
+    private record CacheEntry(TrainStatusResponse response, long loadedAtNanos, long expiresAtNanos, long staleUntilNanos) {}
+
+    public CachingViaggiatrenoClient(RubyViaggiatrenoClient delegate) {
+        this(delegate, Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(2), 10_000);
+    }
+
+    public CachingViaggiatrenoClient(RubyViaggiatrenoClient delegate, Duration ttl, Duration negativeTtl,
+                                     Duration staleWindow, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.staleNanos = staleWindow.toNanos();
+        this.maxEntries = maxEntries;
+    }
+
+    public TrainStatusResponse getTrainStatus(String trainNumber) {
+        return getTrainStatusAsync(trainNumber).join();
+    }
+
+    public CompletableFuture<TrainStatusResponse> getTrainStatusAsync(String trainNumber) {
+        long now = System.nanoTime();
+        CacheEntry entry = cache.get(trainNumber);
+        if (entry != null) {
+            if (now - entry.expiresAtNanos < 0) {
+                hits.increment();
+                return CompletableFuture.completedFuture(entry.response);
+            }
+            if (now - entry.staleUntilNanos < 0) {
+                // stale-while-revalidate: il refresh è single-flight come una normale miss
+                staleHits.increment();
+                load(trainNumber);
+                return CompletableFuture.completedFuture(entry.response);
+            }
+        }
+        misses.increment();
+        return load(trainNumber);
+    }
+
+    private CompletableFuture<TrainStatusResponse> load(String trainNumber) {
+        CompletableFuture<TrainStatusResponse> created = new CompletableFuture<>();
+        CompletableFuture<TrainStatusResponse> existing = inFlight.putIfAbsent(trainNumber, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        upstreamCalls.increment();
+        delegate.getTrainStatusAsync(trainNumber).whenComplete((response, error) -> {
+            TrainStatusResponse result;
+            if (error != null) {
+                result = failedResponse(trainNumber, error);
+            } else {
+                result = response;
+                store(trainNumber, response);
+            }
+            // prima aggiorno la cache e poi libero lo slot, cosí chi arriva dopo trova giá il valore
+            inFlight.remove(trainNumber, created);
+            created.complete(result);
+        });
+        return created;
+    }
+
+    // Variante batch per il poller. Le voci ancora nel TTL escono dalla cache; quelle stale no, perché il poller
+    // vuole lo stato attuale. I treni giá in caricamento si aspettano, gli altri vanno al servizio con le chiamate
+    // batch del delegate. Il risultato rispetta l'ordine di trainNumbers, come nel delegate.
+    public CompletableFuture<List<TrainStatusResponse>> getTrainStatusesPipelined(List<String> trainNumbers, int batchSize, int maxInFlight) {
+        long now = System.nanoTime();
+        List<CompletableFuture<TrainStatusResponse>> results = new ArrayList<>(trainNumbers.size());
+        Map<String, CompletableFuture<TrainStatusResponse>> created = new LinkedHashMap<>();
+        for (String trainNumber : trainNumbers) {
+            CacheEntry entry = cache.get(trainNumber);
+            if (entry != null && now - entry.expiresAtNanos < 0) {
+                hits.increment();
+                results.add(CompletableFuture.completedFuture(entry.response));
+                continue;
+            }
+            misses.increment();
+            CompletableFuture<TrainStatusResponse> pending = created.get(trainNumber);
+            if (pending == null) {
+                CompletableFuture<TrainStatusResponse> mine = new CompletableFuture<>();
+                pending = inFlight.putIfAbsent(trainNumber, mine);
+                if (pending == null) {
+                    pending = mine;
+                    created.put(trainNumber, mine);
+                }
+            }
+            results.add(pending);
+        }
+
+        if (!created.isEmpty()) {
+            List<String> toLoad = new ArrayList<>(created.keySet());
+            upstreamCalls.add((toLoad.size() + Math.max(1, batchSize) - 1) / Math.max(1, batchSize));
+            delegate.getTrainStatusesPipelined(toLoad, batchSize, maxInFlight, (batch, responses) -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    store(batch.get(i), responses.get(i));
+                }
+            }).whenComplete((responses, error) -> {
+                // come in load(): la cache è giá aggiornata batch per batch, qui si liberano gli slot
+                for (int i = 0; i < toLoad.size(); i++) {
+                    String trainNumber = toLoad.get(i);
+                    CompletableFuture<TrainStatusResponse> slot = created.get(trainNumber);
+                    inFlight.remove(trainNumber, slot);
+                    slot.complete(error == null ? responses.get(i) : failedResponse(trainNumber, error));
+                }
+            });
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<TrainStatusResponse> all = new ArrayList<>(results.size());
+            for (CompletableFuture<TrainStatusResponse> result : results) {
+                all.add(result.join());
+            }
+            return all;
+        });
+    }
+
+    private static TrainStatusResponse failedResponse(String trainNumber, Throwable error) {
+        return TrainStatusResponse.newBuilder()
+                .setTrainNumber(trainNumber)
+                .setFound(false)
+                .setErrorMessage("Failed to connect to Viaggiatreno service: " + error.getMessage())
+                .build();
+    }
+
+    private void store(String trainNumber, TrainStatusResponse response) {
+        long now = System.nanoTime();
+        long expiresAt = now + (response.getFound() ? ttlNanos : negativeTtlNanos);
+        cache.put(trainNumber, new CacheEntry(response, now, expiresAt, expiresAt + staleNanos));
+        if (cache.size() > maxEntries) {
+            evict(now);
+        }
+    }
+
+    // elimina prima le voci ormai inutilizzabili, poi le piú vecchie fino a tornare al 90% della capienza,
+    // cosí la scansione non si ripete ad ogni inserimento
+    private void evict(long now) {
+        cache.entrySet().removeIf(e -> now - e.getValue().staleUntilNanos >= 0);
+        int target = (int) (maxEntries * 0.9);
+        int excess = cache.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>(cache.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().loadedAtNanos));
+        for (int i = 0; i < excess && i < entries.size(); i++) {
+            cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        logger.fine("Evicted " + excess + " train status entries");
+    }
+
+    public void invalidate(String trainNumber) {
+        cache.remove(trainNumber);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getStaleHits() { return staleHits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getUpstreamCalls() { return upstreamCalls.sum(); }
+
+    public RubyViaggiatrenoClient getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,76 @@
+package com.trenical.rubyViaggiatreno;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+// Ricava il ritardo di hedging dalla latenza osservata delle chiamate al servizio Ruby: ogni TUNE_INTERVAL,
+// se ci sono abbastanza campioni, il nuovo ritardo è il percentile configurato (p95 di default) delle chiamate
+// riuscite, limitato a [MIN, MAX]. Si applica solo se si discosta di almeno il 20%, per non ripubblicare la
+// service config a ogni piccola oscillazione.
+// Le latenze misurate sono giá "con hedging": il minimo MIN_DELAY_MILLIS evita che il ritardo continui a scendere.
+final class HedgeDelayTuner {
+    static final long MIN_DELAY_MILLIS = 20;
+    static final long MAX_DELAY_MILLIS = 5000;
+    private static final long TUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long MIN_SAMPLES = 50;
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final double percentile;
+    private final LongConsumer onDelayChanged;
+    private final Recorder recorder = new Recorder(MAX_MICROS, 2);
+    private final Histogram window = new Histogram(MAX_MICROS, 2);
+    private final ReentrantLock tuneLock = new ReentrantLock();
+    private Histogram interval;
+    private volatile long nextTuneNanos;
+    private volatile long delayMillis;
+
+    HedgeDelayTuner(double percentile, long initialDelayMillis, LongConsumer onDelayChanged) {
+        this.percentile = percentile;
+        this.onDelayChanged = onDelayChanged;
+        this.delayMillis = initialDelayMillis;
+        this.nextTuneNanos = System.nanoTime() + TUNE_INTERVAL_NANOS;
+    }
+
+    long getDelayMillis() {
+        return delayMillis;
+    }
+
+    void record(long latencyNanos) {
+        recorder.recordValue(Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_MICROS)));
+        if (System.nanoTime() - nextTuneNanos >= 0) {
+            tune();
+        }
+    }
+
+    private void tune() {
+        if (!tuneLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            if (now - nextTuneNanos < 0) {
+                return;
+            }
+            nextTuneNanos = now + TUNE_INTERVAL_NANOS;
+            interval = recorder.getIntervalHistogram(interval);
+            window.add(interval);
+            if (window.getTotalCount() < MIN_SAMPLES) {
+                return;
+            }
+            long observed = TimeUnit.MICROSECONDS.toMillis(window.getValueAtPercentile(percentile));
+            window.reset();
+            long tuned = Math.max(MIN_DELAY_MILLIS, Math.min(observed, MAX_DELAY_MILLIS));
+            long current = delayMillis;
+            if (Math.abs(tuned - current) * 5 >= current) {
+                delayMillis = tuned;
+                onDelayChanged.accept(tuned);
+            }
+        } finally {
+            tuneLock.unlock();
+        }
+    }
+}
@@ -2,26 +2,166 @@ package com.trenical.rubyViaggiatreno;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.StreamObserver;
 
+import ruby_viaggiatreno_microservizio.TrainStatusBatchRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchResponse;
 import ruby_viaggiatreno_microservizio.TrainStatusRequest;
 import ruby_viaggiatreno_microservizio.TrainStatusResponse;
 import ruby_viaggiatreno_microservizio.ViaggiatrenoServiceGrpc;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+// Client del microservizio Ruby Viaggiatreno. Con piú istanze del servizio ("host:porta,host:porta") le chiamate
+// sono distribuite round robin, e quelle per un singolo treno sono "hedged": se la risposta non arriva entro il ritardo
+// di hedging parte una copia della richiesta verso un'altra istanza e vince la prima risposta. Il ritardo segue il p95
+// osservato (HedgeDelayTuner), cosí una sola richiesta lenta dello scraper (timeout HTTP fino a 10s) non decide la coda.
 public class RubyViaggiatrenoClient {
     private static final Logger logger = Logger.getLogger(RubyViaggiatrenoClient.class.getName());
     private final ManagedChannel channel;
     private final ViaggiatrenoServiceGrpc.ViaggiatrenoServiceBlockingStub blockingStub;
+    private final ViaggiatrenoServiceGrpc.ViaggiatrenoServiceStub asyncStub;
+    private final long deadlineMillis;
+    // null per i canali passati da fuori (test), che hanno la loro configurazione
+    private final HedgeDelayTuner hedgeDelayTuner;
+
+    // Parametri del canale, di default letti dalle proprietà trenical.viaggiatreno.* (vedi README).
+    // hedgeMaxAttempts <= 1 disattiva l'hedging, hedgePercentile <= 0 tiene fisso hedgeDelayMillis.
+    public record Settings(int hedgeMaxAttempts, long hedgeDelayMillis, double hedgePercentile,
+                           int retryMaxAttempts, long deadlineMillis, long keepAliveSeconds) {
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    Integer.getInteger("trenical.viaggiatreno.hedgeAttempts", 2),
+                    Long.getLong("trenical.viaggiatreno.hedgeDelayMillis", 200),
+                    Double.parseDouble(System.getProperty("trenical.viaggiatreno.hedgePercentile", "95")),
+                    Integer.getInteger("trenical.viaggiatreno.retryAttempts", 3),
+                    Long.getLong("trenical.viaggiatreno.deadlineMillis", 12_000),
+                    Long.getLong("trenical.viaggiatreno.keepAliveSeconds", 300));
+        }
+    }
 
     public RubyViaggiatrenoClient(String host, int port) {
-        this.channel = ManagedChannelBuilder.forAddress(host, port)
-                .usePlaintext()
-                .build();
+        this(host + ":" + port, Settings.fromSystemProperties());
+    }
+
+    public RubyViaggiatrenoClient(String endpoints, Settings settings) {
+        this(new StaticEndpointsResolver(StaticEndpointsResolver.parseEndpoints(endpoints),
+                serviceConfig(settings, settings.hedgeDelayMillis())), settings);
+        logger.info("RubyViaggiatrenoClient balancing over " + endpoints);
+    }
+
+    private RubyViaggiatrenoClient(StaticEndpointsResolver resolver, Settings settings) {
+        this(buildChannel(resolver, settings), settings.deadlineMillis(),
+                settings.hedgeMaxAttempts() > 1 && settings.hedgePercentile() > 0
+                        ? new HedgeDelayTuner(settings.hedgePercentile(), settings.hedgeDelayMillis(), delayMillis -> {
+                            logger.info("Viaggiatreno hedging delay is now " + delayMillis + " ms");
+                            resolver.updateServiceConfig(serviceConfig(settings, delayMillis));
+                        })
+                        : null);
+    }
+
+    public RubyViaggiatrenoClient(ManagedChannel channel) {
+        this(channel, Settings.fromSystemProperties().deadlineMillis(), null);
+    }
+
+    private RubyViaggiatrenoClient(ManagedChannel channel, long deadlineMillis, HedgeDelayTuner hedgeDelayTuner) {
+        this.channel = channel;
         this.blockingStub = ViaggiatrenoServiceGrpc.newBlockingStub(channel);
-        logger.info("RubyViaggiatrenoClient connected to " + host + ":" + port);
+        this.asyncStub = ViaggiatrenoServiceGrpc.newStub(channel);
+        this.deadlineMillis = deadlineMillis;
+        this.hedgeDelayTuner = hedgeDelayTuner;
+    }
+
+    // nameResolverFactory è deprecato a favore dei provider registrati globalmente, ma qui il resolver
+    // appartiene a questo client (deve poter ripubblicare la service config), quindi resta locale al canale.
+    @SuppressWarnings("deprecation")
+    private static ManagedChannel buildChannel(StaticEndpointsResolver resolver, Settings settings) {
+        ManagedChannelBuilder<?> builder = ManagedChannelBuilder.forTarget(StaticEndpointsResolver.SCHEME + ":///viaggiatreno")
+                .nameResolverFactory(resolver)
+                .usePlaintext()
+                .enableRetry();
+        if (settings.keepAliveSeconds() > 0) {
+            // i server gRPC rifiutano ping piú frequenti di 5 minuti se non configurati diversamente
+            builder.keepAliveTime(settings.keepAliveSeconds(), TimeUnit.SECONDS)
+                    .keepAliveTimeout(10, TimeUnit.SECONDS);
+        }
+        return builder.build();
+    }
+
+    // service config del canale: round robin tra le istanze; hedging solo sulla chiamata unaria di un singolo treno.
+    // Il batch chiede fino a decine di treni allo scraper: duplicarlo raddoppierebbe il carico proprio quando è lento,
+    // quindi come lo stream ha solo il retry (lo stream, arrivata la prima risposta, non si può piú ripetere).
+    static Map<String, ?> serviceConfig(Settings settings, long hedgeDelayMillis) {
+        List<Map<String, ?>> methodConfig = new ArrayList<>();
+        Map<String, Object> unary = new LinkedHashMap<>();
+        unary.put("name", List.of(methodName(ViaggiatrenoServiceGrpc.getGetTrainRealtimeStatusMethod())));
+        if (settings.hedgeMaxAttempts() > 1) {
+            unary.put("hedgingPolicy", Map.of(
+                    "maxAttempts", (double) settings.hedgeMaxAttempts(),
+                    "hedgingDelay", String.format(Locale.ROOT, "%.3fs", hedgeDelayMillis / 1000.0),
+                    "nonFatalStatusCodes", List.of("UNAVAILABLE")));
+            methodConfig.add(unary);
+        } else if (settings.retryMaxAttempts() > 1) {
+            unary.put("retryPolicy", retryPolicy(settings));
+            methodConfig.add(unary);
+        }
+        if (settings.retryMaxAttempts() > 1) {
+            methodConfig.add(Map.of(
+                    "name", List.of(
+                            methodName(ViaggiatrenoServiceGrpc.getGetTrainRealtimeStatusBatchMethod()),
+                            methodName(ViaggiatrenoServiceGrpc.getStreamTrainRealtimeStatusMethod())),
+                    "retryPolicy", retryPolicy(settings)));
+        }
+        return Map.of(
+                "loadBalancingConfig", List.of(Map.of("round_robin", Map.of())),
+                "methodConfig", methodConfig);
+    }
+
+    private static Map<String, ?> retryPolicy(Settings settings) {
+        return Map.of(
+                "maxAttempts", (double) settings.retryMaxAttempts(),
+                "initialBackoff", "0.1s",
+                "maxBackoff", "1s",
+                "backoffMultiplier", 2.0,
+                "retryableStatusCodes", List.of("UNAVAILABLE"));
+    }
+
+    private static Map<String, ?> methodName(MethodDescriptor<?, ?> method) {
+        return Map.of("service", ViaggiatrenoServiceGrpc.SERVICE_NAME, "method", method.getBareMethodName());
+    }
+
+    // ritardo di hedging attuale, -1 se non viene adattato
+    public long getHedgeDelayMillis() {
+        return hedgeDelayTuner == null ? -1 : hedgeDelayTuner.getDelayMillis();
+    }
+
+    // solo le chiamate per un singolo treno: un batch dura quanto il suo treno piú lento e alzerebbe il ritardo
+    private void recordLatency(long startNanos) {
+        if (hedgeDelayTuner != null) {
+            hedgeDelayTuner.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private ViaggiatrenoServiceGrpc.ViaggiatrenoServiceBlockingStub blockingStub() {
+        return blockingStub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private ViaggiatrenoServiceGrpc.ViaggiatrenoServiceStub asyncStub() {
+        return asyncStub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
     }
 
     public TrainStatusResponse getTrainStatus(String trainNumber) {
@@ -35,7 +175,9 @@ public class RubyViaggiatrenoClient {
                 .build();
         logger.info("Requesting status for train: " + trainNumber);
         try {
-            TrainStatusResponse response = blockingStub.getTrainRealtimeStatus(request);
+            long startNanos = System.nanoTime();
+            TrainStatusResponse response = blockingStub().getTrainRealtimeStatus(request);
+            recordLatency(startNanos);
             if (response.getFound()) {
                 logger.info("Status received for train " + trainNumber + ": " + response.getTrainStatusDescription());
             } else {
@@ -48,6 +190,182 @@ public class RubyViaggiatrenoClient {
         }
     }
 
+    // Versione asincrona di getTrainStatus: non blocca il thread chiamante. Il future fallisce
+    // se la chiamata RPC fallisce, mentre found=false arriva come risposta normale.
+    public CompletableFuture<TrainStatusResponse> getTrainStatusAsync(String trainNumber) {
+        CompletableFuture<TrainStatusResponse> result = new CompletableFuture<>();
+        if (trainNumber == null || trainNumber.isEmpty()) {
+            result.complete(TrainStatusResponse.newBuilder().setFound(false).setErrorMessage("Train number cannot be empty.").build());
+            return result;
+        }
+        TrainStatusRequest request = TrainStatusRequest.newBuilder()
+                .setTrainNumber(trainNumber)
+                .build();
+        long startNanos = System.nanoTime();
+        asyncStub().getTrainRealtimeStatus(request, new StreamObserver<TrainStatusResponse>() {
+            @Override
+            public void onNext(TrainStatusResponse response) {
+                recordLatency(startNanos);
+                result.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.log(Level.WARNING, "Async RPC to Ruby Viaggiatreno service failed for train " + trainNumber, t);
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return result;
+    }
+
+    // Stato di piú treni con una sola RPC; le risposte sono nello stesso ordine dei numeri richiesti.
+    public List<TrainStatusResponse> getTrainStatuses(Collection<String> trainNumbers) {
+        TrainStatusBatchRequest request = TrainStatusBatchRequest.newBuilder()
+                .addAllTrainNumbers(trainNumbers)
+                .build();
+        logger.info("Requesting status for " + trainNumbers.size() + " trains");
+        try {
+            return blockingStub().getTrainRealtimeStatusBatch(request).getStatusesList();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Batch RPC to Ruby Viaggiatreno service failed", e);
+            return failedResponses(trainNumbers, e);
+        }
+    }
+
+    public CompletableFuture<List<TrainStatusResponse>> getTrainStatusesAsync(Collection<String> trainNumbers) {
+        CompletableFuture<List<TrainStatusResponse>> result = new CompletableFuture<>();
+        TrainStatusBatchRequest request = TrainStatusBatchRequest.newBuilder()
+                .addAllTrainNumbers(trainNumbers)
+                .build();
+        asyncStub().getTrainRealtimeStatusBatch(request, new StreamObserver<TrainStatusBatchResponse>() {
+            @Override
+            public void onNext(TrainStatusBatchResponse response) {
+                result.complete(response.getStatusesList());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.log(Level.WARNING, "Async batch RPC to Ruby Viaggiatreno service failed", t);
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return result;
+    }
+
+    // Versione in streaming: onStatus viene chiamato per ogni treno appena il servizio Ruby ha la risposta,
+    // senza aspettare il piú lento. Il future si completa a fine stream (o fallisce con l'errore RPC).
+    public CompletableFuture<Void> streamTrainStatuses(Collection<String> trainNumbers, Consumer<TrainStatusResponse> onStatus) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        TrainStatusBatchRequest request = TrainStatusBatchRequest.newBuilder()
+                .addAllTrainNumbers(trainNumbers)
+                .build();
+        asyncStub().streamTrainRealtimeStatus(request, new StreamObserver<TrainStatusResponse>() {
+            @Override
+            public void onNext(TrainStatusResponse response) {
+                onStatus.accept(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.log(Level.WARNING, "Status stream from Ruby Viaggiatreno service failed", t);
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    // Divide una lista lunga in batch da batchSize e ne tiene in volo al massimo maxInFlight alla volta,
+    // cosí il polling di molti treni non paga un round trip per treno e non sommerge il servizio Ruby.
+    // La finestra è scorrevole e non blocca: partono i primi maxInFlight batch e ognuno, completandosi,
+    // fa partire il successivo, quindi il chiamante riceve subito il future.
+    // Il risultato rispetta l'ordine di trainNumbers; un batch fallito diventa una serie di risposte found=false.
+    public CompletableFuture<List<TrainStatusResponse>> getTrainStatusesPipelined(List<String> trainNumbers, int batchSize, int maxInFlight) {
+        return getTrainStatusesPipelined(trainNumbers, batchSize, maxInFlight, (batch, responses) -> {});
+    }
+
+    // onLoaded riceve solo i batch arrivati davvero dal servizio (numeri e risposte), non quelli falliti:
+    // serve alla cache, che non deve salvare gli errori di connessione come found=false
+    CompletableFuture<List<TrainStatusResponse>> getTrainStatusesPipelined(List<String> trainNumbers, int batchSize, int maxInFlight,
+                                                                          BiConsumer<List<String>, List<TrainStatusResponse>> onLoaded) {
+        int size = Math.max(1, batchSize);
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < trainNumbers.size(); from += size) {
+            batches.add(trainNumbers.subList(from, Math.min(from + size, trainNumbers.size())));
+        }
+        if (batches.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        Pipeline pipeline = new Pipeline(batches, onLoaded);
+        for (int i = 0; i < Math.min(Math.max(1, maxInFlight), batches.size()); i++) {
+            pipeline.startNext();
+        }
+        return pipeline.result;
+    }
+
+    private final class Pipeline {
+        private final List<List<String>> batches;
+        private final BiConsumer<List<String>, List<TrainStatusResponse>> onLoaded;
+        private final AtomicReferenceArray<List<TrainStatusResponse>> responses;
+        private final AtomicInteger nextBatch = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<TrainStatusResponse>> result = new CompletableFuture<>();
+
+        private Pipeline(List<List<String>> batches, BiConsumer<List<String>, List<TrainStatusResponse>> onLoaded) {
+            this.batches = batches;
+            this.onLoaded = onLoaded;
+            this.responses = new AtomicReferenceArray<>(batches.size());
+            this.remaining = new AtomicInteger(batches.size());
+        }
+
+        private void startNext() {
+            int index = nextBatch.getAndIncrement();
+            if (index >= batches.size()) {
+                return;
+            }
+            List<String> batch = batches.get(index);
+            getTrainStatusesAsync(batch).whenComplete((loaded, error) -> {
+                if (error == null) {
+                    onLoaded.accept(batch, loaded);
+                }
+                responses.set(index, error == null ? loaded : failedResponses(batch, error));
+                if (remaining.decrementAndGet() == 0) {
+                    List<TrainStatusResponse> all = new ArrayList<>();
+                    for (int i = 0; i < responses.length(); i++) {
+                        all.addAll(responses.get(i));
+                    }
+                    result.complete(all);
+                } else {
+                    startNext();
+                }
+            });
+        }
+    }
+
+    private static List<TrainStatusResponse> failedResponses(Collection<String> trainNumbers, Throwable error) {
+        List<TrainStatusResponse> responses = new ArrayList<>(trainNumbers.size());
+        for (String trainNumber : trainNumbers) {
+            responses.add(TrainStatusResponse.newBuilder()
+                    .setTrainNumber(trainNumber)
+                    .setFound(false)
+                    .setErrorMessage("Failed to connect to Viaggiatreno service: " + error.getMessage())
+                    .build());
+        }
+        return responses;
+    }
+
     public void shutdown() throws InterruptedException {
         logger.info("Shutting down RubyViaggiatrenoClient channel.");
         channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
@@ -0,0 +1,119 @@
+package com.trenical.rubyViaggiatreno;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Risolutore di nomi per un elenco fisso di istanze del servizio Ruby ("host:porta,host:porta").
+// Oltre agli indirizzi pubblica la service config del canale (bilanciamento, hedging, retry), cosí la si può
+// cambiare a canale aperto: updateServiceConfig la ripubblica e le nuove chiamate usano la versione aggiornata.
+final class StaticEndpointsResolver extends NameResolver.Factory {
+    static final String SCHEME = "viaggiatreno-static";
+
+    private final List<EquivalentAddressGroup> addresses;
+    private volatile Map<String, ?> serviceConfig;
+    // il canale ricrea il resolver quando torna attivo dopo l'idle: conta solo l'ultimo
+    private volatile Resolver current;
+
+    StaticEndpointsResolver(List<InetSocketAddress> endpoints, Map<String, ?> serviceConfig) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one Viaggiatreno endpoint is required");
+        }
+        List<EquivalentAddressGroup> groups = new ArrayList<>(endpoints.size());
+        for (InetSocketAddress endpoint : endpoints) {
+            groups.add(new EquivalentAddressGroup(endpoint));
+        }
+        this.addresses = List.copyOf(groups);
+        this.serviceConfig = serviceConfig;
+    }
+
+    // "host:porta,host:porta"
+    static List<InetSocketAddress> parseEndpoints(String endpoints) {
+        List<InetSocketAddress> parsed = new ArrayList<>();
+        for (String endpoint : endpoints.split(",")) {
+            String trimmed = endpoint.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.lastIndexOf(':');
+            if (separator <= 0 || separator == trimmed.length() - 1) {
+                throw new IllegalArgumentException("Malformed Viaggiatreno endpoint '" + trimmed + "', expected host:port");
+            }
+            parsed.add(new InetSocketAddress(trimmed.substring(0, separator), Integer.parseInt(trimmed.substring(separator + 1))));
+        }
+        return parsed;
+    }
+
+    int endpointCount() {
+        return addresses.size();
+    }
+
+    void updateServiceConfig(Map<String, ?> newServiceConfig) {
+        serviceConfig = newServiceConfig;
+        Resolver resolver = current;
+        if (resolver != null) {
+            resolver.args.getSynchronizationContext().execute(resolver::publish);
+        }
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+        if (!SCHEME.equals(targetUri.getScheme())) {
+            return null;
+        }
+        Resolver resolver = new Resolver(args);
+        current = resolver;
+        return resolver;
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return SCHEME;
+    }
+
+    private final class Resolver extends NameResolver {
+        private final NameResolver.Args args;
+        // usato solo dal SynchronizationContext del canale
+        private Listener2 listener;
+
+        private Resolver(NameResolver.Args args) {
+            this.args = args;
+        }
+
+        @Override
+        public String getServiceAuthority() {
+            return "viaggiatreno";
+        }
+
+        @Override
+        public void start(Listener2 listener) {
+            this.listener = listener;
+            publish();
+        }
+
+        @Override
+        public void refresh() {
+            publish();
+        }
+
+        private void publish() {
+            if (listener == null) {
+                return;
+            }
+            listener.onResult(ResolutionResult.newBuilder()
+                    .setAddresses(addresses)
+                    .setServiceConfig(args.getServiceConfigParser().parseServiceConfig(serviceConfig))
+                    .build());
+        }
+
+        @Override
+        public void shutdown() {
+            listener = null;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.trenical.services;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import proto.*;
+import com.trenical.metrics.MethodMetrics;
+import com.trenical.metrics.MetricsHistogram;
+import com.trenical.metrics.PrometheusExporter;
+import com.trenical.metrics.RpcMetrics;
+import com.trenical.observer.DeliveryMetrics;
+import com.trenical.observer.NotificationEngine;
+import org.HdrHistogram.Histogram;
+
+public class AdminServiceImpl extends AdminServiceGrpc.AdminServiceImplBase {
+    private final RpcMetrics rpcMetrics = RpcMetrics.getInstance();
+    private final NotificationEngine notificationEngine = NotificationEngine.getInstance();
+    private final PrometheusExporter prometheusExporter = new PrometheusExporter();
+
+    @Override
+    public void getMetrics(EmptyRequest request, StreamObserver<MetricsResponse> responseObserver) {
+        MetricsResponse.Builder response = MetricsResponse.newBuilder();
+        for (MethodMetrics method : rpcMetrics.getMethods()) {
+            for (Status.Code code : Status.Code.values()) {
+                MetricsHistogram latency = method.getLatencyMicros(code);
+                if (latency != null) {
+                    Histogram snapshot = latency.snapshot();
+                    response.addRpcLatencies(RpcLatency.newBuilder()
+                            .setMethod(method.getFullMethodName())
+                            .setStatusCode(code.name())
+                            .setCount(snapshot.getTotalCount())
+                            .setP50Millis(snapshot.getValueAtPercentile(50) / 1000.0)
+                            .setP90Millis(snapshot.getValueAtPercentile(90) / 1000.0)
+                            .setP99Millis(snapshot.getValueAtPercentile(99) / 1000.0)
+                            .setP999Millis(snapshot.getValueAtPercentile(99.9) / 1000.0)
+                            .setMaxMillis(snapshot.getMaxValue() / 1000.0));
+                }
+            }
+        }
+        int subscriptions = 0;
+        for (String trainId : notificationEngine.getSubscribedTrainIds()) {
+            subscriptions += notificationEngine.getObserverCount(trainId);
+        }
+        response.setInFlightCalls(rpcMetrics.getInFlight())
+                .setNotificationSubscriptions(subscriptions)
+                .setFanoutLagP99Millis(DeliveryMetrics.getInstance().getFanOutLagMicros().getValueAtPercentile(99) / 1000.0)
+                .setPrometheusText(prometheusExporter.scrape());
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+}
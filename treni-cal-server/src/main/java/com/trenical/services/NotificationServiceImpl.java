@@ -1,5 +1,6 @@
 package com.trenical.services;
 
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import proto.*;
 import com.trenical.database.TicketDatabase;
@@ -25,7 +26,12 @@ public class NotificationServiceImpl extends NotificationServiceGrpc.Notificatio
             return;
         }
 
-        TripObserver tripObserver = new TripObserver(responseObserver, request.getTicketId());
-        notificationEngine.addObserver(ticket.getTrainDetails().getId(), tripObserver);
+        TripObserver tripObserver = new TripObserver(responseObserver, ticket.getTrainDetails().getId(), request.getTicketId());
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            // quando il client chiude lo stream l'osservatore viene tolto subito dal registro (O(1))
+            ((ServerCallStreamObserver<TripChangeNotification>) responseObserver)
+                    .setOnCancelHandler(() -> notificationEngine.removeObserver(tripObserver));
+        }
+        notificationEngine.addObserver(tripObserver);
     }
 }
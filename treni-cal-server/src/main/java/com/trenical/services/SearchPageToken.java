@@ -0,0 +1,34 @@
+package com.trenical.services;
+
+import proto.Train;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Cursore della ricerca paginata: orario di partenza (al secondo, come nel TrainStore) e id dell'ultimo treno restituito, cioè la chiave
+// di ordinamento dell'indice. Non dipende da offset, quindi resta valido anche se l'orario cambia tra
+// una pagina e l'altra. Per il client è una stringa opaca.
+final class SearchPageToken {
+    final long departureSeconds;
+    final String trainId;
+
+    private SearchPageToken(long departureSeconds, String trainId) {
+        this.departureSeconds = departureSeconds;
+        this.trainId = trainId;
+    }
+
+    static String encode(Train lastReturned) {
+        String raw = lastReturned.getDepartureTime().getSeconds() + ":" + lastReturned.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // IllegalArgumentException se il token non è stato prodotto da encode
+    static SearchPageToken decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = raw.split(":", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed page token");
+        }
+        return new SearchPageToken(Long.parseLong(parts[0]), parts[1]);
+    }
+}
@@ -0,0 +1,45 @@
+package com.trenical.services;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Executor su cui gRPC esegue le chiamate del server, scelto con -Dtrenical.server.executor:
+// - default: il cached thread pool interno di gRPC (un thread di piattaforma per ogni chiamata attiva);
+// - fixed:   pool fisso di trenical.server.executorThreads thread, le chiamate in piú restano in coda;
+// - virtual: un virtual thread per chiamata, le attese bloccanti (stub bloccanti, awaitDurable)
+//            liberano il carrier thread invece di occupare un thread di piattaforma.
+public final class ServerExecutors {
+
+    public enum Mode { DEFAULT, FIXED, VIRTUAL }
+
+    private ServerExecutors() {}
+
+    public static Mode configuredMode() {
+        return Mode.valueOf(System.getProperty("trenical.server.executor", "default").toUpperCase(Locale.ROOT));
+    }
+
+    // null per DEFAULT: in quel caso il ServerBuilder va lasciato senza executor()
+    public static ExecutorService create(Mode mode, int threads) {
+        switch (mode) {
+            case FIXED:
+                AtomicInteger counter = new AtomicInteger();
+                return Executors.newFixedThreadPool(threads, r -> {
+                    Thread thread = new Thread(r, "grpc-server-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            case VIRTUAL:
+                return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("grpc-server-vt-", 0).factory());
+            case DEFAULT:
+            default:
+                return null;
+        }
+    }
+
+    public static ExecutorService createConfigured() {
+        return create(configuredMode(),
+                Integer.getInteger("trenical.server.executorThreads", Runtime.getRuntime().availableProcessors() * 16));
+    }
+}
@@ -0,0 +1,28 @@
+package com.trenical.services;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import proto.*;
+import com.trenical.sharding.ShardRouter;
+
+// Le iscrizioni vivono sullo shard che ha emesso il biglietto: lí ci sono il biglietto e il poller del suo treno.
+// Lo stream viene inoltrato cosí com'è, e si chiude da entrambe le parti quando il client lo cancella.
+public class ShardRoutingNotificationService extends NotificationServiceGrpc.NotificationServiceImplBase {
+    private final ShardRouter router;
+
+    public ShardRoutingNotificationService(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void subscribeToTripChanges(TripSubscriptionRequest request, StreamObserver<TripChangeNotification> responseObserver) {
+        int shard = router.shardOfTicket(request.getTicketId());
+        if (shard < 0) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Ticket not found or not owned by user.")
+                    .asRuntimeException());
+            return;
+        }
+        router.notifications(shard).subscribeToTripChanges(request, responseObserver);
+    }
+}
@@ -0,0 +1,57 @@
+package com.trenical.services;
+
+import io.grpc.stub.StreamObserver;
+import proto.*;
+import com.trenical.sharding.ShardRouter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// TicketService sul router: acquisti e mappe dei posti vanno allo shard del treno, le modifiche a quello che ha
+// emesso il biglietto (scritto nel suo id), i biglietti di un utente si raccolgono da tutti gli shard.
+public class ShardRoutingTicketService extends TicketServiceGrpc.TicketServiceImplBase {
+    private final ShardRouter router;
+
+    public ShardRoutingTicketService(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void purchaseTickets(PurchaseTicketRequest request, StreamObserver<PurchaseTicketResponse> responseObserver) {
+        router.withDeadline(router.tickets(router.shardOfTrain(request.getTrainId())))
+                .purchaseTickets(request, responseObserver);
+    }
+
+    @Override
+    public void modifyTicket(ModifyTicketRequest request, StreamObserver<ModifyTicketResponse> responseObserver) {
+        int shard = router.shardOfTicket(request.getTicketId());
+        if (shard < 0) {
+            // stessa risposta di uno shard che non trova il biglietto
+            responseObserver.onNext(ModifyTicketResponse.newBuilder()
+                    .setSuccess(false).setMessage("Ticket not found or access denied.").build());
+            responseObserver.onCompleted();
+            return;
+        }
+        router.withDeadline(router.tickets(shard)).modifyTicket(request, responseObserver);
+    }
+
+    @Override
+    public void getMyTickets(UserRequest request, StreamObserver<TicketListResponse> responseObserver) {
+        ShardRouter.gather(router.scatter(shard -> router.ticketsFuture(shard).getMyTickets(request)), replies -> {
+            List<Ticket> tickets = new ArrayList<>();
+            for (TicketListResponse reply : replies) {
+                tickets.addAll(reply.getTicketsList());
+            }
+            tickets.sort(Comparator.comparingLong((Ticket ticket) -> ticket.getPurchaseDate().getSeconds())
+                    .thenComparing(Ticket::getId));
+            return TicketListResponse.newBuilder().addAllTickets(tickets).build();
+        }, responseObserver);
+    }
+
+    @Override
+    public void getSeatMap(SeatMapRequest request, StreamObserver<SeatMapResponse> responseObserver) {
+        router.withDeadline(router.tickets(router.shardOfTrain(request.getTrainId())))
+                .getSeatMap(request, responseObserver);
+    }
+}
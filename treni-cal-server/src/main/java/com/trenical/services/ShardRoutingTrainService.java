@@ -0,0 +1,339 @@
+package com.trenical.services;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import proto.*;
+import com.trenical.database.StationCatalog;
+import com.trenical.sharding.ShardRouter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// TreniCal sul router. I treni sono divisi per id, quindi:
+// - le richieste su un treno (GetTrainRealTimeInfo) vanno allo shard che lo possiede;
+// - la ricerca per tratta non ha un id: va a tutti gli shard e i risultati si fondono in ordine di partenza.
+//   Il page_token (partenza, id dell'ultimo treno) vale uguale su ogni shard, quindi la paginazione resta esatta;
+// - le stazioni sono l'unione di quelle degli shard.
+public class ShardRoutingTrainService extends TreniCalGrpc.TreniCalImplBase {
+    // lo stesso ordine dell'indice degli orari (TimetableIndex) e del page token
+    private static final Comparator<Train> BY_DEPARTURE = Comparator
+            .comparingLong((Train train) -> train.getDepartureTime().getSeconds())
+            .thenComparing(Train::getId);
+
+    private final ShardRouter router;
+
+    public ShardRoutingTrainService(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void searchTrains(SearchTrainRequest request, StreamObserver<SearchTrainResponse> responseObserver) {
+        if (!validPageToken(request, responseObserver)) {
+            return;
+        }
+        int pageSize = request.getPageSize() <= 0 ? Integer.MAX_VALUE : Math.min(request.getPageSize(), TrainServiceImpl.MAX_PAGE_SIZE);
+        ShardRouter.gather(router.scatter(shard -> router.trainsFuture(shard).searchTrains(request)), replies -> {
+            List<Train> merged = new ArrayList<>();
+            boolean more = false;
+            for (SearchTrainResponse reply : replies) {
+                merged.addAll(reply.getAvailableTrainsList());
+                more |= !reply.getNextPageToken().isEmpty();
+            }
+            merged.sort(BY_DEPARTURE);
+            if (merged.size() > pageSize) {
+                merged = merged.subList(0, pageSize);
+                more = true;
+            }
+            SearchTrainResponse.Builder response = SearchTrainResponse.newBuilder().addAllAvailableTrains(merged);
+            if (more) {
+                // uno shard con altre pagine ha restituito una pagina piena, quindi merged non è vuota
+                response.setNextPageToken(SearchPageToken.encode(merged.get(merged.size() - 1)));
+            }
+            return response.build();
+        }, responseObserver);
+    }
+
+    // Fusione a k vie degli shard, con lo stesso flow control di uno shard singolo (isReady / onReadyHandler):
+    // da ogni shard si leggono pagine unarie da MAX_PAGE_SIZE seguendo il suo next_page_token, e si chiede la pagina
+    // successiva solo quando quella precedente è stata inviata. Al client si manda il treno con la partenza piú vicina
+    // tra le teste delle pagine, quindi per un client lento il router tiene al massimo una pagina per shard.
+    @Override
+    public void searchTrainsStream(SearchTrainRequest request, StreamObserver<Train> responseObserver) {
+        if (!validPageToken(request, responseObserver)) {
+            return;
+        }
+        int limit = request.getPageSize() <= 0 ? Integer.MAX_VALUE : Math.min(request.getPageSize(), TrainServiceImpl.MAX_PAGE_SIZE);
+        new MergedSearchPump(request, limit, responseObserver).start();
+    }
+
+    private final class MergedSearchPump implements Runnable {
+        private final SearchTrainRequest request;
+        private final StreamObserver<Train> stream;
+        // null se l'observer non è quello del server gRPC: niente flow control, si invia appena arrivano le pagine
+        private final ServerCallStreamObserver<Train> serverStream;
+        private final ShardPages[] shards;
+        // le risposte degli shard arrivano sui thread del canale, l'onReadyHandler su quelli del server
+        private final ReentrantLock lock = new ReentrantLock();
+        private int remaining;
+        private volatile boolean done;
+
+        private final class ShardPages {
+            private final int shard;
+            private final ArrayDeque<Train> page = new ArrayDeque<>();
+            // token della prossima pagina; quello del client per la prima, vuoto quando lo shard non ne ha altre
+            private String nextPageToken;
+            private boolean exhausted;
+            private boolean fetching;
+
+            private ShardPages(int shard, String pageToken) {
+                this.shard = shard;
+                this.nextPageToken = pageToken;
+            }
+        }
+
+        MergedSearchPump(SearchTrainRequest request, int limit, StreamObserver<Train> stream) {
+            this.request = request;
+            this.stream = stream;
+            this.serverStream = stream instanceof ServerCallStreamObserver
+                    ? (ServerCallStreamObserver<Train>) stream
+                    : null;
+            this.remaining = limit;
+            this.shards = new ShardPages[router.shardCount()];
+            for (int shard = 0; shard < shards.length; shard++) {
+                shards[shard] = new ShardPages(shard, request.getPageToken());
+            }
+        }
+
+        void start() {
+            if (serverStream != null) {
+                serverStream.setOnCancelHandler(() -> done = true);
+                serverStream.setOnReadyHandler(this);
+            }
+            run();
+        }
+
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                while (!done && (serverStream == null || serverStream.isReady())) {
+                    if (remaining == 0) {
+                        finish();
+                        return;
+                    }
+                    // senza la testa di ogni shard non si sa quale treno viene prima: si aspettano le pagine mancanti
+                    boolean waiting = false;
+                    ShardPages first = null;
+                    for (ShardPages pages : shards) {
+                        if (pages.page.isEmpty()) {
+                            if (!pages.exhausted) {
+                                fetch(pages);
+                                waiting = true;
+                            }
+                        } else if (first == null || BY_DEPARTURE.compare(pages.page.peekFirst(), first.page.peekFirst()) < 0) {
+                            first = pages;
+                        }
+                    }
+                    if (waiting) {
+                        return;
+                    }
+                    if (first == null) {
+                        finish();
+                        return;
+                    }
+                    stream.onNext(first.page.pollFirst());
+                    remaining--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void fetch(ShardPages pages) {
+            if (pages.fetching) {
+                return;
+            }
+            pages.fetching = true;
+            SearchTrainRequest shardRequest = request.toBuilder()
+                    .setPageSize(Math.min(remaining, TrainServiceImpl.MAX_PAGE_SIZE))
+                    .setPageToken(pages.nextPageToken)
+                    .build();
+            Futures.addCallback(router.trainsFuture(pages.shard).searchTrains(shardRequest), new FutureCallback<>() {
+                @Override
+                public void onSuccess(SearchTrainResponse reply) {
+                    lock.lock();
+                    try {
+                        pages.fetching = false;
+                        pages.page.addAll(reply.getAvailableTrainsList());
+                        pages.nextPageToken = reply.getNextPageToken();
+                        pages.exhausted = pages.nextPageToken.isEmpty();
+                    } finally {
+                        lock.unlock();
+                    }
+                    run();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    lock.lock();
+                    try {
+                        if (!done) {
+                            done = true;
+                            stream.onError(Status.fromThrowable(t).asRuntimeException());
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void finish() {
+            done = true;
+            stream.onCompleted();
+        }
+    }
+
+    private static boolean validPageToken(SearchTrainRequest request, StreamObserver<?> responseObserver) {
+        if (request.getPageToken().isEmpty()) {
+            return true;
+        }
+        try {
+            SearchPageToken.decode(request.getPageToken());
+            return true;
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Invalid page token").asRuntimeException());
+            return false;
+        }
+    }
+
+    @Override
+    public void getTrainRealTimeInfo(TrainInfoRequest request, StreamObserver<TrainRealTimeUpdate> responseObserver) {
+        router.trains(router.shardOfTrain(request.getTrainId())).getTrainRealTimeInfo(request, responseObserver);
+    }
+
+    @Override
+    public void getAvailableStations(EmptyRequest request, StreamObserver<StationListResponse> responseObserver) {
+        ShardRouter.gather(router.scatter(shard -> router.trainsFuture(shard).getAvailableStations(request)), replies -> {
+            List<Station> stations = union(replies);
+            stations.sort(Comparator.comparing((Station station) -> StationCatalog.normalize(station.getName()))
+                    .thenComparing(Station::getId));
+            return StationListResponse.newBuilder().addAllStations(stations).build();
+        }, responseObserver);
+    }
+
+    // stesso ordine del catalogo di uno shard: prima i nomi che iniziano col prefisso, poi quelli con una parola che inizia col prefisso
+    @Override
+    public void searchStations(SearchStationsRequest request, StreamObserver<StationListResponse> responseObserver) {
+        int limit = request.getLimit() <= 0 ? TrainServiceImpl.DEFAULT_STATION_SUGGESTIONS
+                : Math.min(request.getLimit(), TrainServiceImpl.MAX_STATION_SUGGESTIONS);
+        String prefix = StationCatalog.normalize(request.getPrefix());
+        ShardRouter.gather(router.scatter(shard -> router.trainsFuture(shard).searchStations(request)), replies -> {
+            List<Station> stations = union(replies);
+            stations.sort(Comparator.comparing((Station station) -> !StationCatalog.normalize(station.getName()).startsWith(prefix))
+                    .thenComparing(station -> StationCatalog.normalize(station.getName()))
+                    .thenComparing(Station::getId));
+            return StationListResponse.newBuilder()
+                    .addAllStations(stations.subList(0, Math.min(limit, stations.size())))
+                    .build();
+        }, responseObserver);
+    }
+
+    // la stessa stazione è servita da treni di piú shard
+    private static List<Station> union(List<StationListResponse> replies) {
+        Map<String, Station> byId = new LinkedHashMap<>();
+        for (StationListResponse reply : replies) {
+            for (Station station : reply.getStationsList()) {
+                byId.putIfAbsent(station.getId(), station);
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    // le chiavi si dividono per shard, con uno stream verso ognuno; i messaggi arrivano al client come li mandano gli shard
+    @Override
+    public void watchAvailability(WatchAvailabilityRequest request, StreamObserver<AvailabilityDelta> responseObserver) {
+        Map<Integer, WatchAvailabilityRequest.Builder> byShard = new TreeMap<>();
+        for (AvailabilityKey key : request.getKeysList()) {
+            byShard.computeIfAbsent(router.shardOfTrain(key.getTrainId()), shard -> request.toBuilder().clearKeys())
+                    .addKeys(key);
+        }
+        if (byShard.isEmpty()) {
+            // la validazione è quella dello shard
+            router.trains(0).watchAvailability(request, responseObserver);
+            return;
+        }
+        MergedStream<AvailabilityDelta> merged = new MergedStream<>(responseObserver, byShard.size());
+        byShard.forEach((shard, shardRequest) -> router.trains(shard).watchAvailability(shardRequest.build(), merged));
+    }
+
+    // piú stream degli shard fusi in uno verso il client: finisce quando finiscono tutti, o al primo errore
+    // (che chiude la chiamata del client e quindi, tramite il Context, anche gli altri stream)
+    private static final class MergedStream<T> implements StreamObserver<T> {
+        private final StreamObserver<T> downstream;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int open;
+        private boolean done;
+
+        private MergedStream(StreamObserver<T> downstream, int open) {
+            this.downstream = downstream;
+            this.open = open;
+        }
+
+        @Override
+        public void onNext(T value) {
+            lock.lock();
+            try {
+                if (!done) {
+                    downstream.onNext(value);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            lock.lock();
+            try {
+                if (!done) {
+                    done = true;
+                    downstream.onError(Status.fromThrowable(t).asRuntimeException());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            lock.lock();
+            try {
+                if (!done && --open == 0) {
+                    done = true;
+                    downstream.onCompleted();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // un itinerario con cambi usa treni di shard diversi, e nessuno shard ha l'orario completo per pianificarlo
+    @Override
+    public void planJourney(PlanJourneyRequest request, StreamObserver<PlanJourneyResponse> responseObserver) {
+        responseObserver.onError(Status.UNIMPLEMENTED
+                .withDescription("PlanJourney is not available in sharded mode")
+                .asRuntimeException());
+    }
+}
@@ -1,18 +1,25 @@
 package com.trenical.services;
 
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import com.trenical.database.SeatInventory;
+import com.trenical.database.SeatMap;
 import com.trenical.database.TicketDatabase;
 import com.trenical.database.TrainDatabase;
+import com.trenical.sharding.ShardKey;
 import proto.*;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Timestamp;
+import java.io.IOException;
 import java.time.Instant;
-import java.util.UUID;
 import java.util.ArrayList;
 import java.util.List;
 
 public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
     private final TicketDatabase ticketDatabase = TicketDatabase.getInstance();
     private final TrainDatabase trainDatabase = TrainDatabase.getInstance();
+    // con piú shard l'id del biglietto porta l'indice dello shard, per il router
+    private final ShardKey shard = ShardKey.local();
 
     @Override
     public void purchaseTickets(PurchaseTicketRequest request, StreamObserver<PurchaseTicketResponse> responseObserver) {
@@ -24,17 +31,18 @@ public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
         if (trainToBook == null) {
             responseBuilder.setSuccess(false).setMessage("Train not found.");
         } else {
-            // DISPonibilità dei posti sempre simulata per ora...
-            int availableSeats = trainDatabase.getAvailableSeats(request.getTrainId(), request.getServiceClass());
-            if (availableSeats >= request.getNumberOfTickets()) {
+            // prenoto atomicamente i posti prima del pagamento: se il pagamento fallisce li rilascio.
+            int[] reservedSeats = trainDatabase.reserveSeats(request.getTrainId(), request.getServiceClass(), request.getNumberOfTickets());
+            if (reservedSeats != null) {
                 // Processo di pagamento anch'esso simulato.
                 boolean paymentSuccessful = !request.getPaymentMethodToken().isEmpty();
 
                 if (paymentSuccessful) {
                     List<Ticket> purchasedTicketsList = new ArrayList<>();
-                    for (int i = 0; i < request.getNumberOfTickets(); i++) {
-                        String ticketId = UUID.randomUUID().toString();
-                        String seatNumber = request.getServiceClass().substring(0,1) + (ticketDatabase.getTicketsForTrain(request.getTrainId()).size() + i + 1);
+                    long journalSeq = 0;
+                    for (int seat : reservedSeats) {
+                        String ticketId = shard.newTicketId();
+                        String seatNumber = SeatInventory.seatNumber(request.getServiceClass(), seat);
 
                         Ticket newTicket = Ticket.newBuilder()
                                 .setId(ticketId)
@@ -44,13 +52,23 @@ public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
                                 .setPurchaseDate(Timestamp.newBuilder().setSeconds(Instant.now().getEpochSecond()).build())
                                 .setStatus("CONFIRMED")
                                 .build();
-                        ticketDatabase.saveTicket(newTicket);
+                        journalSeq = ticketDatabase.saveTicket(newTicket);
                         purchasedTicketsList.add(newTicket);
                     }
+                    // una sola attesa per tutti i biglietti dell'acquisto (group commit del journal)
+                    if (!awaitDurable(journalSeq, responseObserver, () -> {
+                        for (Ticket ticket : purchasedTicketsList) {
+                            ticketDatabase.revertTicket(ticket, null);
+                        }
+                        trainDatabase.releaseSeats(request.getTrainId(), request.getServiceClass(), reservedSeats);
+                    })) {
+                        return;
+                    }
                     responseBuilder.setSuccess(true)
                             .addAllPurchasedTickets(purchasedTicketsList)
                             .setMessage("Purchase successful for " + request.getNumberOfTickets() + " ticket(s).");
                 } else {
+                    trainDatabase.releaseSeats(request.getTrainId(), request.getServiceClass(), reservedSeats);
                     responseBuilder.setSuccess(false).setMessage("Payment failed.");
                 }
             } else {
@@ -78,6 +96,8 @@ public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
             // 3) AGGIORNAMENTO DEL BIGLIETTO
             Ticket.Builder modifiedTicketBuilder = existingTicket.toBuilder();
             boolean modified = false;
+            boolean classChanged = false;
+            int[] newClassSeat = null;
             double additionalCharge = 0.0;
 
             if (request.hasNewTravelDate()) {
@@ -99,20 +119,49 @@ public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
                 modifiedTicketBuilder.setTrainDetails(existingTicket.getTrainDetails().toBuilder().setServiceClass(request.getNewServiceClass()));
                 // XXXXX qua da aggiustare la logica dei prezzi
                 modified = true;
+                classChanged = true;
                 additionalCharge += 15.0; // sempre simulata
             }
 
             if (modified) {
                 // XXX qua pure simulo il pagamento della differenza di prezzo.
+                String trainId = existingTicket.getTrainDetails().getId();
                 if (additionalCharge > 0 && request.getPaymentMethodTokenForDiff().isEmpty()) {
                     responseBuilder.setSuccess(false).setMessage("Additional payment required for modification.");
+                } else if (classChanged && (newClassSeat = trainDatabase.reserveSeats(trainId, request.getNewServiceClass(), 1)) == null) {
+                    responseBuilder.setSuccess(false).setMessage("Not enough available seats in class " + request.getNewServiceClass() + ".");
                 } else {
+                    if (classChanged) {
+                        modifiedTicketBuilder.setSeatNumber(SeatInventory.seatNumber(request.getNewServiceClass(), newClassSeat[0]));
+                    }
                     Ticket finalTicket = modifiedTicketBuilder.setStatus("MODIFIED").build();
-                    ticketDatabase.saveTicket(finalTicket); // Update ticket
-                    responseBuilder.setSuccess(true)
-                            .setModifiedTicket(finalTicket)
-                            .setAdditionalCharge(additionalCharge)
-                            .setMessage("Ticket modified successfully.");
+                    // si salva solo se nessuno ha cambiato il biglietto dopo la lettura: con due modifiche concorrenti
+                    // una sola libera il posto della classe precedente, l'altra restituisce quello appena prenotato
+                    long journalSeq = ticketDatabase.saveTicketIfCurrent(finalTicket, existingTicket);
+                    int[] reservedForModify = newClassSeat;
+                    if (journalSeq < 0) {
+                        if (reservedForModify != null) {
+                            trainDatabase.releaseSeats(trainId, request.getNewServiceClass(), reservedForModify);
+                        }
+                        responseBuilder.setSuccess(false).setMessage("Ticket was modified concurrently, please retry.");
+                    } else {
+                        if (!awaitDurable(journalSeq, responseObserver, () -> {
+                            ticketDatabase.revertTicket(finalTicket, existingTicket);
+                            if (reservedForModify != null) {
+                                trainDatabase.releaseSeats(trainId, request.getNewServiceClass(), reservedForModify);
+                            }
+                        })) {
+                            return;
+                        }
+                        if (classChanged) {
+                            // il posto nella nuova classe è giá prenotato, libero quello della classe precedente
+                            trainDatabase.releaseSeat(trainId, existingTicket.getTrainDetails().getServiceClass(), existingTicket.getSeatNumber());
+                        }
+                        responseBuilder.setSuccess(true)
+                                .setModifiedTicket(finalTicket)
+                                .setAdditionalCharge(additionalCharge)
+                                .setMessage("Ticket modified successfully.");
+                    }
                 }
             } else {
                 responseBuilder.setSuccess(false).setMessage("No changes specified or modification not allowed.");
@@ -123,6 +172,23 @@ public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
     }
 
 
+    // se il commit fallisce il client riceve UNAVAILABLE, quindi prima si annulla quanto fatto: undo libera i posti
+    // prenotati e riporta i biglietti alla versione precedente
+    private boolean awaitDurable(long journalSeq, StreamObserver<?> responseObserver, Runnable undo) {
+        try {
+            ticketDatabase.awaitDurable(journalSeq);
+            return true;
+        } catch (IOException e) {
+            System.err.println("[Server] Ticket journal commit failed: " + e.getMessage());
+            undo.run();
+            responseObserver.onError(Status.UNAVAILABLE
+                    .withDescription("Unable to persist tickets: " + e.getMessage())
+                    .asRuntimeException());
+            return false;
+        }
+    }
+
+
     @Override
     public void getMyTickets(UserRequest request, StreamObserver<TicketListResponse> responseObserver) {
         List<Ticket> userTickets = ticketDatabase.getTicketsByUserId(request.getUserId());
@@ -134,6 +200,27 @@ public class TicketServiceImpl extends TicketServiceGrpc.TicketServiceImplBase {
     }
 
 
+    @Override
+    public void getSeatMap(SeatMapRequest request, StreamObserver<SeatMapResponse> responseObserver) {
+        SeatMap seatMap = trainDatabase.getSeatMap(request.getTrainId(), request.getServiceClass());
+        if (seatMap == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("No seats for train " + request.getTrainId() + " in class " + request.getServiceClass())
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(SeatMapResponse.newBuilder()
+                .setTrainId(request.getTrainId())
+                .setServiceClass(request.getServiceClass())
+                .setCapacity(seatMap.getCapacity())
+                .setSeatsPerCoach(seatMap.getSeatsPerCoach())
+                .setAvailableSeats(seatMap.getAvailableSeats())
+                .setOccupied(ByteString.copyFrom(seatMap.toBitPacked()))
+                .build());
+        responseObserver.onCompleted();
+    }
+
+
 
 
 
@@ -1,22 +1,33 @@
 package com.trenical.services;
 
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import proto.*;
 import com.trenical.database.TrainDatabase;
 import com.trenical.database.TicketDatabase;
+import com.trenical.database.TrainStore;
+import com.trenical.observer.AvailabilityFeed;
+import com.trenical.observer.LiveTrainFeed;
+import com.trenical.planner.JourneyPlanner;
 import com.google.protobuf.Timestamp;
 
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class TrainServiceImpl extends TreniCalGrpc.TreniCalImplBase{
 
     private final TrainDatabase trainDatabase = TrainDatabase.getInstance();
     private final TicketDatabase ticketDatabase = TicketDatabase.getInstance();
+    private final LiveTrainFeed liveTrainFeed = LiveTrainFeed.getInstance();
+    private final AvailabilityFeed availabilityFeed = AvailabilityFeed.getInstance();
+    private final JourneyPlanner journeyPlanner = JourneyPlanner.getInstance();
+
+    static final int MAX_PAGE_SIZE = 500;
+    static final int DEFAULT_STATION_SUGGESTIONS = 10;
+    static final int MAX_STATION_SUGGESTIONS = 100;
 
     @Override
     public void searchTrains (SearchTrainRequest request, StreamObserver<SearchTrainResponse> responseObserver){
@@ -29,32 +40,30 @@ public class TrainServiceImpl extends TreniCalGrpc.TreniCalImplBase{
                 request.getTravelDate().getDay());
 
 
-        LocalDate searchDate = LocalDate.of(request.getTravelDate().getYear(),
-                request.getTravelDate().getMonth(),
-                request.getTravelDate().getDay());
+        int[] routeRows;
+        try {
+            routeRows = candidateRows(request);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Invalid page token").asRuntimeException());
+            return;
+        }
 
-        List<Train> allTrains = trainDatabase.getAllTrains();
-
-        // uso lo stream di java per lavorare con la collezione di dati "allTrains"
-        List<Train> foundTrains = allTrains.stream()
-                .filter(train -> train.getDepartureStation().getId().equals(request.getDepartureStation().getId()) &&
-                        train.getArrivalStation().getId().equals(request.getArrivalStation().getId()))
-                .filter(train -> {
-                    Instant trainDepartureInstant = Instant.ofEpochSecond(train.getDepartureTime().getSeconds(), train.getDepartureTime().getNanos());
-                    LocalDate trainDepartureDate = LocalDate.ofInstant(trainDepartureInstant, ZoneId.systemDefault());
-                    return trainDepartureDate.equals(searchDate);
-                })
-                .filter(train -> request.getPreferredTrainType().isEmpty() || train.getTrainType().equalsIgnoreCase(request.getPreferredTrainType()))
-                .filter(train -> request.getPreferredServiceClass().isEmpty() || train.getServiceClass().equalsIgnoreCase(request.getPreferredServiceClass()))
-
-                .map(train -> {
-                    // Disponibilità dei posti simulata, in realtà non si fa così.
-                    // In un sistema reale, in teoria bisognerebbe contare il numero di biglietti venduti per questo treno e anche per la classe.
-                    int availableSeats = trainDatabase.getAvailableSeats(train.getId(), train.getServiceClass());
-                    return train.toBuilder().setAvailableSeats(availableSeats).build();
-                })
-                .filter(train -> train.getAvailableSeats() > 0)
-                .collect(Collectors.toList());
+        // page_size 0 = comportamento originale, tutti i risultati in un solo messaggio
+        int pageSize = request.getPageSize() <= 0 ? Integer.MAX_VALUE : Math.min(request.getPageSize(), MAX_PAGE_SIZE);
+        List<Train> foundTrains = new ArrayList<>();
+        String nextPageToken = "";
+        for (int row : routeRows) {
+            Train match = matchWithSeats(request, row);
+            if (match == null) {
+                continue;
+            }
+            if (foundTrains.size() == pageSize) {
+                // esiste almeno un altro risultato: la pagina successiva riparte dall'ultimo treno restituito
+                nextPageToken = SearchPageToken.encode(foundTrains.get(foundTrains.size() - 1));
+                break;
+            }
+            foundTrains.add(match);
+        }
 
         // costruisco il messaggio di risposta contenente la lista
         // dei treni disponibili,
@@ -63,6 +72,7 @@ public class TrainServiceImpl extends TreniCalGrpc.TreniCalImplBase{
 
         SearchTrainResponse response = SearchTrainResponse.newBuilder()
                 .addAllAvailableTrains(foundTrains)
+                .setNextPageToken(nextPageToken)
                 .build();
 
         responseObserver.onNext(response);
@@ -71,46 +81,179 @@ public class TrainServiceImpl extends TreniCalGrpc.TreniCalImplBase{
     }
 
 
+    // Versione in streaming della ricerca: ogni treno viene inviato appena trovato, in ordine di partenza.
+    // L'invio segue il flow control di gRPC (isReady / onReadyHandler), quindi il server non accumula
+    // in memoria piú messaggi di quanti il client ne stia consumando. page_size vale come per SearchTrains:
+    // 0 = tutti i treni, altrimenti al massimo MAX_PAGE_SIZE.
+    @Override
+    public void searchTrainsStream(SearchTrainRequest request, StreamObserver<Train> responseObserver) {
+        System.out.println("[Server] Received SearchTrainsStream request for: " +
+                request.getDepartureStation().getName() + " to " + request.getArrivalStation().getName());
+
+        int[] routeRows;
+        try {
+            routeRows = candidateRows(request);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Invalid page token").asRuntimeException());
+            return;
+        }
+        int limit = request.getPageSize() <= 0 ? Integer.MAX_VALUE : Math.min(request.getPageSize(), MAX_PAGE_SIZE);
+        new SearchStreamPump(request, routeRows, limit, responseObserver).start();
+    }
+
+    // righe del TrainStore per la tratta e il giorno richiesti, a partire dal cursore se c'è un page_token
+    private int[] candidateRows(SearchTrainRequest request) {
+        LocalDate searchDate = LocalDate.of(request.getTravelDate().getYear(),
+                request.getTravelDate().getMonth(),
+                request.getTravelDate().getDay());
+        String departureId = request.getDepartureStation().getId();
+        String arrivalId = request.getArrivalStation().getId();
+        if (request.getPageToken().isEmpty()) {
+            // l'indice restituisce solo i treni della tratta in quel giorno, giá ordinati per partenza:
+            // i filtri su tipo e classe lavorano all'interno del bucket.
+            return trainDatabase.findTrainRows(departureId, arrivalId, searchDate);
+        }
+        SearchPageToken cursor = SearchPageToken.decode(request.getPageToken());
+        return trainDatabase.findTrainRowsAfter(departureId, arrivalId, searchDate,
+                cursor.departureSeconds, cursor.trainId);
+    }
+
+    // il treno con i posti liberi aggiornati, oppure null se non rispetta i filtri o è pieno.
+    // I filtri leggono le colonne del TrainStore: il messaggio Train si costruisce solo per chi passa.
+    private Train matchWithSeats(SearchTrainRequest request, int row) {
+        TrainStore store = trainDatabase.getTrainStore();
+        String preferredTrainType = request.getPreferredTrainType();
+        String preferredServiceClass = request.getPreferredServiceClass();
+        if (!preferredTrainType.isEmpty() && !store.trainType(row).equalsIgnoreCase(preferredTrainType)) {
+            return null;
+        }
+        if (!preferredServiceClass.isEmpty() && !store.serviceClass(row).equalsIgnoreCase(preferredServiceClass)) {
+            return null;
+        }
+        int availableSeats = trainDatabase.getAvailableSeats(row);
+        return availableSeats > 0 ? store.materialize(row, availableSeats) : null;
+    }
+
+    private final class SearchStreamPump implements Runnable {
+        private final SearchTrainRequest request;
+        private final int[] candidates;
+        private final StreamObserver<Train> stream;
+        // null se l'observer non è quello del server gRPC: niente flow control, si invia tutto subito
+        private final ServerCallStreamObserver<Train> serverStream;
+        private int next;
+        private int remaining;
+        private volatile boolean done;
+
+        SearchStreamPump(SearchTrainRequest request, int[] candidates, int limit, StreamObserver<Train> stream) {
+            this.request = request;
+            this.candidates = candidates;
+            this.remaining = limit;
+            this.stream = stream;
+            this.serverStream = stream instanceof ServerCallStreamObserver
+                    ? (ServerCallStreamObserver<Train>) stream
+                    : null;
+        }
+
+        void start() {
+            if (serverStream != null) {
+                serverStream.setOnCancelHandler(() -> done = true);
+                serverStream.setOnReadyHandler(this);
+            }
+            run();
+        }
+
+        // gRPC serializza le chiamate a onReadyHandler con quelle del metodo, quindi niente lock
+        @Override
+        public void run() {
+            while (!done && (serverStream == null || serverStream.isReady())) {
+                if (remaining == 0 || next == candidates.length) {
+                    done = true;
+                    stream.onCompleted();
+                    return;
+                }
+                Train match = matchWithSeats(request, candidates[next++]);
+                if (match != null) {
+                    stream.onNext(match);
+                    remaining--;
+                }
+            }
+        }
+    }
+
+
     @Override
     public void getTrainRealTimeInfo(TrainInfoRequest request, StreamObserver<TrainRealTimeUpdate> responseObserver) {
         String trainId = request.getTrainId();
         System.out.println("[Server] Received GetTrainRealTimeInfo request for train ID: " + trainId);
 
-        for (int i = 0; i < 5; i++) { // Send a few updates
-            try {
-                Thread.sleep(2000); // simulo un delay tra un update e un altro
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                responseObserver.onError(io.grpc.Status.CANCELLED.withDescription("Stream interrupted").asRuntimeException());
-                return;
-            }
-            if (Thread.currentThread().isInterrupted()) {
-                responseObserver.onError(io.grpc.Status.CANCELLED.withDescription("Stream interrupted by client").asRuntimeException());
-                return;
-            }
+        if (trainDatabase.getTrainById(trainId) == null) {
+            responseObserver.onError(io.grpc.Status.NOT_FOUND.withDescription("Train not found").asRuntimeException());
+            return;
+        }
 
+        // lo stream resta aperto ma il thread torna subito libero: gli aggiornamenti arrivano
+        // dal feed condiviso del treno, prodotto una volta sola per tutti gli iscritti.
+        liveTrainFeed.subscribe(trainId, responseObserver);
+    }
 
-            Train train = trainDatabase.getTrainById(trainId);
-            if (train == null) {
-                responseObserver.onError(io.grpc.Status.NOT_FOUND.withDescription("Train not found").asRuntimeException());
-                return;
-            }
 
-            // Simulo dei Cambiamenti
-            Timestamp updatedArrivalTime = Timestamp.newBuilder()
-                    .setSeconds(train.getArrivalTime().getSeconds() + (i * 60)) // ritardo di i minuti
-                    .build();
-            String platform = (i % 2 == 0) ? "5" : "5B";
+    // al posto di ripetere SearchTrains per vedere se i posti sono cambiati: lo stream manda prima lo stato attuale
+    // e poi solo i cambiamenti che attraversano una soglia, accumulati in una breve finestra
+    @Override
+    public void watchAvailability(WatchAvailabilityRequest request, StreamObserver<AvailabilityDelta> responseObserver) {
+        System.out.println("[Server] Received WatchAvailability request for " + request.getKeysCount() + " keys");
+        String invalid = null;
+        if (request.getKeysCount() == 0 || request.getKeysCount() > AvailabilityFeed.MAX_KEYS) {
+            invalid = "Between 1 and " + AvailabilityFeed.MAX_KEYS + " keys are required";
+        } else if (request.getThresholdsList().stream().anyMatch(threshold -> threshold <= 0)) {
+            invalid = "Thresholds must be positive";
+        }
+        if (invalid != null) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(invalid).asRuntimeException());
+            return;
+        }
+        if (!(responseObserver instanceof ServerCallStreamObserver)) {
+            // senza cancel handler e flow control l'osservazione non verrebbe mai tolta dal feed
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("WatchAvailability requires a gRPC server call").asRuntimeException());
+            return;
+        }
+        availabilityFeed.watch(request, (ServerCallStreamObserver<AvailabilityDelta>) responseObserver);
+    }
+
 
-            TrainRealTimeUpdate update = TrainRealTimeUpdate.newBuilder()
-                    .setTrainId(trainId)
-                    .setUpdatedArrivalTime(updatedArrivalTime)
-                    .setPlatform(platform)
-                    .setStatusUpdate("Train status update " + (i + 1) + ": Delayed, new platform " + platform)
-                    .build();
-            responseObserver.onNext(update);
+    @Override
+    public void planJourney(PlanJourneyRequest request, StreamObserver<PlanJourneyResponse> responseObserver) {
+        String fromId = request.getDepartureStation().getId();
+        String toId = request.getArrivalStation().getId();
+        System.out.println("[Server] Received PlanJourney request for: " + fromId + " to " + toId);
+        if (fromId.isEmpty() || toId.isEmpty()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Departure and arrival stations are required").asRuntimeException());
+            return;
         }
 
+        long departAfter = request.hasEarliestDeparture()
+                ? request.getEarliestDeparture().getSeconds()
+                : Instant.now().getEpochSecond();
+        int maxTransfers = request.getMaxTransfers() > 0 ? request.getMaxTransfers() : JourneyPlanner.DEFAULT_MAX_TRANSFERS;
+        List<JourneyPlanner.Journey> journeys = journeyPlanner.plan(fromId, toId, departAfter, maxTransfers,
+                request.getMinTransferMinutes() * 60);
+
+        // i Train dell'orario compatto diventano messaggi solo qui, con i posti liberi aggiornati
+        PlanJourneyResponse.Builder response = PlanJourneyResponse.newBuilder();
+        for (JourneyPlanner.Journey journey : journeys) {
+            Itinerary.Builder itinerary = Itinerary.newBuilder()
+                    .setTransfers(journey.transfers())
+                    .setDepartureTime(Timestamp.newBuilder().setSeconds(journey.departureSeconds()))
+                    .setArrivalTime(Timestamp.newBuilder().setSeconds(journey.arrivalSeconds()));
+            for (Train leg : journey.legs()) {
+                itinerary.addLegs(leg.toBuilder()
+                        .setAvailableSeats(trainDatabase.getAvailableSeats(leg.getId(), leg.getServiceClass())));
+            }
+            response.addItineraries(itinerary);
+        }
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
 
@@ -119,11 +262,8 @@ public class TrainServiceImpl extends TreniCalGrpc.TreniCalImplBase{
     public void getAvailableStations( EmptyRequest request, StreamObserver<StationListResponse> responseObserver){
         System.out.println("[Server] Received GetAvailableStations request");
         try{
-            List<Station> stations = trainDatabase.getAllUniqueStations();
-            StationListResponse response = StationListResponse.newBuilder()
-                    .addAllStations(stations)
-                    .build();
-            responseObserver.onNext(response);
+            // risposta giá pronta nel catalogo, costruita una volta per versione dell'orario
+            responseObserver.onNext(trainDatabase.getStationCatalog().getAllStations());
             responseObserver.onCompleted();
         } catch (Exception e ){
             System.err.println("[Server] Error getting available stations: " + e.getMessage());
@@ -135,4 +275,14 @@ public class TrainServiceImpl extends TreniCalGrpc.TreniCalImplBase{
     }
 
 
+    // autocompletamento: poche stazioni per ogni tasto premuto, senza mandare l'intero elenco
+    @Override
+    public void searchStations(SearchStationsRequest request, StreamObserver<StationListResponse> responseObserver) {
+        int limit = request.getLimit() <= 0 ? DEFAULT_STATION_SUGGESTIONS : Math.min(request.getLimit(), MAX_STATION_SUGGESTIONS);
+        List<Station> stations = trainDatabase.getStationCatalog().search(request.getPrefix(), limit);
+        responseObserver.onNext(StationListResponse.newBuilder().addAllStations(stations).build());
+        responseObserver.onCompleted();
+    }
+
+
 }
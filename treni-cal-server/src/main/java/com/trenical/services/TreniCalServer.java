@@ -2,66 +2,165 @@ package com.trenical.services;
 
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 
 import com.trenical.services.TrainServiceImpl;
 import com.trenical.services.TicketServiceImpl;
 import com.trenical.services.NotificationServiceImpl;
-import com.trenical.observer.NotificationEngine;
+import com.trenical.metrics.MetricsInterceptor;
+import com.trenical.metrics.PrometheusExporter;
+import com.trenical.observer.LiveStatusPoller;
 import com.trenical.database.TicketDatabase;
-import proto.Ticket;
+import com.trenical.rubyViaggiatreno.CachingViaggiatrenoClient;
+import com.trenical.rubyViaggiatreno.RubyViaggiatrenoClient;
+import com.trenical.sharding.ShardKey;
+import com.trenical.sharding.ShardRouter;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 
 public class TreniCalServer {
     private Server server;
+    private Server adminServer;
+    private ExecutorService callExecutor;
+    private RubyViaggiatrenoClient rubyViaggiatrenoClient;
+    private LiveStatusPoller liveStatusPoller;
+    private PrometheusExporter prometheusExporter;
+    private ShardRouter shardRouter;
 
     private void start() throws IOException {
-        int port = 50051;
-        server = ServerBuilder.forPort(port)
+        int port = Integer.getInteger("trenical.server.port", 50051);
+
+        // con trenical.shard.peers il processo è solo il router davanti agli shard: niente dati locali
+        if (!System.getProperty("trenical.shard.peers", "").isEmpty()) {
+            startRouter(port);
+            return;
+        }
+
+        // il journal va aperto prima di creare i servizi: TrainDatabase calcola i posti liberi
+        // a partire dai biglietti giá venduti.
+        String journalDir = System.getProperty("trenical.journal.dir");
+        if (journalDir != null && !journalDir.isEmpty()) {
+            TicketDatabase.getInstance().enableJournal(Paths.get(journalDir),
+                    Integer.getInteger("trenical.journal.segmentMb", 64) * 1024 * 1024,
+                    Long.getLong("trenical.journal.groupCommitMicros", 200),
+                    Long.getLong("trenical.journal.snapshotSeconds", 300));
+        }
+
+        ServerBuilder<?> builder = ServerBuilder.forPort(port);
+        callExecutor = ServerExecutors.createConfigured();
+        if (callExecutor != null) {
+            builder.executor(callExecutor);
+        }
+        server = builder
                 .addService(new TrainServiceImpl())
                 .addService(new TicketServiceImpl())
                 .addService(new NotificationServiceImpl())
+                // latenze per metodo e codice di stato di tutte le chiamate (anche quelle rifiutate)
+                .intercept(new MetricsInterceptor())
                 .build()
                 .start();
-        System.out.println("[Server] Server started, listening on " + port);
+        ShardKey shard = ShardKey.local();
+        System.out.println("[Server] Server started, listening on " + port + " (executor: " + ServerExecutors.configuredMode() + ")"
+                + (shard.isSharded() ? " as shard " + shard.getIndex() + "/" + shard.getCount() : ""));
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.err.println("*** shutting down gRPC server since JVM is shutting down");
             try {
                 TreniCalServer.this.stop();
-            } catch (InterruptedException e) {
+                TicketDatabase.getInstance().closeJournal();
+            } catch (InterruptedException | IOException e) {
                 e.printStackTrace(System.err);
             }
             System.err.println("*** server shut down");
         }));
 
 
-        new Thread(() -> {
-            try {
-                Thread.sleep(20000);
-                TicketDatabase ticketDb = TicketDatabase.getInstance();
-                if (!ticketDb.getTicketsForTrain("TR001").isEmpty()) {
-                    Ticket sampleTicket = ticketDb.getTicketsForTrain("TR001").get(0);
-                    if (sampleTicket != null) {
-                        NotificationEngine.getInstance().simulateTrainDelay(
-                                sampleTicket.getTrainDetails().getId(),
-                                sampleTicket.getId(),
-                                "Train " + sampleTicket.getTrainDetails().getTrainNumber() + " is now delayed by 30 minutes due to technical issues."
-                        );
-                    }
-                }
+        // stato reale dei treni seguiti dagli iscritti, dal microservizio Ruby Viaggiatreno
+        // con trenical.viaggiatreno.endpoints le chiamate sono bilanciate tra piú istanze, altrimenti host:port
+        String viaggiatrenoEndpoints = System.getProperty("trenical.viaggiatreno.endpoints",
+                System.getProperty("trenical.viaggiatreno.host", "localhost") + ":"
+                        + Integer.getInteger("trenical.viaggiatreno.port", 50052));
+        rubyViaggiatrenoClient = new RubyViaggiatrenoClient(viaggiatrenoEndpoints, RubyViaggiatrenoClient.Settings.fromSystemProperties());
+        liveStatusPoller = new LiveStatusPoller(new CachingViaggiatrenoClient(rubyViaggiatrenoClient));
+        liveStatusPoller.start(Long.getLong("trenical.poller.tickSeconds", 5));
+
+        startMonitoring();
+    }
+
+    // Metriche solo su loopback: AdminService su un server gRPC a parte e l'endpoint Prometheus, ognuno se ha una porta.
+    // Sulla porta pubblica non c'è AdminService, perché non ha autenticazione.
+    private void startMonitoring() throws IOException {
+        int adminPort = Integer.getInteger("trenical.admin.port", 0);
+        if (adminPort > 0) {
+            adminServer = NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), adminPort))
+                    .addService(new AdminServiceImpl())
+                    .build()
+                    .start();
+            System.out.println("[Server] AdminService available on 127.0.0.1:" + adminPort);
+        }
+        int metricsPort = Integer.getInteger("trenical.metrics.port", 0);
+        if (metricsPort > 0) {
+            prometheusExporter = new PrometheusExporter();
+            prometheusExporter.start(metricsPort);
+        }
+    }
 
+    private void startRouter(int port) throws IOException {
+        shardRouter = ShardRouter.fromSystemProperties();
+        ServerBuilder<?> builder = ServerBuilder.forPort(port);
+        callExecutor = ServerExecutors.createConfigured();
+        if (callExecutor != null) {
+            builder.executor(callExecutor);
+        }
+        server = builder
+                .addService(new ShardRoutingTrainService(shardRouter))
+                .addService(new ShardRoutingTicketService(shardRouter))
+                .addService(new ShardRoutingNotificationService(shardRouter))
+                .intercept(new MetricsInterceptor())
+                .build()
+                .start();
+        System.out.println("[Server] Shard router started, listening on " + port + " for " + shardRouter.shardCount() + " shards");
+        // metriche delle chiamate viste dal router; quelle di ogni shard si leggono dallo shard
+        startMonitoring();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.err.println("*** shutting down shard router since JVM is shutting down");
+            try {
+                TreniCalServer.this.stop();
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                e.printStackTrace(System.err);
             }
-        }).start();
+            System.err.println("*** shard router shut down");
+        }));
     }
 
     private void stop() throws InterruptedException {
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+        }
+        if (adminServer != null) {
+            adminServer.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (liveStatusPoller != null) {
+            liveStatusPoller.stop();
+        }
+        if (rubyViaggiatrenoClient != null) {
+            rubyViaggiatrenoClient.shutdown();
+        }
         if (server != null) {
             server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
         }
+        if (shardRouter != null) {
+            shardRouter.shutdown();
+        }
+        // l'executor passato al ServerBuilder non viene chiuso da gRPC
+        if (callExecutor != null) {
+            callExecutor.shutdown();
+        }
     }
 
     private void blockUntilShutdown() throws InterruptedException {
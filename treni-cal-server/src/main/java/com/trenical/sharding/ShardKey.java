@@ -0,0 +1,77 @@
+package com.trenical.sharding;
+
+import java.util.UUID;
+
+// Ripartizione dei dati tra i nodi: ogni treno (e con lui i suoi posti e i suoi biglietti) appartiene a un solo shard,
+// scelto dall'hash dell'id del treno. Gli id dei biglietti emessi da uno shard portano il suo indice ("s1-<uuid>"),
+// cosí il router sa a chi inoltrare ModifyTicket e SubscribeToTripChanges senza cercare il biglietto.
+// Con trenical.shard.count = 1 (default) il nodo possiede tutto e gli id restano UUID semplici.
+public final class ShardKey {
+    private static final String TICKET_PREFIX = "s";
+
+    private final int index;
+    private final int count;
+
+    public ShardKey(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    private static final class Holder {
+        private static final ShardKey LOCAL = new ShardKey(
+                Integer.getInteger("trenical.shard.index", 0),
+                Integer.getInteger("trenical.shard.count", 1));
+    }
+
+    // lo shard di questo processo
+    public static ShardKey local() {
+        return Holder.LOCAL;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public boolean owns(String trainId) {
+        return shardOf(trainId, count) == index;
+    }
+
+    public String newTicketId() {
+        String id = UUID.randomUUID().toString();
+        return isSharded() ? TICKET_PREFIX + index + "-" + id : id;
+    }
+
+    // String.hashCode è fissato dalla specifica, quindi tutti i processi (router compreso) scelgono lo stesso shard;
+    // il rimescolamento evita che id consecutivi ("TR001", "TR002", ...) si distribuiscano a scacchiera
+    public static int shardOf(String trainId, int count) {
+        int h = trainId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return Math.floorMod(h, count);
+    }
+
+    // lo shard che ha emesso il biglietto, -1 se l'id non ne porta uno
+    public static int shardOfTicket(String ticketId) {
+        int separator = ticketId.indexOf('-');
+        if (!ticketId.startsWith(TICKET_PREFIX) || separator <= TICKET_PREFIX.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(ticketId.substring(TICKET_PREFIX.length(), separator));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.trenical.sharding;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.stub.AbstractStub;
+import io.grpc.stub.StreamObserver;
+import proto.NotificationServiceGrpc;
+import proto.TicketServiceGrpc;
+import proto.TreniCalGrpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Canali verso gli shard, nell'ordine di trenical.shard.peers (la posizione è l'indice dello shard).
+// Le chiamate partono dal Context della chiamata in arrivo: se il client la cancella o ne scade la deadline,
+// gRPC cancella anche quelle verso gli shard.
+public final class ShardRouter {
+    private final List<ManagedChannel> channels;
+    private final long deadlineMillis;
+
+    public ShardRouter(List<ManagedChannel> channels, long deadlineMillis) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.channels = List.copyOf(channels);
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    // "host:porta,host:porta", uno per shard
+    public static ShardRouter fromSystemProperties() {
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (String peer : System.getProperty("trenical.shard.peers", "").split(",")) {
+            if (!peer.trim().isEmpty()) {
+                channels.add(ManagedChannelBuilder.forTarget(peer.trim()).usePlaintext().build());
+            }
+        }
+        return new ShardRouter(channels, Long.getLong("trenical.shard.deadlineMillis", 10_000));
+    }
+
+    public int shardCount() {
+        return channels.size();
+    }
+
+    public int shardOfTrain(String trainId) {
+        return ShardKey.shardOf(trainId, channels.size());
+    }
+
+    // -1 se il biglietto non porta uno shard valido
+    public int shardOfTicket(String ticketId) {
+        int shard = ShardKey.shardOfTicket(ticketId);
+        return shard < channels.size() ? shard : -1;
+    }
+
+    // stub senza deadline: per gli stream, che restano aperti quanto vuole il client
+    public TreniCalGrpc.TreniCalStub trains(int shard) {
+        return TreniCalGrpc.newStub(channels.get(shard));
+    }
+
+    public TicketServiceGrpc.TicketServiceStub tickets(int shard) {
+        return TicketServiceGrpc.newStub(channels.get(shard));
+    }
+
+    public NotificationServiceGrpc.NotificationServiceStub notifications(int shard) {
+        return NotificationServiceGrpc.newStub(channels.get(shard));
+    }
+
+    public TreniCalGrpc.TreniCalFutureStub trainsFuture(int shard) {
+        return withDeadline(TreniCalGrpc.newFutureStub(channels.get(shard)));
+    }
+
+    public TicketServiceGrpc.TicketServiceFutureStub ticketsFuture(int shard) {
+        return withDeadline(TicketServiceGrpc.newFutureStub(channels.get(shard)));
+    }
+
+    // per le chiamate unarie; se la chiamata in arrivo ha una deadline piú vicina vale quella
+    public <S extends AbstractStub<S>> S withDeadline(S stub) {
+        return stub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // la stessa chiamata su tutti gli shard; le risposte sono nell'ordine degli shard
+    public <T> ListenableFuture<List<T>> scatter(IntFunction<ListenableFuture<T>> call) {
+        List<ListenableFuture<T>> calls = new ArrayList<>(channels.size());
+        for (int shard = 0; shard < channels.size(); shard++) {
+            calls.add(call.apply(shard));
+        }
+        return Futures.allAsList(calls);
+    }
+
+    // un risultato parziale sarebbe sbagliato (es. biglietti mancanti), quindi se uno shard fallisce fallisce la chiamata
+    public static <T, R> void gather(ListenableFuture<List<T>> replies, Function<List<T>, R> merge,
+                                     StreamObserver<R> responseObserver) {
+        Futures.addCallback(replies, new FutureCallback<>() {
+            @Override
+            public void onSuccess(List<T> result) {
+                responseObserver.onNext(merge.apply(result));
+                responseObserver.onCompleted();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                responseObserver.onError(Status.fromThrowable(t).asRuntimeException());
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    public void shutdown() throws InterruptedException {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        for (ManagedChannel channel : channels) {
+            channel.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainDatabase;
+import com.trenical.services.TrainServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import proto.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AvailabilityFeedTest {
+    private static final String TRAIN_ID = "AV001";
+
+    private final TrainDatabase trainDatabase = TrainDatabase.getInstance();
+    private io.grpc.Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        long now = Instant.now().getEpochSecond();
+        // treno dedicato con 20 posti, cosí gli acquisti degli altri test non spostano i conteggi
+        trainDatabase.addTrains(List.of(Train.newBuilder()
+                .setId(TRAIN_ID).setTrainNumber("RV 2100")
+                .setDepartureStation(Station.newBuilder().setId("AV-A").setName("Avail A"))
+                .setArrivalStation(Station.newBuilder().setId("AV-B").setName("Avail B"))
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(now + 3600))
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(now + 7200))
+                .setServiceClass("Standard").setPrice(10).setAvailableSeats(20).setTrainType("Regionale")
+                .build()));
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(new TrainServiceImpl()).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSendsSnapshotThenOnlyThresholdCrossings() throws InterruptedException {
+        BlockingQueue<AvailabilityDelta> deltas = new LinkedBlockingQueue<>();
+        ClientCallStreamObserver<?>[] call = new ClientCallStreamObserver<?>[1];
+        TreniCalGrpc.newStub(channel).watchAvailability(WatchAvailabilityRequest.newBuilder()
+                .addKeys(AvailabilityKey.newBuilder().setTrainId(TRAIN_ID).setServiceClass("Standard"))
+                .addKeys(AvailabilityKey.newBuilder().setTrainId("NOPE").setServiceClass("Standard"))
+                .addThresholds(10)
+                .setCoalesceMillis(50)
+                .build(), new ClientResponseObserver<WatchAvailabilityRequest, AvailabilityDelta>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<WatchAvailabilityRequest> requestStream) {
+                call[0] = requestStream;
+            }
+
+            @Override
+            public void onNext(AvailabilityDelta value) {
+                deltas.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+
+        // stato iniziale, senza la chiave che non esiste
+        AvailabilityDelta snapshot = deltas.poll(5, TimeUnit.SECONDS);
+        assertNotNull(snapshot);
+        assertEquals(1, snapshot.getChangesCount());
+        assertEquals(20, snapshot.getChanges(0).getAvailableSeats());
+
+        // 20 -> 15: nessuna soglia attraversata
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(trainDatabase.reserveSeats(TRAIN_ID, "Standard", 1));
+        }
+        assertNull(deltas.poll(300, TimeUnit.MILLISECONDS));
+
+        // 15 -> 9 in piú acquisti: un solo messaggio con il valore finale
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(trainDatabase.reserveSeats(TRAIN_ID, "Standard", 2));
+        }
+        AvailabilityDelta low = deltas.poll(5, TimeUnit.SECONDS);
+        assertNotNull(low);
+        assertEquals(9, low.getChanges(0).getAvailableSeats());
+        assertNull(deltas.poll(300, TimeUnit.MILLISECONDS));
+
+        // l'esaurito è sempre una soglia
+        assertNotNull(trainDatabase.reserveSeats(TRAIN_ID, "Standard", 9));
+        AvailabilityDelta soldOut = deltas.poll(5, TimeUnit.SECONDS);
+        assertNotNull(soldOut);
+        assertEquals(0, soldOut.getChanges(0).getAvailableSeats());
+
+        call[0].cancel("done", null);
+    }
+
+    @Test
+    public void testRejectsRequestWithoutKeys() {
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () ->
+                TreniCalGrpc.newBlockingStub(channel).watchAvailability(WatchAvailabilityRequest.getDefaultInstance()).hasNext());
+        assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+    }
+}
@@ -0,0 +1,158 @@
+import com.trenical.rubyViaggiatreno.CachingViaggiatrenoClient;
+import com.trenical.rubyViaggiatreno.RubyViaggiatrenoClient;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchResponse;
+import ruby_viaggiatreno_microservizio.TrainStatusRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusResponse;
+import ruby_viaggiatreno_microservizio.ViaggiatrenoServiceGrpc;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingViaggiatrenoClientTest {
+
+    // servizio Ruby finto: conta le chiamate e risponde solo quando il test apre il cancello
+    private static final class FakeViaggiatreno extends ViaggiatrenoServiceGrpc.ViaggiatrenoServiceImplBase {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger batchCalls = new AtomicInteger();
+        private final AtomicInteger batchTrains = new AtomicInteger();
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public void getTrainRealtimeStatus(TrainStatusRequest request, StreamObserver<TrainStatusResponse> responseObserver) {
+            calls.incrementAndGet();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean found = !request.getTrainNumber().startsWith("0");
+            responseObserver.onNext(TrainStatusResponse.newBuilder()
+                    .setTrainNumber(request.getTrainNumber())
+                    .setFound(found)
+                    .setDelayMinutes(calls.get())
+                    .build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void getTrainRealtimeStatusBatch(TrainStatusBatchRequest request, StreamObserver<TrainStatusBatchResponse> responseObserver) {
+            batchCalls.incrementAndGet();
+            TrainStatusBatchResponse.Builder response = TrainStatusBatchResponse.newBuilder();
+            for (String number : request.getTrainNumbersList()) {
+                batchTrains.incrementAndGet();
+                response.addStatuses(TrainStatusResponse.newBuilder().setTrainNumber(number).setFound(true));
+            }
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private final FakeViaggiatreno fakeService = new FakeViaggiatreno();
+    private Server server;
+    private ManagedChannel channel;
+    private RubyViaggiatrenoClient rubyClient;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName).addService(fakeService).build().start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+        rubyClient = new RubyViaggiatrenoClient(channel);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneUpstreamCall() {
+        CachingViaggiatrenoClient client = new CachingViaggiatrenoClient(rubyClient);
+        fakeService.gate = new CountDownLatch(1);
+
+        List<CompletableFuture<TrainStatusResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(client.getTrainStatusAsync("9600"));
+        }
+        fakeService.gate.countDown();
+        for (CompletableFuture<TrainStatusResponse> future : futures) {
+            assertTrue(future.join().getFound());
+        }
+
+        // ora è in cache
+        assertEquals("9600", client.getTrainStatus("9600").getTrainNumber());
+        assertEquals(1, fakeService.calls.get());
+        assertEquals(1, client.getUpstreamCalls());
+    }
+
+    @Test
+    public void testPipelinedLoadsOnlyMisses() {
+        CachingViaggiatrenoClient client = new CachingViaggiatrenoClient(rubyClient);
+        client.getTrainStatus("9600");
+
+        List<TrainStatusResponse> responses = client.getTrainStatusesPipelined(List.of("9601", "9600", "9601", "9602"), 50, 2).join();
+        assertEquals(List.of("9601", "9600", "9601", "9602"), responses.stream().map(TrainStatusResponse::getTrainNumber).toList());
+        // 9600 dalla cache, 9601 chiesto una volta sola
+        assertEquals(1, fakeService.batchCalls.get());
+        assertEquals(2, fakeService.batchTrains.get());
+
+        client.getTrainStatusesPipelined(List.of("9600", "9601", "9602"), 50, 2).join();
+        assertEquals(1, fakeService.batchCalls.get());
+        assertEquals(1, fakeService.calls.get());
+    }
+
+    @Test
+    public void testNegativeResultsAreCached() {
+        CachingViaggiatrenoClient client = new CachingViaggiatrenoClient(rubyClient);
+        assertFalse(client.getTrainStatus("0000").getFound());
+        assertFalse(client.getTrainStatus("0000").getFound());
+        assertEquals(1, fakeService.calls.get());
+    }
+
+    @Test
+    public void testStaleValueServedWhileRefreshing() throws Exception {
+        CachingViaggiatrenoClient client = new CachingViaggiatrenoClient(rubyClient,
+                Duration.ofMillis(1), Duration.ofMillis(1), Duration.ofMinutes(1), 100);
+        assertEquals(1, client.getTrainStatus("9600").getDelayMinutes());
+        Thread.sleep(5);
+
+        fakeService.gate = new CountDownLatch(1);
+        // scaduto ma nella finestra stale: risposta immediata con il valore vecchio
+        assertEquals(1, client.getTrainStatusAsync("9600").get(1, TimeUnit.SECONDS).getDelayMinutes());
+        fakeService.gate.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fakeService.calls.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, client.getUpstreamCalls());
+    }
+
+    @Test
+    public void testSizeBoundedEviction() {
+        CachingViaggiatrenoClient client = new CachingViaggiatrenoClient(rubyClient,
+                Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofMinutes(1), 10);
+        for (int i = 1; i <= 25; i++) {
+            client.getTrainStatus(String.valueOf(i));
+        }
+        assertTrue(client.size() <= 10);
+    }
+}
@@ -0,0 +1,120 @@
+import com.trenical.database.GtfsTimetableLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import proto.Train;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GtfsTimetableLoaderTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Rome");
+    // lunedí
+    private static final LocalDate MONDAY = LocalDate.of(2026, 3, 2);
+
+    @TempDir
+    Path dir;
+
+    private void write(String name, String... lines) throws IOException {
+        Files.write(dir.resolve(name), List.of(lines), StandardCharsets.UTF_8);
+    }
+
+    private void writeFeed() throws IOException {
+        write("stops.txt",
+                "\uFEFFstop_id,stop_name,parent_station",
+                "S_RM,Roma Termini,",
+                "S_RM_1,\"Roma Termini, binario 1\",S_RM",
+                "S_FI,Firenze S.M.N.,",
+                "S_MI,Milano Centrale,");
+        write("routes.txt",
+                "route_id,route_short_name,route_long_name,route_type",
+                "R1,FR,Frecciarossa,2");
+        write("trips.txt",
+                "route_id,service_id,trip_id,trip_short_name",
+                "R1,WEEKDAYS,T1,9600",
+                "R1,WEEKDAYS,T2,9602",
+                "R1,SUNDAY,T3,9604");
+        write("calendar.txt",
+                "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date",
+                "WEEKDAYS,1,1,1,1,1,0,0,20260101,20261231",
+                "SUNDAY,0,0,0,0,0,0,1,20260101,20261231");
+        write("calendar_dates.txt",
+                "service_id,date,exception_type",
+                "WEEKDAYS,20260303,2");
+        // righe volutamente fuori ordine; T2 parte alle 23:30 e arriva dopo mezzanotte (orari > 24:00:00)
+        write("stop_times.txt",
+                "trip_id,arrival_time,departure_time,stop_id,stop_sequence",
+                "T1,09:35:00,09:37:00,S_FI,2",
+                "T1,08:00:00,08:00:00,S_RM_1,1",
+                "T1,11:10:00,11:10:00,S_MI,3",
+                "T2,23:30:00,23:30:00,S_RM,1",
+                "T2,,,S_FI,2",
+                "\"T2\",\"26:40:00\",\"26:40:00\",\"S_MI\",\"3\"",
+                "T3,10:00:00,10:00:00,S_RM,1",
+                "T3,13:00:00,13:00:00,S_MI,2");
+    }
+
+    @Test
+    public void testTrainsPerServiceDay() throws IOException {
+        writeFeed();
+        // piú thread che righe: anche i confini dei blocchi vengono esercitati
+        List<Train> trains = new GtfsTimetableLoader(ZONE, 4, 300).load(dir, MONDAY, 7);
+        Map<String, Train> byId = trains.stream().collect(Collectors.toMap(Train::getId, t -> t));
+
+        // T1 e T2: lun + mer..ven (martedí soppresso) = 4 giorni ciascuno; T3 solo domenica
+        assertEquals(9, trains.size());
+        assertTrue(byId.containsKey("T1@20260302"));
+        assertFalse(byId.containsKey("T1@20260303"));
+        assertTrue(byId.containsKey("T3@20260308"));
+
+        Train t1 = byId.get("T1@20260302");
+        assertEquals("S_RM", t1.getDepartureStation().getId());
+        assertEquals("Roma Termini", t1.getDepartureStation().getName());
+        assertEquals("S_MI", t1.getArrivalStation().getId());
+        assertEquals("FR 9600", t1.getTrainNumber());
+        assertEquals("FR", t1.getTrainType());
+        assertEquals(300, t1.getAvailableSeats());
+        assertEquals(MONDAY.atTime(LocalTime.of(8, 0)).atZone(ZONE).toEpochSecond(), t1.getDepartureTime().getSeconds());
+
+        Train t2 = byId.get("T2@20260302");
+        assertEquals(MONDAY.plusDays(1).atTime(LocalTime.of(2, 40)).atZone(ZONE).toEpochSecond(), t2.getArrivalTime().getSeconds());
+    }
+
+    @Test
+    public void testSingleThreadMatchesParallel() throws IOException {
+        writeFeed();
+        List<Train> parallel = new GtfsTimetableLoader(ZONE, 8, 300).load(dir, MONDAY, 7);
+        List<Train> sequential = new GtfsTimetableLoader(ZONE, 1, 300).load(dir, MONDAY, 7);
+        assertEquals(sequential.stream().collect(Collectors.toSet()), parallel.stream().collect(Collectors.toSet()));
+    }
+
+    // uno stop_id ripetuto non deve spostare le fermate successive sulla stazione sbagliata; vale la prima riga
+    @Test
+    public void testDuplicateStopKeepsLaterStopsOnTheirStation() throws IOException {
+        writeFeed();
+        write("stops.txt",
+                "stop_id,stop_name,parent_station",
+                "S_RM,Roma Termini,",
+                "S_RM_1,\"Roma Termini, binario 1\",S_RM",
+                "S_FI,Firenze S.M.N.,",
+                "S_FI,Firenze (duplicato),",
+                "S_MI,Milano Centrale,");
+        Map<String, Train> byId = new GtfsTimetableLoader(ZONE, 2, 300).load(dir, MONDAY, 7).stream()
+                .collect(Collectors.toMap(Train::getId, t -> t));
+
+        Train t1 = byId.get("T1@20260302");
+        assertEquals("S_RM", t1.getDepartureStation().getId());
+        assertEquals("S_MI", t1.getArrivalStation().getId());
+        assertEquals("Milano Centrale", t1.getArrivalStation().getName());
+    }
+}
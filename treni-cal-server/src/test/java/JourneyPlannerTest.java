@@ -0,0 +1,68 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainDatabase;
+import com.trenical.planner.JourneyPlanner;
+import org.junit.jupiter.api.Test;
+import proto.Station;
+import proto.Train;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JourneyPlannerTest {
+
+    // orario inventato lontano nel futuro, con stazioni che non esistono negli altri test
+    private static final long BASE = 4_000_000_000L;
+
+    private static Train train(String id, String from, String to, long departureMinutes, long arrivalMinutes) {
+        return Train.newBuilder()
+                .setId(id).setTrainNumber(id)
+                .setDepartureStation(Station.newBuilder().setId(from).setName(from))
+                .setArrivalStation(Station.newBuilder().setId(to).setName(to))
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(BASE + departureMinutes * 60))
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(BASE + arrivalMinutes * 60))
+                .setServiceClass("Standard").setPrice(20).setAvailableSeats(10).setTrainType("Regionale")
+                .build();
+    }
+
+    static {
+        TrainDatabase.getInstance().addTrains(List.of(
+                train("JP-DIRECT", "JP-NA", "JP-MI", 30, 330),   // diretto, arriva alle 5:30
+                train("JP-LEG1", "JP-NA", "JP-RM", 0, 70),       // Napoli -> Roma
+                train("JP-LEG2", "JP-RM", "JP-MI", 80, 260),     // coincidenza dopo 10 minuti
+                train("JP-LEG2B", "JP-RM", "JP-MI", 100, 290),   // coincidenza dopo 30 minuti
+                train("JP-TOFI", "JP-RM", "JP-FI", 75, 165),
+                train("JP-FIMI", "JP-FI", "JP-MI", 175, 280)));
+    }
+
+    @Test
+    public void testParetoItineraries() {
+        JourneyPlanner planner = new JourneyPlanner(TrainDatabase.getInstance(), 300, Map.of());
+        List<JourneyPlanner.Journey> journeys = planner.plan("JP-NA", "JP-MI", BASE, 3, 0);
+
+        assertEquals(2, journeys.size());
+        assertEquals(0, journeys.get(0).transfers());
+        assertEquals("JP-DIRECT", journeys.get(0).legs().get(0).getId());
+        assertEquals(1, journeys.get(1).transfers());
+        assertEquals(List.of("JP-LEG1", "JP-LEG2"), journeys.get(1).legs().stream().map(Train::getId).toList());
+        assertTrue(journeys.get(1).arrivalSeconds() < journeys.get(0).arrivalSeconds());
+    }
+
+    @Test
+    public void testMinimumTransferTimes() {
+        // a Roma servono 20 minuti: la coincidenza delle 1:20 è persa, resta quella delle 1:40
+        JourneyPlanner planner = new JourneyPlanner(TrainDatabase.getInstance(), 300, Map.of("JP-RM", 1200));
+        List<JourneyPlanner.Journey> journeys = planner.plan("JP-NA", "JP-MI", BASE, 3, 0);
+        assertEquals(List.of("JP-LEG1", "JP-LEG2B"), journeys.get(1).legs().stream().map(Train::getId).toList());
+
+        // con 40 minuti di cambio richiesti dal client nessuna coincidenza batte il diretto
+        journeys = planner.plan("JP-NA", "JP-MI", BASE, 3, 2400);
+        assertEquals(1, journeys.size());
+        assertEquals("JP-DIRECT", journeys.get(0).legs().get(0).getId());
+
+        // senza cambi ammessi resta solo il diretto, e partendo dopo il diretto nessun itinerario
+        assertEquals(1, planner.plan("JP-NA", "JP-MI", BASE, 0, 0).size());
+        assertTrue(planner.plan("JP-NA", "JP-MI", BASE + 3600, 3, 0).isEmpty());
+    }
+}
@@ -0,0 +1,141 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainDatabase;
+import com.trenical.observer.LiveStatusPoller;
+import com.trenical.observer.NotificationEngine;
+import com.trenical.observer.TripObserver;
+import com.trenical.rubyViaggiatreno.CachingViaggiatrenoClient;
+import com.trenical.rubyViaggiatreno.RubyViaggiatrenoClient;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import proto.Train;
+import proto.TripChangeNotification;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchResponse;
+import ruby_viaggiatreno_microservizio.TrainStatusResponse;
+import ruby_viaggiatreno_microservizio.ViaggiatrenoServiceGrpc;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveStatusPollerTest {
+
+    // servizio Ruby finto: ogni treno ha il ritardo e il binario impostati dal test
+    private static final class FakeViaggiatreno extends ViaggiatrenoServiceGrpc.ViaggiatrenoServiceImplBase {
+        private final AtomicInteger requestedTrains = new AtomicInteger();
+        private volatile int delayMinutes;
+        private volatile String platform = "";
+
+        @Override
+        public void getTrainRealtimeStatusBatch(TrainStatusBatchRequest request, StreamObserver<TrainStatusBatchResponse> responseObserver) {
+            TrainStatusBatchResponse.Builder response = TrainStatusBatchResponse.newBuilder();
+            for (String number : request.getTrainNumbersList()) {
+                requestedTrains.incrementAndGet();
+                response.addStatuses(TrainStatusResponse.newBuilder()
+                        .setTrainNumber(number)
+                        .setFound(true)
+                        .setDelayMinutes(delayMinutes)
+                        .setPlatform(platform)
+                        .setTrainStatusDescription("in viaggio"));
+            }
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static final class RecordingObserver implements StreamObserver<TripChangeNotification> {
+        private final List<TripChangeNotification> received = new ArrayList<>();
+
+        @Override
+        public void onNext(TripChangeNotification value) {
+            received.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    private final FakeViaggiatreno fakeService = new FakeViaggiatreno();
+    private final NotificationEngine engine = NotificationEngine.getInstance();
+    private Server server;
+    private ManagedChannel channel;
+    private LiveStatusPoller poller;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName).addService(fakeService).build().start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+        // TTL zero: il test sposta l'orologio del poller, non quello della cache
+        CachingViaggiatrenoClient client = new CachingViaggiatrenoClient(new RubyViaggiatrenoClient(channel),
+                Duration.ZERO, Duration.ZERO, Duration.ZERO, 100);
+        poller = new LiveStatusPoller(client, TrainDatabase.getInstance(), engine,
+                30, 1800, 50, 4);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testNotifiesOnlyWhenStatusChanges() {
+        RecordingObserver stream = new RecordingObserver();
+        TripObserver observer = new TripObserver(stream, "TR001", "poller-test-ticket");
+        engine.addObserver(observer);
+        try {
+            Instant now = Instant.now();
+            assertEquals(1, poller.pollOnce(now));
+            assertEquals(0, stream.received.size());
+            // non ancora da rileggere: nessuna chiamata al servizio
+            assertEquals(0, poller.pollOnce(now.plusSeconds(1)));
+            assertEquals(1, fakeService.requestedTrains.get());
+
+            fakeService.delayMinutes = 15;
+            fakeService.platform = "7";
+            assertEquals(1, poller.pollOnce(now.plus(Duration.ofHours(1))));
+            assertEquals(1, stream.received.size());
+            assertEquals("7", stream.received.get(0).getNewPlatform());
+            assertTrue(stream.received.get(0).getUpdateMessage().contains("15"));
+
+            assertEquals(1, poller.pollOnce(now.plus(Duration.ofHours(2))));
+            assertEquals(1, stream.received.size());
+        } finally {
+            engine.removeObserver(observer);
+        }
+        assertEquals(0, poller.pollOnce(Instant.now()));
+        assertEquals(0, poller.getTrackedTrainCount());
+    }
+
+    @Test
+    public void testIntervalShrinksNearDeparture() {
+        Instant now = Instant.now();
+        Train train = Train.newBuilder()
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(now.getEpochSecond() + 6 * 3600))
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(now.getEpochSecond() + 9 * 3600))
+                .build();
+        assertEquals(1800, poller.pollIntervalSeconds(train, 0, now));
+        assertEquals(300, poller.pollIntervalSeconds(train, 0, now.plus(Duration.ofHours(5))));
+        assertEquals(30, poller.pollIntervalSeconds(train, 0, now.plus(Duration.ofHours(7))));
+        // con 60 minuti di ritardo la partenza è ancora lontana un'ora
+        assertEquals(300, poller.pollIntervalSeconds(train, 60, now.plus(Duration.ofHours(6))));
+    }
+}
@@ -0,0 +1,161 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainDatabase;
+import com.trenical.observer.LiveTrainFeed;
+import com.trenical.services.TrainServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import proto.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// il pom dei test porta trenical.live.updateIntervalMillis a 100 ms
+public class LiveTrainFeedTest {
+    private static final String TRAIN_ID = "LV001";
+
+    private final TrainDatabase trainDatabase = TrainDatabase.getInstance();
+    private final LiveTrainFeed liveTrainFeed = LiveTrainFeed.getInstance();
+    private io.grpc.Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        long now = Instant.now().getEpochSecond();
+        trainDatabase.addTrains(List.of(Train.newBuilder()
+                .setId(TRAIN_ID).setTrainNumber("RV 2200")
+                .setDepartureStation(Station.newBuilder().setId("LV-A").setName("Live A"))
+                .setArrivalStation(Station.newBuilder().setId("LV-B").setName("Live B"))
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(now + 3600))
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(now + 7200))
+                .setServiceClass("Standard").setPrice(10).setAvailableSeats(20).setTrainType("Regionale")
+                .build()));
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(new TrainServiceImpl()).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    // stream aperto sul treno di test; initialRequests < 0 lascia il controllo di flusso automatico
+    private static final class Updates implements ClientResponseObserver<TrainInfoRequest, TrainRealTimeUpdate> {
+        private final int initialRequests;
+        private final BlockingQueue<TrainRealTimeUpdate> received = new LinkedBlockingQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private ClientCallStreamObserver<TrainInfoRequest> call;
+
+        private Updates(int initialRequests) {
+            this.initialRequests = initialRequests;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<TrainInfoRequest> requestStream) {
+            call = requestStream;
+            if (initialRequests >= 0) {
+                requestStream.disableAutoRequestWithInitial(initialRequests);
+            }
+        }
+
+        @Override
+        public void onNext(TrainRealTimeUpdate value) {
+            received.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            completed.countDown();
+        }
+
+        private TrainRealTimeUpdate next() throws InterruptedException {
+            TrainRealTimeUpdate update = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(update, "No live update received");
+            return update;
+        }
+    }
+
+    private Updates subscribe(int initialRequests) {
+        Updates updates = new Updates(initialRequests);
+        TreniCalGrpc.newStub(channel).getTrainRealTimeInfo(
+                TrainInfoRequest.newBuilder().setTrainId(TRAIN_ID).build(), updates);
+        return updates;
+    }
+
+    private void awaitNoSubscribers() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (liveTrainFeed.getSubscriberCount(TRAIN_ID) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, liveTrainFeed.getSubscriberCount(TRAIN_ID));
+    }
+
+    @Test
+    public void testEachSubscriberGetsItsOwnSequence() throws InterruptedException {
+        Updates first = subscribe(-1);
+        assertTrue(first.next().getStatusUpdate().startsWith("Train status update 1:"));
+        assertTrue(first.next().getStatusUpdate().startsWith("Train status update 2:"));
+
+        // chi si iscrive a feed giá avviato parte comunque dal primo aggiornamento, senza ritardo accumulato
+        Updates second = subscribe(-1);
+        TrainRealTimeUpdate firstOfSecond = second.next();
+        assertTrue(firstOfSecond.getStatusUpdate().startsWith("Train status update 1:"));
+        assertEquals(trainDatabase.getTrainById(TRAIN_ID).getArrivalTime(), firstOfSecond.getUpdatedArrivalTime());
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(second.next().getStatusUpdate().startsWith("Train status update " + i + ":"));
+        }
+        assertTrue(second.completed.await(5, TimeUnit.SECONDS));
+        for (int i = 3; i <= 5; i++) {
+            assertTrue(first.next().getStatusUpdate().startsWith("Train status update " + i + ":"));
+        }
+        assertTrue(first.completed.await(5, TimeUnit.SECONDS));
+        awaitNoSubscribers();
+    }
+
+    @Test
+    public void testCancelledStreamLeavesTheFeed() throws InterruptedException {
+        Updates updates = subscribe(-1);
+        updates.next();
+        assertEquals(1, liveTrainFeed.getSubscriberCount(TRAIN_ID));
+
+        updates.call.cancel("client gone", null);
+        awaitNoSubscribers();
+    }
+
+    @Test
+    public void testSlowClientSkipsTicksWithoutLosingUpdates() throws InterruptedException {
+        Updates updates = subscribe(1);
+        assertTrue(updates.next().getStatusUpdate().startsWith("Train status update 1:"));
+
+        // senza richieste dal client lo stream non è pronto: il feed salta i tick invece di accodare messaggi
+        Thread.sleep(500);
+        assertTrue(updates.received.isEmpty());
+        assertEquals(1, liveTrainFeed.getSubscriberCount(TRAIN_ID));
+
+        updates.call.request(4);
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(updates.next().getStatusUpdate().startsWith("Train status update " + i + ":"));
+        }
+        assertTrue(updates.completed.await(5, TimeUnit.SECONDS));
+        awaitNoSubscribers();
+    }
+}
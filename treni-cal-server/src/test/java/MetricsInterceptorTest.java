@@ -0,0 +1,78 @@
+import com.trenical.metrics.MetricsInterceptor;
+import com.trenical.services.AdminServiceImpl;
+import com.trenical.services.TrainServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import proto.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsInterceptorTest {
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        String serverName = InProcessServerBuilder.generateName();
+        MetricsInterceptor interceptor = new MetricsInterceptor();
+        server = InProcessServerBuilder.forName(serverName)
+                .directExecutor()
+                .addService(ServerInterceptors.intercept(new TrainServiceImpl(), interceptor))
+                .addService(ServerInterceptors.intercept(new AdminServiceImpl(), interceptor))
+                .build().start();
+        channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    private static RpcLatency latency(MetricsResponse metrics, String method, String code) {
+        return metrics.getRpcLatenciesList().stream()
+                .filter(l -> l.getMethod().equals(method) && l.getStatusCode().equals(code))
+                .findFirst().orElse(null);
+    }
+
+    @Test
+    public void testLatencyIsRecordedPerMethodAndStatusCode() {
+        TreniCalGrpc.TreniCalBlockingStub trains = TreniCalGrpc.newBlockingStub(channel);
+        trains.getAvailableStations(EmptyRequest.getDefaultInstance());
+        trains.getAvailableStations(EmptyRequest.getDefaultInstance());
+        LocalDate today = LocalDate.now();
+        assertThrows(StatusRuntimeException.class, () -> trains.searchTrains(SearchTrainRequest.newBuilder()
+                .setDepartureStation(Station.newBuilder().setId("RM001"))
+                .setArrivalStation(Station.newBuilder().setId("MI001"))
+                .setTravelDate(TravelDate.newBuilder().setYear(today.getYear()).setMonth(today.getMonthValue()).setDay(today.getDayOfMonth()))
+                .setPageToken("not a token!")
+                .build()));
+
+        MetricsResponse metrics = AdminServiceGrpc.newBlockingStub(channel).getMetrics(EmptyRequest.getDefaultInstance());
+
+        RpcLatency stations = latency(metrics, "proto.TreniCal/GetAvailableStations", "OK");
+        assertNotNull(stations);
+        assertTrue(stations.getCount() >= 2);
+        assertTrue(stations.getMaxMillis() >= stations.getP50Millis());
+        assertNotNull(latency(metrics, "proto.TreniCal/SearchTrains", "INVALID_ARGUMENT"));
+        // la chiamata GetMetrics in corso è l'unica ancora aperta su questo server
+        assertTrue(metrics.getInFlightCalls() >= 1);
+
+        String text = metrics.getPrometheusText();
+        assertTrue(text.contains("# TYPE trenical_rpc_latency_seconds summary"));
+        assertTrue(text.contains("trenical_rpc_latency_seconds_count{method=\"proto.TreniCal/GetAvailableStations\",code=\"OK\"}"));
+        assertTrue(text.contains("trenical_rpc_response_bytes{method=\"proto.TreniCal/GetAvailableStations\",quantile=\"0.99\"}"));
+        assertTrue(text.contains("trenical_notification_fanout_lag_seconds_count"));
+    }
+}
@@ -0,0 +1,64 @@
+import com.trenical.observer.NotificationEngine;
+import com.trenical.observer.TripObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import proto.TripChangeNotification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationEngineTest {
+
+    private final NotificationEngine engine = NotificationEngine.getInstance();
+
+    private static final class RecordingObserver implements StreamObserver<TripChangeNotification> {
+        private final List<TripChangeNotification> received = new ArrayList<>();
+
+        @Override
+        public void onNext(TripChangeNotification value) {
+            received.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    @Test
+    public void testDirectDeliveryBroadcastAndRemoval() {
+        String trainId = "train-" + UUID.randomUUID();
+        RecordingObserver first = new RecordingObserver();
+        RecordingObserver second = new RecordingObserver();
+        TripObserver firstObserver = new TripObserver(first, trainId, trainId + "-T1");
+        TripObserver secondObserver = new TripObserver(second, trainId, trainId + "-T2");
+        engine.addObserver(firstObserver);
+        engine.addObserver(secondObserver);
+        assertEquals(2, engine.getObserverCount(trainId));
+
+        engine.notifyTripChange(trainId, trainId + "-T1", "Ritardo", null, "3");
+        assertEquals(1, first.received.size());
+        assertEquals(0, second.received.size());
+
+        engine.notifyTripChange(trainId, NotificationEngine.ALL_TICKETS, "Cambio binario", null, "4");
+        assertEquals(2, first.received.size());
+        assertEquals(1, second.received.size());
+        // la stessa istanza del messaggio viene inviata a tutti gli iscritti
+        assertSame(first.received.get(1), second.received.get(0));
+
+        engine.removeObserver(firstObserver);
+        engine.notifyTripChange(trainId, NotificationEngine.ALL_TICKETS, "Soppresso", null, "");
+        assertEquals(2, first.received.size());
+        assertEquals(2, second.received.size());
+
+        engine.removeObserverForTicket(trainId + "-T2", secondObserver);
+        assertEquals(0, engine.getObserverCount(trainId));
+        assertFalse(engine.getSubscribedTrainIds().contains(trainId));
+    }
+}
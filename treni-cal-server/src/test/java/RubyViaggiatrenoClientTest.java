@@ -0,0 +1,117 @@
+import com.trenical.rubyViaggiatreno.RubyViaggiatrenoClient;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchResponse;
+import ruby_viaggiatreno_microservizio.TrainStatusResponse;
+import ruby_viaggiatreno_microservizio.ViaggiatrenoServiceGrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RubyViaggiatrenoClientTest {
+
+    // servizio Ruby finto: risponde ai batch e fa fallire quelli che contengono il treno "FAIL"
+    private static final class FakeBatchViaggiatreno extends ViaggiatrenoServiceGrpc.ViaggiatrenoServiceImplBase {
+        private final AtomicInteger batchCalls = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public void getTrainRealtimeStatusBatch(TrainStatusBatchRequest request, StreamObserver<TrainStatusBatchResponse> responseObserver) {
+            batchCalls.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            if (request.getTrainNumbersList().contains("FAIL")) {
+                responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                return;
+            }
+            TrainStatusBatchResponse.Builder response = TrainStatusBatchResponse.newBuilder();
+            for (String number : request.getTrainNumbersList()) {
+                response.addStatuses(TrainStatusResponse.newBuilder().setTrainNumber(number).setFound(true));
+            }
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void streamTrainRealtimeStatus(TrainStatusBatchRequest request, StreamObserver<TrainStatusResponse> responseObserver) {
+            List<String> numbers = new ArrayList<>(request.getTrainNumbersList());
+            Collections.reverse(numbers);
+            for (String number : numbers) {
+                responseObserver.onNext(TrainStatusResponse.newBuilder().setTrainNumber(number).setFound(true).build());
+            }
+            responseObserver.onCompleted();
+        }
+    }
+
+    private final FakeBatchViaggiatreno fakeService = new FakeBatchViaggiatreno();
+    private Server server;
+    private ManagedChannel channel;
+    private RubyViaggiatrenoClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName).addService(fakeService).build().start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+        client = new RubyViaggiatrenoClient(channel);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPipelinedKeepsOrderAndBoundsInFlight() {
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            numbers.add(String.valueOf(9000 + i));
+        }
+        numbers.set(42, "FAIL");
+
+        CompletableFuture<List<TrainStatusResponse>> pipelined = client.getTrainStatusesPipelined(numbers, 10, 3);
+        // il chiamante non aspetta che si liberi la finestra: sono partiti solo i primi tre batch
+        assertTrue(fakeService.batchCalls.get() <= 3);
+        List<TrainStatusResponse> statuses = pipelined.join();
+
+        assertEquals(numbers.size(), statuses.size());
+        for (int i = 0; i < numbers.size(); i++) {
+            assertEquals(numbers.get(i), statuses.get(i).getTrainNumber());
+        }
+        // il batch 40..49 è fallito: solo quelle risposte sono found=false
+        assertFalse(statuses.get(45).getFound());
+        assertTrue(statuses.get(39).getFound());
+        assertTrue(statuses.get(50).getFound());
+        assertEquals(10, fakeService.batchCalls.get());
+        assertTrue(fakeService.maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void testStreamDeliversEveryStatus() {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        client.streamTrainStatuses(List.of("1", "2", "3"), status -> received.add(status.getTrainNumber())).join();
+        assertEquals(List.of("3", "2", "1"), received);
+    }
+}
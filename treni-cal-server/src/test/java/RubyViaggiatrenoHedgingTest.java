@@ -0,0 +1,131 @@
+import com.trenical.rubyViaggiatreno.RubyViaggiatrenoClient;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusBatchResponse;
+import ruby_viaggiatreno_microservizio.TrainStatusRequest;
+import ruby_viaggiatreno_microservizio.TrainStatusResponse;
+import ruby_viaggiatreno_microservizio.ViaggiatrenoServiceGrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tre istanze finte del servizio Ruby su localhost (Netty, porte vere), una delle quali lentissima:
+// con round robin un terzo delle chiamate finirebbe sull'istanza lenta, l'hedging deve tagliare quella coda.
+public class RubyViaggiatrenoHedgingTest {
+
+    private static final class StandInViaggiatreno extends ViaggiatrenoServiceGrpc.ViaggiatrenoServiceImplBase {
+        private final long latencyMillis;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger batchCalls = new AtomicInteger();
+
+        private StandInViaggiatreno(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public void getTrainRealtimeStatus(TrainStatusRequest request, StreamObserver<TrainStatusResponse> responseObserver) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            responseObserver.onNext(TrainStatusResponse.newBuilder()
+                    .setTrainNumber(request.getTrainNumber()).setFound(true).build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void getTrainRealtimeStatusBatch(TrainStatusBatchRequest request, StreamObserver<TrainStatusBatchResponse> responseObserver) {
+            batchCalls.incrementAndGet();
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TrainStatusBatchResponse.Builder response = TrainStatusBatchResponse.newBuilder();
+            for (String number : request.getTrainNumbersList()) {
+                response.addStatuses(TrainStatusResponse.newBuilder().setTrainNumber(number).setFound(true));
+            }
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<StandInViaggiatreno> standIns = new ArrayList<>();
+    private RubyViaggiatrenoClient client;
+
+    private String startStandIns(long... latenciesMillis) throws IOException {
+        StringBuilder endpoints = new StringBuilder();
+        for (long latency : latenciesMillis) {
+            StandInViaggiatreno standIn = new StandInViaggiatreno(latency);
+            Server server = Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create())
+                    .addService(standIn).build().start();
+            standIns.add(standIn);
+            servers.add(server);
+            endpoints.append(endpoints.length() == 0 ? "" : ",").append("localhost:").append(server.getPort());
+        }
+        return endpoints.toString();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (client != null) {
+            client.shutdown();
+        }
+        for (Server server : servers) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testHedgingCutsTheSlowEndpointOutOfTheTail() throws IOException {
+        String endpoints = startStandIns(5, 5, 3000);
+        client = new RubyViaggiatrenoClient(endpoints,
+                new RubyViaggiatrenoClient.Settings(3, 50, 0, 3, 10_000, 0));
+
+        long worstMillis = 0;
+        for (int i = 0; i < 30; i++) {
+            long start = System.nanoTime();
+            TrainStatusResponse response = client.getTrainStatus(String.valueOf(9000 + i));
+            worstMillis = Math.max(worstMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            assertTrue(response.getFound(), response.getErrorMessage());
+        }
+
+        // senza hedging le chiamate finite sull'istanza lenta durerebbero 3 s
+        assertTrue(worstMillis < 1000, "worst call took " + worstMillis + " ms");
+        for (StandInViaggiatreno standIn : standIns) {
+            assertTrue(standIn.calls.get() > 0, "round robin should reach every endpoint");
+        }
+        assertEquals(-1, client.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void testBatchCallsAreNeverHedged() throws IOException {
+        String endpoints = startStandIns(5, 5, 300);
+        client = new RubyViaggiatrenoClient(endpoints,
+                new RubyViaggiatrenoClient.Settings(3, 50, 0, 3, 10_000, 0));
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(2, client.getTrainStatuses(List.of("9000", "9001")).size());
+        }
+
+        // un batch sull'istanza lenta aspetta la sua risposta invece di partire anche verso le altre
+        int batchCalls = 0;
+        for (StandInViaggiatreno standIn : standIns) {
+            batchCalls += standIn.batchCalls.get();
+        }
+        assertEquals(6, batchCalls);
+    }
+}
@@ -0,0 +1,111 @@
+import com.trenical.database.SeatInventory;
+import com.trenical.database.SeatMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeatInventoryTest {
+
+    @Test
+    public void testReserveAndRelease() {
+        SeatInventory inventory = new SeatInventory();
+        inventory.register("TR900", "Standard", 10, List.of("S1", "S2", "S3"));
+
+        assertEquals(7, inventory.getAvailableSeats("TR900", "Standard"));
+        int[] seats = inventory.reserve("TR900", "Standard", 7);
+        assertArrayEquals(new int[]{3, 4, 5, 6, 7, 8, 9}, seats);
+        assertNull(inventory.reserve("TR900", "Standard", 1));
+        assertEquals(0, inventory.getAvailableSeats("TR900", "Standard"));
+
+        inventory.release("TR900", "Standard", new int[]{seats[0], seats[1]});
+        assertEquals(2, inventory.getAvailableSeats("TR900", "Standard"));
+        assertTrue(inventory.release("TR900", "Standard", "S1"));
+        assertEquals(3, inventory.getAvailableSeats("TR900", "Standard"));
+
+        // classe non offerta dal treno
+        assertNull(inventory.reserve("TR900", "Business", 1));
+        assertEquals(0, inventory.getAvailableSeats("TR900", "Business"));
+    }
+
+    @Test
+    public void testRegisteringAgainKeepsHeldReservations() {
+        SeatInventory inventory = new SeatInventory();
+        inventory.register("TR902", "Standard", 10, List.of());
+        // prenotazione di un acquisto non ancora salvato: non c'è nessun biglietto che la ricordi
+        int[] held = inventory.reserve("TR902", "Standard", 4);
+
+        inventory.register("TR902", "Standard", 10, List.of());
+        assertEquals(6, inventory.getAvailableSeats("TR902", "Standard"));
+        int[] next = inventory.reserve("TR902", "Standard", 6);
+        for (int seat : next) {
+            for (int taken : held) {
+                assertNotEquals(taken, seat);
+            }
+        }
+    }
+
+    @Test
+    public void testReleaseNeverExceedsCapacity() {
+        SeatInventory inventory = new SeatInventory();
+        inventory.register("TR901", "Standard", 5, List.of());
+        inventory.release("TR901", "Standard", new int[]{0, 1, 2});
+        assertFalse(inventory.release("TR901", "Standard", "S4"));
+        assertEquals(5, inventory.getAvailableSeats("TR901", "Standard"));
+    }
+
+    @Test
+    public void testConcurrentReservationsNeverOversell() throws Exception {
+        SeatInventory inventory = new SeatInventory();
+        int capacity = 1000;
+        inventory.register("TR902", "Standard", capacity, List.of());
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<Integer>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                List<Integer> reserved = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    int[] seats = inventory.reserve("TR902", "Standard", 1 + i % 3);
+                    if (seats != null) {
+                        for (int seat : seats) {
+                            reserved.add(seat);
+                        }
+                    }
+                }
+                return reserved;
+            }));
+        }
+        Set<Integer> distinctSeats = new HashSet<>();
+        int totalReserved = 0;
+        for (Future<List<Integer>> result : results) {
+            List<Integer> seats = result.get();
+            totalReserved += seats.size();
+            distinctSeats.addAll(seats);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        // nessun posto assegnato due volte
+        assertEquals(totalReserved, distinctSeats.size());
+        assertEquals(capacity, totalReserved);
+        assertEquals(0, inventory.getAvailableSeats("TR902", "Standard"));
+    }
+
+    // una capacitá fuori scala nell'orario non deve far fallire addTrains: viene ridotta al massimo della mappa
+    @Test
+    public void testOversizedCapacityIsClamped() {
+        SeatInventory inventory = new SeatInventory();
+        inventory.register("TR903", "Standard", Integer.MAX_VALUE, List.of("S1"));
+        assertEquals(SeatMap.MAX_CAPACITY - 1, inventory.getAvailableSeats("TR903", "Standard"));
+    }
+}
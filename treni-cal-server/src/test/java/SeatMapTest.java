@@ -0,0 +1,67 @@
+import com.trenical.database.SeatMap;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeatMapTest {
+
+    @Test
+    public void testGroupGetsAdjacentSeatsInOneCoach() {
+        SeatMap seatMap = new SeatMap(20, 8);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5}, seatMap.allocate(6));
+        // nella prima carrozza restano 2 posti: il gruppo da 4 va tutto nella seconda
+        assertArrayEquals(new int[]{8, 9, 10, 11}, seatMap.allocate(4));
+        assertArrayEquals(new int[]{6}, seatMap.allocate(1));
+        assertEquals(9, seatMap.getAvailableSeats());
+    }
+
+    @Test
+    public void testFallsBackToScatteredSeatsWhenNoBlockIsFree() {
+        SeatMap seatMap = new SeatMap(8, 4);
+        for (int seat = 0; seat < 8; seat += 2) {
+            assertTrue(seatMap.occupy(seat));
+        }
+        assertArrayEquals(new int[]{1, 3, 5}, seatMap.allocate(3));
+        assertArrayEquals(new int[]{7}, seatMap.allocate(1));
+        assertNull(seatMap.allocate(1));
+
+        // un gruppo piú grande di una carrozza occupa i primi posti liberi
+        SeatMap large = new SeatMap(10, 4);
+        assertEquals(10, large.allocate(10).length);
+        assertEquals(0, large.getAvailableSeats());
+    }
+
+    @Test
+    public void testReleaseAndBitPackedEncoding() {
+        SeatMap seatMap = new SeatMap(70, 64);
+        int[] seats = seatMap.allocate(3);
+        assertTrue(seatMap.occupy(64));
+        assertTrue(seatMap.occupy(69));
+        assertFalse(seatMap.occupy(69));
+        assertTrue(seatMap.release(seats[1]));
+        assertFalse(seatMap.release(seats[1]));
+
+        byte[] packed = seatMap.toBitPacked();
+        assertEquals(9, packed.length);
+        assertEquals(0b101, packed[0]);
+        assertEquals(0b100001, packed[8]);
+        assertEquals(66, seatMap.getAvailableSeats());
+
+        // il posto liberato è il primo a essere riassegnato
+        assertArrayEquals(new int[]{1}, seatMap.allocate(1));
+    }
+
+    // il numero di carrozze si calcolava in int: con capacitá vicine a Integer.MAX_VALUE diventava negativo
+    @Test
+    public void testLargeCapacityIsBounded() {
+        SeatMap seatMap = new SeatMap(SeatMap.MAX_CAPACITY, 64);
+        assertEquals(SeatMap.MAX_CAPACITY, seatMap.getAvailableSeats());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, seatMap.allocate(4));
+        assertTrue(seatMap.occupy(SeatMap.MAX_CAPACITY - 1));
+        assertFalse(seatMap.occupy(SeatMap.MAX_CAPACITY));
+        assertEquals(SeatMap.MAX_CAPACITY - 5, seatMap.getAvailableSeats());
+
+        assertThrows(IllegalArgumentException.class, () -> new SeatMap(Integer.MAX_VALUE, 64));
+        assertThrows(IllegalArgumentException.class, () -> new SeatMap(SeatMap.MAX_CAPACITY + 1, 1));
+    }
+}
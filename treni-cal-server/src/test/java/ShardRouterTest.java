@@ -0,0 +1,209 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.services.ShardRoutingTicketService;
+import com.trenical.services.ShardRoutingTrainService;
+import com.trenical.sharding.ShardKey;
+import com.trenical.sharding.ShardRouter;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import proto.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Router davanti a due shard finti in-process: ogni shard ha i suoi treni e i suoi biglietti, e pagina la ricerca
+// con lo stesso cursore (partenza:id in Base64) del server vero.
+public class ShardRouterTest {
+
+    private static final class FakeShard {
+        final int index;
+        final List<Train> trains = new ArrayList<>();
+        final List<Ticket> tickets = new ArrayList<>();
+        final List<String> purchasedTrains = new CopyOnWriteArrayList<>();
+        final List<Integer> searchPageSizes = new CopyOnWriteArrayList<>();
+
+        FakeShard(int index) {
+            this.index = index;
+        }
+
+        final TreniCalGrpc.TreniCalImplBase trainService = new TreniCalGrpc.TreniCalImplBase() {
+            @Override
+            public void searchTrains(SearchTrainRequest request, StreamObserver<SearchTrainResponse> responseObserver) {
+                long afterSeconds = Long.MIN_VALUE;
+                String afterId = "";
+                if (!request.getPageToken().isEmpty()) {
+                    String[] cursor = new String(Base64.getUrlDecoder().decode(request.getPageToken()), StandardCharsets.UTF_8).split(":", 2);
+                    afterSeconds = Long.parseLong(cursor[0]);
+                    afterId = cursor[1];
+                }
+                List<Train> page = new ArrayList<>();
+                for (Train train : trains) {
+                    long seconds = train.getDepartureTime().getSeconds();
+                    if (seconds > afterSeconds || (seconds == afterSeconds && train.getId().compareTo(afterId) > 0)) {
+                        page.add(train);
+                    }
+                }
+                SearchTrainResponse.Builder response = SearchTrainResponse.newBuilder();
+                searchPageSizes.add(request.getPageSize());
+                if (request.getPageSize() > 0 && page.size() > request.getPageSize()) {
+                    page = page.subList(0, request.getPageSize());
+                    Train last = page.get(page.size() - 1);
+                    response.setNextPageToken(Base64.getUrlEncoder().withoutPadding().encodeToString(
+                            (last.getDepartureTime().getSeconds() + ":" + last.getId()).getBytes(StandardCharsets.UTF_8)));
+                }
+                responseObserver.onNext(response.addAllAvailableTrains(page).build());
+                responseObserver.onCompleted();
+            }
+        };
+
+        final TicketServiceGrpc.TicketServiceImplBase ticketService = new TicketServiceGrpc.TicketServiceImplBase() {
+            @Override
+            public void purchaseTickets(PurchaseTicketRequest request, StreamObserver<PurchaseTicketResponse> responseObserver) {
+                purchasedTrains.add(request.getTrainId());
+                responseObserver.onNext(PurchaseTicketResponse.newBuilder().setSuccess(true).build());
+                responseObserver.onCompleted();
+            }
+
+            @Override
+            public void getMyTickets(UserRequest request, StreamObserver<TicketListResponse> responseObserver) {
+                responseObserver.onNext(TicketListResponse.newBuilder().addAllTickets(tickets).build());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private final List<FakeShard> shards = new ArrayList<>();
+    private final List<io.grpc.Server> servers = new ArrayList<>();
+    private ShardRouter router;
+    private io.grpc.Server routerServer;
+    private ManagedChannel clientChannel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            FakeShard shard = new FakeShard(i);
+            String name = InProcessServerBuilder.generateName();
+            servers.add(InProcessServerBuilder.forName(name).directExecutor()
+                    .addService(shard.trainService).addService(shard.ticketService).build().start());
+            channels.add(InProcessChannelBuilder.forName(name).directExecutor().build());
+            shards.add(shard);
+        }
+        router = new ShardRouter(channels, 5000);
+        String routerName = InProcessServerBuilder.generateName();
+        routerServer = InProcessServerBuilder.forName(routerName).directExecutor()
+                .addService(new ShardRoutingTrainService(router))
+                .addService(new ShardRoutingTicketService(router))
+                .build().start();
+        clientChannel = InProcessChannelBuilder.forName(routerName).directExecutor().build();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        clientChannel.shutdownNow();
+        routerServer.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        router.shutdown();
+        for (io.grpc.Server server : servers) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Train train(String id, long departureSeconds) {
+        return Train.newBuilder().setId(id)
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(departureSeconds)).build();
+    }
+
+    @Test
+    public void testSearchMergesShardsInDepartureOrderAcrossPages() {
+        shards.get(0).trains.addAll(List.of(train("A", 10), train("C", 30), train("E", 50)));
+        shards.get(1).trains.addAll(List.of(train("B", 20), train("D", 40)));
+        TreniCalGrpc.TreniCalBlockingStub stub = TreniCalGrpc.newBlockingStub(clientChannel);
+
+        List<String> seen = new ArrayList<>();
+        String pageToken = "";
+        int pages = 0;
+        do {
+            SearchTrainResponse page = stub.searchTrains(SearchTrainRequest.newBuilder()
+                    .setPageSize(2).setPageToken(pageToken).build());
+            page.getAvailableTrainsList().forEach(train -> seen.add(train.getId()));
+            pageToken = page.getNextPageToken();
+            pages++;
+        } while (!pageToken.isEmpty());
+
+        assertEquals(List.of("A", "B", "C", "D", "E"), seen);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    public void testSearchStreamPagesThroughEveryShard() {
+        for (int i = 0; i < 1200; i++) {
+            String id = String.format("T%04d", i);
+            shards.get(i % 2).trains.add(train(id, 1000 + i));
+        }
+        TreniCalGrpc.TreniCalBlockingStub stub = TreniCalGrpc.newBlockingStub(clientChannel);
+
+        List<String> seen = new ArrayList<>();
+        stub.searchTrainsStream(SearchTrainRequest.getDefaultInstance()).forEachRemaining(train -> seen.add(train.getId()));
+        assertEquals(1200, seen.size());
+        for (int i = 0; i < seen.size(); i++) {
+            assertEquals(String.format("T%04d", i), seen.get(i));
+        }
+        // nessuna richiesta senza limite agli shard: 600 treni per shard, letti in pagine da al massimo 500
+        for (FakeShard shard : shards) {
+            assertTrue(shard.searchPageSizes.stream().allMatch(size -> size > 0 && size <= 500), shard.searchPageSizes.toString());
+            assertEquals(2, shard.searchPageSizes.size());
+        }
+
+        List<String> limited = new ArrayList<>();
+        stub.searchTrainsStream(SearchTrainRequest.newBuilder().setPageSize(7).build())
+                .forEachRemaining(train -> limited.add(train.getId()));
+        assertEquals(List.of("T0000", "T0001", "T0002", "T0003", "T0004", "T0005", "T0006"), limited);
+    }
+
+    @Test
+    public void testPurchaseGoesToOwningShardAndTicketsAreGathered() {
+        TicketServiceGrpc.TicketServiceBlockingStub stub = TicketServiceGrpc.newBlockingStub(clientChannel);
+        for (String trainId : List.of("TR001", "TR002", "TR003", "TR004")) {
+            assertTrue(stub.purchaseTickets(PurchaseTicketRequest.newBuilder().setTrainId(trainId).build()).getSuccess());
+        }
+        for (FakeShard shard : shards) {
+            for (String trainId : shard.purchasedTrains) {
+                assertEquals(shard.index, ShardKey.shardOf(trainId, 2), trainId);
+            }
+        }
+
+        shards.get(0).tickets.add(Ticket.newBuilder().setId("s0-b").setPurchaseDate(Timestamp.newBuilder().setSeconds(200)).build());
+        shards.get(1).tickets.add(Ticket.newBuilder().setId("s1-a").setPurchaseDate(Timestamp.newBuilder().setSeconds(100)).build());
+        List<Ticket> tickets = stub.getMyTickets(UserRequest.newBuilder().setUserId("u").build()).getTicketsList();
+        assertEquals(List.of("s1-a", "s0-b"), tickets.stream().map(Ticket::getId).toList());
+
+        // un id senza shard non può appartenere a nessun nodo
+        assertFalse(stub.modifyTicket(ModifyTicketRequest.newBuilder().setTicketId(UUID.randomUUID().toString()).build()).getSuccess());
+    }
+
+    @Test
+    public void testShardKeySpreadsTrainsAndTagsTickets() {
+        int[] perShard = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            perShard[ShardKey.shardOf(String.format("TR%03d", i), 4)]++;
+        }
+        assertTrue(java.util.Arrays.stream(perShard).min().getAsInt() > 150, java.util.Arrays.toString(perShard));
+
+        ShardKey shard = new ShardKey(2, 3);
+        assertEquals(2, ShardKey.shardOfTicket(shard.newTicketId()));
+        assertEquals(-1, ShardKey.shardOfTicket(new ShardKey(0, 1).newTicketId()));
+        assertEquals(-1, ShardKey.shardOfTicket("sx-123"));
+    }
+}
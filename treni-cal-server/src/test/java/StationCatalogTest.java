@@ -0,0 +1,63 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.StationCatalog;
+import com.trenical.database.TrainStore;
+import org.junit.jupiter.api.Test;
+import proto.Station;
+import proto.Train;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StationCatalogTest {
+
+    private static Station station(String id, String name) {
+        return Station.newBuilder().setId(id).setName(name).build();
+    }
+
+    private static StationCatalog catalog(Station... stations) {
+        List<Train> trains = new ArrayList<>();
+        for (int i = 0; i < stations.length; i++) {
+            trains.add(Train.newBuilder()
+                    .setId("TR" + i).setTrainNumber("R " + i)
+                    .setDepartureStation(stations[i]).setArrivalStation(stations[(i + 1) % stations.length])
+                    .setDepartureTime(Timestamp.newBuilder().setSeconds(1_750_000_000L + i * 60).build())
+                    .setArrivalTime(Timestamp.newBuilder().setSeconds(1_750_003_600L + i * 60).build())
+                    .setServiceClass("Standard").setAvailableSeats(100)
+                    .build());
+        }
+        TrainStore store = new TrainStore();
+        store.addAll(trains);
+        return StationCatalog.build(store);
+    }
+
+    private static List<String> names(List<Station> stations) {
+        return stations.stream().map(Station::getName).toList();
+    }
+
+    @Test
+    public void testPrefixSearchIgnoresCaseAndAccents() {
+        StationCatalog catalog = catalog(
+                station("S1", "Milano Centrale"), station("S2", "Milano Porta Garibaldi"),
+                station("S3", "Forlì"), station("S4", "Roma Termini"), station("S5", "Centrale Nord"));
+
+        assertEquals(List.of("Milano Centrale", "Milano Porta Garibaldi"), names(catalog.search("mil", 10)));
+        assertEquals(List.of("Forlì"), names(catalog.search("FORLI", 10)));
+        // prima i nomi che iniziano col prefisso, poi quelli con una parola che inizia col prefisso
+        assertEquals(List.of("Centrale Nord", "Milano Centrale"), names(catalog.search("centr", 10)));
+        assertEquals(List.of("Milano Centrale"), names(catalog.search("milano  centrale", 1)));
+        assertTrue(catalog.search("napoli", 10).isEmpty());
+
+        // elenco completo in ordine alfabetico, anche per un prefisso vuoto
+        assertEquals(5, catalog.getAllStations().getStationsCount());
+        assertEquals("Centrale Nord", catalog.getStations().get(0).getName());
+        assertEquals(List.of("Centrale Nord", "Forlì"), names(catalog.search("", 2)));
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("forli sant antonio", StationCatalog.normalize("  Forlì  Sant'Antonio "));
+        assertEquals("", StationCatalog.normalize(null));
+    }
+}
@@ -0,0 +1,73 @@
+import com.trenical.database.TicketDatabase;
+import org.junit.jupiter.api.Test;
+import proto.Ticket;
+import proto.Train;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketDatabaseTest {
+
+    private final TicketDatabase ticketDatabase = TicketDatabase.getInstance();
+
+    private static Ticket ticket(String ticketId, String userId, String trainId, String serviceClass) {
+        return Ticket.newBuilder()
+                .setId(ticketId)
+                .setUserId(userId)
+                .setTrainDetails(Train.newBuilder().setId(trainId).setServiceClass(serviceClass).build())
+                .setStatus("CONFIRMED")
+                .build();
+    }
+
+    @Test
+    public void testLookupsUseSecondaryIndexes() {
+        // uso id univoci perché il database è un singleton condiviso tra i test
+        String suffix = UUID.randomUUID().toString();
+        String user = "user-" + suffix;
+        String train = "train-" + suffix;
+
+        ticketDatabase.saveTicket(ticket("t1-" + suffix, user, train, "Standard"));
+        ticketDatabase.saveTicket(ticket("t2-" + suffix, user, train, "Business"));
+        ticketDatabase.saveTicket(ticket("t3-" + suffix, "other-" + suffix, train, "Standard"));
+
+        assertEquals(2, ticketDatabase.getTicketsByUserId(user).size());
+        assertEquals(3, ticketDatabase.getTicketsForTrain(train).size());
+        assertEquals(2, ticketDatabase.getTicketsForTrainAndClass(train, "Standard").size());
+        assertEquals(1, ticketDatabase.getTicketsForTrainAndClass(train, "Business").size());
+        assertTrue(ticketDatabase.getTicketsByUserId("missing-" + suffix).isEmpty());
+    }
+
+    @Test
+    public void testOverwriteMovesTicketBetweenClassIndexes() {
+        String suffix = UUID.randomUUID().toString();
+        String user = "user-" + suffix;
+        String train = "train-" + suffix;
+        String ticketId = "t-" + suffix;
+
+        ticketDatabase.saveTicket(ticket(ticketId, user, train, "Standard"));
+        ticketDatabase.saveTicket(ticket(ticketId, user, train, "Business").toBuilder().setStatus("MODIFIED").build());
+
+        assertTrue(ticketDatabase.getTicketsForTrainAndClass(train, "Standard").isEmpty());
+        List<Ticket> business = ticketDatabase.getTicketsForTrainAndClass(train, "Business");
+        assertEquals(1, business.size());
+        assertEquals("MODIFIED", business.get(0).getStatus());
+        assertEquals(1, ticketDatabase.getTicketsByUserId(user).size());
+        assertEquals(1, ticketDatabase.getTicketsForTrain(train).size());
+    }
+
+    @Test
+    public void testConditionalSaveLosesToAConcurrentWrite() {
+        String suffix = UUID.randomUUID().toString();
+        String ticketId = "t-" + suffix;
+        ticketDatabase.saveTicket(ticket(ticketId, "user-" + suffix, "train-" + suffix, "Standard"));
+        Ticket read = ticketDatabase.getTicketById(ticketId);
+
+        // due modifiche partite dalla stessa lettura: vince solo la prima, anche se il risultato è uguale
+        Ticket modified = ticket(ticketId, "user-" + suffix, "train-" + suffix, "Business");
+        assertTrue(ticketDatabase.saveTicketIfCurrent(modified, read) >= 0);
+        assertEquals(-1, ticketDatabase.saveTicketIfCurrent(modified.toBuilder().build(), read));
+        assertSame(modified, ticketDatabase.getTicketById(ticketId));
+    }
+}
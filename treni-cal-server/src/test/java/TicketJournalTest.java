@@ -0,0 +1,147 @@
+import com.trenical.database.TicketDatabase;
+import com.trenical.database.TicketJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import proto.Ticket;
+import proto.Train;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path journalDir;
+
+    private static Ticket ticket(String ticketId, String status) {
+        return Ticket.newBuilder()
+                .setId(ticketId)
+                .setUserId("journalUser")
+                .setTrainDetails(Train.newBuilder().setId("TR001").setServiceClass("Standard").build())
+                .setSeatNumber("S1")
+                .setStatus(status)
+                .build();
+    }
+
+    private TicketJournal open(Map<String, Ticket> state) throws IOException {
+        return TicketJournal.open(journalDir, SEGMENT_SIZE, 100, ticket -> state.put(ticket.getId(), ticket));
+    }
+
+    @Test
+    public void testRecoverReplaysJournalInOrder() throws IOException {
+        Map<String, Ticket> state = new ConcurrentHashMap<>();
+        try (TicketJournal journal = open(state)) {
+            long seq = 0;
+            // abbastanza record da riempire piú segmenti
+            for (int i = 0; i < 200; i++) {
+                seq = journal.append(ticket("T" + i, "CONFIRMED"));
+            }
+            seq = journal.append(ticket("T7", "MODIFIED"));
+            journal.awaitDurable(seq);
+        }
+
+        Map<String, Ticket> recovered = new ConcurrentHashMap<>();
+        try (TicketJournal journal = open(recovered)) {
+            assertEquals(200, recovered.size());
+            assertEquals("MODIFIED", recovered.get("T7").getStatus());
+
+            // dopo il recovery si continua a scrivere in coda
+            journal.awaitDurable(journal.append(ticket("T200", "CONFIRMED")));
+        }
+
+        Map<String, Ticket> recoveredAgain = new ConcurrentHashMap<>();
+        open(recoveredAgain).close();
+        assertEquals(201, recoveredAgain.size());
+    }
+
+    @Test
+    public void testRecoverFromSnapshotPlusTail() throws IOException {
+        Map<String, Ticket> state = new ConcurrentHashMap<>();
+        try (TicketJournal journal = open(state)) {
+            for (int i = 0; i < 100; i++) {
+                Ticket ticket = ticket("T" + i, "CONFIRMED");
+                state.put(ticket.getId(), ticket);
+                journal.append(ticket);
+            }
+            journal.snapshot(state.values(), 4);
+            assertEquals(0, journal.segmentsSinceSnapshot());
+
+            Ticket modified = ticket("T3", "MODIFIED");
+            state.put(modified.getId(), modified);
+            journal.awaitDurable(journal.append(modified));
+        }
+
+        Map<String, Ticket> recovered = new ConcurrentHashMap<>();
+        open(recovered).close();
+        assertEquals(100, recovered.size());
+        assertEquals("MODIFIED", recovered.get("T3").getStatus());
+    }
+
+    // snapshot continui mentre quattro thread salvano e modificano biglietti; poi si recupera una copia della cartella
+    // fatta senza chiudere il journal, come dopo un crash: ogni biglietto confermato deve esserci, nell'ultima versione
+    @Test
+    public void testSnapshotsConcurrentWithSavesLoseNothing() throws Exception {
+        TicketDatabase database = TicketDatabase.getInstance();
+        database.clear();
+        Path liveDir = journalDir.resolve("live");
+        database.enableJournal(liveDir, SEGMENT_SIZE, 50, 3600);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                String prefix = "W" + w + "-";
+                done.add(writers.submit(() -> {
+                    long seq = 0;
+                    for (int i = 0; i < 400; i++) {
+                        seq = database.saveTicket(ticket(prefix + i, "CONFIRMED"));
+                        if (i % 3 == 0) {
+                            seq = database.saveTicket(ticket(prefix + (i / 2), "MODIFIED-" + i));
+                        }
+                    }
+                    database.awaitDurable(seq);
+                    return null;
+                }));
+            }
+            int snapshots = 0;
+            while (done.stream().anyMatch(future -> !future.isDone()) || snapshots == 0) {
+                database.snapshot();
+                snapshots++;
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+
+            Path crashImage = journalDir.resolve("crash");
+            try (Stream<Path> files = Files.walk(liveDir)) {
+                for (Path file : files.toList()) {
+                    Files.copy(file, crashImage.resolve(liveDir.relativize(file).toString()));
+                }
+            }
+            Map<String, Ticket> recovered = new ConcurrentHashMap<>();
+            TicketJournal.open(crashImage, SEGMENT_SIZE, 100, ticket -> recovered.put(ticket.getId(), ticket)).close();
+
+            Map<String, Ticket> expected = database.getTicketsByUserId("journalUser").stream()
+                    .collect(Collectors.toMap(Ticket::getId, ticket -> ticket));
+            assertEquals(1600, expected.size());
+            assertEquals(expected, recovered);
+        } finally {
+            writers.shutdownNow();
+            database.closeJournal();
+            database.clear();
+        }
+    }
+}
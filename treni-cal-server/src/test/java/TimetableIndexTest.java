@@ -0,0 +1,54 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TimetableIndex;
+import com.trenical.database.TrainStore;
+import org.junit.jupiter.api.Test;
+import proto.Station;
+import proto.Train;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimetableIndexTest {
+
+    private static final Station ROME = Station.newBuilder().setId("RM001").setName("Roma Termini").build();
+    private static final Station MILAN = Station.newBuilder().setId("MI001").setName("Milano Centrale").build();
+    private static final Station NAPLES = Station.newBuilder().setId("NA001").setName("Napoli Centrale").build();
+
+    private static Train train(String id, Station from, Station to, long departureSeconds) {
+        return Train.newBuilder()
+                .setId(id)
+                .setDepartureStation(from)
+                .setArrivalStation(to)
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(departureSeconds).build())
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(departureSeconds + 3600).build())
+                .build();
+    }
+
+    @Test
+    public void testFindReturnsRouteDayBucketSortedByDeparture() {
+        ZoneId zone = ZoneOffset.UTC;
+        long day = LocalDate.of(2025, 6, 1).atStartOfDay(zone).toEpochSecond();
+
+        TrainStore store = new TrainStore();
+        store.addAll(List.of(
+                train("late", ROME, MILAN, day + 3600 * 18),
+                train("early", ROME, MILAN, day + 3600 * 6),
+                train("nextDay", ROME, MILAN, day + 86400 + 3600 * 6),
+                train("naples", ROME, NAPLES, day + 3600 * 7)
+        ));
+        TimetableIndex index = TimetableIndex.build(store, zone);
+
+        int[] found = index.find("RM001", "MI001", LocalDate.of(2025, 6, 1));
+        assertEquals(2, found.length);
+        assertEquals("early", store.trainId(found[0]));
+        assertEquals("late", store.trainId(found[1]));
+
+        assertEquals(1, index.find("RM001", "MI001", LocalDate.of(2025, 6, 2)).length);
+        assertEquals(0, index.find("MI001", "RM001", LocalDate.of(2025, 6, 1)).length);
+        assertEquals(0, index.find("RM001", "XX999", LocalDate.of(2025, 6, 1)).length);
+    }
+}
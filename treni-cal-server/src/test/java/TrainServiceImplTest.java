@@ -1,9 +1,13 @@
 import com.trenical.services.TrainServiceImpl;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
 import io.grpc.testing.GrpcCleanupRule;
 import proto.*;
+import com.google.protobuf.Timestamp;
 import com.trenical.database.TrainDatabase;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,6 +18,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 // import static org.mockito.Mockito.*; // per i mock
@@ -112,14 +121,123 @@ public class TrainServiceImplTest {
     }
 
 
+    @Test
+    public void testGetTrainRealTimeInfo_UnknownTrain() {
+        TrainInfoRequest request = TrainInfoRequest.newBuilder().setTrainId("NOPE").build();
 
+        StatusRuntimeException exception = assertThrows(StatusRuntimeException.class,
+                () -> blockingStub.getTrainRealTimeInfo(request).hasNext());
+        assertEquals(Status.Code.NOT_FOUND, exception.getStatus().getCode());
+    }
 
 
+    // sette treni sulla tratta PG-A -> PG-B, oggi alle 12:00, 12:10, ...
+    private SearchTrainRequest pagingRoute(int pageSize, String pageToken) {
+        Station from = Station.newBuilder().setId("PG-A").setName("Paging A").build();
+        Station to = Station.newBuilder().setId("PG-B").setName("Paging B").build();
+        LocalDate today = LocalDate.now();
+        long noon = today.atTime(LocalTime.NOON).atZone(ZoneId.systemDefault()).toEpochSecond();
+        List<Train> trains = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            trains.add(Train.newBuilder()
+                    .setId("PG" + i).setTrainNumber("RV " + i)
+                    .setDepartureStation(from).setArrivalStation(to)
+                    .setDepartureTime(Timestamp.newBuilder().setSeconds(noon + i * 600))
+                    .setArrivalTime(Timestamp.newBuilder().setSeconds(noon + i * 600 + 3600))
+                    .setServiceClass("Standard").setPrice(10).setAvailableSeats(20).setTrainType("Regionale")
+                    .build());
+        }
+        TrainDatabase.getInstance().addTrains(trains);
+        return SearchTrainRequest.newBuilder()
+                .setDepartureStation(from).setArrivalStation(to)
+                .setTravelDate(TravelDate.newBuilder().setYear(today.getYear()).setMonth(today.getMonthValue()).setDay(today.getDayOfMonth()))
+                .setPageSize(pageSize).setPageToken(pageToken)
+                .build();
+    }
 
+    @Test
+    public void testSearchTrains_Pagination() {
+        List<String> ids = new ArrayList<>();
+        String token = "";
+        int pages = 0;
+        do {
+            SearchTrainResponse page = blockingStub.searchTrains(pagingRoute(3, token));
+            page.getAvailableTrainsList().forEach(train -> ids.add(train.getId()));
+            token = page.getNextPageToken();
+            pages++;
+        } while (!token.isEmpty());
+
+        assertEquals(3, pages);
+        assertEquals(List.of("PG0", "PG1", "PG2", "PG3", "PG4", "PG5", "PG6"), ids);
+
+        StatusRuntimeException exception = assertThrows(StatusRuntimeException.class,
+                () -> blockingStub.searchTrains(pagingRoute(3, "not-a-token")));
+        assertEquals(Status.Code.INVALID_ARGUMENT, exception.getStatus().getCode());
+    }
 
+    @Test
+    public void testSearchTrainsStream_InDepartureOrder() {
+        List<String> ids = new ArrayList<>();
+        Iterator<Train> stream = blockingStub.searchTrainsStream(pagingRoute(0, ""));
+        stream.forEachRemaining(train -> ids.add(train.getId()));
+        assertEquals(List.of("PG0", "PG1", "PG2", "PG3", "PG4", "PG5", "PG6"), ids);
+
+        // il page_token vale anche per lo stream, page_size ne limita la lunghezza
+        String afterSecond = blockingStub.searchTrains(pagingRoute(2, "")).getNextPageToken();
+        List<String> resumed = new ArrayList<>();
+        blockingStub.searchTrainsStream(pagingRoute(2, afterSecond)).forEachRemaining(train -> resumed.add(train.getId()));
+        assertEquals(List.of("PG2", "PG3"), resumed);
+    }
 
+    // page_size dello stream ha lo stesso tetto di SearchTrains; un observer che non è quello del server gRPC
+    // (qui il servizio chiamato direttamente) riceve tutto senza flow control invece di un ClassCastException
+    @Test
+    public void testSearchTrainsStream_PageSizeCappedWithoutFlowControl() {
+        Station from = Station.newBuilder().setId("CAP-A").setName("Cap A").build();
+        Station to = Station.newBuilder().setId("CAP-B").setName("Cap B").build();
+        LocalDate today = LocalDate.now();
+        long noon = today.atTime(LocalTime.NOON).atZone(ZoneId.systemDefault()).toEpochSecond();
+        List<Train> trains = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            trains.add(Train.newBuilder()
+                    .setId("CAP" + i).setTrainNumber("RV " + i)
+                    .setDepartureStation(from).setArrivalStation(to)
+                    .setDepartureTime(Timestamp.newBuilder().setSeconds(noon + i))
+                    .setArrivalTime(Timestamp.newBuilder().setSeconds(noon + i + 3600))
+                    .setServiceClass("Standard").setPrice(10).setAvailableSeats(20).setTrainType("Regionale")
+                    .build());
+        }
+        TrainDatabase.getInstance().addTrains(trains);
+        SearchTrainRequest.Builder request = SearchTrainRequest.newBuilder()
+                .setDepartureStation(from).setArrivalStation(to)
+                .setTravelDate(TravelDate.newBuilder().setYear(today.getYear()).setMonth(today.getMonthValue()).setDay(today.getDayOfMonth()));
+
+        List<Train> received = new ArrayList<>();
+        boolean[] completed = new boolean[1];
+        StreamObserver<Train> observer = new StreamObserver<>() {
+            @Override
+            public void onNext(Train value) {
+                received.add(value);
+            }
 
+            @Override
+            public void onError(Throwable t) {
+                fail(t);
+            }
 
-
-
+            @Override
+            public void onCompleted() {
+                completed[0] = true;
+            }
+        };
+        new TrainServiceImpl().searchTrainsStream(request.setPageSize(10_000).build(), observer);
+        assertTrue(completed[0]);
+        assertEquals(500, received.size());
+
+        received.clear();
+        completed[0] = false;
+        new TrainServiceImpl().searchTrainsStream(request.setPageSize(0).build(), observer);
+        assertTrue(completed[0]);
+        assertEquals(600, received.size());
+    }
 }
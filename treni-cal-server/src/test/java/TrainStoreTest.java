@@ -0,0 +1,99 @@
+import com.google.protobuf.Timestamp;
+import com.trenical.database.TrainStore;
+import org.junit.jupiter.api.Test;
+import proto.Station;
+import proto.Train;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrainStoreTest {
+
+    private static final Station ROME = Station.newBuilder().setId("RM001").setName("Roma Termini").build();
+    private static final Station MILAN = Station.newBuilder().setId("MI001").setName("Milano Centrale").build();
+
+    private static Train train(String id, Station from, Station to, long departureSeconds, int seats) {
+        return Train.newBuilder()
+                .setId(id).setTrainNumber("FR " + id)
+                .setDepartureStation(from).setArrivalStation(to)
+                .setDepartureTime(Timestamp.newBuilder().setSeconds(departureSeconds).build())
+                .setArrivalTime(Timestamp.newBuilder().setSeconds(departureSeconds + 3600).build())
+                .setServiceClass("Standard").setPrice(42.5).setAvailableSeats(seats).setTrainType("High-Speed")
+                .build();
+    }
+
+    @Test
+    public void testMaterializeRoundTripsTheLoadedTrain() {
+        TrainStore store = new TrainStore();
+        Train original = train("TR001", ROME, MILAN, 1_750_000_000L, 100);
+        store.addAll(List.of(original, train("TR002", MILAN, ROME, 1_750_003_600L, 80)));
+
+        int row = store.rowOf("TR001");
+        assertEquals(original, store.materialize(row));
+        assertEquals(7, store.materialize(row, 7).getAvailableSeats());
+        assertEquals(-1, store.rowOf("TR999"));
+        // le stazioni sono internate: due treni, due stazioni
+        assertEquals(2, store.stationCount());
+        assertEquals(store.departureStation(row), store.arrivalStation(store.rowOf("TR002")));
+    }
+
+    @Test
+    public void testReplacingATrainKeepsOldRowsReadable() {
+        TrainStore store = new TrainStore();
+        store.addAll(List.of(train("TR001", ROME, MILAN, 1_750_000_000L, 100)));
+        int oldRow = store.rowOf("TR001");
+
+        store.addAll(List.of(train("TR001", ROME, MILAN, 1_750_007_200L, 100)));
+        int newRow = store.rowOf("TR001");
+
+        assertNotEquals(oldRow, newRow);
+        assertFalse(store.isCurrent(oldRow));
+        assertTrue(store.isCurrent(newRow));
+        assertEquals(1_750_000_000L, store.materialize(oldRow).getDepartureTime().getSeconds());
+        assertEquals(1_750_007_200L, store.materialize(newRow).getDepartureTime().getSeconds());
+    }
+
+    @Test
+    public void testIdIndexSurvivesGrowth() {
+        TrainStore store = new TrainStore();
+        for (int batch = 0; batch < 20; batch++) {
+            List<Train> trains = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                trains.add(train("T" + batch + "-" + i, ROME, MILAN, 1_750_000_000L + i, 10));
+            }
+            store.addAll(trains);
+        }
+        assertEquals(10_000, store.size());
+        for (int batch = 0; batch < 20; batch++) {
+            int row = store.rowOf("T" + batch + "-499");
+            assertEquals("T" + batch + "-499", store.trainId(row));
+        }
+    }
+
+    @Test
+    public void testReadersNeverLoseATrainBeingReplaced() throws InterruptedException {
+        TrainStore store = new TrainStore();
+        store.addAll(List.of(train("TR001", ROME, MILAN, 1_750_000_000L, 100)));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (store.rowOf("TR001") < 0) {
+                    misses.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        // ogni sostituzione scrive nell'indice degli id: un lettore sull'istantanea precedente deve ancora trovarlo
+        for (int i = 0; i < 5_000; i++) {
+            store.addAll(List.of(train("TR001", ROME, MILAN, 1_750_000_000L + i, 100)));
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, misses.get());
+    }
+}
@@ -0,0 +1,94 @@
+import com.trenical.observer.DeliveryMetrics;
+import com.trenical.observer.OverflowPolicy;
+import com.trenical.observer.TripObserver;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.jupiter.api.Test;
+import proto.TripChangeNotification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripObserverTest {
+
+    // stream lato server di cui il test controlla isReady()
+    private static final class FakeServerStream extends ServerCallStreamObserver<TripChangeNotification> {
+        private final List<TripChangeNotification> sent = new ArrayList<>();
+        private Throwable error;
+        private boolean ready;
+        private Runnable onReadyHandler;
+
+        void becomeReady() {
+            ready = true;
+            onReadyHandler.run();
+        }
+
+        @Override public boolean isReady() { return ready; }
+        @Override public void setOnReadyHandler(Runnable onReadyHandler) { this.onReadyHandler = onReadyHandler; }
+        @Override public boolean isCancelled() { return false; }
+        @Override public void setOnCancelHandler(Runnable onCancelHandler) { }
+        @Override public void setCompression(String compression) { }
+        @Override public void disableAutoInboundFlowControl() { }
+        @Override public void request(int count) { }
+        @Override public void setMessageCompression(boolean enable) { }
+        @Override public void onNext(TripChangeNotification value) { sent.add(value); }
+        @Override public void onError(Throwable t) { error = t; }
+        @Override public void onCompleted() { }
+    }
+
+    private static TripChangeNotification notification(String ticketId, String message) {
+        return TripChangeNotification.newBuilder().setTicketId(ticketId).setUpdateMessage(message).build();
+    }
+
+    @Test
+    public void testQueueDrainsOnlyWhenReady() {
+        FakeServerStream stream = new FakeServerStream();
+        TripObserver observer = new TripObserver(stream, "TR001", "T1", 4, OverflowPolicy.DROP_OLDEST);
+        long lagSamplesBefore = DeliveryMetrics.getInstance().getFanOutLagMicros().getTotalCount();
+
+        observer.sendUpdate(notification("T1", "a"));
+        observer.sendUpdate(notification("T1", "b"));
+        assertTrue(stream.sent.isEmpty());
+        assertEquals(2, observer.getQueueDepth());
+
+        stream.becomeReady();
+        assertEquals(List.of("a", "b"), stream.sent.stream().map(TripChangeNotification::getUpdateMessage).toList());
+        assertEquals(0, observer.getQueueDepth());
+        // il ritardo di fan-out si registra alla consegna, non all'accodamento
+        assertTrue(DeliveryMetrics.getInstance().getFanOutLagMicros().getTotalCount() >= lagSamplesBefore + 2);
+    }
+
+    @Test
+    public void testCoalesceKeepsLatestPerTicket() {
+        FakeServerStream stream = new FakeServerStream();
+        TripObserver observer = new TripObserver(stream, "TR001", "T1", 2, OverflowPolicy.COALESCE_LATEST);
+        long coalescedBefore = DeliveryMetrics.getInstance().getCoalesced();
+
+        observer.sendUpdate(notification("*", "broadcast"));
+        observer.sendUpdate(notification("T1", "delay 5"));
+        observer.sendUpdate(notification("T1", "delay 10"));
+        observer.sendUpdate(notification("T1", "delay 15"));
+        assertEquals(2, observer.getQueueDepth());
+
+        stream.becomeReady();
+        assertEquals(List.of("broadcast", "delay 15"), stream.sent.stream().map(TripChangeNotification::getUpdateMessage).toList());
+        assertTrue(DeliveryMetrics.getInstance().getCoalesced() >= coalescedBefore + 2);
+    }
+
+    @Test
+    public void testDisconnectPolicyClosesSlowClient() {
+        FakeServerStream stream = new FakeServerStream();
+        TripObserver observer = new TripObserver(stream, "TR001", "T1", 1, OverflowPolicy.DISCONNECT);
+
+        observer.sendUpdate(notification("T1", "a"));
+        observer.sendUpdate(notification("T1", "b"));
+
+        assertNotNull(stream.error);
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, ((StatusRuntimeException) stream.error).getStatus().getCode());
+        stream.becomeReady();
+        assertTrue(stream.sent.isEmpty());
+    }
+}